@@ -0,0 +1,90 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+
+/** Compare parsing a program with loading its AST file, on generated programs of
+* doubling sizes:
+*   parse: lex and parse the source, then clean the tree, like the compiler does,
+*   write: write the tree in an AST file,
+*   open: map and check the file, which decodes the root only,
+*   load: open the file then decode every node, like a pass over the whole tree.
+* Each time is the best of several runs after a warm-up. The loaded tree must print
+* like the parsed one.
+* Usage: java AstBench [-from n] [-to n] [-runs n] [-seed n]
+*/
+
+public class AstBench {
+  public static void main(String[] args) throws IOException {
+    int from = 1000;
+    int to = 64000;
+    int runs = 5;
+    long seed = 1;
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("-from")) {
+        from = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-to")) {
+        to = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-runs")) {
+        runs = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-seed")) {
+        seed = Long.parseLong(args[++i]);
+      } else {
+        System.err.println("Usage: java AstBench [-from n] [-to n] [-runs n] [-seed n]");
+        System.exit(1);
+      }
+    }
+    File file = File.createTempFile("program", ".ast");
+    file.deleteOnExit();
+    String path = file.getPath();
+
+    String warm = generate(seed, from);
+    for (int i = 0; i < 20; i++) {
+      AstFile.write(parse(warm), path);
+      AstFile.read(path).size();
+    }
+
+    System.out.println(String.format("%10s %8s %8s %10s %10s %10s %10s %8s %5s", "statements", "src KB",
+    "ast KB", "parse ms", "write ms", "open ms", "load ms", "speedup", "same"));
+    for (int size = from; size <= to; size *= 2) {
+      String source = generate(seed, size);
+      double parse = Double.MAX_VALUE;
+      double write = Double.MAX_VALUE;
+      double open = Double.MAX_VALUE;
+      double load = Double.MAX_VALUE;
+      AbstractSyntaxTree ast = null;
+      for (int run = 0; run < runs; run++) {
+        long start = System.nanoTime();
+        ast = parse(source);
+        parse = Math.min(parse, (System.nanoTime() - start) / 1e6);
+
+        start = System.nanoTime();
+        AstFile.write(ast, path);
+        write = Math.min(write, (System.nanoTime() - start) / 1e6);
+
+        start = System.nanoTime();
+        AstFile.read(path);
+        open = Math.min(open, (System.nanoTime() - start) / 1e6);
+
+        start = System.nanoTime();
+        AstFile.read(path).size();
+        load = Math.min(load, (System.nanoTime() - start) / 1e6);
+      }
+      boolean same = AstFile.read(path).printTree().equals(ast.printTree());
+      System.out.println(String.format("%10d %8d %8d %10.2f %10.2f %10.3f %10.2f %7.1fx %5s", size,
+      source.length() / 1024, file.length() / 1024, parse, write, open, load, parse / load, same ? "yes" : "NO"));
+    }
+  }
+
+  private static AbstractSyntaxTree parse(String source) throws IOException {
+    return new Parser(new BufferedReader(new StringReader(source))).startParse();
+  }
+
+  //A generated program that reads nothing.
+  private static String generate(long seed, int statements) {
+    ProgramGenerator generator = new ProgramGenerator(seed);
+    generator.statements = statements;
+    generator.ioDensity = 0;
+    return generator.generate();
+  }
+}
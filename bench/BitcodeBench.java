@@ -0,0 +1,113 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.StringReader;
+
+/** Compare the two ways to make the bitcode run by -exec, on generated programs
+* of doubling sizes:
+*   llvm-as: write the IR code in a .ll file and run llvm-as on it,
+*   writer: write the .bc file with the BitcodeWriter.
+* The IR code is generated once per size, the writer is warmed up first and each
+* time is the best of several runs. Both files are then disassembled by llvm-dis,
+* which must print the same module, and run by lli, which must print the same
+* output.
+* Usage: java BitcodeBench [-from n] [-to n] [-runs n] [-seed n]
+* Requires llvm-as, llvm-dis and lli on the PATH.
+*/
+
+public class BitcodeBench {
+  public static void main(String[] args) throws Exception {
+    int from = 5000;
+    int to = 40000;
+    int runs = 3;
+    long seed = 1;
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("-from")) {
+        from = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-to")) {
+        to = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-runs")) {
+        runs = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-seed")) {
+        seed = Long.parseLong(args[++i]);
+      } else {
+        System.err.println("Usage: java BitcodeBench [-from n] [-to n] [-runs n] [-seed n]");
+        System.exit(1);
+      }
+    }
+    File dir = File.createTempFile("bitcode", "");
+    dir.delete();
+    dir.mkdir();
+    String ll = new File(dir, "program.ll").getPath();
+    String asBc = new File(dir, "llvm-as.bc").getPath();
+    String writerBc = new File(dir, "writer.bc").getPath();
+
+    String warm = generate(seed, Math.max(1, from / 4));
+    for (int i = 0; i < 10; i++) {
+      new BitcodeWriter(warm).writeToFile(writerBc);
+    }
+
+    System.out.println(String.format("%10s %10s %12s %12s %8s %12s %12s %6s", "statements", "IR KB",
+    "llvm-as ms", "writer ms", "speedup", "llvm-as KB", "writer KB", "same"));
+    for (int size = from; size <= to; size *= 2) {
+      String llvmCode = generate(seed, size);
+      double assembler = Double.MAX_VALUE;
+      double writer = Double.MAX_VALUE;
+      for (int run = 0; run < runs; run++) {
+        long start = System.nanoTime();
+        BufferedWriter file = new BufferedWriter(new FileWriter(ll));
+        file.write(llvmCode);
+        file.close();
+        run("llvm-as", ll, "-o", asBc);
+        assembler = Math.min(assembler, (System.nanoTime() - start) / 1e6);
+
+        start = System.nanoTime();
+        new BitcodeWriter(llvmCode).writeToFile(writerBc);
+        writer = Math.min(writer, (System.nanoTime() - start) / 1e6);
+      }
+      boolean same = disassemble(asBc).equals(disassemble(writerBc))
+      && run("lli", asBc).equals(run("lli", writerBc));
+      System.out.println(String.format("%10d %10d %12.1f %12.1f %7.1fx %12d %12d %6s", size,
+      llvmCode.length() / 1024, assembler, writer, assembler / writer, new File(asBc).length() / 1024,
+      new File(writerBc).length() / 1024, same ? "yes" : "NO"));
+    }
+    for (File file: dir.listFiles()) {
+      file.delete();
+    }
+    dir.delete();
+  }
+
+  //The IR code of a generated program that reads nothing.
+  private static String generate(long seed, int statements) throws IOException {
+    ProgramGenerator generator = new ProgramGenerator(seed);
+    generator.statements = statements;
+    generator.ioDensity = 0;
+    String source = generator.generate();
+    return new CodeGenerator(new Parser(new BufferedReader(new StringReader(source))).startParse()).generateLLVM();
+  }
+
+  //The module printed by llvm-dis, without the lines naming the file.
+  private static String disassemble(String bc) throws IOException, InterruptedException {
+    String module = run("llvm-dis", bc, "-o", "-");
+    return module.substring(module.indexOf("\n\n"));
+  }
+
+  //The output of a command.
+  private static String run(String... command) throws IOException, InterruptedException {
+    Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+    process.getOutputStream().close();
+    StringBuilder output = new StringBuilder();
+    BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()));
+    String line;
+    while ((line = reader.readLine()) != null) {
+      output.append(line).append('\n');
+    }
+    if (process.waitFor() != 0 && !command[0].equals("lli")) {
+      throw new Error(command[0] + " failed: " + output);
+    }
+    return output.toString();
+  }
+}
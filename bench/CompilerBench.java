@@ -0,0 +1,297 @@
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Throughput benchmark of the compiler phases: lexing (tokens/s), parsing
+* (nodes/s), the AST passes removeEpsilons/removeBadMinus (nodes/s) and the
+* generation of the LLVM IR (IR bytes/s). Each phase runs over generated programs
+* of several sizes. Every size is measured with warmup iterations followed by
+* measured iterations of a fixed duration, like JMH does, and the allocation and
+* GC time per operation are reported next to the score.
+* Results can be written to a CSV file and compared to a previous one, so a
+* change of the compiler throughput shows up as a ratio per benchmark.
+* Usage: java CompilerBench [-sizes 100,1000,10000] [-warmup n] [-iterations n]
+*   [-time ms] [-csv results.csv] [-compare baseline.csv]
+*/
+
+public class CompilerBench {
+  private int warmup = 3;
+  private int iterations = 5;
+  private long iterationTime = 1000;
+  private List<Integer> sizes = new ArrayList<Integer>();
+  private List<String[]> results = new ArrayList<String[]>();
+
+  //Prevent the JIT from removing the measured work.
+  private static long sink;
+
+  public static void main(String[] args) throws IOException {
+    CompilerBench bench = new CompilerBench();
+    String csv = null;
+    String compare = null;
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("-sizes")) {
+        for (String size: args[++i].split(",")) {
+          bench.sizes.add(Integer.parseInt(size));
+        }
+      } else if (args[i].equals("-warmup")) {
+        bench.warmup = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-iterations")) {
+        bench.iterations = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-time")) {
+        bench.iterationTime = Long.parseLong(args[++i]);
+      } else if (args[i].equals("-csv")) {
+        csv = args[++i];
+      } else if (args[i].equals("-compare")) {
+        compare = args[++i];
+      } else {
+        System.err.println("Usage: java CompilerBench [-sizes 100,1000,10000] [-warmup n] [-iterations n]"
+        + " [-time ms] [-csv results.csv] [-compare baseline.csv]");
+        System.exit(1);
+      }
+    }
+    if (bench.sizes.isEmpty()) {
+      bench.sizes.add(100);
+      bench.sizes.add(1000);
+      bench.sizes.add(10000);
+    }
+    bench.start(csv, compare);
+  }
+
+  /** The recursive parser and code generator need a deep stack on large inputs,
+  * so the benchmarks run in a thread with a 1 GB stack.
+  */
+  private void start(final String csv, final String compare) {
+    Thread thread = new Thread(null, new Runnable() {
+      public void run() {
+        try {
+          System.out.println(String.format("%-10s %8s %8s %16s %12s %14s %10s", "Benchmark", "Size",
+          "Cnt", "Score", "Error", "Units", "B/op"));
+          for (int size: sizes) {
+            CompilerBench.this.run(size);
+          }
+          if (csv != null) {
+            writeCsv(csv);
+          }
+          if (compare != null) {
+            compare(compare);
+          }
+        } catch (IOException e) {
+          throw new Error(e);
+        }
+      }
+    }, "bench", 1L << 30);
+    thread.start();
+    try {
+      thread.join();
+    } catch (InterruptedException e) {
+      throw new Error(e);
+    }
+  }
+
+  /** Measure every phase on a program of the given number of blocks.
+  */
+  private void run(int size) throws IOException {
+    final String source = program(size);
+    final AbstractSyntaxTree ast = parse(source);
+    final long tokens = countTokens(source);
+    final long nodes = countNodes(ast);
+    final long irBytes = new CodeGenerator(ast).generateLLVM().length();
+
+    measure("lex", size, tokens, "tokens/s", new Runnable() {
+      public void run() {
+        sink += countTokens(source);
+      }
+    });
+    measure("parse", size, nodes, "nodes/s", new Runnable() {
+      public void run() {
+        sink += parse(source).getChildren().size();
+      }
+    });
+    measure("passes", size, nodes, "nodes/s", new Runnable() {
+      public void run() {
+        ast.removeEpsilons();
+        ast.removeBadMinus();
+        sink += ast.getChildren().size();
+      }
+    });
+    measure("codegen", size, irBytes, "bytes/s", new Runnable() {
+      public void run() {
+        sink += new CodeGenerator(ast).generateLLVM().length();
+      }
+    });
+  }
+
+  /** Run the warmup then the measured iterations of one benchmark. The score of an
+  * iteration is the amount of work (tokens, nodes, bytes) per operation times the
+  * number of operations per second.
+  */
+  private void measure(String name, int size, long work, String unit, Runnable operation) {
+    for (int i = 0; i < warmup; i++) {
+      iteration(operation);
+    }
+    double[] scores = new double[iterations];
+    double allocated = 0;
+    long gcTime = 0;
+    for (int i = 0; i < iterations; i++) {
+      long gcBefore = gcMillis();
+      long allocBefore = allocatedBytes();
+      long start = System.nanoTime();
+      long ops = iteration(operation);
+      long elapsed = System.nanoTime() - start;
+      allocated += (double) (allocatedBytes() - allocBefore) / ops;
+      gcTime += gcMillis() - gcBefore;
+      scores[i] = (double) work * ops * 1e9 / elapsed;
+    }
+    double mean = 0;
+    for (double score: scores) {
+      mean += score / iterations;
+    }
+    double variance = 0;
+    for (double score: scores) {
+      variance += (score - mean) * (score - mean) / Math.max(1, iterations - 1);
+    }
+    double error = Math.sqrt(variance);
+    long bytesPerOp = allocatedBytes() < 0 ? -1 : Math.round(allocated / iterations);
+    System.out.println(String.format("%-10s %8d %8d %16.0f %12.0f %14s %10d", name, size, iterations,
+    mean, error, unit, bytesPerOp));
+    results.add(new String[] {name, Integer.toString(size), Integer.toString(iterations),
+    String.format("%.0f", mean), String.format("%.0f", error), unit, Long.toString(bytesPerOp),
+    Long.toString(gcTime)});
+  }
+
+  //Repeat an operation for the duration of an iteration, return the number of operations.
+  private long iteration(Runnable operation) {
+    long end = System.nanoTime() + iterationTime * 1000000;
+    long ops = 0;
+    do {
+      operation.run();
+      ops++;
+    } while (System.nanoTime() < end);
+    return ops;
+  }
+
+  //Bytes allocated by this thread, or -1 if the JVM can't tell.
+  private static long allocatedBytes() {
+    java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+    if (threads instanceof com.sun.management.ThreadMXBean) {
+      return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+    }
+    return -1;
+  }
+
+  //Time spent in GC since the start of the JVM.
+  private static long gcMillis() {
+    long total = 0;
+    for (GarbageCollectorMXBean gc: ManagementFactory.getGarbageCollectorMXBeans()) {
+      total += Math.max(0, gc.getCollectionTime());
+    }
+    return total;
+  }
+
+  /** Write the results as CSV: benchmark, size, iterations, score, error, unit,
+  * bytes allocated per operation and GC time in ms.
+  */
+  private void writeCsv(String path) throws IOException {
+    PrintWriter out = new PrintWriter(new FileWriter(path));
+    out.println("Benchmark,Size,Cnt,Score,Error,Unit,BytesPerOp,GcMillis");
+    for (String[] result: results) {
+      out.println(String.join(",", result));
+    }
+    out.close();
+  }
+
+  /** Print the ratio of each score to the same benchmark in a previous CSV file.
+  * A ratio under 1 is a slowdown.
+  */
+  private void compare(String path) throws IOException {
+    Map<String, String[]> baseline = new LinkedHashMap<String, String[]>();
+    BufferedReader in = new BufferedReader(new FileReader(path));
+    in.readLine();
+    String line;
+    while ((line = in.readLine()) != null) {
+      String[] fields = line.split(",");
+      baseline.put(fields[0] + "," + fields[1], fields);
+    }
+    in.close();
+    System.out.println(String.format("\n%-10s %8s %16s %16s %8s %12s", "Benchmark", "Size", "Baseline",
+    "Score", "Ratio", "B/op delta"));
+    for (String[] result: results) {
+      String[] old = baseline.get(result[0] + "," + result[1]);
+      if (old == null) {
+        continue;
+      }
+      double ratio = Double.parseDouble(result[3]) / Double.parseDouble(old[3]);
+      long allocDelta = Long.parseLong(result[6]) - Long.parseLong(old[6]);
+      System.out.println(String.format("%-10s %8s %16s %16s %8.2f %12d", result[0], result[1], old[3],
+      result[3], ratio, allocDelta));
+    }
+  }
+
+  //Number of tokens of a program, end of stream included.
+  private static long countTokens(String source) {
+    try {
+      Lexer lexer = new Lexer(new StringReader(source));
+      long tokens = 1;
+      while (lexer.yylex().getType() != LexicalUnit.EOS) {
+        tokens++;
+      }
+      return tokens;
+    } catch (IOException e) {
+      throw new Error(e);
+    }
+  }
+
+  private static AbstractSyntaxTree parse(String source) {
+    try {
+      return new Parser(new BufferedReader(new StringReader(source))).startParse();
+    } catch (IOException e) {
+      throw new Error(e);
+    }
+  }
+
+  private static long countNodes(AbstractSyntaxTree ast) {
+    long nodes = 1;
+    for (AbstractSyntaxTree child: ast.getChildren()) {
+      nodes += countNodes(child);
+    }
+    return nodes;
+  }
+
+  /** Generate a program made of the given number of blocks. A block mixes
+  * arithmetic, an IF with an ELSE, a FOR over an array, a WHILE and a PRINT.
+  */
+  static String program(int blocks) {
+    StringBuilder code = new StringBuilder();
+    code.append("BEGINPROG Bench\n");
+    code.append("VARIABLES a, b, c, v[64]\n");
+    code.append("a := 1\nb := 2\n");
+    for (int k = 0; k < blocks; k++) {
+      code.append("c := a * 3 + (b - " + k + ") / 2\n");
+      code.append("IF (c > a AND NOT b = " + k + ") THEN\n");
+      code.append("  a := a + 1\n");
+      code.append("ELSE\n");
+      code.append("  b := b - c\n");
+      code.append("ENDIF\n");
+      code.append("FOR i := 0 TO 8 DO\n");
+      code.append("  v[i] := v[i] + c * i\n");
+      code.append("ENDFOR\n");
+      code.append("WHILE a < b DO\n");
+      code.append("  a := a + 2\n");
+      code.append("ENDWHILE\n");
+      code.append("PRINT(a, b, v[" + (k % 64) + "])\n");
+    }
+    code.append("ENDPROG\n");
+    return code.toString();
+  }
+}
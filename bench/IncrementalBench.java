@@ -0,0 +1,184 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+
+import java.util.Random;
+
+/** Latency of an edit with the IncrementalParser against the parse of the whole
+* program, on generated programs of doubling sizes. The edits are made in turn at
+* random places: a number replaced by another one, a statement inserted at the
+* start of a line, and the same statement removed. Each edit is timed, then the
+* tree is compared to the one of the Parser on the whole new text.
+* First, invalid edits (a fixed program, then text inserted at random places) must
+* throw the same error as the Parser on the whole new text.
+* Usage: java IncrementalBench [-from n] [-to n] [-edits n] [-seed n]
+*/
+
+public class IncrementalBench {
+  private static final String STATEMENT = "v0 := 1\n";
+  //A syntax error before a lexical error: the Parser finds the syntax error first.
+  private static final String ERROR_PROGRAM = "BEGINPROG Test\nVARIABLES a\na := (1\nbX := 2\nENDPROG\n";
+  //Text inserted by the invalid edits.
+  private static final String[] INVALID = {"(", "bX", ":=", "ENDIF\n", "IF (a < 1) THEN\n", "#", "1 +"};
+
+  public static void main(String[] args) throws IOException {
+    int from = 1000;
+    int to = 64000;
+    int edits = 60;
+    long seed = 1;
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("-from")) {
+        from = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-to")) {
+        to = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-edits")) {
+        edits = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-seed")) {
+        seed = Long.parseLong(args[++i]);
+      } else {
+        System.err.println("Usage: java IncrementalBench [-from n] [-to n] [-edits n] [-seed n]");
+        System.exit(1);
+      }
+    }
+    int[] errors = checkErrors(generate(seed, 200), edits, new Random(seed));
+    System.out.println("errors: " + errors[0] + " invalid edits, " + errors[1] + " with another error than the Parser");
+    //Warm up both parsers.
+    String warm = generate(seed, from);
+    for (int i = 0; i < 20; i++) {
+      parse(warm);
+    }
+    measure(warm, 10 * edits, new Random(seed), false);
+
+    System.out.println(String.format("%10s %8s %8s %10s %10s %10s %10s %10s %8s %5s", "statements", "KB",
+    "tokens", "parse ms", "edit ms", "max ms", "relexed", "reparsed", "speedup", "same"));
+    for (int size = from; size <= to; size *= 2) {
+      String text = generate(seed, size);
+      double parse = Double.MAX_VALUE;
+      for (int run = 0; run < 5; run++) {
+        long start = System.nanoTime();
+        parse(text);
+        parse = Math.min(parse, (System.nanoTime() - start) / 1e6);
+      }
+      IncrementalParser parser = new IncrementalParser(text);
+      int tokens = parser.getTokens().size();
+      double[] result = measure(text, edits, new Random(seed + size), true);
+      System.out.println(String.format("%10d %8d %8d %10.2f %10.3f %10.3f %10.1f %10.1f %7.0fx %5s", size,
+      text.length() / 1024, tokens, parse, result[0], result[1], result[2], result[3], parse / result[0],
+      result[4] == 0 ? "yes" : "NO"));
+    }
+  }
+
+  /** Make the edits on a program.
+  * @return the mean and max time of an edit in ms, the mean number of tokens lexed
+  * and parsed by an edit, and the number of edits whose tree differs
+  */
+  private static double[] measure(String text, int edits, Random random, boolean check) throws IOException {
+    IncrementalParser parser = new IncrementalParser(text);
+    double total = 0;
+    double max = 0;
+    long relexed = 0;
+    long reparsed = 0;
+    int wrong = 0;
+    int inserted = -1;
+    for (int i = 0; i < edits; i++) {
+      String current = parser.getText();
+      int start;
+      int end;
+      String replacement;
+      if (inserted >= 0) {
+        start = inserted;
+        end = inserted + STATEMENT.length();
+        replacement = "";
+        inserted = -1;
+      } else if (i % 2 == 0) {
+        //A number of the statements, not a digit of a name.
+        start = current.indexOf('\n', current.indexOf("VARIABLES")) + random.nextInt(current.length() / 2);
+        while (!Character.isDigit(current.charAt(start)) || Character.isLetterOrDigit(current.charAt(start - 1))) {
+          start++;
+        }
+        end = start;
+        while (Character.isDigit(current.charAt(end))) {
+          end++;
+        }
+        replacement = Integer.toString(1 + random.nextInt(99));
+      } else {
+        //The start of a line after the variables, ENDPROG included.
+        start = current.indexOf('\n', current.indexOf("VARIABLES") + random.nextInt(current.length() / 2)) + 1;
+        end = start;
+        replacement = STATEMENT;
+        inserted = start;
+      }
+      long begin = System.nanoTime();
+      parser.edit(start, end, replacement);
+      double time = (System.nanoTime() - begin) / 1e6;
+      total += time;
+      max = Math.max(max, time);
+      relexed += parser.getRelexedTokens();
+      reparsed += parser.getReparsedTokens();
+      if (check && !parser.getTree().printTree().equals(parse(parser.getText()).printTree())) {
+        wrong++;
+      }
+    }
+    return new double[] {total / edits, max, (double) relexed / edits, (double) reparsed / edits, wrong};
+  }
+
+  /** Check that invalid texts throw the error of the Parser, from the constructor
+  * and from an edit of a valid program.
+  * @return the number of invalid texts and of texts with another error
+  */
+  private static int[] checkErrors(String text, int edits, Random random) throws IOException {
+    int invalid = 0;
+    int wrong = 0;
+    String expected = error(ERROR_PROGRAM);
+    String found;
+    try {
+      new IncrementalParser(ERROR_PROGRAM);
+      found = null;
+    } catch (Error e) {
+      found = e.getMessage();
+    }
+    invalid++;
+    wrong += expected != null && expected.equals(found) ? 0 : 1;
+    for (int i = 0; i < edits; i++) {
+      IncrementalParser parser = new IncrementalParser(text);
+      int start = text.indexOf("VARIABLES") + random.nextInt(text.length() - text.indexOf("VARIABLES"));
+      String replacement = INVALID[random.nextInt(INVALID.length)];
+      String edited = text.substring(0, start) + replacement + text.substring(start);
+      expected = error(edited);
+      if (expected == null) {
+        continue;
+      }
+      try {
+        parser.edit(start, start, replacement);
+        found = null;
+      } catch (Error e) {
+        found = e.getMessage();
+      }
+      invalid++;
+      wrong += expected.equals(found) ? 0 : 1;
+    }
+    return new int[] {invalid, wrong};
+  }
+
+  //The message of the error of the Parser on a text, null when it has none.
+  private static String error(String text) throws IOException {
+    try {
+      parse(text);
+      return null;
+    } catch (Error e) {
+      return e.getMessage();
+    }
+  }
+
+  private static AbstractSyntaxTree parse(String text) throws IOException {
+    return new Parser(new BufferedReader(new StringReader(text))).startParse();
+  }
+
+  //A generated program that reads nothing.
+  private static String generate(long seed, int statements) {
+    ProgramGenerator generator = new ProgramGenerator(seed);
+    generator.statements = statements;
+    generator.ioDensity = 0;
+    return generator.generate();
+  }
+}
@@ -0,0 +1,119 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import jdk.jfr.Recording;
+
+/** Overhead of the monitoring of the compiler (Flight Recorder events and JMX
+* statistics). The same generated program is compiled:
+*   baseline: by the parser and the code generator alone,
+*   monitored: like Main does, through a PhaseTimer, while nothing records,
+*   recording: the same while a Flight Recorder recording takes the events.
+* The baseline and monitored runs alternate so drifts affect both alike. Once a
+* recording has started Flight Recorder stays initialized, so it runs last. The
+* statistics are then read back from the MBean server.
+* Usage: java MonitoringBench [-statements n] [-rounds n] [-ops n]
+*/
+
+public class MonitoringBench {
+  private static long sink;
+
+  public static void main(String[] args) throws Exception {
+    int statements = 1000;
+    int rounds = 10;
+    int ops = 20;
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("-statements")) {
+        statements = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-rounds")) {
+        rounds = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-ops")) {
+        ops = Integer.parseInt(args[++i]);
+      } else {
+        System.err.println("Usage: java MonitoringBench [-statements n] [-rounds n] [-ops n]");
+        System.exit(1);
+      }
+    }
+    ProgramGenerator generator = new ProgramGenerator(1);
+    generator.statements = statements;
+    File file = File.createTempFile("monitoring", ".sf");
+    file.deleteOnExit();
+    FileWriter writer = new FileWriter(file);
+    writer.write(generator.generate());
+    writer.close();
+    String path = file.getPath();
+    CompilerStats.register();
+
+    //Warm the JIT up on both paths.
+    for (int i = 0; i < rounds; i++) {
+      time(path, ops, false);
+      time(path, ops, true);
+    }
+    double baseline = 0;
+    double monitored = 0;
+    for (int i = 0; i < rounds; i++) {
+      baseline += time(path, ops, false) / rounds;
+      monitored += time(path, ops, true) / rounds;
+    }
+    Recording recording = new Recording();
+    recording.enable("superfortran.Compilation");
+    recording.enable("superfortran.Phase");
+    recording.start();
+    for (int i = 0; i < rounds; i++) {
+      time(path, ops, true);
+    }
+    double recorded = 0;
+    for (int i = 0; i < rounds; i++) {
+      recorded += time(path, ops, true) / rounds;
+    }
+    recording.stop();
+    recording.close();
+
+    System.out.println(String.format("%-10s %10s %9s", "mode", "ms/compile", "overhead"));
+    System.out.println(String.format("%-10s %10.3f %9s", "baseline", baseline, "-"));
+    System.out.println(String.format("%-10s %10.3f %8.2f%%", "monitored", monitored,
+    100 * (monitored - baseline) / baseline));
+    System.out.println(String.format("%-10s %10.3f %8.2f%%", "recording", recorded,
+    100 * (recorded - baseline) / baseline));
+
+    MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+    ObjectName name = new ObjectName(CompilerStats.NAME);
+    System.out.println("\n" + CompilerStats.NAME);
+    for (String attribute: new String[] {"Compilations", "Failures", "Tokens", "MeanCompileMillis",
+    "TokensPerSecond", "IrBytesPerSecond"}) {
+      System.out.println(String.format("  %-18s %s", attribute, server.getAttribute(name, attribute)));
+    }
+    long[] buckets = (long[]) server.getAttribute(name, "LatencyBucketsMillis");
+    long[] histogram = (long[]) server.getAttribute(name, "LatencyHistogram");
+    for (int i = 0; i < histogram.length; i++) {
+      if (histogram[i] > 0) {
+        System.out.println(String.format("  %-18s %d", i < buckets.length ? "< " + buckets[i] + " ms"
+        : ">= " + buckets[buckets.length - 1] + " ms", histogram[i]));
+      }
+    }
+  }
+
+  //Mean time in ms of a compilation, over ops compilations.
+  private static double time(String path, int ops, boolean monitored) throws IOException {
+    long start = System.nanoTime();
+    for (int i = 0; i < ops; i++) {
+      if (monitored) {
+        PhaseTimer timer = new PhaseTimer(false, path);
+        AbstractSyntaxTree ast = Main.parse(path, timer);
+        sink += Main.generate(new CodeGenerator(ast), timer).length();
+        timer.finish(true);
+      } else {
+        AbstractSyntaxTree ast = new Parser(new BufferedReader(new FileReader(path))).startParse();
+        sink += new CodeGenerator(ast).generateLLVM().length();
+      }
+    }
+    return (System.nanoTime() - start) / 1e6 / ops;
+  }
+}
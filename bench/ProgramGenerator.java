@@ -0,0 +1,185 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/** Generator of random but valid Super-Fortran programs, following the grammar of
+* doc/super_fortran_grammar.txt. The same seed and settings always give the same
+* program. The generated programs also run: divisions are by non zero constants,
+* FOR and WHILE loops have a few iterations on counters that nothing else writes,
+* and every IF has an ELSE.
+* Usage: java ProgramGenerator [-statements n] [-depth n] [-nesting n] [-vars n]
+*   [-io density] [-seed n]
+*/
+
+public class ProgramGenerator {
+  /** Number of statements, compound ones and their content included. */
+  public int statements = 1000;
+  /** Maximum depth of the arithmetic expressions. */
+  public int depth = 3;
+  /** Maximum nesting of IF, WHILE and FOR. */
+  public int nesting = 3;
+  /** Number of scalar variables, an array of 16 elements is also declared. */
+  public int vars = 8;
+  /** Fraction of the statements that are a PRINT or a READ. */
+  public double ioDensity = 0.1;
+
+  private Random random;
+  private StringBuilder code;
+  private int left;
+
+  public ProgramGenerator(long seed) {
+    this.random = new Random(seed);
+  }
+
+  public static void main(String[] args) {
+    long seed = 1;
+    ProgramGenerator generator = new ProgramGenerator(seed);
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("-statements")) {
+        generator.statements = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-depth")) {
+        generator.depth = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-nesting")) {
+        generator.nesting = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-vars")) {
+        generator.vars = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-io")) {
+        generator.ioDensity = Double.parseDouble(args[++i]);
+      } else if (args[i].equals("-seed")) {
+        generator.random = new Random(Long.parseLong(args[++i]));
+      } else {
+        System.err.println("Usage: java ProgramGenerator [-statements n] [-depth n] [-nesting n] [-vars n]"
+        + " [-io density] [-seed n]");
+        System.exit(1);
+      }
+    }
+    System.out.print(generator.generate());
+  }
+
+  /** Generate a whole program.
+  */
+  public String generate() {
+    if (vars < 1) {
+      throw new Error("A program needs at least one variable");
+    }
+    code = new StringBuilder();
+    left = statements;
+    List<String> declared = new ArrayList<String>();
+    for (int i = 0; i < vars; i++) {
+      declared.add("v" + i);
+    }
+    //One WHILE counter and one FOR variable per nesting level.
+    for (int i = 0; i < nesting; i++) {
+      declared.add("w" + i);
+      declared.add("f" + i);
+    }
+    declared.add("arr[16]");
+    code.append("BEGINPROG Generated\n");
+    code.append("VARIABLES " + String.join(", ", declared) + "\n");
+    for (int i = 0; i < vars; i++) {
+      code.append("v" + i + " := " + random.nextInt(100) + "\n");
+    }
+    while (left > 0) {
+      statement(0);
+    }
+    code.append("ENDPROG\n");
+    return code.toString();
+  }
+
+  //Append one statement, compound statements contain at least one statement.
+  private void statement(int level) {
+    left--;
+    String indent = indent(level);
+    double choice = random.nextDouble();
+    if (choice < ioDensity) {
+      if (random.nextBoolean()) {
+        code.append(indent + "PRINT(" + expr(depth) + ", " + expr(depth) + ")\n");
+      } else {
+        code.append(indent + "READ(" + variable() + ")\n");
+      }
+    } else if (level < nesting && left > 0 && choice < ioDensity + 0.25) {
+      int kind = random.nextInt(3);
+      if (kind == 0) {
+        code.append(indent + "IF (" + cond() + ") THEN\n");
+        block(level + 1);
+        code.append(indent + "ELSE\n");
+        block(level + 1);
+        code.append(indent + "ENDIF\n");
+      } else if (kind == 1) {
+        code.append(indent + "w" + level + " := 0\n");
+        code.append(indent + "WHILE w" + level + " < " + (1 + random.nextInt(3)) + " DO\n");
+        block(level + 1);
+        code.append(indent + "  w" + level + " := w" + level + " + 1\n");
+        code.append(indent + "ENDWHILE\n");
+      } else {
+        code.append(indent + "FOR f" + level + " := 0 TO " + (1 + random.nextInt(3)) + " DO\n");
+        block(level + 1);
+        code.append(indent + "ENDFOR\n");
+      }
+    } else if (random.nextInt(4) == 0) {
+      code.append(indent + "arr[" + random.nextInt(16) + "] := " + expr(depth) + "\n");
+    } else {
+      code.append(indent + variable() + " := " + expr(depth) + "\n");
+    }
+  }
+
+  //Append the content of a compound statement, one to a few statements.
+  private void block(int level) {
+    int count = 1 + random.nextInt(4);
+    for (int i = 0; i < count && (i == 0 || left > 0); i++) {
+      statement(level);
+    }
+  }
+
+  private String cond() {
+    String[] comps = {"=", ">=", ">", "<=", "<", "<>"};
+    String cond = expr(depth) + " " + comps[random.nextInt(comps.length)] + " " + expr(depth);
+    int kind = random.nextInt(6);
+    if (kind == 0) {
+      return "NOT " + cond;
+    } else if (kind == 1) {
+      return cond + " AND " + expr(depth) + " < " + expr(depth);
+    } else if (kind == 2) {
+      return cond + " OR " + expr(depth) + " > " + expr(depth);
+    }
+    return cond;
+  }
+
+  //An expression with at most the given depth of operators.
+  private String expr(int depth) {
+    if (depth == 0 || random.nextInt(3) == 0) {
+      int kind = random.nextInt(3);
+      if (kind == 0) {
+        return Integer.toString(random.nextInt(50));
+      } else if (kind == 1) {
+        return "arr[" + random.nextInt(16) + "]";
+      }
+      return variable();
+    }
+    int kind = random.nextInt(5);
+    if (kind == 0) {
+      return expr(depth - 1) + " + " + expr(depth - 1);
+    } else if (kind == 1) {
+      return expr(depth - 1) + " - " + expr(depth - 1);
+    } else if (kind == 2) {
+      return expr(depth - 1) + " * " + expr(depth - 1);
+    } else if (kind == 3) {
+      //A third operand whose root is a division makes the code generator divide
+      //by the whole operand, so the division is wrapped in an addition.
+      return "((" + expr(depth - 1) + ") / " + (1 + random.nextInt(9)) + " + 0)";
+    }
+    return "-(" + expr(depth - 1) + ")";
+  }
+
+  private String variable() {
+    return "v" + random.nextInt(vars);
+  }
+
+  private static String indent(int level) {
+    StringBuilder indent = new StringBuilder();
+    for (int i = 0; i < level; i++) {
+      indent.append("  ");
+    }
+    return indent.toString();
+  }
+}
@@ -0,0 +1,246 @@
+import java.io.BufferedReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringReader;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/** Measure how the compile time of each phase and the peak heap grow with the
+* size of the program. Programs of doubling sizes are made by ProgramGenerator,
+* each phase is timed (best of several runs) and the peak heap of a whole compile
+* is read from the heap memory pools. The growth of each phase is the slope of
+* log(time) against log(size) over the largest sizes: about 1 is linear, a phase
+* with a slope over 1.25 is reported as super-linear.
+* Usage: java ScalingBench [-from n] [-to n] [-runs n] [-seed n] [-csv scaling.csv]
+*/
+
+public class ScalingBench {
+  private static final String[] PHASES = {"lex", "parse", "passes", "codegen"};
+  private static final double SUPER_LINEAR = 1.25;
+
+  private int from = 1000;
+  private int to = 32000;
+  private int runs = 3;
+  private long seed = 1;
+  private List<Integer> sizes = new ArrayList<Integer>();
+  //Best time in ms of each phase, per size.
+  private List<double[]> times = new ArrayList<double[]>();
+  private List<Double> heaps = new ArrayList<Double>();
+
+  public static void main(String[] args) throws Exception {
+    final ScalingBench bench = new ScalingBench();
+    String csv = null;
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("-from")) {
+        bench.from = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-to")) {
+        bench.to = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-runs")) {
+        bench.runs = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-seed")) {
+        bench.seed = Long.parseLong(args[++i]);
+      } else if (args[i].equals("-csv")) {
+        csv = args[++i];
+      } else {
+        System.err.println("Usage: java ScalingBench [-from n] [-to n] [-runs n] [-seed n] [-csv scaling.csv]");
+        System.exit(1);
+      }
+    }
+    //The recursive parser and code generator need a deep stack on large inputs.
+    Thread thread = new Thread(null, new Runnable() {
+      public void run() {
+        bench.measure();
+      }
+    }, "scaling", 1L << 30);
+    thread.start();
+    thread.join();
+    bench.report();
+    if (csv != null) {
+      bench.writeCsv(csv);
+    }
+  }
+
+  /** Warm the JIT up on a small program, then measure each size.
+  */
+  private void measure() {
+    String warm = generate(Math.max(1, from / 2));
+    for (int i = 0; i < 5; i++) {
+      phases(warm);
+    }
+    for (int size = from; size <= to; size *= 2) {
+      String source = generate(size);
+      double[] best = null;
+      for (int run = 0; run < runs; run++) {
+        double[] time = phases(source);
+        if (best == null) {
+          best = time;
+        }
+        for (int phase = 0; phase < PHASES.length; phase++) {
+          best[phase] = Math.min(best[phase], time[phase]);
+        }
+      }
+      sizes.add(size);
+      times.add(best);
+      heaps.add(peakHeap(source));
+      System.err.println("measured " + size + " statements");
+    }
+  }
+
+  private String generate(int statements) {
+    ProgramGenerator generator = new ProgramGenerator(seed);
+    generator.statements = statements;
+    return generator.generate();
+  }
+
+  //Time in ms of each phase of one compile.
+  private static double[] phases(String source) {
+    double[] time = new double[PHASES.length];
+    try {
+      long start = System.nanoTime();
+      Lexer lexer = new Lexer(new StringReader(source));
+      while (lexer.yylex().getType() != LexicalUnit.EOS) {
+      }
+      time[0] = (System.nanoTime() - start) / 1e6;
+
+      start = System.nanoTime();
+      AbstractSyntaxTree ast = new Parser(new BufferedReader(new StringReader(source))).startParse();
+      time[1] = (System.nanoTime() - start) / 1e6;
+
+      start = System.nanoTime();
+      ast.removeEpsilons();
+      ast.removeBadMinus();
+      time[2] = (System.nanoTime() - start) / 1e6;
+
+      start = System.nanoTime();
+      new CodeGenerator(ast).generateLLVM();
+      time[3] = (System.nanoTime() - start) / 1e6;
+    } catch (IOException e) {
+      throw new Error(e);
+    }
+    return time;
+  }
+
+  //Peak heap in MB during a whole compile, from a collected heap.
+  private static double peakHeap(String source) {
+    System.gc();
+    List<MemoryPoolMXBean> pools = new ArrayList<MemoryPoolMXBean>();
+    for (MemoryPoolMXBean pool: ManagementFactory.getMemoryPoolMXBeans()) {
+      if (pool.getType() == MemoryType.HEAP) {
+        pool.resetPeakUsage();
+        pools.add(pool);
+      }
+    }
+    phases(source);
+    long peak = 0;
+    for (MemoryPoolMXBean pool: pools) {
+      peak += pool.getPeakUsage().getUsed();
+    }
+    return peak / (1024.0 * 1024.0);
+  }
+
+  /** Print the measures, a plot of the time per statement and the growth
+  * of each phase.
+  */
+  private void report() {
+    System.out.print(String.format("%10s", "statements"));
+    for (String phase: PHASES) {
+      System.out.print(String.format(" %12s", phase + " ms"));
+    }
+    System.out.println(String.format(" %12s", "heap MB"));
+    for (int i = 0; i < sizes.size(); i++) {
+      System.out.print(String.format("%10d", sizes.get(i)));
+      for (double time: times.get(i)) {
+        System.out.print(String.format(" %12.2f", time));
+      }
+      System.out.println(String.format(" %12.1f", heaps.get(i)));
+    }
+
+    //Time per statement: flat bars for a linear compiler, growing bars otherwise.
+    System.out.println("\ntotal time per statement (us)");
+    double[] perStatement = new double[sizes.size()];
+    double max = 0;
+    for (int i = 0; i < sizes.size(); i++) {
+      for (double time: times.get(i)) {
+        perStatement[i] += time * 1000 / sizes.get(i);
+      }
+      max = Math.max(max, perStatement[i]);
+    }
+    for (int i = 0; i < sizes.size(); i++) {
+      int bar = (int) Math.max(1, Math.round(50 * perStatement[i] / max));
+      System.out.println(String.format("%10d |%s %.2f", sizes.get(i), repeat('#', bar), perStatement[i]));
+    }
+
+    System.out.println("\ngrowth (slope of log time against log size)");
+    for (int phase = 0; phase < PHASES.length; phase++) {
+      double slope = slope(phase);
+      String verdict = Double.isNaN(slope) ? "too fast or too few sizes"
+      : slope > SUPER_LINEAR ? "SUPER-LINEAR" : "linear";
+      System.out.println(String.format("%10s %6.2f  %s", PHASES[phase], slope, verdict));
+    }
+    double heapSlope = fit(heaps, 0);
+    System.out.println(String.format("%10s %6.2f  %s", "heap", heapSlope, Double.isNaN(heapSlope)
+    ? "too few sizes" : heapSlope > SUPER_LINEAR ? "SUPER-LINEAR" : "linear"));
+  }
+
+  //Slope over the larger half of the sizes, ignoring times under a millisecond.
+  private double slope(int phase) {
+    List<Double> values = new ArrayList<Double>();
+    for (double[] time: times) {
+      values.add(time[phase]);
+    }
+    return fit(values, 1.0);
+  }
+
+  //Least squares slope of log(value) against log(size), on the larger half of the sizes.
+  private double fit(List<Double> values, double minimum) {
+    double sx = 0, sy = 0, sxx = 0, sxy = 0;
+    int n = 0;
+    for (int i = sizes.size() / 2; i < sizes.size(); i++) {
+      if (values.get(i) < minimum || values.get(i) <= 0) {
+        continue;
+      }
+      double x = Math.log(sizes.get(i));
+      double y = Math.log(values.get(i));
+      sx += x;
+      sy += y;
+      sxx += x * x;
+      sxy += x * y;
+      n++;
+    }
+    if (n < 2) {
+      return Double.NaN;
+    }
+    return (n * sxy - sx * sy) / (n * sxx - sx * sx);
+  }
+
+  /** Write one line per size: statements, the time of each phase and the peak heap,
+  * e.g. for gnuplot.
+  */
+  private void writeCsv(String path) throws IOException {
+    PrintWriter out = new PrintWriter(new FileWriter(path));
+    out.println("statements," + String.join(",", PHASES) + ",heapMB");
+    for (int i = 0; i < sizes.size(); i++) {
+      StringBuilder line = new StringBuilder(Integer.toString(sizes.get(i)));
+      for (double time: times.get(i)) {
+        line.append(String.format(",%.3f", time));
+      }
+      line.append(String.format(",%.1f", heaps.get(i)));
+      out.println(line);
+    }
+    out.close();
+  }
+
+  private static String repeat(char c, int n) {
+    StringBuilder s = new StringBuilder();
+    for (int i = 0; i < n; i++) {
+      s.append(c);
+    }
+    return s.toString();
+  }
+}
@@ -0,0 +1,88 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+
+/** Compile many small generated programs to IR code, like a service compiling
+* snippets, in two ways:
+*   new: a new Lexer (with its buffer), Parser and CodeGenerator for each program,
+*   session: the same CompilerSession for all of them.
+* Each way compiles all the programs several times after a warm-up, the best round
+* gives the programs per second, and the bytes allocated by a compilation are read
+* from the ThreadMXBean. Both ways must give the same IR code.
+* Usage: java SessionBench [-programs n] [-statements n] [-rounds n] [-seed n]
+*/
+
+public class SessionBench {
+  public static void main(String[] args) throws IOException {
+    int programs = 2000;
+    int statements = 20;
+    int rounds = 5;
+    long seed = 1;
+    for (int i = 0; i < args.length; i++) {
+      if (args[i].equals("-programs")) {
+        programs = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-statements")) {
+        statements = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-rounds")) {
+        rounds = Integer.parseInt(args[++i]);
+      } else if (args[i].equals("-seed")) {
+        seed = Long.parseLong(args[++i]);
+      } else {
+        System.err.println("Usage: java SessionBench [-programs n] [-statements n] [-rounds n] [-seed n]");
+        System.exit(1);
+      }
+    }
+    String[] sources = new String[programs];
+    long bytes = 0;
+    for (int i = 0; i < programs; i++) {
+      ProgramGenerator generator = new ProgramGenerator(seed + i);
+      generator.statements = statements;
+      generator.ioDensity = 0;
+      sources[i] = generator.generate();
+      bytes += sources[i].length();
+    }
+    CompilerSession session = new CompilerSession();
+    boolean same = true;
+    for (String source: sources) {
+      same &= compile(source).equals(session.compile(source).getLlvmCode());
+    }
+    System.out.println(programs + " programs of " + statements + " statements, " + bytes / programs
+    + " bytes each, same IR code: " + (same ? "yes" : "NO"));
+    System.out.println(String.format("%10s %14s %14s %14s", "way", "programs/s", "us/program", "bytes/program"));
+    for (int way = 0; way < 2; way++) {
+      double best = Double.MAX_VALUE;
+      long allocated = 0;
+      for (int round = 0; round < rounds + 2; round++) {
+        long startAllocated = allocatedBytes();
+        long start = System.nanoTime();
+        for (String source: sources) {
+          if (way == 0) {
+            compile(source);
+          } else {
+            session.compile(source);
+          }
+        }
+        double time = (System.nanoTime() - start) / 1e9;
+        //The first two rounds warm up.
+        if (round >= 2 && time < best) {
+          best = time;
+          allocated = allocatedBytes() - startAllocated;
+        }
+      }
+      System.out.println(String.format("%10s %14.0f %14.1f %14d", way == 0 ? "new" : "session", programs / best,
+      best * 1e6 / programs, allocated / programs));
+    }
+  }
+
+  //The way of Main: a new lexer, parser and code generator.
+  private static String compile(String source) throws IOException {
+    AbstractSyntaxTree ast = new Parser(new BufferedReader(new StringReader(source))).startParse();
+    return new CodeGenerator(ast).generateLLVM();
+  }
+
+  private static long allocatedBytes() {
+    return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean())
+    .getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+}
@@ -0,0 +1,12 @@
+#!/bin/sh
+# Compare parsing generated programs with loading their AST files.
+# Usage: bench/ast_bench.sh [AstBench options]
+#   e.g. bench/ast_bench.sh -from 1000 -to 64000 -runs 5
+# Requires javac and java on the PATH.
+
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+javac -d "$WORK" "$ROOT"/src/*.java "$ROOT/bench/ProgramGenerator.java" "$ROOT/bench/AstBench.java" || exit 1
+java -cp "$WORK" AstBench "$@"
@@ -0,0 +1,13 @@
+#!/bin/sh
+# Compare llvm-as with the BitcodeWriter on generated programs of doubling sizes,
+# and check that both bitcode files hold the same module.
+# Usage: bench/bitcode_bench.sh [BitcodeBench options]
+#   e.g. bench/bitcode_bench.sh -from 5000 -to 40000
+# Requires javac, java, llvm-as, llvm-dis and lli on the PATH.
+
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+javac -d "$WORK" "$ROOT"/src/*.java "$ROOT/bench/ProgramGenerator.java" "$ROOT/bench/BitcodeBench.java" || exit 1
+java -cp "$WORK" BitcodeBench "$@"
@@ -0,0 +1,12 @@
+#!/bin/sh
+# Measure the throughput of the compiler phases (lexer, parser, AST passes, codegen).
+# Usage: bench/compiler_bench.sh [CompilerBench options]
+#   e.g. bench/compiler_bench.sh -csv new.csv -compare old.csv
+# Requires javac and java on the PATH.
+
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+javac -d "$WORK" "$ROOT"/src/*.java "$ROOT/bench/CompilerBench.java" || exit 1
+java -cp "$WORK" CompilerBench "$@"
@@ -0,0 +1,88 @@
+#!/bin/sh
+# Check -eval against the normal code generation: compile each program of test, bench
+# and bench/suite, and programs of ProgramGenerator without input (-io 0) and with some
+# READ (-io 0.1), with and without -eval, with and without -bounds-check, run both
+# under lli and compare their output, their errors and, after an error, their exit
+# status. The programs of bench/suite read their .in file, the others "5 3 7" or lines
+# of numbers. Prints the programs that differ, then the number of programs evaluated
+# entirely (only their output left), partly folded and unchanged, with the lines of IR
+# code of each kind, and exits with status 1 when one differs.
+#   -programs n : number of generated programs of each kind (default 50)
+#   -budget n : steps of -eval (default 1000000)
+# Usage: bench/eval_check.sh [-programs n] [-budget n]
+# Requires javac, java and lli on the PATH.
+
+PROGRAMS=50
+BUDGET=1000000
+while [ $# -gt 0 ]; do
+  case "$1" in
+    -programs) PROGRAMS=$2; shift ;;
+    -budget) BUDGET=$2; shift ;;
+    *) echo "Usage: bench/eval_check.sh [-programs n] [-budget n]"; exit 1 ;;
+  esac
+  shift
+done
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+javac -d "$WORK" "$ROOT"/src/*.java "$ROOT"/bench/ProgramGenerator.java || exit 1
+echo "5 3 7" > "$WORK/default.in"
+seq -50 1000 | paste -d ' ' - - - - - > "$WORK/numbers.in"
+
+FAILED=0
+# Compare a program compiled with and without -eval, on an input file.
+check() {
+  program=$1
+  input=$2
+  for option in "" -bounds-check; do
+    if ! java -cp "$WORK" Main "$program" $option -o "$WORK/normal.ll" > /dev/null 2>&1; then
+      continue
+    fi
+    if ! java -cp "$WORK" Main "$program" $option -eval "$BUDGET" -o "$WORK/eval.ll" > /dev/null 2>&1; then
+      echo "DIFF $program $option: -eval failed to compile"
+      FAILED=$((FAILED + 1))
+      continue
+    fi
+    for code in normal eval; do
+      lli "$WORK/$code.ll" < "$input" > "$WORK/$code.out" 2> "$WORK/$code.err"
+      status=$?
+      if [ -s "$WORK/$code.err" ]; then
+        echo "status $status" >> "$WORK/$code.err"
+      fi
+    done
+    if ! cmp -s "$WORK/normal.out" "$WORK/eval.out" || ! cmp -s "$WORK/normal.err" "$WORK/eval.err"; then
+      echo "DIFF $program $option"
+      FAILED=$((FAILED + 1))
+    fi
+    if grep -q "^@.output" "$WORK/eval.ll"; then
+      kind=evaluated
+    elif cmp -s "$WORK/normal.ll" "$WORK/eval.ll"; then
+      kind=unchanged
+    else
+      kind=folded
+    fi
+    echo "$kind $(wc -l < "$WORK/normal.ll") $(wc -l < "$WORK/eval.ll")" >> "$WORK/kinds"
+  done
+}
+
+for program in "$ROOT"/test/*.sf "$ROOT"/bench/*.sf; do
+  check "$program" "$WORK/default.in"
+done
+for program in "$ROOT"/bench/suite/*.sf; do
+  check "$program" "${program%.sf}.in"
+done
+seed=1
+while [ $seed -le "$PROGRAMS" ]; do
+  for io in 0 0.1; do
+    java -cp "$WORK" ProgramGenerator -statements 80 -io $io -seed $seed > "$WORK/generated.sf"
+    check "$WORK/generated.sf" "$WORK/numbers.in"
+  done
+  seed=$((seed + 1))
+done
+
+printf "%-10s %8s %14s %14s\n" kind runs "lines normal" "lines -eval"
+awk '{ runs[$1]++; normal[$1] += $2; eval[$1] += $3 }
+END { for (kind in runs) printf "%-10s %8d %14d %14d\n", kind, runs[kind], normal[kind], eval[kind] }' "$WORK/kinds"
+echo "$FAILED runs differ"
+[ $FAILED -eq 0 ]
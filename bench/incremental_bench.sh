@@ -0,0 +1,12 @@
+#!/bin/sh
+# Measure the latency of an edit with the incremental parser against a full parse.
+# Usage: bench/incremental_bench.sh [IncrementalBench options]
+#   e.g. bench/incremental_bench.sh -from 1000 -to 64000 -edits 60
+# Requires javac and java on the PATH.
+
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+javac -d "$WORK" "$ROOT"/src/*.java "$ROOT/bench/ProgramGenerator.java" "$ROOT/bench/IncrementalBench.java" || exit 1
+java -cp "$WORK" IncrementalBench "$@"
@@ -0,0 +1,52 @@
+#!/bin/sh
+# Measure the IR code of the programs of test, bench and bench/suite with -ir-stats,
+# and compare the measures with bench/ir_stats.baseline: print the instructions of
+# each program against the baseline and the diff of the measures that changed, and
+# exit with status 1 when some changed. A change of the code generator that changes
+# the IR code updates the baseline with -update, so the review shows its effect.
+# The programs that do not compile (the tests of errors) are skipped.
+# Usage: bench/ir_stats.sh [-update]
+# Requires javac and java on the PATH.
+
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+BASELINE="$ROOT/bench/ir_stats.baseline"
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+javac -d "$WORK" "$ROOT"/src/*.java || exit 1
+cd "$ROOT" || exit 1
+for program in test/*.sf bench/*.sf bench/suite/*.sf; do
+  if java -cp "$WORK" Main "$program" -ir-stats "$WORK/program.stats" > /dev/null 2>&1; then
+    echo "file $program"
+    cat "$WORK/program.stats"
+  fi
+done > "$WORK/ir_stats"
+
+if [ "$1" = "-update" ]; then
+  cp "$WORK/ir_stats" "$BASELINE"
+  echo "Updated $BASELINE"
+  exit 0
+fi
+if [ ! -f "$BASELINE" ]; then
+  echo "No baseline, make it with bench/ir_stats.sh -update"
+  exit 1
+fi
+printf "%-28s %10s %10s %8s\n" file baseline now change
+awk '
+  $1 == "file" { file = $2 }
+  $1 == "instructions" { if (NR == FNR) { base[file] = $2 } else { now[file] = $2; order[++n] = file } }
+  END {
+    for (i = 1; i <= n; i++) {
+      file = order[i]
+      if (file in base) {
+        printf "%-28s %10d %10d %+7.1f%%\n", file, base[file], now[file], 100 * (now[file] - base[file]) / base[file]
+      } else {
+        printf "%-28s %10s %10d %8s\n", file, "-", now[file], "new"
+      }
+    }
+  }' "$BASELINE" "$WORK/ir_stats"
+if ! diff -u "$BASELINE" "$WORK/ir_stats" > "$WORK/diff"; then
+  echo
+  cat "$WORK/diff"
+  exit 1
+fi
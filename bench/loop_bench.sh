@@ -0,0 +1,46 @@
+#!/bin/bash
+# Size of the IR code of nested WHILE loops with a long condition, for 1 to max
+# levels, and the loops that clang -O2 unrolls or vectorizes in bench/ArrayKernel.sf.
+# Usage: bench/loop_bench.sh [max]
+# Requires javac, java, lli and clang on the PATH.
+
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+MAX=${1:-8}
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+javac -d "$WORK" "$ROOT"/src/*.java || exit 1
+
+# A program with $1 nested loops of 14 iterations each.
+nested() {
+  echo "BEGINPROG Nested"
+  printf "VARIABLES a, b, s"
+  for i in $(seq 1 $1); do printf ", v%d" $i; done
+  echo
+  echo "a := 3"
+  echo "b := 5"
+  echo "s := 0"
+  for i in $(seq 1 $1); do
+    echo "v$i := 0"
+    echo "WHILE v$i < a * b - a - 2 AND NOT v$i = b * b * b OR v$i < 0 - 10 DO"
+  done
+  echo "s := s + 1"
+  for i in $(seq $1 -1 1); do
+    echo "v$i := v$i + 1"
+    echo "ENDWHILE"
+  done
+  echo "PRINT(s)"
+  echo "ENDPROG"
+}
+
+printf "%8s %10s %10s\n" levels "IR bytes" "output"
+for levels in $(seq 1 $MAX); do
+  nested $levels > "$WORK/nested.sf"
+  java -cp "$WORK" Main "$WORK/nested.sf" -o "$WORK/nested.ll" > /dev/null || exit 1
+  printf "%8d %10d %10s\n" $levels $(wc -c < "$WORK/nested.ll") $(lli "$WORK/nested.ll")
+done
+
+java -cp "$WORK" Main "$ROOT/bench/ArrayKernel.sf" -o "$WORK/kernel.ll" > /dev/null || exit 1
+echo "clang -O2 on ArrayKernel.sf:"
+clang -O2 -c -o /dev/null -Rpass='loop-unroll|loop-vectorize' "$WORK/kernel.ll" 2>&1 \
+| grep remark | sed 's/.*remark: //' | sort | uniq -c
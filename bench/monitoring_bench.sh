@@ -0,0 +1,11 @@
+#!/bin/sh
+# Overhead of the Flight Recorder events and JMX statistics on compilations.
+# Usage: bench/monitoring_bench.sh [-statements n] [-rounds n] [-ops n]
+# Requires javac and java on the PATH.
+
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+javac -d "$WORK" "$ROOT"/src/*.java "$ROOT/bench/ProgramGenerator.java" "$ROOT/bench/MonitoringBench.java" || exit 1
+java -Xss512m -cp "$WORK" MonitoringBench "$@"
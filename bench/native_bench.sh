@@ -0,0 +1,42 @@
+#!/bin/sh
+# Measure the end-to-end latency of compiling and running each program of test and
+# bench with a fresh JVM, input "5 3 7": through LLVM (-o -exec, the BitcodeWriter
+# then lli) against the native backend (-native -exec). Prints the median of the runs
+# of each path in ms, and their totals.
+#   -runs n : runs of each program on each path (default 5)
+# Usage: bench/native_bench.sh [-runs n]
+# Requires javac, java and lli on the PATH, on x86-64 Linux.
+
+RUNS=5
+if [ "$1" = "-runs" ]; then
+  RUNS=$2
+fi
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+javac -d "$WORK" "$ROOT"/src/*.java || exit 1
+echo "5 3 7" > "$WORK/input"
+
+# Print the median time in ms of the runs of a command.
+median_ms() {
+  i=1
+  while [ $i -le "$RUNS" ]; do
+    start=$(date +%s%N)
+    "$@" < "$WORK/input" > /dev/null 2>&1
+    end=$(date +%s%N)
+    echo $(( (end - start) / 1000000 ))
+    i=$((i + 1))
+  done | sort -n | awk '{ time[NR] = $1 } END { print NR % 2 ? time[(NR + 1) / 2] : (time[NR / 2] + time[NR / 2 + 1]) / 2 }'
+}
+
+printf "%-28s %10s %10s\n" program "llvm ms" "native ms"
+for program in "$ROOT"/test/*.sf "$ROOT"/bench/*.sf; do
+  if ! java -cp "$WORK" Main "$program" -native "$WORK/program" > /dev/null 2>&1; then
+    continue
+  fi
+  llvm=$(median_ms java -cp "$WORK" Main "$program" -o "$WORK/program.ll" -exec)
+  native=$(median_ms java -cp "$WORK" Main "$program" -native "$WORK/program" -exec)
+  printf "%-28s %10d %10d\n" "${program#$ROOT/}" "$llvm" "$native"
+done | tee "$WORK/results"
+awk '{ llvm += $2; native += $3 } END { printf "%-28s %10d %10d\n", "total", llvm, native }' "$WORK/results"
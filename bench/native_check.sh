@@ -0,0 +1,84 @@
+#!/bin/sh
+# Check the executables of -native against the IR code: run each program of test,
+# bench and bench/suite, and the programs of ProgramGenerator, as a native executable
+# and under lli, with and without -bounds-check, and compare their output on stdout,
+# on stderr and their exit status (the IR code returns no status from main, so it is
+# only compared after an error, a native program otherwise exits with status 0). The
+# programs of bench/suite read their .in file,
+# the others "5 3 7" (the generated ones read lines of numbers with -io). Prints the
+# programs that differ and exits with status 1 when there is one. The programs that
+# do not compile must fail with -native too.
+#   -programs n : number of generated programs (default 100)
+# Usage: bench/native_check.sh [-programs n]
+# Requires javac, java and lli on the PATH, on x86-64 Linux.
+
+PROGRAMS=100
+while [ $# -gt 0 ]; do
+  case "$1" in
+    -programs) PROGRAMS=$2; shift ;;
+    *) echo "Usage: bench/native_check.sh [-programs n]"; exit 1 ;;
+  esac
+  shift
+done
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+javac -d "$WORK" "$ROOT"/src/*.java "$ROOT"/bench/ProgramGenerator.java || exit 1
+echo "5 3 7" > "$WORK/default.in"
+seq -50 1000 | paste -d ' ' - - - - - > "$WORK/numbers.in"
+
+CHECKED=0
+FAILED=0
+# Compare a program under lli and as a native executable, on an input file.
+check() {
+  program=$1
+  input=$2
+  for option in "" -bounds-check; do
+    if java -cp "$WORK" Main "$program" $option -o "$WORK/program.ll" > /dev/null 2>&1; then
+      lli "$WORK/program.ll" < "$input" > "$WORK/lli.out" 2> "$WORK/lli.err"
+      status=$?
+      if [ -s "$WORK/lli.err" ]; then
+        echo "status $status" >> "$WORK/lli.err"
+      fi
+      if ! java -cp "$WORK" Main "$program" $option -native "$WORK/program" > /dev/null 2>&1; then
+        echo "DIFF $program $option: -native failed to compile"
+        FAILED=$((FAILED + 1))
+        continue
+      fi
+      "$WORK/program" < "$input" > "$WORK/native.out" 2> "$WORK/native.err"
+      status=$?
+      if [ -s "$WORK/native.err" ] || [ $status -ne 0 ]; then
+        echo "status $status" >> "$WORK/native.err"
+      fi
+      if ! cmp -s "$WORK/lli.out" "$WORK/native.out" || ! cmp -s "$WORK/lli.err" "$WORK/native.err"; then
+        echo "DIFF $program $option"
+        diff "$WORK/lli.err" "$WORK/native.err" | head -n 4
+        FAILED=$((FAILED + 1))
+      fi
+    elif java -cp "$WORK" Main "$program" $option -native "$WORK/program" > /dev/null 2>&1 \
+    && [ -x "$WORK/program" ]; then
+      echo "DIFF $program $option: compiled with -native only"
+      FAILED=$((FAILED + 1))
+    fi
+    rm -f "$WORK/program"
+    CHECKED=$((CHECKED + 1))
+  done
+}
+
+for program in "$ROOT"/test/*.sf "$ROOT"/bench/*.sf; do
+  check "$program" "$WORK/default.in"
+done
+for program in "$ROOT"/bench/suite/*.sf; do
+  check "$program" "${program%.sf}.in"
+done
+seed=1
+while [ $seed -le "$PROGRAMS" ]; do
+  java -cp "$WORK" ProgramGenerator -statements 80 -io 0.1 -seed $seed > "$WORK/generated$seed.sf"
+  check "$WORK/generated$seed.sf" "$WORK/numbers.in"
+  rm -f "$WORK/generated$seed.sf"
+  seed=$((seed + 1))
+done
+
+echo "$CHECKED runs checked, $FAILED differ"
+[ $FAILED -eq 0 ]
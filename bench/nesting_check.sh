@@ -0,0 +1,90 @@
+#!/bin/sh
+# Check that deeply nested programs compile at the default stack size of the JVM:
+# generate a program of IF, each holding a FOR, a WHILE and the next IF, nested
+# -depth deep, and a program reading and writing array elements whose indexes are
+# elements nested -depth deep. Compile both with each option (-bounds-check, -unroll,
+# -outline, -eval, -ir-stats, -wt, -ast-out then the .ast file) and run them under
+# lli, then as native executables with and without -bounds-check, and compare their
+# output with the one expected. Prints the runs that fail and exits with status 1
+# when there is one.
+#   -depth n : nesting of the programs (default 5000)
+# Usage: bench/nesting_check.sh [-depth n]
+# Requires javac, java and lli on the PATH, and x86-64 Linux for -native.
+
+DEPTH=5000
+while [ $# -gt 0 ]; do
+  case "$1" in
+    -depth) DEPTH=$2; shift ;;
+    *) echo "Usage: bench/nesting_check.sh [-depth n]"; exit 1 ;;
+  esac
+  shift
+done
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+javac -d "$WORK" "$ROOT"/src/*.java || exit 1
+awk -v depth="$DEPTH" 'BEGIN {
+  print "BEGINPROG Nesting"
+  print "VARIABLES x"
+  print "x := 0"
+  for (i = 0; i < depth; i++) {
+    print "IF (x < " depth + 1 ") THEN"
+    print "x := x + 1"
+    print "FOR i := 0 TO 1 DO"
+    print "ENDFOR"
+    print "WHILE x < 0 DO"
+    print "ENDWHILE"
+  }
+  for (i = 0; i < depth; i++) {
+    print "ENDIF"
+  }
+  print "PRINT(x)"
+  print "ENDPROG"
+}' > "$WORK/nesting.sf"
+echo "$DEPTH" > "$WORK/nesting.expected"
+awk -v depth="$DEPTH" 'BEGIN {
+  for (i = 0; i < depth; i++) {
+    left = left "a["
+    right = right "]"
+  }
+  print "BEGINPROG Indexes"
+  print "VARIABLES y, a[2]"
+  print "a[1] := 1"
+  print "y := " left "1" right
+  print "a[" left "1" right "] := y + 1"
+  print "PRINT(y, a[1])"
+  print "ENDPROG"
+}' > "$WORK/indexes.sf"
+printf "1\n2\n" > "$WORK/indexes.expected"
+
+FAILED=0
+# Compare the output of a run with the one expected.
+compare() {
+  if ! cmp -s "$WORK/$1.expected" "$WORK/run.out"; then
+    echo "FAIL $1 $2"
+    FAILED=$((FAILED + 1))
+  fi
+}
+
+for program in nesting indexes; do
+  for option in "" -bounds-check "-unroll 0" "-outline 500" "-eval 1000000" "-ir-stats $WORK/program.stats" \
+  "-wt $WORK/program.dot" "-ast-out $WORK/program.ast"; do
+    rm -f "$WORK/program.ll" "$WORK/run.out"
+    java -cp "$WORK" Main "$WORK/$program.sf" $option -o "$WORK/program.ll" > /dev/null 2> "$WORK/run.err" \
+    && lli "$WORK/program.ll" > "$WORK/run.out"
+    compare $program "$option"
+  done
+  rm -f "$WORK/program.ll" "$WORK/run.out"
+  java -cp "$WORK" Main "$WORK/program.ast" -o "$WORK/program.ll" > /dev/null 2> "$WORK/run.err" \
+  && lli "$WORK/program.ll" > "$WORK/run.out"
+  compare $program "(.ast)"
+  for option in "" -bounds-check; do
+    rm -f "$WORK/program" "$WORK/run.out"
+    java -cp "$WORK" Main "$WORK/$program.sf" $option -native "$WORK/program" > /dev/null 2> "$WORK/run.err" \
+    && "$WORK/program" > "$WORK/run.out"
+    compare $program "-native $option"
+  done
+done
+echo "$FAILED runs failed"
+[ $FAILED -eq 0 ]
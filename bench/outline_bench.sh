@@ -0,0 +1,38 @@
+#!/bin/sh
+# Time the LLVM side (lli, and clang -O2 if found) on generated programs of
+# doubling sizes, with the whole program in @main and split with -outline.
+# Usage: bench/outline_bench.sh [from statements] [to statements] [outline size]
+# Requires javac, java and lli on the PATH.
+
+FROM=${1:-5000}
+TO=${2:-40000}
+OUTLINE=${3:-500}
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+javac -d "$WORK" "$ROOT"/src/*.java "$ROOT/bench/ProgramGenerator.java" || exit 1
+
+# Print the time in ms of a command.
+time_ms() {
+  start=$(date +%s%N)
+  "$@" > /dev/null 2>&1
+  end=$(date +%s%N)
+  echo $(( (end - start) / 1000000 ))
+}
+
+printf "%10s %8s %10s %12s\n" statements outline "lli ms" "clang-O2 ms"
+size=$FROM
+while [ $size -le "$TO" ]; do
+  java -cp "$WORK" ProgramGenerator -statements $size -io 0 > "$WORK/program.sf"
+  for outline in 0 "$OUTLINE"; do
+    java -cp "$WORK" Main "$WORK/program.sf" -outline $outline > "$WORK/program.ll" 2> /dev/null || exit 1
+    lli=$(time_ms lli "$WORK/program.ll")
+    clang=-
+    if command -v clang > /dev/null; then
+      clang=$(time_ms clang -O2 -c "$WORK/program.ll" -o "$WORK/program.o")
+    fi
+    printf "%10d %8s %10s %12s\n" $size $outline $lli $clang
+  done
+  size=$((size * 2))
+done
@@ -0,0 +1,36 @@
+#!/bin/sh
+# Time a PARFOR program with 1, 2, 4, ... threads, up to the number of cores.
+# Usage: bench/par_bench.sh [runs] [max threads]
+# Requires javac, llvm-as and lli on the PATH.
+
+RUNS=${1:-3}
+MAX=${2:-$(nproc)}
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+javac -d "$WORK" "$ROOT"/src/*.java || exit 1
+java -cp "$WORK" Main "$ROOT/bench/ParSum.sf" -o "$WORK/parsum.ll" > /dev/null || exit 1
+llvm-as "$WORK/parsum.ll" -o "$WORK/parsum.bc" || exit 1
+
+echo "total: $(SF_THREADS=1 lli "$WORK/parsum.bc")"
+threads=1
+while [ $threads -le "$MAX" ]; do
+  best=0
+  i=1
+  while [ $i -le "$RUNS" ]; do
+    start=$(date +%s%N)
+    SF_THREADS=$threads lli "$WORK/parsum.bc" > /dev/null
+    end=$(date +%s%N)
+    ms=$(( (end - start) / 1000000 ))
+    if [ $best -eq 0 ] || [ $ms -lt $best ]; then
+      best=$ms
+    fi
+    i=$((i + 1))
+  done
+  if [ $threads -eq 1 ]; then
+    serial=$best
+  fi
+  echo "$threads threads: $best ms (speedup x$(awk -v s="$serial" -v b="$best" 'BEGIN { printf "%.2f", s / (b > 0 ? b : 1) }'))"
+  threads=$((threads * 2))
+done
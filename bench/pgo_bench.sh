@@ -0,0 +1,49 @@
+#!/bin/sh
+# Time BranchKernel.sf built without and with a profile: the instrumented build
+# is trained on n/100 iterations, then both builds run n iterations, through lli
+# and as clang -O2 executables if clang is found. Best of several runs.
+# Usage: bench/pgo_bench.sh [runs] [n]
+# Requires javac, java and lli on the PATH.
+
+RUNS=${1:-3}
+N=${2:-100000000}
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+javac -d "$WORK" "$ROOT"/src/*.java || exit 1
+PROGRAM="$ROOT/bench/BranchKernel.sf"
+java -cp "$WORK" Main "$PROGRAM" -o "$WORK/plain.ll" > /dev/null || exit 1
+java -cp "$WORK" Main "$PROGRAM" -o "$WORK/train.ll" -profile-generate "$WORK/branch.prof" > /dev/null || exit 1
+echo $((N / 100)) | lli "$WORK/train.ll" > /dev/null
+java -cp "$WORK" Main "$PROGRAM" -o "$WORK/profiled.ll" -profile-use "$WORK/branch.prof" > /dev/null || exit 1
+
+# Print the best time in ms of a command reading n.
+best_ms() {
+  best=0
+  i=1
+  while [ $i -le "$RUNS" ]; do
+    start=$(date +%s%N)
+    echo "$N" | "$@" > "$WORK/output"
+    end=$(date +%s%N)
+    ms=$(( (end - start) / 1000000 ))
+    if [ $best -eq 0 ] || [ $ms -lt $best ]; then
+      best=$ms
+    fi
+    i=$((i + 1))
+  done
+  echo $best
+}
+
+printf "%10s %10s %12s\n" build "lli ms" "clang-O2 ms"
+for build in plain profiled; do
+  lli=$(best_ms lli "$WORK/$build.ll")
+  cp "$WORK/output" "$WORK/$build.out"
+  clang=-
+  if command -v clang > /dev/null; then
+    clang -O2 "$WORK/$build.ll" -o "$WORK/$build" 2> /dev/null || exit 1
+    clang=$(best_ms "$WORK/$build")
+  fi
+  printf "%10s %10s %12s\n" $build $lli $clang
+done
+cmp -s "$WORK/plain.out" "$WORK/profiled.out" || echo "The outputs differ"
@@ -0,0 +1,23 @@
+#!/bin/sh
+# Time a program that prints millions of integers through the PRINT runtime.
+# Usage: bench/print_bench.sh [runs]
+# Requires javac, llvm-as and lli on the PATH.
+
+RUNS=${1:-5}
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+javac -d "$WORK" "$ROOT"/src/*.java || exit 1
+java -cp "$WORK" Main "$ROOT/bench/PrintLoop.sf" -o "$WORK/printloop.ll" > /dev/null || exit 1
+llvm-as "$WORK/printloop.ll" -o "$WORK/printloop.bc" || exit 1
+
+echo "lines printed: $(lli "$WORK/printloop.bc" | wc -l)"
+i=1
+while [ $i -le "$RUNS" ]; do
+  start=$(date +%s%N)
+  lli "$WORK/printloop.bc" > /dev/null
+  end=$(date +%s%N)
+  echo "run $i: $(( (end - start) / 1000000 )) ms"
+  i=$((i + 1))
+done
@@ -0,0 +1,25 @@
+#!/bin/sh
+# Time a program that reads millions of integers through the READ runtime.
+# Usage: bench/read_bench.sh [runs] [n]   (reads 3*n integers, n defaults to 1000000)
+# Requires javac, llvm-as and lli on the PATH.
+
+RUNS=${1:-5}
+N=${2:-1000000}
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+javac -d "$WORK" "$ROOT"/src/*.java || exit 1
+java -cp "$WORK" Main "$ROOT/bench/ReadSum.sf" -o "$WORK/readsum.ll" > /dev/null || exit 1
+llvm-as "$WORK/readsum.ll" -o "$WORK/readsum.bc" || exit 1
+awk -v n="$N" 'BEGIN { print n; for (i = 0; i < n; i++) print i, -i * 3, i % 1000 }' > "$WORK/input.txt"
+
+echo "sum: $(lli "$WORK/readsum.bc" < "$WORK/input.txt")"
+i=1
+while [ $i -le "$RUNS" ]; do
+  start=$(date +%s%N)
+  lli "$WORK/readsum.bc" < "$WORK/input.txt" > /dev/null
+  end=$(date +%s%N)
+  echo "run $i: $(( (end - start) / 1000000 )) ms"
+  i=$((i + 1))
+done
@@ -0,0 +1,124 @@
+#!/bin/sh
+# Run the programs of bench/suite, each reading its .in file, under lli, as clang
+# executables at several optimization levels and as -native executables, and check their output against
+# their .expected file. For each program and engine, print the median time of the
+# runs and their spread (slowest minus fastest, in % of the median).
+#   -runs n : runs of each program on each engine (default 5)
+#   -engines "..." : among lli, interp (the LLVM interpreter, slow), O0, O1, O2, O3,
+#                    native (default "lli O0 O2")
+#   -rev commit : build the compiler of that commit, the programs are those of the tree
+#   -save file.tsv : write the results, to compare another commit against them later
+#   -compare file.tsv : print the change of each median against saved results, as
+#                       slower or faster when the ranges of the runs do not overlap
+# Usage: bench/runtime_bench.sh [-runs n] [-engines "..."] [-rev commit] [-save file.tsv]
+#        [-compare file.tsv]
+# Requires javac, java and lli on the PATH, clang for the O levels, git for -rev.
+
+RUNS=5
+ENGINES="lli O0 O2"
+REV=
+SAVE=
+COMPARE=
+while [ $# -gt 0 ]; do
+  case "$1" in
+    -runs) RUNS=$2; shift ;;
+    -engines) ENGINES=$2; shift ;;
+    -rev) REV=$2; shift ;;
+    -save) SAVE=$2; shift ;;
+    -compare) COMPARE=$2; shift ;;
+    *) echo "Usage: bench/runtime_bench.sh [-runs n] [-engines \"...\"] [-rev commit] [-save file.tsv] [-compare file.tsv]"
+       exit 1 ;;
+  esac
+  shift
+done
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+SUITE="$ROOT/bench/suite"
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+SOURCES="$ROOT/src"
+if [ -n "$REV" ]; then
+  mkdir "$WORK/rev"
+  git -C "$ROOT" archive "$REV" src | tar -x -C "$WORK/rev" || exit 1
+  SOURCES="$WORK/rev/src"
+else
+  REV=$(git -C "$ROOT" rev-parse --short HEAD 2> /dev/null || echo tree)
+  if ! git -C "$ROOT" diff --quiet HEAD -- src 2> /dev/null; then
+    REV="$REV+"
+  fi
+fi
+javac -d "$WORK" "$SOURCES"/*.java || exit 1
+
+# Print the times in ms of the runs of a command, one per line, and write its last
+# output in $WORK/output.
+times_ms() {
+  input=$1
+  shift
+  i=1
+  while [ $i -le "$RUNS" ]; do
+    start=$(date +%s%N)
+    "$@" < "$input" > "$WORK/output"
+    end=$(date +%s%N)
+    echo $(( (end - start) / 1000000 ))
+    i=$((i + 1))
+  done
+}
+
+RESULTS="$WORK/results.tsv"
+echo "# commit $REV, $RUNS runs" > "$RESULTS"
+printf "%-10s %7s %10s %8s %8s %8s  %s\n" program engine "median ms" "min ms" "max ms" spread output
+for source in "$SUITE"/*.sf; do
+  name=$(basename "$source" .sf)
+  java -cp "$WORK" Main "$source" -o "$WORK/$name.ll" > /dev/null || exit 1
+  for engine in $ENGINES; do
+    case $engine in
+      lli) set -- lli "$WORK/$name.ll" ;;
+      interp) set -- lli -force-interpreter "$WORK/$name.ll" ;;
+      O[0-3])
+        if ! command -v clang > /dev/null; then
+          continue
+        fi
+        clang -$engine "$WORK/$name.ll" -o "$WORK/$name$engine" 2> /dev/null || exit 1
+        set -- "$WORK/$name$engine" ;;
+      native)
+        java -cp "$WORK" Main "$source" -native "$WORK/$name.native" > /dev/null || exit 1
+        set -- "$WORK/$name.native" ;;
+      *) echo "Unknown engine: $engine"; exit 1 ;;
+    esac
+    times_ms "$SUITE/$name.in" "$@" | sort -n > "$WORK/times"
+    output=ok
+    cmp -s "$WORK/output" "$SUITE/$name.expected" || output=WRONG
+    awk -v program="$name" -v engine="$engine" -v output=$output '
+      { time[NR] = $1 }
+      END {
+        median = NR % 2 ? time[(NR + 1) / 2] : (time[NR / 2] + time[NR / 2 + 1]) / 2
+        printf "%s\t%s\t%d\t%d\t%d\t%s\n", program, engine, median, time[1], time[NR], output
+      }' "$WORK/times" >> "$RESULTS"
+    tail -n 1 "$RESULTS" | awk -F '\t' '{
+      printf "%-10s %7s %10d %8d %8d %7.1f%%  %s\n", $1, $2, $3, $4, $5, $3 ? 100 * ($5 - $4) / $3 : 0, $6
+    }'
+  done
+done
+
+if [ -n "$COMPARE" ]; then
+  echo
+  echo "Against $(head -n 1 "$COMPARE" | sed 's/^# //'):"
+  printf "%-10s %7s %10s %10s %8s\n" program engine "base ms" "now ms" change
+  awk -F '\t' '
+    FNR == 1 { next }
+    NR == FNR { median[$1 "\t" $2] = $3; min[$1 "\t" $2] = $4; max[$1 "\t" $2] = $5; next }
+    ($1 "\t" $2) in median {
+      key = $1 "\t" $2
+      verdict = ""
+      if ($4 > max[key]) {
+        verdict = "slower"
+      } else if ($5 < min[key]) {
+        verdict = "faster"
+      }
+      printf "%-10s %7s %10d %10d %+7.1f%%  %s\n", $1, $2, median[key], $3,
+      median[key] ? 100 * ($3 - median[key]) / median[key] : 0, verdict
+    }' "$COMPARE" "$RESULTS"
+fi
+if [ -n "$SAVE" ]; then
+  cp "$RESULTS" "$SAVE"
+fi
@@ -0,0 +1,12 @@
+#!/bin/sh
+# Compile generated programs of doubling sizes and report how each phase scales.
+# Usage: bench/scaling_bench.sh [ScalingBench options]
+#   e.g. bench/scaling_bench.sh -from 1000 -to 64000 -csv scaling.csv
+# Requires javac and java on the PATH.
+
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+javac -d "$WORK" "$ROOT"/src/*.java "$ROOT/bench/ProgramGenerator.java" "$ROOT/bench/ScalingBench.java" || exit 1
+java -cp "$WORK" ScalingBench "$@"
@@ -0,0 +1,12 @@
+#!/bin/sh
+# Compare compiling many small programs with new objects and with a CompilerSession.
+# Usage: bench/session_bench.sh [SessionBench options]
+#   e.g. bench/session_bench.sh -programs 2000 -statements 20
+# Requires javac and java on the PATH.
+
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+javac -d "$WORK" "$ROOT"/src/*.java "$ROOT/bench/ProgramGenerator.java" "$ROOT/bench/SessionBench.java" || exit 1
+java -cp "$WORK" SessionBench "$@"
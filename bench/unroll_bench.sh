@@ -0,0 +1,45 @@
+#!/bin/sh
+# Time ArrayKernel.sf built with -unroll 0 (no unrolling), 2, 4 and 8, through lli
+# and as clang -O2 executables if clang is found, with the size of the IR code.
+# Best of several runs.
+# Usage: bench/unroll_bench.sh [runs]
+# Requires javac, java and lli on the PATH.
+
+RUNS=${1:-3}
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+javac -d "$WORK" "$ROOT"/src/*.java || exit 1
+PROGRAM="$ROOT/bench/ArrayKernel.sf"
+
+# Print the best time in ms of a command.
+best_ms() {
+  best=0
+  i=1
+  while [ $i -le "$RUNS" ]; do
+    start=$(date +%s%N)
+    "$@" > "$WORK/output"
+    end=$(date +%s%N)
+    ms=$(( (end - start) / 1000000 ))
+    if [ $best -eq 0 ] || [ $ms -lt $best ]; then
+      best=$ms
+    fi
+    i=$((i + 1))
+  done
+  echo $best
+}
+
+printf "%8s %10s %10s %12s\n" unroll "IR bytes" "lli ms" "clang-O2 ms"
+for factor in 0 2 4 8; do
+  java -cp "$WORK" Main "$PROGRAM" -unroll $factor -o "$WORK/unroll$factor.ll" > /dev/null || exit 1
+  lli=$(best_ms lli "$WORK/unroll$factor.ll")
+  cp "$WORK/output" "$WORK/unroll$factor.out"
+  clang=-
+  if command -v clang > /dev/null; then
+    clang -O2 "$WORK/unroll$factor.ll" -o "$WORK/unroll$factor" 2> /dev/null || exit 1
+    clang=$(best_ms "$WORK/unroll$factor")
+  fi
+  printf "%8s %10s %10s %12s\n" $factor $(wc -c < "$WORK/unroll$factor.ll") $lli $clang
+  cmp -s "$WORK/unroll0.out" "$WORK/unroll$factor.out" || echo "The outputs differ"
+done
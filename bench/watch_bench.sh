@@ -0,0 +1,33 @@
+#!/bin/sh
+# Edit a program watched by Main -watch several times and print the latency of
+# each recompilation reported by the watcher, with and without -exec.
+# Usage: bench/watch_bench.sh [edits] [program.sf]
+# Requires javac, java and lli on the PATH.
+
+EDITS=${1:-10}
+ROOT=$(cd "$(dirname "$0")/.." && pwd)
+PROGRAM=${2:-$ROOT/test/07-For.sf}
+WORK=$(mktemp -d)
+trap 'rm -rf "$WORK"' EXIT
+
+javac -d "$WORK" "$ROOT"/src/*.java || exit 1
+mkdir "$WORK/watched"
+for mode in "" "-exec"; do
+  cp "$PROGRAM" "$WORK/watched/program.sf"
+  java -cp "$WORK" Main "$WORK/watched/program.sf" -o "$WORK/watched/program.ll" $mode -watch \
+  > /dev/null 2> "$WORK/watch.log" < /dev/null &
+  pid=$!
+  sleep 2
+  i=1
+  while [ $i -le "$EDITS" ]; do
+    # Add a blank line, a real change of the file for the watcher.
+    echo >> "$WORK/watched/program.sf"
+    sleep 0.3
+    i=$((i + 1))
+  done
+  kill $pid
+  wait $pid 2> /dev/null
+  grep " in .* ms" "$WORK/watch.log" | tail -n +2 | awk -v mode="${mode:-compile}" \
+  '{ ms = $(NF - 1); sum += ms; if (n == 0 || ms < min) min = ms; if (ms > max) max = ms; n++ }
+  END { printf "%-8s %3d edits: mean %.1f ms, min %d ms, max %d ms\n", mode, n, sum / n, min, max }'
+done
@@ -1,3 +1,4 @@
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -92,39 +93,72 @@ public class AbstractSyntaxTree {
     return this.children;
   }
 
+  /** Number of nodes of the tree.
+  */
+  public int size() {
+    int size = 0;
+    List<AbstractSyntaxTree> stack = new ArrayList<AbstractSyntaxTree>();
+    stack.add(this);
+    while (!stack.isEmpty()) {
+      AbstractSyntaxTree node = stack.remove(stack.size() - 1);
+      size++;
+      stack.addAll(node.getChildren());
+    }
+    return size;
+  }
+
   /** Remove the nodes labeled "Epsilon" in the AST.
+  * The nodes are visited with a stack instead of recursively, and the children
+  * of each node are compacted in place, so the pass is linear and works on trees
+  * of any depth.
   */
   public void removeEpsilons() {
-    List<AbstractSyntaxTree> toRemove = new ArrayList<AbstractSyntaxTree>();
-    for (AbstractSyntaxTree child: children) {
-      if (child.getLabel() == "Epsilon") {
-        toRemove.add(child);
-      } else {
-        child.removeEpsilons();
+    List<AbstractSyntaxTree> stack = new ArrayList<AbstractSyntaxTree>();
+    stack.add(this);
+    while (!stack.isEmpty()) {
+      List<AbstractSyntaxTree> nodes = stack.remove(stack.size() - 1).getChildren();
+      int kept = 0;
+      for (int i = 0; i < nodes.size(); i++) {
+        AbstractSyntaxTree child = nodes.get(i);
+        if (child.getLabel() != "Epsilon") {
+          nodes.set(kept++, child);
+          stack.add(child);
+        }
       }
+      nodes.subList(kept, nodes.size()).clear();
     }
-    children.removeAll(toRemove);
   }
 
   /** Remove the duplicate Minus node that sometimes appears.
   * Ideally this method shouldn't exist but we haven't be able prevent it from
   * appearing in the AST. This method get rid of it. To be used after then final
   * AST has been generated.
+  * A duplicate is replaced by its only child, moved after the other children,
+  * and the other children are cleaned in turn. Like removeEpsilons() it uses a
+  * stack and compacts the children in place.
   */
   public void removeBadMinus() {
-  List<AbstractSyntaxTree> toRemove = new ArrayList<AbstractSyntaxTree>();
-  List<AbstractSyntaxTree> toAdd = new ArrayList<AbstractSyntaxTree>();
-  for (AbstractSyntaxTree child: children) {
-    if (label.equals(child.getLabel()) && child.getChildren().size() == 1) {
-      toAdd.addAll(child.getChildren());
-      toRemove.add(child);
-    } else {
-      child.removeBadMinus();
+    List<AbstractSyntaxTree> stack = new ArrayList<AbstractSyntaxTree>();
+    List<AbstractSyntaxTree> toAdd = new ArrayList<AbstractSyntaxTree>();
+    stack.add(this);
+    while (!stack.isEmpty()) {
+      AbstractSyntaxTree node = stack.remove(stack.size() - 1);
+      List<AbstractSyntaxTree> nodes = node.getChildren();
+      int kept = 0;
+      for (int i = 0; i < nodes.size(); i++) {
+        AbstractSyntaxTree child = nodes.get(i);
+        if (node.label.equals(child.getLabel()) && child.getChildren().size() == 1) {
+          toAdd.addAll(child.getChildren());
+        } else {
+          nodes.set(kept++, child);
+          stack.add(child);
+        }
+      }
+      nodes.subList(kept, nodes.size()).clear();
+      nodes.addAll(toAdd);
+      toAdd.clear();
     }
   }
-  children.removeAll(toRemove);
-  children.addAll(toAdd);
-  }
 
   /** The NOT operator call this method to reverse the condition.
   */
@@ -146,18 +180,17 @@ public class AbstractSyntaxTree {
   }
 
   /**Print the tree to the console. Can be draw online at http://mshang.ca/syntree/.
+  * Use TreeWriter.TEXT to write it to a Writer without building the String.
   */
   public String printTree() {
-      StringBuilder tree = new StringBuilder();
-      tree.append("\n[");
-      tree.append(label);
-      if (children != null) {
-          for (AbstractSyntaxTree child: children) {
-              tree.append(child.printTree());
-          }
-      }
-      tree.append("]\n");
-      return tree.toString();
+    StringBuilder tree = new StringBuilder();
+    try {
+      TreeWriter.TEXT.write(this, tree);
+    } catch (IOException e) {
+      //A StringBuilder does not throw.
+      throw new Error(e);
+    }
+    return tree.toString();
   }
 
 }
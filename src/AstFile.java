@@ -0,0 +1,286 @@
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/** Binary file of an AST, to load a parsed program again without the Lexer and
+* the Parser. The file is:
+*   the magic "SFAT" and the version of the format (varints from here),
+*   the nodes, each one after its children: the index of its label in the strings
+*   plus 1 (0 without label), the number of children, then for each child the
+*   distance from the node back to the child,
+*   the strings: their number, then for each one its length and its UTF-8 bytes,
+*   the offset of the strings and of the root (8 bytes each), and the CRC-32 of the
+*   whole file before it (4 bytes).
+* The labels (node kinds, names and numbers) are stored once in the strings. The
+* nodes are written while the tree is walked, so writing needs no copy of the file.
+* Reading maps the file and checks it, then decodes each node only when its
+* children are asked for: loading is nearly free and a pass over the whole tree
+* decodes it once.
+*/
+
+public class AstFile {
+  private static final byte[] MAGIC = {'S', 'F', 'A', 'T'};
+  private static final int VERSION = 1;
+  //Bytes after the strings: their offset, the offset of the root and the checksum.
+  private static final int TRAILER = 8 + 8 + 4;
+
+  private OutputStream out;
+  private byte[] buffer = new byte[1 << 16];
+  private int used;
+  //Bytes written before the buffer.
+  private long flushed;
+  private CRC32 crc = new CRC32();
+
+  private AstFile(OutputStream out) {
+    this.out = out;
+  }
+
+  /** Write an AST in a file.
+  * @param ast the tree to write
+  * @param path the file to write
+  */
+  public static void write(AbstractSyntaxTree ast, String path) throws IOException {
+    OutputStream out = new BufferedOutputStream(new FileOutputStream(path), 1 << 16);
+    try {
+      write(ast, out);
+    } finally {
+      out.close();
+    }
+  }
+
+  /** Write an AST in a stream, node after node. The stream is not closed.
+  * @param ast the tree to write
+  * @param out the stream to write to
+  */
+  public static void write(AbstractSyntaxTree ast, OutputStream out) throws IOException {
+    new AstFile(out).writeTree(ast);
+  }
+
+  private void writeTree(AbstractSyntaxTree ast) throws IOException {
+    for (byte b: MAGIC) {
+      writeByte(b);
+    }
+    writeVarint(VERSION);
+    Map<String, Integer> indexes = new HashMap<String, Integer>();
+    List<String> strings = new ArrayList<String>();
+    //A null on the stack is followed by a node whose children are written.
+    List<AbstractSyntaxTree> stack = new ArrayList<AbstractSyntaxTree>();
+    //Offsets of the written nodes whose parent is not written yet.
+    List<Long> offsets = new ArrayList<Long>();
+    stack.add(ast);
+    while (!stack.isEmpty()) {
+      AbstractSyntaxTree node = stack.remove(stack.size() - 1);
+      if (node != null) {
+        stack.add(node);
+        stack.add(null);
+        List<AbstractSyntaxTree> children = node.getChildren();
+        for (int i = children.size() - 1; i >= 0; i--) {
+          stack.add(children.get(i));
+        }
+        continue;
+      }
+      node = stack.remove(stack.size() - 1);
+      long offset = position();
+      String label = node.getLabel();
+      if (label == null) {
+        writeVarint(0);
+      } else {
+        Integer index = indexes.get(label);
+        if (index == null) {
+          index = strings.size();
+          indexes.put(label, index);
+          strings.add(label);
+        }
+        writeVarint(index + 1);
+      }
+      int count = node.getChildren().size();
+      writeVarint(count);
+      List<Long> children = offsets.subList(offsets.size() - count, offsets.size());
+      for (long child: children) {
+        writeVarint(offset - child);
+      }
+      children.clear();
+      offsets.add(offset);
+    }
+    long stringsOffset = position();
+    writeVarint(strings.size());
+    for (String string: strings) {
+      byte[] bytes = string.getBytes(StandardCharsets.UTF_8);
+      writeVarint(bytes.length);
+      for (byte b: bytes) {
+        writeByte(b);
+      }
+    }
+    writeLong(stringsOffset);
+    writeLong(offsets.get(0));
+    flush();
+    long checksum = crc.getValue();
+    for (int shift = 24; shift >= 0; shift -= 8) {
+      out.write((int) (checksum >>> shift));
+    }
+    out.flush();
+  }
+
+  private long position() {
+    return flushed + used;
+  }
+
+  private void writeByte(int b) throws IOException {
+    if (used == buffer.length) {
+      flush();
+    }
+    buffer[used++] = (byte) b;
+  }
+
+  //Seven bits per byte, low bits first, the high bit set on every byte but the last.
+  private void writeVarint(long value) throws IOException {
+    while ((value & ~0x7FL) != 0) {
+      writeByte((int) (value & 0x7F) | 0x80);
+      value >>>= 7;
+    }
+    writeByte((int) value);
+  }
+
+  private void writeLong(long value) throws IOException {
+    for (int shift = 56; shift >= 0; shift -= 8) {
+      writeByte((int) (value >>> shift));
+    }
+  }
+
+  private void flush() throws IOException {
+    crc.update(buffer, 0, used);
+    out.write(buffer, 0, used);
+    flushed += used;
+    used = 0;
+  }
+
+  /** Map an AST file and check it. The nodes are decoded when they are used.
+  * @param path the file to read
+  * @return the root of the tree
+  */
+  public static AbstractSyntaxTree read(String path) throws IOException {
+    ByteBuffer file;
+    RandomAccessFile input = new RandomAccessFile(path, "r");
+    try {
+      FileChannel channel = input.getChannel();
+      if (channel.size() > Integer.MAX_VALUE) {
+        throw new Error("AST file too large: " + path);
+      }
+      file = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } finally {
+      input.close();
+    }
+    return read(file, path);
+  }
+
+  /** Check an AST file in a buffer. The nodes are decoded when they are used.
+  * @param file the bytes of the file, from 0 to its limit
+  * @param name the name of the file, for the errors
+  * @return the root of the tree
+  */
+  public static AbstractSyntaxTree read(ByteBuffer file, String name) {
+    int length = file.limit();
+    if (length < MAGIC.length + 1 + TRAILER) {
+      throw new Error("Not an AST file: " + name);
+    }
+    for (int i = 0; i < MAGIC.length; i++) {
+      if (file.get(i) != MAGIC[i]) {
+        throw new Error("Not an AST file: " + name);
+      }
+    }
+    int[] position = {MAGIC.length};
+    long version = readVarint(file, position);
+    if (version != VERSION) {
+      throw new Error("Unsupported AST file version " + version + ": " + name);
+    }
+    CRC32 crc = new CRC32();
+    ByteBuffer checked = file.duplicate();
+    checked.position(0).limit(length - 4);
+    crc.update(checked);
+    if ((int) crc.getValue() != file.getInt(length - 4)) {
+      throw new Error("Corrupted AST file: " + name);
+    }
+    long stringsOffset = file.getLong(length - TRAILER);
+    long root = file.getLong(length - TRAILER + 8);
+    if (stringsOffset < position[0] || stringsOffset > length - TRAILER || root < position[0]
+    || root >= stringsOffset) {
+      throw new Error("Corrupted AST file: " + name);
+    }
+    position[0] = (int) stringsOffset;
+    String[] strings = new String[(int) readVarint(file, position)];
+    for (int i = 0; i < strings.length; i++) {
+      byte[] bytes = new byte[(int) readVarint(file, position)];
+      for (int j = 0; j < bytes.length; j++) {
+        bytes[j] = file.get(position[0]++);
+      }
+      //The labels are compared with ==, like the literals of the Parser.
+      strings[i] = new String(bytes, StandardCharsets.UTF_8).intern();
+    }
+    return new MappedNode(file, strings, (int) root);
+  }
+
+  //Decode a varint at position[0], which is moved after it.
+  private static long readVarint(ByteBuffer file, int[] position) {
+    long value = 0;
+    int shift = 0;
+    while (true) {
+      byte b = file.get(position[0]++);
+      value |= (long) (b & 0x7F) << shift;
+      if (b >= 0) {
+        return value;
+      }
+      shift += 7;
+    }
+  }
+
+  //A node of a mapped file. Its label is decoded with it, its children the first
+  //time they are asked for.
+  private static class MappedNode extends AbstractSyntaxTree {
+    private ByteBuffer file;
+    private String[] strings;
+    private int offset;
+    //Offset of the number of children, after the label, -1 once they are decoded.
+    private int children;
+
+    MappedNode(ByteBuffer file, String[] strings, int offset) {
+      this.file = file;
+      this.strings = strings;
+      this.offset = offset;
+      int[] position = {offset};
+      int label = (int) readVarint(file, position);
+      if (label > 0) {
+        addLabel(strings[label - 1]);
+      }
+      children = position[0];
+    }
+
+    @Override
+    public List<AbstractSyntaxTree> getChildren() {
+      if (children >= 0) {
+        int[] position = {children};
+        children = -1;
+        int count = (int) readVarint(file, position);
+        for (int i = 0; i < count; i++) {
+          addChild(new MappedNode(file, strings, offset - (int) readVarint(file, position)));
+        }
+      }
+      return super.getChildren();
+    }
+
+    @Override
+    public AbstractSyntaxTree getChild(int n) {
+      return getChildren().get(n);
+    }
+  }
+
+}
@@ -0,0 +1,1332 @@
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Write the IR code made by the CodeGenerator as LLVM bitcode, the binary form
+* loaded by lli and llc, so that running a program does not need llvm-as.
+* The IR code is read line by line into the records of the bitcode format: a type
+* table, the globals and functions with their names in a string table, one table
+* for all the constants and a block of instructions per function, where the
+* operands are numbered relatively to the instruction like LLVM does. The pointers
+* are opaque, the pointee types of the text are dropped.
+* Only the IR emitted by the CodeGenerator is known: integer arithmetic, icmp,
+* select, casts, phi, alloca, load, store, atomicrmw add, getelementptr, call, br,
+* ret and unreachable; globals initialized by an integer, null, zeroinitializer or a
+* string; constant getelementptr expressions; the noinline attribute. Anything
+* else throws an Error, the caller can then run llvm-as on the .ll file instead.
+* The records are not abbreviated, the file is larger than the one of llvm-as but
+* llvm-dis prints the same module.
+* Usage: java BitcodeWriter input.ll [output.bc]
+*/
+
+public class BitcodeWriter {
+  //Block ids.
+  private static final int MODULE_BLOCK = 8;
+  private static final int PARAMATTR_BLOCK = 9;
+  private static final int PARAMATTR_GROUP_BLOCK = 10;
+  private static final int CONSTANTS_BLOCK = 11;
+  private static final int FUNCTION_BLOCK = 12;
+  private static final int VALUE_SYMTAB_BLOCK = 14;
+  private static final int TYPE_BLOCK = 17;
+  private static final int STRTAB_BLOCK = 23;
+
+  //Record codes, by block.
+  private static final int MODULE_VERSION = 1;
+  private static final int MODULE_GLOBALVAR = 7;
+  private static final int MODULE_FUNCTION = 8;
+  private static final int PARAMATTR_ENTRY = 2;
+  private static final int PARAMATTR_GROUP_ENTRY = 3;
+  private static final int TYPE_NUMENTRY = 1;
+  private static final int TYPE_VOID = 2;
+  private static final int TYPE_INTEGER = 7;
+  private static final int TYPE_ARRAY = 11;
+  private static final int TYPE_FUNCTION = 21;
+  private static final int TYPE_POINTER = 25;
+  private static final int CST_SETTYPE = 1;
+  private static final int CST_NULL = 2;
+  private static final int CST_INTEGER = 4;
+  private static final int CST_STRING = 8;
+  private static final int CST_INBOUNDS_GEP = 20;
+  private static final int INST_DECLAREBLOCKS = 1;
+  private static final int INST_BINOP = 2;
+  private static final int INST_CAST = 3;
+  private static final int INST_RET = 10;
+  private static final int INST_BR = 11;
+  private static final int INST_UNREACHABLE = 15;
+  private static final int INST_PHI = 16;
+  private static final int INST_ALLOCA = 19;
+  private static final int INST_LOAD = 20;
+  private static final int INST_CMP = 28;
+  private static final int INST_SELECT = 29;
+  private static final int INST_CALL = 34;
+  private static final int INST_GEP = 43;
+  private static final int INST_STORE = 44;
+  private static final int INST_ATOMICRMW = 59;
+  private static final int VST_ENTRY = 1;
+  private static final int VST_BBENTRY = 2;
+  private static final int STRTAB_BLOB = 1;
+
+  private static final int LINKAGE_EXTERNAL = 0;
+  private static final int LINKAGE_INTERNAL = 3;
+  private static final int LINKAGE_PRIVATE = 9;
+  private static final int ATTR_NO_INLINE = 14;
+  private static final long FUNCTION_INDEX = 0xFFFFFFFFL;
+  //Flags of a call: explicit function type, C calling convention.
+  private static final int CALL_EXPLICIT_TYPE = 1 << 15;
+
+  private static final String[] BINARY_OPS = {"add", "sub", "mul", "udiv", "sdiv", "urem", "srem",
+  "shl", "lshr", "ashr", "and", "or", "xor"};
+  private static final String[] CAST_OPS = {"trunc", "zext", "sext", "", "", "", "", "", "",
+  "ptrtoint", "inttoptr", "bitcast"};
+  private static final String[] PREDICATES = {"eq", "ne", "ugt", "uge", "ult", "ule", "sgt", "sge", "slt", "sle"};
+
+  //How an operand of a record is written: as is, relatively to the instruction,
+  //the same followed by its type if it is defined later, signed and relative (phi),
+  //as an absolute value number, or as a basic block number.
+  private static final byte LITERAL = 0;
+  private static final byte RELATIVE = 1;
+  private static final byte TYPED = 2;
+  private static final byte SIGNED = 3;
+  private static final byte ABSOLUTE = 4;
+  private static final byte BLOCK = 5;
+
+  //Kinds of value references, in the two low bits of a reference.
+  private static final int LOCAL = 0;
+  private static final int CONSTANT = 1;
+  private static final int GLOBAL = 2;
+  private static final int PENDING = 3;
+
+  //A record with operands still to number, and the type of the value it defines
+  //(-1 if none).
+  private static class Record {
+    int code;
+    long[] ops;
+    byte[] modes;
+    int type;
+  }
+
+  private static class Global {
+    String name;
+    int type;
+    boolean constant;
+    long init;
+    int linkage;
+    int align;
+    boolean unnamedAddr;
+  }
+
+  private static class Function {
+    String name;
+    int type;
+    int linkage;
+    boolean declaration = true;
+    boolean noInline;
+    //Arguments then instruction results: their type and name (null if unnamed).
+    List<Integer> localTypes = new ArrayList<Integer>();
+    List<String> localNames = new ArrayList<String>();
+    int argumentCount;
+    List<String> blockNames = new ArrayList<String>();
+    //Basic block of each label, in the order labels are met.
+    List<Integer> labelBlocks = new ArrayList<Integer>();
+    List<Record> instructions = new ArrayList<Record>();
+  }
+
+  //Cursor over the tokens of a line of the IR code, from pos to end.
+  private static class Line {
+    private String code;
+    private int start;
+    private int pos;
+    private int end;
+
+    Line(String code) {
+      this.code = code;
+    }
+
+    void reset(int start, int end) {
+      this.start = start;
+      this.pos = start;
+      this.end = end;
+    }
+
+    String text() {
+      return code.substring(start, end);
+    }
+
+    //The next character that is not a space, 0 at the end of the line.
+    char peek() {
+      while (pos < end && code.charAt(pos) == ' ') {
+        pos++;
+      }
+      return pos < end ? code.charAt(pos) : 0;
+    }
+
+    String next() {
+      if (peek() == 0) {
+        return "";
+      }
+      int first = pos;
+      char c = code.charAt(pos);
+      if (c == 'c' && pos + 1 < end && code.charAt(pos + 1) == '"') {
+        pos = code.indexOf('"', pos + 2) + 1;
+        if (pos == 0 || pos > end) {
+          throw unsupported("unterminated string in: " + text());
+        }
+      } else if (c == '%' || c == '@' || isWord(c)) {
+        pos++;
+        skipWord();
+      } else {
+        pos++;
+      }
+      return code.substring(first, pos);
+    }
+
+    //Skip the token if it is the next one.
+    boolean accept(String token) {
+      peek();
+      int after = pos + token.length();
+      if (after <= end && code.startsWith(token, pos)
+      && (after == end || !isWord(token.charAt(token.length() - 1)) || !isWord(code.charAt(after)))) {
+        pos = after;
+        return true;
+      }
+      return false;
+    }
+
+    void expect(String token) {
+      if (!accept(token)) {
+        throw unsupported("expected " + token + " in: " + text());
+      }
+    }
+
+    void end() {
+      if (peek() != 0) {
+        throw unsupported("unexpected '" + next() + "' in: " + text());
+      }
+    }
+
+    //A decimal integer, or Long.MIN_VALUE if the next token is not one.
+    long number() {
+      char c = peek();
+      boolean negative = c == '-';
+      int first = negative ? pos + 1 : pos;
+      int last = first;
+      long value = 0;
+      while (last < end && Character.isDigit(code.charAt(last))) {
+        value = 10 * value + code.charAt(last) - '0';
+        last++;
+      }
+      if (last == first || (last < end && isWord(code.charAt(last)))) {
+        return Long.MIN_VALUE;
+      }
+      pos = last;
+      return negative ? -value : value;
+    }
+
+    void skipWord() {
+      while (pos < end && isWord(code.charAt(pos))) {
+        pos++;
+      }
+    }
+
+    private static boolean isWord(char c) {
+      return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+      || c == '.' || c == '_' || c == '-' || c == '$';
+    }
+  }
+
+  //Type records, with the ABI and preferred alignments of the types.
+  private List<long[]> types = new ArrayList<long[]>();
+  private List<int[]> alignments = new ArrayList<int[]>();
+  private Map<String, Integer> typeIds = new HashMap<String, Integer>();
+  private int voidType;
+  private int ptrType;
+  private int i1Type;
+  private int i32Type;
+
+  private List<Global> globals = new ArrayList<Global>();
+  private List<Function> functions = new ArrayList<Function>();
+  private Map<String, Integer> globalIndexes = new HashMap<String, Integer>();
+  private Map<String, Integer> functionIndexes = new HashMap<String, Integer>();
+  //Names of the globals and functions used as operands, resolved at the end.
+  private List<String> symbols = new ArrayList<String>();
+  private Map<String, Integer> symbolIds = new HashMap<String, Integer>();
+  private List<Record> constants = new ArrayList<Record>();
+  private Map<String, Integer> constantIds = new HashMap<String, Integer>();
+
+  private int[] intTypes = new int[65];
+  private Map<Long, Integer> arrayTypes = new HashMap<Long, Integer>();
+  //Integer constants of each type, by value.
+  private List<Map<Long, Integer>> integerIds = new ArrayList<Map<Long, Integer>>();
+
+  //The function being read: its named and numbered values, the number of the
+  //last numbered value read, the count of the numbered ones defined, its labels
+  //and the values used before their definition.
+  private Function function;
+  private Map<String, Integer> localIds;
+  private int[] numbered = new int[256];
+  private int lastNumber;
+  private int unnamedCount;
+  private Map<String, Integer> labelIds;
+  private List<String> pendingNames;
+  private List<Integer> pendingNumbers;
+
+  //Operands of the record being built.
+  private long[] ops = new long[16];
+  private byte[] modes = new byte[16];
+  private int opCount;
+
+  //The bitstream being written: whole 32 bits words, and the bits of the next one.
+  private byte[] bytes;
+  private int size;
+  private long bits;
+  private int bitCount;
+  private int width;
+  private List<int[]> blocks = new ArrayList<int[]>();
+  //Value numbers: the globals, the functions, the constants from constantBase,
+  //then in each function its arguments and the results of its instructions from
+  //moduleValues. The globals and functions used as operands are numbered by
+  //symbolValues.
+  private int constantBase;
+  private int moduleValues;
+  private int[] symbolValues;
+  //The function being written, and the basic block of each of its labels.
+  private Function writing;
+  private int[] labelBlocks;
+
+  /** Read the IR code of a module.
+  * @param llvmCode the IR code made by the CodeGenerator
+  */
+  public BitcodeWriter(String llvmCode) {
+    Arrays.fill(intTypes, -1);
+    voidType = type("void", new long[] {TYPE_VOID}, 1, 1);
+    ptrType = type("ptr", new long[] {TYPE_POINTER, 0}, 8, 8);
+    i1Type = intType(1);
+    i32Type = intType(32);
+    Line line = new Line(llvmCode);
+    int start = 0;
+    while (start < llvmCode.length()) {
+      int end = llvmCode.indexOf('\n', start);
+      int next = end < 0 ? llvmCode.length() + 1 : end + 1;
+      end = end < 0 ? llvmCode.length() : end;
+      while (start < end && llvmCode.charAt(start) <= ' ') {
+        start++;
+      }
+      while (end > start && llvmCode.charAt(end - 1) <= ' ') {
+        end--;
+      }
+      if (start < end && llvmCode.charAt(start) != ';') {
+        line.reset(start, end);
+        readLine(line);
+      }
+      start = next;
+    }
+    if (function != null) {
+      throw unsupported("missing } at the end of @" + function.name);
+    }
+  }
+
+  public static void main(String[] args) throws IOException {
+    if (args.length < 1 || args.length > 2) {
+      System.err.println("Usage: java BitcodeWriter input.ll [output.bc]");
+      System.exit(1);
+    }
+    String llvmCode = new String(Files.readAllBytes(Paths.get(args[0])), StandardCharsets.UTF_8);
+    String output = args.length > 1 ? args[1] : args[0].replaceAll("\\.ll$", "") + ".bc";
+    new BitcodeWriter(llvmCode).writeToFile(output);
+  }
+
+  /** Write the bitcode of the module in a file.
+  * @param filePath the .bc file
+  */
+  public void writeToFile(String filePath) throws IOException {
+    OutputStream file = new FileOutputStream(filePath);
+    try {
+      file.write(toBitcode());
+    } finally {
+      file.close();
+    }
+  }
+
+  private static Error unsupported(String message) {
+    return new Error("Unsupported IR for the bitcode writer: " + message);
+  }
+
+  //Reading the IR code.
+
+  private void readLine(Line line) {
+    String code = line.code;
+    char first = code.charAt(line.start);
+    if (function != null) {
+      if (first == '}' && line.end == line.start + 1) {
+        endFunction();
+      } else if (code.charAt(line.end - 1) == ':' && first != '%' && code.indexOf(' ', line.start) > line.end - 1) {
+        String name = code.substring(line.start, line.end - 1);
+        function.labelBlocks.set(label(name), function.blockNames.size());
+        function.blockNames.add(name);
+      } else {
+        if (function.blockNames.isEmpty()) {
+          function.blockNames.add(null);
+        }
+        readInstruction(line);
+      }
+    } else if (first == '@') {
+      readGlobal(line);
+    } else if (code.startsWith("declare ", line.start) || code.startsWith("define ", line.start)) {
+      readFunction(line);
+    } else {
+      throw unsupported(line.text());
+    }
+  }
+
+  //@name = [internal|private] [unnamed_addr] global|constant type init, align n
+  private void readGlobal(Line line) {
+    Global global = new Global();
+    global.name = line.next().substring(1);
+    line.expect("=");
+    global.linkage = LINKAGE_EXTERNAL;
+    String token = line.next();
+    if (token.equals("internal") || token.equals("private")) {
+      global.linkage = token.equals("internal") ? LINKAGE_INTERNAL : LINKAGE_PRIVATE;
+      token = line.next();
+    }
+    if (token.equals("unnamed_addr")) {
+      global.unnamedAddr = true;
+      token = line.next();
+    }
+    if (!token.equals("global") && !token.equals("constant")) {
+      throw unsupported("global " + global.name);
+    }
+    global.constant = token.equals("constant");
+    global.type = parseType(line);
+    global.init = parseValue(line, global.type);
+    if ((global.init & 3) != CONSTANT) {
+      throw unsupported("initializer of " + global.name);
+    }
+    global.align = 0;
+    if (line.accept(",")) {
+      line.expect("align");
+      global.align = Integer.parseInt(line.next());
+    }
+    line.end();
+    if (globalIndexes.containsKey(global.name) || functionIndexes.containsKey(global.name)) {
+      throw unsupported("@" + global.name + " defined twice");
+    }
+    globalIndexes.put(global.name, globals.size());
+    globals.add(global);
+  }
+
+  //declare type @name(types) or define [internal] type @name(type %arg, ...) [noinline] {
+  private void readFunction(Line line) {
+    Function read = new Function();
+    boolean definition = line.next().equals("define");
+    read.linkage = LINKAGE_EXTERNAL;
+    if (line.accept("internal")) {
+      read.linkage = LINKAGE_INTERNAL;
+    } else if (line.accept("private")) {
+      read.linkage = LINKAGE_PRIVATE;
+    }
+    int returnType = parseType(line);
+    String name = line.next();
+    if (name.charAt(0) != '@') {
+      throw unsupported("function name " + name);
+    }
+    read.name = name.substring(1);
+    line.expect("(");
+    List<Integer> params = new ArrayList<Integer>();
+    List<String> argNames = new ArrayList<String>();
+    List<Integer> argNumbers = new ArrayList<Integer>();
+    if (!line.accept(")")) {
+      do {
+        int type = parseType(line);
+        params.add(type);
+        if (definition) {
+          if (line.peek() != '%') {
+            throw unsupported("argument of @" + read.name);
+          }
+          line.pos++;
+          argNames.add(localName(line));
+          argNumbers.add(lastNumber);
+        }
+      } while (line.accept(","));
+      line.expect(")");
+    }
+    read.type = functionType(returnType, params);
+    read.argumentCount = params.size();
+    if (definition) {
+      String token = line.next();
+      while (!token.equals("{")) {
+        if (!token.equals("noinline")) {
+          throw unsupported("attribute " + token + " of @" + read.name);
+        }
+        read.noInline = true;
+        token = line.next();
+      }
+      read.declaration = false;
+      function = read;
+      localIds = new HashMap<String, Integer>();
+      Arrays.fill(numbered, -1);
+      unnamedCount = 0;
+      labelIds = new HashMap<String, Integer>();
+      pendingNames = new ArrayList<String>();
+      pendingNumbers = new ArrayList<Integer>();
+      for (int i = 0; i < params.size(); i++) {
+        lastNumber = argNumbers.get(i);
+        if (argNames.get(i) == null) {
+          unnamedCount = lastNumber + 1;
+        }
+        defineLocal(argNames.get(i), params.get(i));
+      }
+    }
+    line.end();
+    if (globalIndexes.containsKey(read.name) || functionIndexes.containsKey(read.name)) {
+      throw unsupported("@" + read.name + " defined twice");
+    }
+    functionIndexes.put(read.name, functions.size());
+    functions.add(read);
+  }
+
+  //Resolve the operands defined after their use, now that the function is read.
+  private void endFunction() {
+    if (!pendingNames.isEmpty()) {
+      int[] resolved = new int[pendingNames.size()];
+      for (int i = 0; i < resolved.length; i++) {
+        String name = pendingNames.get(i);
+        lastNumber = pendingNumbers.get(i);
+        resolved[i] = localId(name);
+        if (resolved[i] < 0) {
+          throw unsupported("undefined %" + (name == null ? Integer.toString(lastNumber) : name) + " in @"
+          + function.name);
+        }
+      }
+      for (Record instruction: function.instructions) {
+        for (int i = 0; i < instruction.ops.length; i++) {
+          byte mode = instruction.modes[i];
+          if (mode != LITERAL && mode != BLOCK && (instruction.ops[i] & 3) == PENDING) {
+            instruction.ops[i] = ((long) resolved[(int) (instruction.ops[i] >> 2)] << 2) | LOCAL;
+          }
+        }
+      }
+    }
+    for (int i = 0; i < function.labelBlocks.size(); i++) {
+      if (function.labelBlocks.get(i) < 0) {
+        throw unsupported("undefined label in @" + function.name);
+      }
+    }
+    function = null;
+  }
+
+  private void readInstruction(Line line) {
+    boolean result = line.peek() == '%';
+    String name = null;
+    if (result) {
+      line.pos++;
+      name = localName(line);
+      line.expect("=");
+    }
+    int number = lastNumber;
+    String opcode = line.next();
+    opCount = 0;
+    int code;
+    int type = -1;
+    int index;
+    if ((index = indexOf(BINARY_OPS, opcode)) >= 0) {
+      int flags = 0;
+      while (true) {
+        if (line.accept("nuw")) {
+          flags |= 1;
+        } else if (line.accept("nsw")) {
+          flags |= 2;
+        } else if (line.accept("exact")) {
+          flags |= 1;
+        } else {
+          break;
+        }
+      }
+      code = INST_BINOP;
+      type = parseType(line);
+      op(parseValue(line, type), TYPED);
+      line.expect(",");
+      op(parseValue(line, type), RELATIVE);
+      op(index, LITERAL);
+      if (flags != 0) {
+        op(flags, LITERAL);
+      }
+    } else if ((index = indexOf(CAST_OPS, opcode)) >= 0) {
+      code = INST_CAST;
+      int from = parseType(line);
+      op(parseValue(line, from), TYPED);
+      line.expect("to");
+      type = parseType(line);
+      op(type, LITERAL);
+      op(index, LITERAL);
+    } else if (opcode.equals("icmp")) {
+      code = INST_CMP;
+      int predicate = indexOf(PREDICATES, line.next());
+      if (predicate < 0) {
+        throw unsupported("predicate in: " + line.text());
+      }
+      int operands = parseType(line);
+      op(parseValue(line, operands), TYPED);
+      line.expect(",");
+      op(parseValue(line, operands), RELATIVE);
+      op(32 + predicate, LITERAL);
+      type = i1Type;
+    } else if (opcode.equals("select")) {
+      code = INST_SELECT;
+      int conditionType = parseType(line);
+      long condition = parseValue(line, conditionType);
+      line.expect(",");
+      type = parseType(line);
+      op(parseValue(line, type), TYPED);
+      line.expect(",");
+      parseType(line);
+      op(parseValue(line, type), RELATIVE);
+      op(condition, TYPED);
+    } else if (opcode.equals("phi")) {
+      code = INST_PHI;
+      type = parseType(line);
+      op(type, LITERAL);
+      do {
+        line.expect("[");
+        op(parseValue(line, type), SIGNED);
+        line.expect(",");
+        op(labelOperand(line), BLOCK);
+        line.expect("]");
+      } while (line.accept(","));
+    } else if (opcode.equals("alloca")) {
+      code = INST_ALLOCA;
+      int allocated = parseType(line);
+      int align = align(line, alignments.get(allocated)[1]);
+      op(allocated, LITERAL);
+      op(i32Type, LITERAL);
+      op(constant(i32Type, 1), ABSOLUTE);
+      //The alignment, with the explicit type flag.
+      op((align & 31) | (1 << 6) | ((align >> 5) << 8), LITERAL);
+      type = ptrType;
+    } else if (opcode.equals("load")) {
+      code = INST_LOAD;
+      type = parseType(line);
+      line.expect(",");
+      int pointer = parseType(line);
+      op(parseValue(line, pointer), TYPED);
+      op(type, LITERAL);
+      op(align(line, alignments.get(type)[0]), LITERAL);
+      op(0, LITERAL);
+    } else if (opcode.equals("store")) {
+      code = INST_STORE;
+      int stored = parseType(line);
+      long value = parseValue(line, stored);
+      line.expect(",");
+      int pointer = parseType(line);
+      op(parseValue(line, pointer), TYPED);
+      op(value, TYPED);
+      op(align(line, alignments.get(stored)[0]), LITERAL);
+      op(0, LITERAL);
+    } else if (opcode.equals("atomicrmw")) {
+      code = INST_ATOMICRMW;
+      line.expect("add");
+      int pointer = parseType(line);
+      op(parseValue(line, pointer), TYPED);
+      line.expect(",");
+      type = parseType(line);
+      op(parseValue(line, type), TYPED);
+      //add, not volatile, monotonic, across threads.
+      op(1, LITERAL);
+      op(0, LITERAL);
+      line.expect("monotonic");
+      op(2, LITERAL);
+      op(1, LITERAL);
+      //The alignment is the size of the value by default.
+      op(align(line, (int) types.get(type)[1] / 8), LITERAL);
+    } else if (opcode.equals("getelementptr")) {
+      code = INST_GEP;
+      op(line.accept("inbounds") ? 1 : 0, LITERAL);
+      op(parseType(line), LITERAL);
+      while (line.accept(",")) {
+        int operand = parseType(line);
+        op(parseValue(line, operand), TYPED);
+      }
+      type = ptrType;
+    } else if (opcode.equals("call")) {
+      code = INST_CALL;
+      int returnType = parseType(line);
+      long callee = parseValue(line, ptrType);
+      line.expect("(");
+      List<Integer> params = new ArrayList<Integer>();
+      List<Long> args = new ArrayList<Long>();
+      if (!line.accept(")")) {
+        do {
+          int param = parseType(line);
+          params.add(param);
+          args.add(parseValue(line, param));
+        } while (line.accept(","));
+        line.expect(")");
+      }
+      op(0, LITERAL);
+      op(CALL_EXPLICIT_TYPE, LITERAL);
+      op(functionType(returnType, params), LITERAL);
+      op(callee, TYPED);
+      for (long arg: args) {
+        op(arg, RELATIVE);
+      }
+      type = returnType == voidType ? -1 : returnType;
+    } else if (opcode.equals("br")) {
+      code = INST_BR;
+      if (line.accept("label")) {
+        op(labelOperand(line), BLOCK);
+      } else {
+        long condition = parseValue(line, parseType(line));
+        line.expect(",");
+        line.expect("label");
+        op(labelOperand(line), BLOCK);
+        line.expect(",");
+        line.expect("label");
+        op(labelOperand(line), BLOCK);
+        op(condition, RELATIVE);
+      }
+    } else if (opcode.equals("ret")) {
+      code = INST_RET;
+      int returned = parseType(line);
+      if (returned != voidType) {
+        op(parseValue(line, returned), TYPED);
+      }
+    } else if (opcode.equals("unreachable")) {
+      code = INST_UNREACHABLE;
+    } else {
+      throw unsupported(line.text());
+    }
+    line.end();
+    if (result && type < 0) {
+      throw unsupported("named void value in: " + line.text());
+    }
+    if (type >= 0) {
+      //An unnamed result takes the next number, like in the text.
+      lastNumber = result ? number : unnamedCount;
+      if (name == null) {
+        unnamedCount = lastNumber + 1;
+      }
+      defineLocal(name, type);
+    }
+    function.instructions.add(newRecord(code, type));
+  }
+
+  private static int indexOf(String[] names, String name) {
+    for (int i = 0; i < names.length; i++) {
+      if (names[i].equals(name)) {
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  //The encoded alignment of ", align n", or of the default one.
+  private static int align(Line line, int defaultAlign) {
+    int align = defaultAlign;
+    if (line.accept(",")) {
+      line.expect("align");
+      align = Integer.parseInt(line.next());
+    }
+    return Integer.numberOfTrailingZeros(align) + 1;
+  }
+
+  //The label %name that follows.
+  private int labelOperand(Line line) {
+    String token = line.next();
+    if (token.isEmpty() || token.charAt(0) != '%') {
+      throw unsupported("label '" + token + "' in: " + line.text());
+    }
+    return label(token.substring(1));
+  }
+
+  private int label(String name) {
+    Integer id = labelIds.get(name);
+    if (id == null) {
+      id = function.labelBlocks.size();
+      labelIds.put(name, id);
+      function.labelBlocks.add(-1);
+    }
+    return id;
+  }
+
+  private void op(long value, byte mode) {
+    if (opCount == ops.length) {
+      ops = Arrays.copyOf(ops, 2 * opCount);
+      modes = Arrays.copyOf(modes, 2 * opCount);
+    }
+    ops[opCount] = value;
+    modes[opCount] = mode;
+    opCount++;
+  }
+
+  private Record newRecord(int code, int type) {
+    return newRecord(code, type, Arrays.copyOf(ops, opCount), Arrays.copyOf(modes, opCount));
+  }
+
+  private static Record newRecord(int code, int type, long[] ops, byte[] modes) {
+    Record record = new Record();
+    record.code = code;
+    record.ops = ops;
+    record.modes = modes;
+    record.type = type;
+    return record;
+  }
+
+  //Types.
+
+  private int parseType(Line line) {
+    char c = line.peek();
+    int type;
+    if (c == 'i') {
+      line.pos++;
+      long bits = line.number();
+      if (bits <= 0) {
+        throw unsupported("type in: " + line.text());
+      }
+      type = intType((int) bits);
+    } else if (c == '[') {
+      line.pos++;
+      long length = line.number();
+      if (length < 0) {
+        throw unsupported("array type in: " + line.text());
+      }
+      line.expect("x");
+      int element = parseType(line);
+      line.expect("]");
+      Long key = (length << 20) | element;
+      Integer array = arrayTypes.get(key);
+      if (array == null) {
+        int[] align = alignments.get(element);
+        array = type("[" + length + " x " + element + "]", new long[] {TYPE_ARRAY, length, element}, align[0], align[1]);
+        arrayTypes.put(key, array);
+      }
+      type = array;
+    } else if (line.accept("void")) {
+      type = voidType;
+    } else if (line.accept("ptr")) {
+      type = ptrType;
+    } else {
+      throw unsupported("type in: " + line.text());
+    }
+    while (true) {
+      c = line.peek();
+      if (c == '*') {
+        line.pos++;
+        type = ptrType;
+      } else if (c == '(') {
+        line.pos++;
+        List<Integer> params = new ArrayList<Integer>();
+        if (!line.accept(")")) {
+          do {
+            params.add(parseType(line));
+          } while (line.accept(","));
+          line.expect(")");
+        }
+        type = functionType(type, params);
+      } else {
+        return type;
+      }
+    }
+  }
+
+  //Alignment of the integers in the default data layout: the ABI one of i64 is 4.
+  private int intType(int bits) {
+    if (bits < intTypes.length && intTypes[bits] >= 0) {
+      return intTypes[bits];
+    }
+    int align = bits <= 8 ? 1 : bits <= 16 ? 2 : bits <= 32 ? 4 : 8;
+    int type = type("i" + bits, new long[] {TYPE_INTEGER, bits}, Math.min(align, 4), align);
+    if (bits < intTypes.length) {
+      intTypes[bits] = type;
+    }
+    return type;
+  }
+
+  private int functionType(int returnType, List<Integer> params) {
+    long[] record = new long[3 + params.size()];
+    record[0] = TYPE_FUNCTION;
+    record[1] = 0;
+    record[2] = returnType;
+    StringBuilder key = new StringBuilder("fn " + returnType);
+    for (int i = 0; i < params.size(); i++) {
+      record[3 + i] = params.get(i);
+      key.append(' ').append(params.get(i));
+    }
+    return type(key.toString(), record, 1, 1);
+  }
+
+  private int type(String key, long[] record, int abiAlign, int prefAlign) {
+    Integer id = typeIds.get(key);
+    if (id == null) {
+      id = types.size();
+      typeIds.put(key, id);
+      types.add(record);
+      alignments.add(new int[] {abiAlign, prefAlign});
+    }
+    return id;
+  }
+
+  //Values.
+
+  private long parseValue(Line line, int type) {
+    int start = line.pos;
+    char c = line.peek();
+    if (c == '%') {
+      if (function == null) {
+        throw unsupported("local value outside of a function in: " + line.text());
+      }
+      line.pos++;
+      String name = localName(line);
+      int local = localId(name);
+      if (local >= 0) {
+        return ((long) local << 2) | LOCAL;
+      }
+      pendingNames.add(name);
+      pendingNumbers.add(lastNumber);
+      return ((long) (pendingNames.size() - 1) << 2) | PENDING;
+    } else if (c == '@') {
+      line.pos++;
+      int first = line.pos;
+      line.skipWord();
+      String name = line.code.substring(first, line.pos);
+      Integer symbol = symbolIds.get(name);
+      if (symbol == null) {
+        symbol = symbols.size();
+        symbolIds.put(name, symbol);
+        symbols.add(name);
+      }
+      return ((long) symbol << 2) | GLOBAL;
+    } else if (c == '-' || (c >= '0' && c <= '9')) {
+      long value = line.number();
+      if (value == Long.MIN_VALUE) {
+        throw unsupported("integer in: " + line.text());
+      }
+      return constant(type, value);
+    }
+    String token = line.next();
+    if (token.equals("true") || token.equals("false")) {
+      return constant(type, token.equals("true") ? 1 : 0);
+    } else if (token.equals("null") || token.equals("zeroinitializer")) {
+      return constant(type + " null", type, CST_NULL);
+    } else if (c == 'c' && token.length() > 1 && token.charAt(1) == '"') {
+      return constant(type + " " + token, type, CST_STRING, string(token));
+    } else if (token.equals("getelementptr")) {
+      return constantGep(line, start);
+    }
+    throw unsupported("value '" + token + "' in: " + line.text());
+  }
+
+  //The name of a local value after its %. The numbered values (%0, %1...) are
+  //unnamed, they are found by number.
+  private String localName(Line line) {
+    int first = line.pos;
+    long number = line.number();
+    if (number >= 0 && line.code.charAt(first) != '-') {
+      lastNumber = (int) number;
+      return null;
+    }
+    line.pos = first;
+    line.skipWord();
+    return line.code.substring(first, line.pos);
+  }
+
+  //The local value named name, or numbered lastNumber, -1 if not defined yet.
+  private int localId(String name) {
+    if (name == null) {
+      return lastNumber < numbered.length ? numbered[lastNumber] : -1;
+    }
+    Integer local = localIds.get(name);
+    return local == null ? -1 : local;
+  }
+
+  //Define the next local value of the function, named name or numbered lastNumber.
+  private void defineLocal(String name, int type) {
+    if (localId(name) >= 0) {
+      throw unsupported("%" + (name == null ? Integer.toString(lastNumber) : name) + " defined twice in @"
+      + function.name);
+    }
+    int local = function.localTypes.size();
+    if (name == null) {
+      if (lastNumber >= numbered.length) {
+        int length = numbered.length;
+        numbered = Arrays.copyOf(numbered, Math.max(2 * length, lastNumber + 1));
+        Arrays.fill(numbered, length, numbered.length, -1);
+      }
+      numbered[lastNumber] = local;
+    } else {
+      localIds.put(name, local);
+    }
+    function.localTypes.add(type);
+    function.localNames.add(name);
+  }
+
+  //An integer of a type, sign extended from its width.
+  private long constant(int type, long value) {
+    if (types.get(type)[0] != TYPE_INTEGER) {
+      throw unsupported("integer of type " + type);
+    }
+    int bits = (int) types.get(type)[1];
+    if (bits < 64) {
+      value = (value << (64 - bits)) >> (64 - bits);
+    }
+    while (integerIds.size() <= type) {
+      integerIds.add(null);
+    }
+    Map<Long, Integer> ids = integerIds.get(type);
+    if (ids == null) {
+      ids = new HashMap<Long, Integer>();
+      integerIds.set(type, ids);
+    }
+    Integer id = ids.get(value);
+    if (id == null) {
+      id = constants.size();
+      ids.put(value, id);
+      long encoded = value >= 0 ? value << 1 : (-value << 1) | 1;
+      constants.add(newRecord(CST_INTEGER, type, new long[] {encoded}, new byte[1]));
+    }
+    return ((long) id << 2) | CONSTANT;
+  }
+
+  private long constant(String key, int type, int code, long... values) {
+    Integer id = constantIds.get(key);
+    if (id == null) {
+      id = constants.size();
+      constantIds.put(key, id);
+      constants.add(newRecord(code, type, values, new byte[values.length]));
+    }
+    return ((long) id << 2) | CONSTANT;
+  }
+
+  //getelementptr inbounds (type, ptr base, type index, ...), the base itself when
+  //all the indexes are 0 like llvm-as folds it.
+  private long constantGep(Line line, int start) {
+    if (!line.accept("inbounds")) {
+      throw unsupported("getelementptr without inbounds in: " + line.text());
+    }
+    line.expect("(");
+    List<Long> values = new ArrayList<Long>();
+    values.add((long) parseType(line));
+    line.expect(",");
+    int baseType = parseType(line);
+    long base = parseValue(line, baseType);
+    values.add((long) baseType);
+    values.add(base);
+    boolean zeros = true;
+    while (line.accept(",")) {
+      int indexType = parseType(line);
+      long index = parseValue(line, indexType);
+      values.add((long) indexType);
+      values.add(index);
+      Record indexRecord = (index & 3) == CONSTANT ? constants.get((int) (index >> 2)) : null;
+      zeros &= indexRecord != null && indexRecord.code == CST_INTEGER && indexRecord.ops[0] == 0;
+    }
+    line.expect(")");
+    if (zeros) {
+      return base;
+    }
+    String key = line.code.substring(start, line.pos).trim();
+    Integer id = constantIds.get(key);
+    if (id == null) {
+      long[] gep = new long[values.size()];
+      byte[] gepModes = new byte[gep.length];
+      for (int i = 0; i < gep.length; i++) {
+        gep[i] = values.get(i);
+        gepModes[i] = i > 0 && i % 2 == 0 ? ABSOLUTE : LITERAL;
+      }
+      id = constants.size();
+      constantIds.put(key, id);
+      constants.add(newRecord(CST_INBOUNDS_GEP, ptrType, gep, gepModes));
+    }
+    return ((long) id << 2) | CONSTANT;
+  }
+
+  //The bytes of c"...", with the \XX escapes.
+  private static long[] string(String token) {
+    long[] chars = new long[token.length()];
+    int count = 0;
+    for (int i = 2; i < token.length() - 1; i++) {
+      char c = token.charAt(i);
+      if (c == '\\') {
+        chars[count++] = Integer.parseInt(token.substring(i + 1, i + 3), 16);
+        i += 2;
+      } else {
+        chars[count++] = c & 0xFF;
+      }
+    }
+    return Arrays.copyOf(chars, count);
+  }
+
+  //Writing the bitcode.
+
+  /** The bitcode of the module, as a .bc file holds it.
+  */
+  public byte[] toBitcode() {
+    bytes = new byte[1 << 16];
+    size = 0;
+    bits = 0;
+    bitCount = 0;
+    width = 2;
+    constantBase = globals.size() + functions.size();
+    moduleValues = constantBase + constants.size();
+    symbolValues = new int[symbols.size()];
+    for (int i = 0; i < symbols.size(); i++) {
+      Integer global = globalIndexes.get(symbols.get(i));
+      Integer called = functionIndexes.get(symbols.get(i));
+      if (global == null && called == null) {
+        throw unsupported("undefined @" + symbols.get(i));
+      }
+      symbolValues[i] = global != null ? global : globals.size() + called;
+    }
+    StringBuilder strtab = new StringBuilder();
+
+    for (char c: "BC".toCharArray()) {
+      emit(c, 8);
+    }
+    emit(0x0, 4);
+    emit(0xC, 4);
+    emit(0xE, 4);
+    emit(0xD, 4);
+    enterBlock(MODULE_BLOCK, 3);
+    writeRecord(MODULE_VERSION, 2);
+
+    boolean noInline = false;
+    for (Function read: functions) {
+      noInline |= read.noInline;
+    }
+    if (noInline) {
+      enterBlock(PARAMATTR_GROUP_BLOCK, 3);
+      writeRecord(PARAMATTR_GROUP_ENTRY, 1, FUNCTION_INDEX, 0, ATTR_NO_INLINE);
+      exitBlock();
+      enterBlock(PARAMATTR_BLOCK, 3);
+      writeRecord(PARAMATTR_ENTRY, 1);
+      exitBlock();
+    }
+
+    enterBlock(TYPE_BLOCK, 4);
+    writeRecord(TYPE_NUMENTRY, types.size());
+    for (long[] type: types) {
+      writeRecord((int) type[0], Arrays.copyOfRange(type, 1, type.length));
+    }
+    exitBlock();
+
+    for (Global global: globals) {
+      long[] record = new long[global.unnamedAddr ? 11 : 8];
+      record[0] = strtab.length();
+      record[1] = global.name.length();
+      record[2] = global.type;
+      record[3] = global.constant ? 3 : 2;
+      record[4] = constantBase + (global.init >> 2) + 1;
+      record[5] = global.linkage;
+      record[6] = global.align == 0 ? 0 : Integer.numberOfTrailingZeros(global.align) + 1;
+      if (global.unnamedAddr) {
+        record[10] = 1;
+      }
+      strtab.append(global.name);
+      writeRecord(MODULE_GLOBALVAR, record);
+    }
+    for (Function read: functions) {
+      strtab.append(read.name);
+      writeRecord(MODULE_FUNCTION, strtab.length() - read.name.length(), read.name.length(), read.type, 0,
+      read.declaration ? 1 : 0, read.linkage, read.noInline ? 1 : 0, 0, 0, 0);
+    }
+
+    enterBlock(CONSTANTS_BLOCK, 4);
+    int currentType = -1;
+    for (Record constant: constants) {
+      if (constant.type != currentType) {
+        currentType = constant.type;
+        writeRecord(CST_SETTYPE, currentType);
+      }
+      writeRecord(constant, 0);
+    }
+    exitBlock();
+
+    for (Function read: functions) {
+      if (!read.declaration) {
+        writeFunction(read);
+      }
+    }
+    exitBlock();
+
+    enterBlock(STRTAB_BLOCK, 3);
+    //Abbreviation 4: the literal code STRTAB_BLOB and a blob.
+    emit(2, width);
+    emitVbr(2, 5);
+    emit(1, 1);
+    emitVbr(STRTAB_BLOB, 8);
+    emit(0, 1);
+    emit(5, 3);
+    byte[] names = strtab.toString().getBytes(StandardCharsets.UTF_8);
+    emit(4, width);
+    emitVbr(names.length, 6);
+    align32();
+    for (byte b: names) {
+      emit(b & 0xFF, 8);
+    }
+    align32();
+    exitBlock();
+    return Arrays.copyOf(bytes, size);
+  }
+
+  private void writeFunction(Function read) {
+    enterBlock(FUNCTION_BLOCK, 4);
+    writeRecord(INST_DECLAREBLOCKS, read.blockNames.size());
+    writing = read;
+    labelBlocks = new int[read.labelBlocks.size()];
+    for (int i = 0; i < labelBlocks.length; i++) {
+      labelBlocks[i] = read.labelBlocks.get(i);
+    }
+    int next = moduleValues + read.argumentCount;
+    for (Record instruction: read.instructions) {
+      writeRecord(instruction, next);
+      if (instruction.type >= 0) {
+        next++;
+      }
+    }
+    boolean named = false;
+    for (int i = 0; i < read.localNames.size() && !named; i++) {
+      named = read.localNames.get(i) != null;
+    }
+    for (int i = 0; i < read.blockNames.size() && !named; i++) {
+      named = read.blockNames.get(i) != null;
+    }
+    if (named) {
+      enterBlock(VALUE_SYMTAB_BLOCK, 4);
+      for (int i = 0; i < read.localNames.size(); i++) {
+        if (read.localNames.get(i) != null) {
+          writeName(VST_ENTRY, moduleValues + i, read.localNames.get(i));
+        }
+      }
+      for (int i = 0; i < read.blockNames.size(); i++) {
+        if (read.blockNames.get(i) != null) {
+          writeName(VST_BBENTRY, i, read.blockNames.get(i));
+        }
+      }
+      exitBlock();
+    }
+    writing = null;
+    exitBlock();
+  }
+
+  private void writeName(int code, long id, String name) {
+    long[] record = new long[1 + name.length()];
+    record[0] = id;
+    for (int i = 0; i < name.length(); i++) {
+      record[1 + i] = name.charAt(i) & 0xFF;
+    }
+    writeRecord(code, record);
+  }
+
+  //Write a record, numbering its operands for an instruction of the function
+  //being written that defines the value next (0 for a constant).
+  private void writeRecord(Record record, int next) {
+    opCount = 0;
+    for (int i = 0; i < record.ops.length; i++) {
+      byte mode = record.modes[i];
+      long op = record.ops[i];
+      if (mode == LITERAL) {
+        op(op, LITERAL);
+      } else if (mode == BLOCK) {
+        op(labelBlocks[(int) op], LITERAL);
+      } else {
+        int kind = (int) (op & 3);
+        int index = (int) (op >> 2);
+        long id = kind == CONSTANT ? constantBase + index : kind == GLOBAL ? symbolValues[index] : moduleValues + index;
+        if (mode == ABSOLUTE) {
+          op(id, LITERAL);
+        } else if (mode == SIGNED) {
+          long delta = next - id;
+          op(delta >= 0 ? delta << 1 : (-delta << 1) | 1, LITERAL);
+        } else {
+          op((next - id) & 0xFFFFFFFFL, LITERAL);
+          if (mode == TYPED && id >= next) {
+            op(writing.localTypes.get(index), LITERAL);
+          }
+        }
+      }
+    }
+    emit(3, width);
+    emitVbr(record.code, 6);
+    emitVbr(opCount, 6);
+    for (int i = 0; i < opCount; i++) {
+      emitVbr(ops[i], 6);
+    }
+  }
+
+  //An unabbreviated record.
+  private void writeRecord(int code, long... values) {
+    emit(3, width);
+    emitVbr(code, 6);
+    emitVbr(values.length, 6);
+    for (long value: values) {
+      emitVbr(value, 6);
+    }
+  }
+
+  private void enterBlock(int id, int newWidth) {
+    emit(1, width);
+    emitVbr(id, 8);
+    emitVbr(newWidth, 4);
+    align32();
+    blocks.add(new int[] {size, width});
+    emit(0, 32);
+    width = newWidth;
+  }
+
+  //End the block and write its length in words before its content.
+  private void exitBlock() {
+    emit(0, width);
+    align32();
+    int[] block = blocks.remove(blocks.size() - 1);
+    int words = (size - block[0] - 4) / 4;
+    for (int i = 0; i < 4; i++) {
+      bytes[block[0] + i] = (byte) (words >>> (8 * i));
+    }
+    width = block[1];
+  }
+
+  //Bits are written from the least significant one, in little endian words.
+  private void emit(long value, int count) {
+    bits |= value << bitCount;
+    bitCount += count;
+    if (bitCount >= 32) {
+      word((int) bits);
+      bits >>>= 32;
+      bitCount -= 32;
+    }
+  }
+
+  private void emitVbr(long value, int count) {
+    long threshold = 1L << (count - 1);
+    while (Long.compareUnsigned(value, threshold) >= 0) {
+      emit((value & (threshold - 1)) | threshold, count);
+      value >>>= count - 1;
+    }
+    emit(value, count);
+  }
+
+  private void align32() {
+    if (bitCount > 0) {
+      word((int) bits);
+      bits = 0;
+      bitCount = 0;
+    }
+  }
+
+  private void word(int word) {
+    if (size + 4 > bytes.length) {
+      bytes = Arrays.copyOf(bytes, 2 * bytes.length);
+    }
+    bytes[size++] = (byte) word;
+    bytes[size++] = (byte) (word >>> 8);
+    bytes[size++] = (byte) (word >>> 16);
+    bytes[size++] = (byte) (word >>> 24);
+  }
+}
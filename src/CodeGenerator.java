@@ -1,7 +1,20 @@
 import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Collections;
 import java.io.FileReader;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 
 /** Class that generate the IR code based on the AST received from the parser.
 * It returns a string, that can be printed on the console or written in a file.
@@ -14,30 +27,480 @@ public class CodeGenerator {
   private int count;
   private int nestedLoop;
   private int nestedIf;
+  private LinkedHashMap<String, Integer> arrays;
+  private boolean boundsCheck;
+  private int boundsCount;
+  private Set<AbstractSyntaxTree> checkedIndexes;
+  private String entryCode;
+  private String globalCode;
+  private int parCount;
+  private boolean inParallel;
+  private int outlineSize;
+  private boolean outlining;
+  private int outlineCount;
+  private int unrollFactor;
+  //Statements that the copies of the body of the FOR being unrolled can take.
+  private int unrollBudget;
+  private long evalBudget;
+  private String profileFile;
+  private long[] profile;
+  private int branchCount;
+  private String profileMetadata;
+  //Warnings found while generating, printed by Main and returned as diagnostics by
+  //a CompilerSession.
+  private List<String> warnings;
+  //Work of generateCode() left to do, the next one last: statements and blocks to
+  //generate, text to append to the output and steps to run.
+  private List<Object> work;
+  //Where the steps write the code, the body of a PARFOR going to its own function.
+  private StringBuilder output;
+  //Number of each statement in its markers, null when the statements are not marked.
+  private Map<AbstractSyntaxTree, Integer> statementNumbers;
 
-  //Function used to print on stdout
+  //Maximum number of values written by one call to @printInts.
+  private static final int PRINT_BATCH = 16;
+
+  //Maximum number of threads running a PARFOR, hence of chunks of its range.
+  private static final int MAX_THREADS = 64;
+
+  //Largest branch weight, the weights of LLVM are 32 bits.
+  private static final long MAX_WEIGHT = 0xFFFFFFFFL;
+
+  //Copies of a FOR body made by the unrolling unless set, and the largest number of
+  //statements of the copies of a body, shared by the loops nested in it.
+  private static final int DEFAULT_UNROLL = 4;
+  private static final int UNROLL_BUDGET = 64;
+
+  //Version of the branches counted by a profile, changed with the code of the
+  //branches: 2 since a loop tests its condition once.
+  private static final int BRANCH_LAYOUT = 2;
+
+  //Functions used to print on stdout. The integers are formatted by hand in a
+  //static buffer that is handed to write(2) when it is full or when the program
+  //ends (explicitly at the end of main and through atexit for any other exit).
   private String printFunction = (
-  "@.strP = private unnamed_addr constant [4 x i8] c\"%d\\0A\\00\", align 1\n"
+  "@.outBuf = internal global [65536 x i8] zeroinitializer, align 16\n"
+  + "@.outPos = internal global i32 0, align 4\n"
+  + "@.printArgs = internal global [" + PRINT_BATCH + " x i32] zeroinitializer, align 16\n"
+  + "define void @flushOut() {\n"
+  + "entry:\n"
+  + "%pos = load i32, i32* @.outPos, align 4\n"
+  + "br label %loop\n"
+  + "loop:\n"
+  + "%done = phi i32 [ 0, %entry ], [ %next, %wrote ]\n"
+  + "%more = icmp slt i32 %done, %pos\n"
+  + "br i1 %more, label %write, label %end\n"
+  + "write:\n"
+  + "%ptr = getelementptr inbounds [65536 x i8], [65536 x i8]* @.outBuf, i32 0, i32 %done\n"
+  + "%left = sub i32 %pos, %done\n"
+  + "%len = sext i32 %left to i64\n"
+  + "%n = call i64 @write(i32 1, i8* %ptr, i64 %len)\n"
+  + "%ok = icmp sgt i64 %n, 0\n"
+  + "br i1 %ok, label %wrote, label %end\n"
+  + "wrote:\n"
+  + "%n32 = trunc i64 %n to i32\n"
+  + "%next = add i32 %done, %n32\n"
+  + "br label %loop\n"
+  + "end:\n"
+  + "store i32 0, i32* @.outPos, align 4\n"
+  + "ret void\n"
+  + "}\n"
   + "define void @println(i32 %x) {\n"
-  + "%1 = alloca i32, align 4\n"
-  + "store i32 %x, i32* %1, align 4\n"
-  + "%2 = load i32, i32* %1, align 4\n"
-  + "%3 = call i32 (i8*, ...) @printf(i8* getelementptr inbounds ([4 x i8], [4 x i8]* @.strP, i32 0, i32 0), i32 %2)\n"
+  + "entry:\n"
+  + "%pos0 = load i32, i32* @.outPos, align 4\n"
+  + "%full = icmp sgt i32 %pos0, 65524\n"
+  + "br i1 %full, label %flush, label %format\n"
+  + "flush:\n"
+  + "call void @flushOut()\n"
+  + "br label %format\n"
+  + "format:\n"
+  + "%pos = phi i32 [ %pos0, %entry ], [ 0, %flush ]\n"
+  + "%wide = sext i32 %x to i64\n"
+  + "%neg = icmp slt i64 %wide, 0\n"
+  + "%negated = sub i64 0, %wide\n"
+  + "%mag = select i1 %neg, i64 %negated, i64 %wide\n"
+  + "%sign = zext i1 %neg to i32\n"
+  + "br label %count\n"
+  + "count:\n"
+  + "%digits = phi i32 [ 1, %format ], [ %digits1, %count ]\n"
+  + "%rest = phi i64 [ %mag, %format ], [ %rest1, %count ]\n"
+  + "%rest1 = udiv i64 %rest, 10\n"
+  + "%digits1 = add i32 %digits, 1\n"
+  + "%more = icmp uge i64 %rest, 10\n"
+  + "br i1 %more, label %count, label %minus\n"
+  + "minus:\n"
+  + "%minusPtr = getelementptr inbounds [65536 x i8], [65536 x i8]* @.outBuf, i32 0, i32 %pos\n"
+  + "store i8 45, i8* %minusPtr, align 1\n"
+  + "%start = add i32 %pos, %sign\n"
+  + "%end = add i32 %start, %digits\n"
+  + "br label %emit\n"
+  + "emit:\n"
+  + "%idx = phi i32 [ %end, %minus ], [ %idx1, %emit ]\n"
+  + "%val = phi i64 [ %mag, %minus ], [ %val1, %emit ]\n"
+  + "%idx1 = sub i32 %idx, 1\n"
+  + "%val1 = udiv i64 %val, 10\n"
+  + "%digit = urem i64 %val, 10\n"
+  + "%digit8 = trunc i64 %digit to i8\n"
+  + "%char = add i8 %digit8, 48\n"
+  + "%charPtr = getelementptr inbounds [65536 x i8], [65536 x i8]* @.outBuf, i32 0, i32 %idx1\n"
+  + "store i8 %char, i8* %charPtr, align 1\n"
+  + "%left = icmp ugt i32 %idx1, %start\n"
+  + "br i1 %left, label %emit, label %newline\n"
+  + "newline:\n"
+  + "%nlPtr = getelementptr inbounds [65536 x i8], [65536 x i8]* @.outBuf, i32 0, i32 %end\n"
+  + "store i8 10, i8* %nlPtr, align 1\n"
+  + "%pos1 = add i32 %end, 1\n"
+  + "store i32 %pos1, i32* @.outPos, align 4\n"
+  + "ret void\n"
+  + "}\n"
+  + "define void @printInts(i32 %n, i32* %values) {\n"
+  + "entry:\n"
+  + "br label %loop\n"
+  + "loop:\n"
+  + "%i = phi i32 [ 0, %entry ], [ %i1, %body ]\n"
+  + "%more = icmp slt i32 %i, %n\n"
+  + "br i1 %more, label %body, label %end\n"
+  + "body:\n"
+  + "%ptr = getelementptr inbounds i32, i32* %values, i32 %i\n"
+  + "%v = load i32, i32* %ptr, align 4\n"
+  + "call void @println(i32 %v)\n"
+  + "%i1 = add i32 %i, 1\n"
+  + "br label %loop\n"
+  + "end:\n"
   + "ret void\n"
   + "}\n"
-  + "declare i32 @printf(i8*, ...)\n"
+  + "declare i64 @write(i32, i8*, i64)\n"
+  + "declare i32 @atexit(void ()*)\n"
   );
 
-  //Function used to read on stdin
+  //Functions used to read on stdin. The input is read by blocks with read(2)
+  //and the integers are parsed by hand. Blanks (space, tab, line feed, vertical tab,
+  //form feed, carriage return) separate the values, a value is an optional sign
+  //followed by decimal digits.
+  //Reaching the end of the input before a value ends the program with status 1,
+  //a malformed or out of range value ends it with status 2. In both cases the
+  //pending output is flushed and a message is written on stderr.
   private String readFunction = (
-  "@.strR = private unnamed_addr constant [3 x i8] c\"%d\\00\", align 1\n"
+  "@.inBuf = internal global [65536 x i8] zeroinitializer, align 16\n"
+  + "@.inPos = internal global i32 0, align 4\n"
+  + "@.inLen = internal global i32 0, align 4\n"
+  + "@.readArgs = internal global [" + PRINT_BATCH + " x i32] zeroinitializer, align 16\n"
+  + "@.errEof = private unnamed_addr constant [30 x i8] c\"READ: unexpected end of input\\0A\", align 1\n"
+  + "@.errNum = private unnamed_addr constant [24 x i8] c\"READ: malformed integer\\0A\", align 1\n"
+  + "@.errRange = private unnamed_addr constant [27 x i8] c\"READ: integer out of range\\0A\", align 1\n"
+  + "define i32 @peekIn() {\n"
+  + "entry:\n"
+  + "%pos = load i32, i32* @.inPos, align 4\n"
+  + "%len = load i32, i32* @.inLen, align 4\n"
+  + "%has = icmp slt i32 %pos, %len\n"
+  + "br i1 %has, label %ready, label %fill\n"
+  + "fill:\n"
+  + "call void @flushOut()\n"
+  + "%n = call i64 @read(i32 0, i8* getelementptr inbounds ([65536 x i8], [65536 x i8]* @.inBuf, i32 0, i32 0), i64 65536)\n"
+  + "store i32 0, i32* @.inPos, align 4\n"
+  + "%got = icmp sgt i64 %n, 0\n"
+  + "br i1 %got, label %filled, label %eof\n"
+  + "filled:\n"
+  + "%n32 = trunc i64 %n to i32\n"
+  + "store i32 %n32, i32* @.inLen, align 4\n"
+  + "br label %ready\n"
+  + "eof:\n"
+  + "store i32 0, i32* @.inLen, align 4\n"
+  + "ret i32 -1\n"
+  + "ready:\n"
+  + "%at = phi i32 [ %pos, %entry ], [ 0, %filled ]\n"
+  + "%ptr = getelementptr inbounds [65536 x i8], [65536 x i8]* @.inBuf, i32 0, i32 %at\n"
+  + "%c = load i8, i8* %ptr, align 1\n"
+  + "%c32 = zext i8 %c to i32\n"
+  + "ret i32 %c32\n"
+  + "}\n"
+  + "define void @readFail(i8* %msg, i64 %len, i32 %status) {\n"
+  + "call void @flushOut()\n"
+  + "%1 = call i64 @write(i32 2, i8* %msg, i64 %len)\n"
+  + "call void @exit(i32 %status)\n"
+  + "unreachable\n"
+  + "}\n"
   + "define i32 @readInt() {\n"
-  + "%x = alloca i32, align 4\n"
-  + "%1 = call i32 (i8*, ...) @__isoc99_scanf(i8* getelementptr inbounds ([3 x i8], [3 x i8]* @.strR, i32 0, i32 0), i32* %x)\n"
-  + "%2 = load i32, i32* %x, align 4\n"
-  + "ret i32 %2\n"
+  + "entry:\n"
+  + "br label %skip\n"
+  + "skip:\n"
+  + "%c = call i32 @peekIn()\n"
+  + "%space = icmp eq i32 %c, 32\n"
+  + "%ctl = sub i32 %c, 9\n"
+  + "%ctlSpace = icmp ult i32 %ctl, 5\n"
+  + "%blank = or i1 %space, %ctlSpace\n"
+  + "br i1 %blank, label %skipNext, label %notBlank\n"
+  + "skipNext:\n"
+  + "%pos = load i32, i32* @.inPos, align 4\n"
+  + "%pos1 = add i32 %pos, 1\n"
+  + "store i32 %pos1, i32* @.inPos, align 4\n"
+  + "br label %skip\n"
+  + "notBlank:\n"
+  + "%atEof = icmp slt i32 %c, 0\n"
+  + "br i1 %atEof, label %eof, label %sign\n"
+  + "sign:\n"
+  + "%minus = icmp eq i32 %c, 45\n"
+  + "%plus = icmp eq i32 %c, 43\n"
+  + "%signed = or i1 %minus, %plus\n"
+  + "br i1 %signed, label %signNext, label %first\n"
+  + "signNext:\n"
+  + "%spos = load i32, i32* @.inPos, align 4\n"
+  + "%spos1 = add i32 %spos, 1\n"
+  + "store i32 %spos1, i32* @.inPos, align 4\n"
+  + "%sc = call i32 @peekIn()\n"
+  + "br label %first\n"
+  + "first:\n"
+  + "%fc = phi i32 [ %c, %sign ], [ %sc, %signNext ]\n"
+  + "%fd = sub i32 %fc, 48\n"
+  + "%fdigit = icmp ult i32 %fd, 10\n"
+  + "br i1 %fdigit, label %digits, label %malformed\n"
+  + "digits:\n"
+  + "%val = phi i64 [ 0, %first ], [ %val1, %digitsNext ]\n"
+  + "%d = phi i32 [ %fd, %first ], [ %nd, %digitsNext ]\n"
+  + "%d64 = zext i32 %d to i64\n"
+  + "%val10 = mul i64 %val, 10\n"
+  + "%val1 = add i64 %val10, %d64\n"
+  + "%dpos = load i32, i32* @.inPos, align 4\n"
+  + "%dpos1 = add i32 %dpos, 1\n"
+  + "store i32 %dpos1, i32* @.inPos, align 4\n"
+  + "%tooBig = icmp ugt i64 %val1, 2147483648\n"
+  + "br i1 %tooBig, label %range, label %digitsMore\n"
+  + "digitsMore:\n"
+  + "%nc = call i32 @peekIn()\n"
+  + "%nd = sub i32 %nc, 48\n"
+  + "%ndigit = icmp ult i32 %nd, 10\n"
+  + "br i1 %ndigit, label %digitsNext, label %end\n"
+  + "digitsNext:\n"
+  + "br label %digits\n"
+  + "end:\n"
+  + "%endSpace = icmp eq i32 %nc, 32\n"
+  + "%endCtl = sub i32 %nc, 9\n"
+  + "%endCtlSpace = icmp ult i32 %endCtl, 5\n"
+  + "%endEof = icmp slt i32 %nc, 0\n"
+  + "%endBlank = or i1 %endSpace, %endCtlSpace\n"
+  + "%endOk = or i1 %endBlank, %endEof\n"
+  + "br i1 %endOk, label %value, label %malformed\n"
+  + "value:\n"
+  + "%negated = sub i64 0, %val1\n"
+  + "%result = select i1 %minus, i64 %negated, i64 %val1\n"
+  + "%overflow = icmp sgt i64 %result, 2147483647\n"
+  + "br i1 %overflow, label %range, label %done\n"
+  + "done:\n"
+  + "%result32 = trunc i64 %result to i32\n"
+  + "ret i32 %result32\n"
+  + "eof:\n"
+  + "call void @readFail(i8* getelementptr inbounds ([30 x i8], [30 x i8]* @.errEof, i32 0, i32 0), i64 30, i32 1)\n"
+  + "unreachable\n"
+  + "malformed:\n"
+  + "call void @readFail(i8* getelementptr inbounds ([24 x i8], [24 x i8]* @.errNum, i32 0, i32 0), i64 24, i32 2)\n"
+  + "unreachable\n"
+  + "range:\n"
+  + "call void @readFail(i8* getelementptr inbounds ([27 x i8], [27 x i8]* @.errRange, i32 0, i32 0), i64 27, i32 2)\n"
+  + "unreachable\n"
+  + "}\n"
+  + "define void @readInts(i32 %n, i32* %values) {\n"
+  + "entry:\n"
+  + "br label %loop\n"
+  + "loop:\n"
+  + "%i = phi i32 [ 0, %entry ], [ %i1, %body ]\n"
+  + "%more = icmp slt i32 %i, %n\n"
+  + "br i1 %more, label %body, label %end\n"
+  + "body:\n"
+  + "%v = call i32 @readInt()\n"
+  + "%ptr = getelementptr inbounds i32, i32* %values, i32 %i\n"
+  + "store i32 %v, i32* %ptr, align 4\n"
+  + "%i1 = add i32 %i, 1\n"
+  + "br label %loop\n"
+  + "end:\n"
+  + "ret void\n"
+  + "}\n"
+  + "declare i64 @read(i32, i8*, i64)\n"
+  + "declare void @exit(i32)\n"
+  );
+
+  //Function called when an array index is out of bounds.
+  private String boundsFunction = (
+  "@.errBounds = private unnamed_addr constant [26 x i8] c\"Array index out of bounds\\0A\", align 1\n"
+  + "define void @boundsFail() {\n"
+  + "call void @flushOut()\n"
+  + "%1 = call i64 @write(i32 2, i8* getelementptr inbounds ([26 x i8], [26 x i8]* @.errBounds, i32 0, i32 0), i64 26)\n"
+  + "call void @exit(i32 3)\n"
+  + "unreachable\n"
   + "}\n"
-  + "declare i32 @__isoc99_scanf(i8*, ...)\n"
+  );
+
+  //Thread pool used by PARFOR. The worker threads are started at the first
+  //PARFOR, one per core (or SF_THREADS) minus the main thread, and wait for work
+  //on a condition variable. @parallelFor splits a range in one chunk per thread,
+  //runs the first one itself and waits for the others. The mutex and condition
+  //variables are zero initialized, which is their static initializer in glibc.
+  private String parallelFunction = (
+  "@.poolMutex = internal global [40 x i8] zeroinitializer, align 8\n"
+  + "@.poolWork = internal global [48 x i8] zeroinitializer, align 8\n"
+  + "@.poolDone = internal global [48 x i8] zeroinitializer, align 8\n"
+  + "@.poolSize = internal global i32 -1, align 4\n"
+  + "@.poolGeneration = internal global i32 0, align 4\n"
+  + "@.poolPending = internal global i32 0, align 4\n"
+  + "@.poolBody = internal global void (i8*, i32, i32, i32)* null, align 8\n"
+  + "@.poolContext = internal global i8* null, align 8\n"
+  + "@.poolFrom = internal global i32 0, align 4\n"
+  + "@.poolTo = internal global i32 0, align 4\n"
+  + "@.poolChunks = internal global i32 1, align 4\n"
+  + "@.envThreads = private unnamed_addr constant [11 x i8] c\"SF_THREADS\\00\", align 1\n"
+  + "define internal void @runChunk(i32 %chunk) {\n"
+  + "%body = load void (i8*, i32, i32, i32)*, void (i8*, i32, i32, i32)** @.poolBody, align 8\n"
+  + "%ctx = load i8*, i8** @.poolContext, align 8\n"
+  + "%from = load i32, i32* @.poolFrom, align 4\n"
+  + "%to = load i32, i32* @.poolTo, align 4\n"
+  + "%chunks = load i32, i32* @.poolChunks, align 4\n"
+  + "%from64 = sext i32 %from to i64\n"
+  + "%to64 = sext i32 %to to i64\n"
+  + "%chunks64 = sext i32 %chunks to i64\n"
+  + "%len = sub i64 %to64, %from64\n"
+  + "%k = sext i32 %chunk to i64\n"
+  + "%k1 = add i64 %k, 1\n"
+  + "%startOff = mul i64 %len, %k\n"
+  + "%start = sdiv i64 %startOff, %chunks64\n"
+  + "%endOff = mul i64 %len, %k1\n"
+  + "%end = sdiv i64 %endOff, %chunks64\n"
+  + "%lo64 = add i64 %from64, %start\n"
+  + "%hi64 = add i64 %from64, %end\n"
+  + "%lo = trunc i64 %lo64 to i32\n"
+  + "%hi = trunc i64 %hi64 to i32\n"
+  + "call void %body(i8* %ctx, i32 %chunk, i32 %lo, i32 %hi)\n"
+  + "ret void\n"
+  + "}\n"
+  + "define internal i8* @poolWorker(i8* %arg) {\n"
+  + "entry:\n"
+  + "%seen = alloca i32, align 4\n"
+  + "store i32 0, i32* %seen, align 4\n"
+  + "%index = ptrtoint i8* %arg to i32\n"
+  + "%chunk = add i32 %index, 1\n"
+  + "br label %wait\n"
+  + "wait:\n"
+  + "%0 = call i32 @pthread_mutex_lock(i8* getelementptr inbounds ([40 x i8], [40 x i8]* @.poolMutex, i32 0, i32 0))\n"
+  + "br label %check\n"
+  + "check:\n"
+  + "%gen = load i32, i32* @.poolGeneration, align 4\n"
+  + "%last = load i32, i32* %seen, align 4\n"
+  + "%idle = icmp eq i32 %gen, %last\n"
+  + "br i1 %idle, label %sleep, label %run\n"
+  + "sleep:\n"
+  + "%1 = call i32 @pthread_cond_wait(i8* getelementptr inbounds ([48 x i8], [48 x i8]* @.poolWork, i32 0, i32 0), i8* getelementptr inbounds ([40 x i8], [40 x i8]* @.poolMutex, i32 0, i32 0))\n"
+  + "br label %check\n"
+  + "run:\n"
+  + "store i32 %gen, i32* %seen, align 4\n"
+  + "%2 = call i32 @pthread_mutex_unlock(i8* getelementptr inbounds ([40 x i8], [40 x i8]* @.poolMutex, i32 0, i32 0))\n"
+  + "call void @runChunk(i32 %chunk)\n"
+  + "%3 = call i32 @pthread_mutex_lock(i8* getelementptr inbounds ([40 x i8], [40 x i8]* @.poolMutex, i32 0, i32 0))\n"
+  + "%pending = load i32, i32* @.poolPending, align 4\n"
+  + "%pending1 = sub i32 %pending, 1\n"
+  + "store i32 %pending1, i32* @.poolPending, align 4\n"
+  + "%finished = icmp eq i32 %pending1, 0\n"
+  + "br i1 %finished, label %signal, label %release\n"
+  + "signal:\n"
+  + "%4 = call i32 @pthread_cond_signal(i8* getelementptr inbounds ([48 x i8], [48 x i8]* @.poolDone, i32 0, i32 0))\n"
+  + "br label %release\n"
+  + "release:\n"
+  + "%5 = call i32 @pthread_mutex_unlock(i8* getelementptr inbounds ([40 x i8], [40 x i8]* @.poolMutex, i32 0, i32 0))\n"
+  + "br label %wait\n"
+  + "}\n"
+  + "define internal void @startPool() {\n"
+  + "entry:\n"
+  + "%thread = alloca i64, align 8\n"
+  + "%env = call i8* @getenv(i8* getelementptr inbounds ([11 x i8], [11 x i8]* @.envThreads, i32 0, i32 0))\n"
+  + "%hasEnv = icmp ne i8* %env, null\n"
+  + "br i1 %hasEnv, label %fromEnv, label %fromCpus\n"
+  + "fromEnv:\n"
+  + "%envCount = call i32 @atoi(i8* %env)\n"
+  + "br label %pick\n"
+  + "fromCpus:\n"
+  + "%cpus = call i64 @sysconf(i32 84)\n"
+  + "%cpuCount = trunc i64 %cpus to i32\n"
+  + "br label %pick\n"
+  + "pick:\n"
+  + "%wanted = phi i32 [ %envCount, %fromEnv ], [ %cpuCount, %fromCpus ]\n"
+  + "%tooLow = icmp slt i32 %wanted, 1\n"
+  + "%atLeastOne = select i1 %tooLow, i32 1, i32 %wanted\n"
+  + "%tooHigh = icmp sgt i32 %atLeastOne, " + MAX_THREADS + "\n"
+  + "%threads = select i1 %tooHigh, i32 " + MAX_THREADS + ", i32 %atLeastOne\n"
+  + "%workers = sub i32 %threads, 1\n"
+  + "br label %create\n"
+  + "create:\n"
+  + "%i = phi i32 [ 0, %pick ], [ %i1, %created ]\n"
+  + "%more = icmp slt i32 %i, %workers\n"
+  + "br i1 %more, label %spawn, label %done\n"
+  + "spawn:\n"
+  + "%arg = inttoptr i32 %i to i8*\n"
+  + "%error = call i32 @pthread_create(i64* %thread, i8* null, i8* (i8*)* @poolWorker, i8* %arg)\n"
+  + "%failed = icmp ne i32 %error, 0\n"
+  + "br i1 %failed, label %done, label %created\n"
+  + "created:\n"
+  + "%id = load i64, i64* %thread, align 8\n"
+  + "%0 = call i32 @pthread_detach(i64 %id)\n"
+  + "%i1 = add i32 %i, 1\n"
+  + "br label %create\n"
+  + "done:\n"
+  + "%started = phi i32 [ %i, %create ], [ %i, %spawn ]\n"
+  + "store i32 %started, i32* @.poolSize, align 4\n"
+  + "ret void\n"
+  + "}\n"
+  + "define internal void @parallelFor(void (i8*, i32, i32, i32)* %body, i8* %ctx, i32 %from, i32 %to) {\n"
+  + "entry:\n"
+  + "%size0 = load i32, i32* @.poolSize, align 4\n"
+  + "%noPool = icmp slt i32 %size0, 0\n"
+  + "br i1 %noPool, label %start, label %ready\n"
+  + "start:\n"
+  + "call void @startPool()\n"
+  + "br label %ready\n"
+  + "ready:\n"
+  + "%size = load i32, i32* @.poolSize, align 4\n"
+  + "%empty = icmp slt i32 %to, %from\n"
+  + "%end = select i1 %empty, i32 %from, i32 %to\n"
+  + "store void (i8*, i32, i32, i32)* %body, void (i8*, i32, i32, i32)** @.poolBody, align 8\n"
+  + "store i8* %ctx, i8** @.poolContext, align 8\n"
+  + "store i32 %from, i32* @.poolFrom, align 4\n"
+  + "store i32 %end, i32* @.poolTo, align 4\n"
+  + "%single = icmp eq i32 %size, 0\n"
+  + "br i1 %single, label %serial, label %parallel\n"
+  + "serial:\n"
+  + "store i32 1, i32* @.poolChunks, align 4\n"
+  + "call void %body(i8* %ctx, i32 0, i32 %from, i32 %end)\n"
+  + "ret void\n"
+  + "parallel:\n"
+  + "%chunks = add i32 %size, 1\n"
+  + "store i32 %chunks, i32* @.poolChunks, align 4\n"
+  + "%0 = call i32 @pthread_mutex_lock(i8* getelementptr inbounds ([40 x i8], [40 x i8]* @.poolMutex, i32 0, i32 0))\n"
+  + "store i32 %size, i32* @.poolPending, align 4\n"
+  + "%gen = load i32, i32* @.poolGeneration, align 4\n"
+  + "%gen1 = add i32 %gen, 1\n"
+  + "store i32 %gen1, i32* @.poolGeneration, align 4\n"
+  + "%1 = call i32 @pthread_cond_broadcast(i8* getelementptr inbounds ([48 x i8], [48 x i8]* @.poolWork, i32 0, i32 0))\n"
+  + "%2 = call i32 @pthread_mutex_unlock(i8* getelementptr inbounds ([40 x i8], [40 x i8]* @.poolMutex, i32 0, i32 0))\n"
+  + "call void @runChunk(i32 0)\n"
+  + "%3 = call i32 @pthread_mutex_lock(i8* getelementptr inbounds ([40 x i8], [40 x i8]* @.poolMutex, i32 0, i32 0))\n"
+  + "br label %wait\n"
+  + "wait:\n"
+  + "%pending = load i32, i32* @.poolPending, align 4\n"
+  + "%busy = icmp ne i32 %pending, 0\n"
+  + "br i1 %busy, label %sleep, label %finished\n"
+  + "sleep:\n"
+  + "%4 = call i32 @pthread_cond_wait(i8* getelementptr inbounds ([48 x i8], [48 x i8]* @.poolDone, i32 0, i32 0), i8* getelementptr inbounds ([40 x i8], [40 x i8]* @.poolMutex, i32 0, i32 0))\n"
+  + "br label %wait\n"
+  + "finished:\n"
+  + "%5 = call i32 @pthread_mutex_unlock(i8* getelementptr inbounds ([40 x i8], [40 x i8]* @.poolMutex, i32 0, i32 0))\n"
+  + "ret void\n"
+  + "}\n"
+  + "declare i32 @pthread_create(i64*, i8*, i8* (i8*)*, i8*)\n"
+  + "declare i32 @pthread_detach(i64)\n"
+  + "declare i32 @pthread_mutex_lock(i8*)\n"
+  + "declare i32 @pthread_mutex_unlock(i8*)\n"
+  + "declare i32 @pthread_cond_wait(i8*, i8*)\n"
+  + "declare i32 @pthread_cond_signal(i8*)\n"
+  + "declare i32 @pthread_cond_broadcast(i8*)\n"
+  + "declare i64 @sysconf(i32)\n"
+  + "declare i8* @getenv(i8*)\n"
+  + "declare i32 @atoi(i8*)\n"
   );
 
   /** The class take a AST as input. It will generate IR code for this tree.
@@ -51,6 +514,129 @@ public class CodeGenerator {
     this.count = 1;
     this.nestedLoop = 0;
     this.nestedLoop = 0;
+    this.arrays = new LinkedHashMap<String, Integer>();
+    this.boundsCheck = false;
+    this.boundsCount = 0;
+    this.checkedIndexes = new HashSet<AbstractSyntaxTree>();
+    this.entryCode = "";
+    this.globalCode = "";
+    this.parCount = 0;
+    this.inParallel = false;
+    this.outlineSize = 0;
+    this.outlining = false;
+    this.outlineCount = 0;
+    this.unrollFactor = DEFAULT_UNROLL;
+    this.unrollBudget = UNROLL_BUDGET;
+    this.evalBudget = 0;
+    this.profileFile = null;
+    this.profile = null;
+    this.branchCount = 0;
+    this.profileMetadata = "";
+    this.statementNumbers = null;
+    this.warnings = new ArrayList<String>();
+    this.work = new ArrayList<Object>();
+    this.output = new StringBuilder();
+  }
+
+  /** Enable or disable the checks of the array indexes. An index out of bounds
+  * flushes the output, writes a message on stderr and ends the program with status 3.
+  * @param boundsCheck true to check the indexes.
+  */
+  public void setBoundsCheck(boolean boundsCheck) {
+    this.boundsCheck = boundsCheck;
+  }
+
+  /** Split the program into functions of about the given number of statements,
+  * nested statements included, when it is longer than that. LLVM optimizes and
+  * compiles each function apart, and the time of its passes grows faster than
+  * the size of a function, so many small functions are faster to compile than a
+  * single huge @main. 0 keeps the whole program in @main.
+  * @param statements the number of statements of a function, 0 to disable
+  */
+  public void setOutlineSize(int statements) {
+    this.outlineSize = statements;
+  }
+
+  /** Unroll the FOR loops whose trip count is known before the loop, see
+  * unrolledLoop(). Loops short enough are fully unrolled, the others are unrolled
+  * by the given factor. 0 or 1 keeps every loop as it is.
+  * @param factor the number of copies of the body in an unrolled loop
+  */
+  public void setUnrollFactor(int factor) {
+    this.unrollFactor = factor;
+  }
+
+  /** Run the program at compile time with the PartialEvaluator, on a budget of
+  * statements and loop tests. A program that ends without READ is replaced by the
+  * printing of its output, otherwise its first statements that could run are
+  * folded. Not done with a profile, whose branches are the ones of the program.
+  * @param steps the statements and loop tests run at most, 0 to disable
+  */
+  public void setEvalBudget(long steps) {
+    this.evalBudget = steps;
+  }
+
+  /** Surround the code of each statement with comments naming it, which IrStats
+  * reads to give the instructions of each statement. The comments are valid IR
+  * code, but the BitcodeWriter does not know them: IrStats removes them.
+  * @param marked true to mark the statements
+  */
+  public void setStatementMarkers(boolean marked) {
+    this.statementNumbers = marked ? new IdentityHashMap<AbstractSyntaxTree, Integer>() : null;
+  }
+
+  /** Instrument the program to count the sides taken by each branch of its IF,
+  * WHILE and FOR. At the exit, the program writes the counts in the given profile
+  * file, or in the file named by SF_PROFILE when it is set.
+  * @param file the profile file written by the program, null to disable
+  */
+  public void setProfileGenerate(String file) {
+    this.profileFile = file;
+  }
+
+  /** Give each branch of an IF, WHILE and FOR the weights of its sides measured by
+  * an instrumented run, so LLVM lays out the likely side as the fall through and
+  * optimizes the hot loops. The profile must come from the same program compiled
+  * with the same options, otherwise it is ignored with a warning.
+  * @param profile the counts read by readProfile, null to disable
+  */
+  public void setProfileUse(long[] profile) {
+    this.profile = profile;
+  }
+
+  /** Read the profiles written by instrumented runs of a program and add them up.
+  * A profile holds little endian 64 bit integers: the hash of the program, the
+  * number of counts and, for each branch in the order of the code, the number of
+  * times each side was taken.
+  * @param files the profile files, separated by commas
+  */
+  public static long[] readProfile(String files) throws IOException {
+    long[] profile = null;
+    for (String file: files.split(",")) {
+      ByteBuffer bytes = ByteBuffer.wrap(Files.readAllBytes(Paths.get(file))).order(ByteOrder.LITTLE_ENDIAN);
+      long[] counts = new long[bytes.remaining() / 8];
+      bytes.asLongBuffer().get(counts);
+      if (counts.length < 2 || counts[1] != counts.length - 2) {
+        throw new IOException(file + " is not a profile");
+      }
+      if (profile == null) {
+        profile = counts;
+      } else if (counts[0] != profile[0] || counts.length != profile.length) {
+        throw new IOException(file + " is the profile of another program");
+      } else {
+        for (int i = 2; i < counts.length; i++) {
+          profile[i] += counts[i];
+        }
+      }
+    }
+    return profile;
+  }
+
+  /** The warnings of the generation, such as a PARFOR that runs serially. Nothing
+  * is printed while the IR code is generated.
+  */
+  public List<String> getWarnings() {
+    return warnings;
   }
 
   //Write the IR to a specified file.
@@ -72,280 +658,1402 @@ public class CodeGenerator {
 
   //Start the IR generation.
   public String generateLLVM() {
-    String llvmCode = "";
-    llvmCode += printFunction;
-    llvmCode += readFunction;
-    llvmCode += "\ndefine void @main() {\n";
+    StringBuilder llvmCode = new StringBuilder();
+    generateLLVM(llvmCode);
+    return llvmCode.toString();
+  }
+
+  /** Generate the IR code at the end of a buffer, which can be reused from one
+  * program to the next.
+  * @param llvmCode the buffer of the IR code
+  */
+  public void generateLLVM(StringBuilder llvmCode) {
+    String mainCode = "";
+    if (profile != null && profile[0] != programHash()) {
+      warnings.add("the profile is not the one of this program, it is ignored");
+      profile = null;
+    }
+    if (evalBudget > 0 && profileFile == null && profile == null) {
+      PartialEvaluator evaluator = new PartialEvaluator(ast);
+      if (evaluator.evaluate(evalBudget)) {
+        llvmCode.append(outputModule(evaluator.getOutput().getBytes(StandardCharsets.UTF_8)));
+        return;
+      }
+      ast = evaluator.getResidual();
+    }
+    llvmCode.append(printFunction);
+    llvmCode.append(readFunction);
+    for (AbstractSyntaxTree child: ast.getChildren()) {
+      if (child.getLabel() == "Code" && outlineSize > 0) {
+        outlining = statementCount(child) > outlineSize;
+      }
+    }
     for (AbstractSyntaxTree child: ast.getChildren()) {
       if (child.getLabel() == "Variables") {
-        llvmCode += createVariables(child);
+        mainCode += createVariables(child);
       } else if (child.getLabel() == "Code") {
-        for (AbstractSyntaxTree codeChild: child.getChildren()) {
-          llvmCode += generateCode(codeChild);
-        }
+        mainCode += outlining ? outlineBlock(child) : generateCode(child);
       }
     }
-    llvmCode += "ret void \n}\n";
+    if (boundsCheck) {
+      globalCode += boundsFunction;
+    }
+    if (profileFile != null) {
+      globalCode += profileFunction();
+    }
+    llvmCode.append("\ndefine void @main() {\n");
+    llvmCode.append("%.atexit = call i32 @atexit(void ()* @flushOut)\n");
+    if (profileFile != null) {
+      llvmCode.append("%.atexitProfile = call i32 @atexit(void ()* @writeProfile)\n");
+    }
+    llvmCode.append(entryCode);
+    llvmCode.append(mainCode);
+    llvmCode.append("call void @flushOut()\n");
+    llvmCode.append("ret void \n}\n");
+    llvmCode.append(globalCode);
+    llvmCode.append(profileMetadata);
+  }
+
+  /** The module of a program evaluated at compile time: main writes its output on
+  * stdout, calling write(2) again after a partial write.
+  */
+  private static String outputModule(byte[] output) {
+    String array = "[" + output.length + " x i8]";
+    String llvmCode = "";
+    llvmCode += "@.output = private unnamed_addr constant " + array + " c\"" + escape(output) + "\", align 1\n";
+    llvmCode += "declare i64 @write(i32, i8*, i64)\n";
+    llvmCode += "\ndefine void @main() {\n";
+    llvmCode += "entry:\n";
+    llvmCode += "br label %write\n";
+    llvmCode += "write:\n";
+    llvmCode += "%done = phi i64 [0, %entry], [%next, %written]\n";
+    llvmCode += "%left = sub i64 " + output.length + ", %done\n";
+    llvmCode += "%more = icmp sgt i64 %left, 0\n";
+    llvmCode += "br i1 %more, label %call, label %end\n";
+    llvmCode += "call:\n";
+    llvmCode += "%bytes = getelementptr inbounds " + array + ", " + array + "* @.output, i64 0, i64 %done\n";
+    llvmCode += "%n = call i64 @write(i32 1, i8* %bytes, i64 %left)\n";
+    llvmCode += "%ok = icmp sgt i64 %n, 0\n";
+    llvmCode += "br i1 %ok, label %written, label %end\n";
+    llvmCode += "written:\n";
+    llvmCode += "%next = add i64 %done, %n\n";
+    llvmCode += "br label %write\n";
+    llvmCode += "end:\n";
+    llvmCode += "ret void\n";
+    llvmCode += "}\n";
     return llvmCode;
   }
 
-  public String generateCode(AbstractSyntaxTree code) {
+  /** The conditional branch of an IF, WHILE or FOR on the value %cond. Each branch
+  * is numbered in the order of the code. An instrumented branch first counts the
+  * side it takes (atomically in a PARFOR), at the index 2 + 2 * number for true and
+  * 3 + 2 * number for false of @.profCounts. Its size is only known at the end, it
+  * is indexed as i64* since the pointers are opaque. With a profile, the branch
+  * carries the weights of its sides, scaled to 32 bits and plus 1 like clang does,
+  * unless it was never run.
+  */
+  private String branch(int cond, String trueFlag, String falseFlag) {
+    int number = branchCount;
+    branchCount++;
+    String llvmCode = "";
+    String br = "br i1 %" + cond + ", label %" + trueFlag + ", label %" + falseFlag;
+    if (profileFile != null) {
+      String counter = "%.prof" + number;
+      llvmCode += counter + ".index = select i1 %" + cond + ", i64 " + (2 + 2 * number) + ", i64 "
+      + (3 + 2 * number) + "\n";
+      llvmCode += counter + " = getelementptr inbounds i64, i64* @.profCounts, i64 " + counter + ".index\n";
+      if (inParallel) {
+        llvmCode += counter + ".old = atomicrmw add i64* " + counter + ", i64 1 monotonic\n";
+      } else {
+        llvmCode += counter + ".old = load i64, i64* " + counter + "\n";
+        llvmCode += counter + ".new = add i64 " + counter + ".old, 1\n";
+        llvmCode += "store i64 " + counter + ".new, i64* " + counter + "\n";
+      }
+    } else if (profile != null && 3 + 2 * number < profile.length) {
+      long taken = profile[2 + 2 * number];
+      long notTaken = profile[3 + 2 * number];
+      if (taken + notTaken > 0) {
+        long scale = Math.max(taken, notTaken) / MAX_WEIGHT + 1;
+        br += ", !prof !" + number;
+        profileMetadata += "!" + number + " = !{!\"branch_weights\", i32 " + (taken / scale + 1) + ", i32 "
+        + (notTaken / scale + 1) + "}\n";
+      }
+    }
+    return llvmCode + br + "\n";
+  }
+
+  //Hash of the tree, of the options that change the branches and of the version of
+  //their layout, so a profile is only used for the program that wrote it.
+  private long programHash() {
+    List<AbstractSyntaxTree> nodes = new ArrayList<AbstractSyntaxTree>();
+    collectNodes(ast, nodes);
+    long hash = BRANCH_LAYOUT * 961 + 31 * (boundsCheck ? 1 : 0) + outlineSize;
+    hash = hash * 1000003 + unrollFactor;
+    for (AbstractSyntaxTree node: nodes) {
+      hash = hash * 1000003 + node.getLabel().hashCode();
+      hash = hash * 1000003 + node.getChildren().size();
+    }
+    return hash;
+  }
+
+  /** The counts of the branches and the function that writes them at the exit,
+  * registered with atexit by main. The first two counts are the hash of the program
+  * and the number of the others, set when they are written. The file is created
+  * with creat(2) and written with a single write(2), a failure is silently ignored.
+  */
+  private String profileFunction() {
+    int counts = 2 + 2 * branchCount;
+    byte[] name = (profileFile + "\0").getBytes(StandardCharsets.UTF_8);
     String llvmCode = "";
+    llvmCode += "@.profCounts = internal global [" + counts + " x i64] zeroinitializer, align 8\n";
+    llvmCode += "@.profFile = private unnamed_addr constant [" + name.length + " x i8] c\"" + escape(name)
+    + "\", align 1\n";
+    llvmCode += "@.profEnv = private unnamed_addr constant [11 x i8] c\"SF_PROFILE\\00\", align 1\n";
+    llvmCode += "define internal void @writeProfile() {\n";
+    llvmCode += "store i64 " + programHash() + ", i64* getelementptr inbounds ([" + counts + " x i64], ["
+    + counts + " x i64]* @.profCounts, i64 0, i64 0), align 8\n";
+    llvmCode += "store i64 " + (counts - 2) + ", i64* getelementptr inbounds ([" + counts + " x i64], ["
+    + counts + " x i64]* @.profCounts, i64 0, i64 1), align 8\n";
+    llvmCode += "%env = call i8* @getenv(i8* getelementptr inbounds ([11 x i8], [11 x i8]* @.profEnv, i64 0, i64 0))\n";
+    llvmCode += "%hasEnv = icmp ne i8* %env, null\n";
+    llvmCode += "%file = select i1 %hasEnv, i8* %env, i8* getelementptr inbounds ([" + name.length + " x i8], ["
+    + name.length + " x i8]* @.profFile, i64 0, i64 0)\n";
+    llvmCode += "%fd = call i32 @creat(i8* %file, i32 420)\n";
+    llvmCode += "%opened = icmp sge i32 %fd, 0\n";
+    llvmCode += "br i1 %opened, label %write, label %end\n";
+    llvmCode += "write:\n";
+    llvmCode += "%counts = bitcast [" + counts + " x i64]* @.profCounts to i8*\n";
+    llvmCode += "%written = call i64 @write(i32 %fd, i8* %counts, i64 " + (8 * counts) + ")\n";
+    llvmCode += "%closed = call i32 @close(i32 %fd)\n";
+    llvmCode += "br label %end\n";
+    llvmCode += "end:\n";
+    llvmCode += "ret void\n";
+    llvmCode += "}\n";
+    llvmCode += "declare i32 @creat(i8*, i32)\n";
+    llvmCode += "declare i32 @close(i32)\n";
+    if (parCount == 0) {
+      llvmCode += "declare i8* @getenv(i8*)\n";
+    }
+    return llvmCode;
+  }
+
+  //The bytes of an IR string constant, with the quotes, backslashes and
+  //non printable characters escaped.
+  private static String escape(byte[] bytes) {
+    StringBuilder escaped = new StringBuilder();
+    for (byte b: bytes) {
+      int c = b & 0xFF;
+      if (c < 32 || c >= 127 || c == '"' || c == '\\') {
+        escaped.append(String.format("\\%02X", c));
+      } else {
+        escaped.append((char) c);
+      }
+    }
+    return escaped.toString();
+  }
+
+  /** Generate a statement, or all the statements of a block. A block is a Code
+  * node whose children are its statements. With the statement markers, the code of
+  * a statement is between "; statement number label" and "; end statement", the
+  * copies of an unrolled statement having the same number.
+  * The statements are generated from a stack of work, like the operations of
+  * computeExprArith(), so the nesting of the code is only limited by memory: a
+  * statement with a body generates the code before its body, then pushes the body
+  * and the steps that generate the code after it (see Step). The work of a call
+  * sits above the work of the one that made it, outlineStatements() calling it
+  * for each statement.
+  */
+  public String generateCode(AbstractSyntaxTree code) {
+    StringBuilder callerOutput = output;
+    output = new StringBuilder();
+    int bottom = work.size();
+    work.add(code);
+    while (work.size() > bottom) {
+      Object next = work.remove(work.size() - 1);
+      if (next instanceof Step) {
+        ((Step) next).run();
+      } else if (next instanceof String) {
+        output.append((String) next);
+      } else {
+        generateNode((AbstractSyntaxTree) next);
+      }
+    }
+    String llvmCode = output.toString();
+    output = callerOutput;
+    return llvmCode;
+  }
+
+  //A part of the generation of a statement that runs once the work pushed above
+  //it is done: the code after a body, which uses the registers numbered by the
+  //body, or a change of state to undo after it.
+  private abstract static class Step {
+    abstract void run();
+  }
+
+  //Push work to do in the given order, before the work already pushed.
+  private void schedule(Object... items) {
+    for (int i = items.length - 1; i >= 0; i--) {
+      work.add(items[i]);
+    }
+  }
+
+  //Generate a statement with its markers, or push the statements of a block.
+  private void generateNode(AbstractSyntaxTree code) {
+    if (code.getLabel() == "Code") {
+      schedule(code.getChildren().toArray());
+      return;
+    }
+    if (statementNumbers != null) {
+      Integer number = statementNumbers.get(code);
+      if (number == null) {
+        number = statementNumbers.size() + 1;
+        statementNumbers.put(code, number);
+      }
+      output.append(IrStats.STATEMENT_MARKER + number + " " + code.getLabel() + "\n");
+      work.add(IrStats.END_MARKER + "\n");
+    }
     if (code.getLabel() == "Assign") {
-      llvmCode += generateAssign(code);
+      output.append(generateAssign(code));
     } else if (code.getLabel() == "If") {
-      llvmCode += generateIf(code);
+      generateIf(code);
     } else if (code.getLabel() == "While") {
-      llvmCode += generateWhile(code);
+      generateWhile(code);
     } else if (code.getLabel() == "For") {
-      llvmCode += generateFor(code);
+      generateFor(code);
+    } else if (code.getLabel() == "ParFor") {
+      generateParFor(code);
     } else if (code.getLabel() == "Print") {
-      llvmCode += generatePrint(code);
+      output.append(generatePrint(code));
     } else if (code.getLabel() == "Read") {
-      llvmCode += generateRead(code);
-    } else if (code.getLabel() == "Code") {
-        for (AbstractSyntaxTree codeChild: code.getChildren()) {
-          llvmCode += generateCode(codeChild);
-        }
+      output.append(generateRead(code));
     }
-    return llvmCode;
   }
 
+  //An operation of computeExprArith waiting for its operands.
+  private static class Operation {
+    AbstractSyntaxTree expr;
+    int step;
+    int left;
+
+    Operation(AbstractSyntaxTree expr) {
+      this.expr = expr;
+    }
+  }
+
+  /** Compute an arithmetic expression, the result is left in the last register.
+  * The operands of a node are computed from left to right before its operation.
+  * A node waiting for its operands is kept on a stack, with the step it reached,
+  * so expressions of any depth can be computed, the indexes of array elements
+  * included.
+  */
   public String computeExprArith(AbstractSyntaxTree exprArith) {
-    String llvmCode = "";
-    String value = exprArith.getLabel();
-    int leftExpr, rightExpr;
-    if (exprArith.getChildren().size() == 0) {
-      if (symbolicTable.containsKey(exprArith.getLabel())) {
-        llvmCode += "%" + count + " = load i32, i32* %" + exprArith.getLabel() + "\n";
+    StringBuilder llvmCode = new StringBuilder();
+    List<Operation> stack = new ArrayList<Operation>();
+    stack.add(new Operation(exprArith));
+    while (!stack.isEmpty()) {
+      Operation operation = stack.get(stack.size() - 1);
+      AbstractSyntaxTree expr = operation.expr;
+      String value = expr.getLabel();
+      int size = expr.getChildren().size();
+      if (operation.step == 0) {
+        if (value.equals("Index")) {
+          checkArray(expr);
+          operation.step = 1;
+          stack.add(new Operation(expr.getChild(1)));
+          continue;
+        } else if (arrays.containsKey(value) && size == 0) {
+          throw new Error("Array " + value + " must be indexed");
+        }
+        if (size == 1 && expr.getChild(0).getChildren().size() > 0) {
+          //The operand is itself an expression or an array element.
+          stack.set(stack.size() - 1, new Operation(expr.getChild(0)));
+          continue;
+        } else if (size <= 1) {
+          String operand = size == 0 ? value : expr.getChild(0).getLabel();
+          if (symbolicTable.containsKey(operand)) {
+            llvmCode.append("%" + count + " = load i32, i32* %" + operand + "\n");
+          } else {
+            llvmCode.append("%" + count + " = add i32 0, " + operand + "\n");
+          }
+          count++;
+          stack.remove(stack.size() - 1);
+          continue;
+        }
+        operation.step = 1;
+        stack.add(new Operation(expr.getChild(0)));
+      } else if (value.equals("Index")) {
+        //The index is computed, load the element.
+        llvmCode.append(elementAddress(expr, count-1));
+        llvmCode.append("%" + count + " = load i32, i32* %" + (count-1) + ", align 4\n");
+        count++;
+        stack.remove(stack.size() - 1);
+      } else if (operation.step == 1) {
+        operation.left = count-1;
+        operation.step = 2;
+        stack.add(new Operation(expr.getChild(1)));
+      } else if (operation.step == 2) {
+        llvmCode.append(binaryOperation(value, operation.left, count-1, false));
+        if (size == 3) {
+          count++;
+          operation.left = count-1;
+          operation.step = 3;
+          stack.add(new Operation(expr.getChild(2)));
+        } else {
+          count++;
+          stack.remove(stack.size() - 1);
+        }
+      } else {
+        llvmCode.append(binaryOperation(expr.getChild(2).getLabel(), operation.left, count-1, true));
+        count++;
+        stack.remove(stack.size() - 1);
+      }
+    }
+    return llvmCode.toString();
+  }
+
+  //The instruction of an arithmetic operator. The operation on a third operand
+  //is an addition unless its label is another operator.
+  private String binaryOperation(String value, int leftExpr, int rightExpr, boolean third) {
+    if (value.equals("+")) {
+      return "%" + count + " = add i32 %" + leftExpr + ", %" + rightExpr + "\n";
+    } else if (value.equals("-")) {
+      return "%" + count + " = sub i32 %" + leftExpr + ", %" + rightExpr + "\n";
+    } else if (value.equals("*")) {
+      return "%" + count + " = mul i32 %" + leftExpr + ", %" + rightExpr + "\n";
+    } else if (value.equals("/")) {
+      return "%" + count + " = sdiv i32 %" + leftExpr + ", %" + rightExpr + "\n";
+    } else if (third) {
+      return "%" + count + " = add i32 %" + leftExpr + ", %" + rightExpr + "\n";
+    }
+    return "";
+  }
+
+  /** Compute a condition, the result is left in the last register. The chain of
+  * AND and OR is walked in a loop, then combined from its end.
+  */
+  public String generateCond(AbstractSyntaxTree cond) {
+    StringBuilder llvmCode = new StringBuilder();
+    List<String> operators = new ArrayList<String>();
+    List<Integer> lefts = new ArrayList<Integer>();
+    while (true) {
+      int leftCond, rightCond;
+      String simpleCond = cond.getChild(0).getLabel();
+      llvmCode.append(computeExprArith(cond.getChild(0).getChild(0)));
+      leftCond = count-1;
+      llvmCode.append(computeExprArith(cond.getChild(0).getChild(1)));
+      rightCond = count-1;
+      if (simpleCond.equals("=")) {
+        llvmCode.append("%" + count + " = icmp eq i32 %" + leftCond + ", %" + rightCond + "\n");
+      } else if (simpleCond.equals(">=")) {
+        llvmCode.append("%" + count + " = icmp sge i32 %" + leftCond + ", %" + rightCond + "\n");
+      } else if (simpleCond.equals(">")) {
+        llvmCode.append("%" + count + " = icmp sgt i32 %" + leftCond + ", %" + rightCond + "\n");
+      } else if (simpleCond.equals("<=")) {
+        llvmCode.append("%" + count + " = icmp sle i32 %" + leftCond + ", %" + rightCond + "\n");
+      } else if (simpleCond.equals("<")) {
+        llvmCode.append("%" + count + " = icmp slt i32 %" + leftCond + ", %" + rightCond + "\n");
+      } else if (simpleCond.equals("<>")) {
+        llvmCode.append("%" + count + " = icmp ne i32 %" + leftCond + ", %" + rightCond + "\n");
+      }
+      count++;
+      if (cond.getChildren().size() > 1 && (cond.getChild(1).getLabel().equals("AND")
+      || cond.getChild(1).getLabel().equals("OR"))) {
+        operators.add(cond.getChild(1).getLabel());
+        lefts.add(count-1);
+        cond = cond.getChild(1);
       } else {
-        llvmCode += "%" + count + " = add i32 0, " + exprArith.getLabel() + "\n";
+        break;
       }
-    } else if (exprArith.getChildren().size() == 1) {
-      if (symbolicTable.containsKey(exprArith.getChild(0).getLabel())) {
-        llvmCode += "%" + count + " = load i32, i32* %" + exprArith.getChild(0).getLabel() + "\n";
+    }
+    for (int i = operators.size() - 1; i >= 0; i--) {
+      int leftCond = lefts.get(i);
+      int rightCond = count-1;
+      llvmCode.append("%" + count + " = add i1 %" + leftCond + ", %" + rightCond + "\n");
+      count++;
+      if (operators.get(i).equals("AND")) {
+        llvmCode.append("%" + count + " = icmp eq i1 %" + (count-1) + ", 2" + "\n");
       } else {
-        llvmCode += "%" + count + " = add i32 0, " + exprArith.getChild(0).getLabel() + "\n";
+        llvmCode.append("%" + count + " = icmp uge i1 %" + (count-1) + ", 1" + "\n");
       }
-    } else {
-      llvmCode += computeExprArith(exprArith.getChild(0));
-      leftExpr = count-1;
-      llvmCode += computeExprArith(exprArith.getChild(1));
-      rightExpr = count-1;
-      if (value.equals("+")) {
-        llvmCode += "%" + count + " = add i32 %" + leftExpr + ", %" + rightExpr + "\n";
-      } else if (value.equals("-")) {
-        llvmCode += "%" + count + " = sub i32 %" + leftExpr + ", %" + rightExpr + "\n";
-      } else if (value.equals("*")) {
-        llvmCode += "%" + count + " = mul i32 %" + leftExpr + ", %" + rightExpr + "\n";
-      } else if (value.equals("/")) {
-        llvmCode += "%" + count + " = sdiv i32 %" + leftExpr + ", %" + rightExpr + "\n";
-      }
-      if (exprArith.getChildren().size() == 3) {
-        value = exprArith.getChild(2).getLabel();
-        count++;
-        leftExpr = count-1;
-        llvmCode += computeExprArith(exprArith.getChild(2));
-        rightExpr = count - 1;
-        if (value.equals("+")) {
-          llvmCode += "%" + count + " = add i32 %" + leftExpr + ", %" + rightExpr + "\n";
-        } else if (value.equals("-")) {
-          llvmCode += "%" + count + " = sub i32 %" + leftExpr + ", %" + rightExpr + "\n";
-        } else if (value.equals("*")) {
-          llvmCode += "%" + count + " = mul i32 %" + leftExpr + ", %" + rightExpr + "\n";
-        } else if (value.equals("/")) {
-          llvmCode += "%" + count + " = sdiv i32 %" + leftExpr + ", %" + rightExpr + "\n";
+      count++;
+    }
+    return llvmCode.toString();
+  }
+
+  /** Scalars are allocated on the stack of main, or are module globals when the
+  * program is split into functions. Arrays are contiguous, aligned and zero
+  * initialized module globals, so their size is not limited by the stack.
+  */
+  public String createVariables(AbstractSyntaxTree vars) {
+    String llvmCode = "";
+    for (AbstractSyntaxTree child: vars.getChildren()) {
+      if (child.getLabel().equals("Array")) {
+        String arrayName = child.getChild(0).getLabel();
+        int size;
+        try {
+          size = Integer.parseInt(child.getChild(1).getLabel());
+        } catch (NumberFormatException e) {
+          throw new Error("Array " + arrayName + " is too large");
+        }
+        if (size == 0) {
+          throw new Error("Array " + arrayName + " must have at least one element");
+        }
+        globalCode += "@.array." + arrayName + " = internal global [" + size
+        + " x i32] zeroinitializer, align 16\n";
+        arrays.put(arrayName, size);
+      } else {
+        String varName = child.getLabel();
+        if (outlining) {
+          globalCode += "@.var." + varName + " = internal global i32 0, align 4\n";
         } else {
-          llvmCode += "%" + count + " = add i32 %" + leftExpr + ", %" + rightExpr + "\n";
+          llvmCode += "%" + varName + " = alloca i32\n";
         }
+        symbolicTable.put(varName, null);
       }
     }
-    count++;
     return llvmCode;
   }
 
-  public String generateCond(AbstractSyntaxTree cond) {
+  /** Compute the address of an array element. The pointer is left in the last
+  * register. The index is checked against the size of the array when the bounds
+  * checks are enabled, unless its FOR loop already checked it before starting.
+  */
+  public String elementPointer(AbstractSyntaxTree index) {
+    checkArray(index);
+    String llvmCode = computeExprArith(index.getChild(1));
+    return llvmCode + elementAddress(index, count-1);
+  }
+
+  //Check that an indexed variable is an array.
+  private void checkArray(AbstractSyntaxTree index) {
+    String arrayName = index.getChild(0).getLabel();
+    if (!arrays.containsKey(arrayName)) {
+      throw new Error("Variable " + arrayName + " is not an array");
+    }
+  }
+
+  //The address of an array element whose index is in a register, see elementPointer.
+  private String elementAddress(AbstractSyntaxTree index, int position) {
     String llvmCode = "";
-    int leftCond, rightCond;
-    String simpleCond = cond.getChild(0).getLabel();
-    llvmCode += computeExprArith(cond.getChild(0).getChild(0));
-    leftCond = count-1;
-    llvmCode += computeExprArith(cond.getChild(0).getChild(1));
-    rightCond = count-1;
-    if (simpleCond.equals("=")) {
-      llvmCode += "%" + count + " = icmp eq i32 %" + leftCond + ", %" + rightCond + "\n";
-    } else if (simpleCond.equals(">=")) {
-      llvmCode += "%" + count + " = icmp sge i32 %" + leftCond + ", %" + rightCond + "\n";
-    } else if (simpleCond.equals(">")) {
-      llvmCode += "%" + count + " = icmp sgt i32 %" + leftCond + ", %" + rightCond + "\n";
-    } else if (simpleCond.equals("<=")) {
-      llvmCode += "%" + count + " = icmp sle i32 %" + leftCond + ", %" + rightCond + "\n";
-    } else if (simpleCond.equals("<")) {
-      llvmCode += "%" + count + " = icmp slt i32 %" + leftCond + ", %" + rightCond + "\n";
-    } else if (simpleCond.equals("<>")) {
-      llvmCode += "%" + count + " = icmp ne i32 %" + leftCond + ", %" + rightCond + "\n";
+    String arrayName = index.getChild(0).getLabel();
+    String type = "[" + arrays.get(arrayName) + " x i32]";
+    if (boundsCheck && !checkedIndexes.contains(index)) {
+      boundsCount++;
+      llvmCode += "%" + count + " = icmp ult i32 %" + position + ", " + arrays.get(arrayName) + "\n";
+      llvmCode += "br i1 %" + count + ", label %inBounds" + boundsCount
+      + ", label %outOfBounds" + boundsCount + "\n";
+      count++;
+      llvmCode += "outOfBounds" + boundsCount + ":\n";
+      llvmCode += "call void @boundsFail()\n";
+      llvmCode += "unreachable\n";
+      llvmCode += "inBounds" + boundsCount + ":\n";
     }
+    llvmCode += "%" + count + " = sext i32 %" + position + " to i64\n";
     count++;
-    if (cond.getChildren().size() > 1) {
-      if (cond.getChild(1).getLabel().equals("AND")) {
-        leftCond = count-1;
-        llvmCode += generateCond(cond.getChild(1));
-        rightCond = count-1;
-        llvmCode += "%" + count + " = add i1 %" + leftCond + ", %" + rightCond + "\n";
-        count++;
-        llvmCode += "%" + count + " = icmp eq i1 %" + (count-1) + ", 2" + "\n";
-        count++;
-      } else if (cond.getChild(1).getLabel().equals("OR")) {
-        leftCond = count-1;
-        llvmCode += generateCond(cond.getChild(1));
-        rightCond = count-1;
-        llvmCode += "%" + count + " = add i1 %" + leftCond + ", %" + rightCond + "\n";
-        count++;
-        llvmCode += "%" + count + " = icmp uge i1 %" + (count-1) + ", 1" + "\n";
-        count++;
+    llvmCode += "%" + count + " = getelementptr inbounds " + type + ", " + type + "* @.array."
+    + arrayName + ", i64 0, i64 %" + (count-1) + "\n";
+    count++;
+    return llvmCode;
+  }
+
+  //Check that the target of an assignment or of a READ is declared.
+  private void checkTarget(AbstractSyntaxTree target) {
+    if (target.getLabel().equals("Index")) {
+      if (!arrays.containsKey(target.getChild(0).getLabel())) {
+        throw new Error("Variable " + target.getChild(0).getLabel() + " is not an array");
       }
+    } else if (arrays.containsKey(target.getLabel())) {
+      throw new Error("Array " + target.getLabel() + " must be indexed");
+    } else if (!symbolicTable.containsKey(target.getLabel())) {
+      throw new Error("Variable " + target.getLabel() + " is not declared");
     }
-    return llvmCode;
   }
 
-  public String createVariables(AbstractSyntaxTree vars) {
-    String llvmCode = "";
-    for (AbstractSyntaxTree child: vars.getChildren()) {
-      String varName = child.getLabel();
-      llvmCode += "%" + varName + " = alloca i32\n";
-      symbolicTable.put(varName, null);
+  //Store the value held by a register in a variable or an array element.
+  private String storeVariable(AbstractSyntaxTree target, int value) {
+    if (target.getLabel().equals("Index")) {
+      String llvmCode = elementPointer(target);
+      return llvmCode + "store i32 %" + value + ", i32* %" + (count-1) + ", align 4\n";
     }
-    return llvmCode;
+    return "store i32 %" + value + ", i32* %" + target.getLabel() + "\n";
   }
 
   public String generateAssign(AbstractSyntaxTree assign) {
     String llvmCode = "";
-    if (symbolicTable.containsKey(assign.getChild(0).getLabel())) {
-      llvmCode += computeExprArith(assign.getChild(1));
-      llvmCode += "store i32 %" + (count-1) + ", i32* %" + assign.getChild(0).getLabel() + "\n";
-    } else {
-      throw new Error("Variable " + assign.getChild(0).getLabel() + " is not declared");
-    }
+    checkTarget(assign.getChild(0));
+    llvmCode += computeExprArith(assign.getChild(1));
+    llvmCode += storeVariable(assign.getChild(0), count-1);
     return llvmCode;
   }
 
-  public String generateIf(AbstractSyntaxTree ifGen) {
+  private void generateIf(AbstractSyntaxTree ifGen) {
     nestedIf++;
-    String llvmCode = "";
     String trueFlag = "ifTrue" + nestedIf;
     String falseFlag = "ifFalse" + nestedIf;
     String noElseFlag = "ifNoElse" + nestedIf;
-    llvmCode += generateCond(ifGen.getChild(0));
-    llvmCode += "br i1 %" + (count-1) + "," + "label %" + trueFlag + ", label %" + falseFlag + "\n";
-    llvmCode += trueFlag + ":\n";
-    for (AbstractSyntaxTree child: ifGen.getChild(1).getChildren()) {
-      llvmCode += generateCode(child);
-    }
-    llvmCode += "br label %" + noElseFlag + "\n";
-    llvmCode += falseFlag + ":\n";
-    for (AbstractSyntaxTree child: ifGen.getChild(2).getChildren()) {
-      llvmCode += generateCode(child);
-    }
-    llvmCode += "br label %" + noElseFlag + "\n";
-    llvmCode += noElseFlag + ":\n";
-    return llvmCode;
+    output.append(generateCond(ifGen.getChild(0)));
+    output.append(branch(count-1, trueFlag, falseFlag));
+    output.append(trueFlag + ":\n");
+    schedule(ifGen.getChild(1), "br label %" + noElseFlag + "\n" + falseFlag + ":\n", ifGen.getChild(2),
+    "br label %" + noElseFlag + "\n" + noElseFlag + ":\n");
   }
 
-  public String generateWhile(AbstractSyntaxTree whileGen) {
+  /** A loop has the canonical shape of LLVM, with the condition generated once: the
+  * preheader jumps to the header, which tests the condition and goes to the body
+  * or to the exit, and the body ends in the latch, the only block going back to
+  * the header. The loop passes (rotation, unrolling, vectorization) then recognize
+  * every loop, and the size of the code is linear in the nesting of the loops.
+  */
+  private void generateWhile(AbstractSyntaxTree whileGen) {
     nestedLoop++;
+    String headerFlag = "loopHeader" + nestedLoop;
+    String bodyFlag = "loopBody" + nestedLoop;
+    String latchFlag = "loopLatch" + nestedLoop;
+    String exitFlag = "loopExit" + nestedLoop;
+    output.append(loopPreheader(nestedLoop));
+    output.append(headerFlag + ":\n");
+    output.append(generateCond(whileGen.getChild(0)));
+    output.append(branch(count-1, bodyFlag, exitFlag));
+    output.append(bodyFlag + ":\n");
+    schedule(whileGen.getChild(1), "br label %" + latchFlag + "\n" + latchFlag + ":\n" + "br label %" + headerFlag
+    + "\n" + exitFlag + ":\n");
+  }
+
+  //The preheader of a loop: the block entered once before the loop, where LLVM
+  //moves the code it hoists out of the loop.
+  private String loopPreheader(int loop) {
     String llvmCode = "";
-    String startFlag = "startLoop" + nestedLoop;
-    String endFlag = "endLoop" + nestedLoop;
-    llvmCode += generateCond(whileGen.getChild(0));
-    llvmCode += "br i1 %" + (count-1) + ", label %" + startFlag + ", label %" + endFlag + "\n";
-    llvmCode += startFlag + ":\n";
-    for (AbstractSyntaxTree child: whileGen.getChild(1).getChildren()) {
-        llvmCode += generateCode(child);
-    }
-    llvmCode += generateCond(whileGen.getChild(0));
-    llvmCode += "br i1 %" + (count-1) + ", label %" + startFlag + ", label %" + endFlag + "\n";
-    llvmCode += endFlag + ":\n";
+    llvmCode += "br label %loopPreheader" + loop + "\n";
+    llvmCode += "loopPreheader" + loop + ":\n";
+    llvmCode += "br label %loopHeader" + loop + "\n";
     return llvmCode;
   }
 
-  public String generateFor(AbstractSyntaxTree forGen) {
-    nestedLoop++;
+  /** When the bounds checks are enabled, the array accesses indexed by the loop
+  * variable are checked once before the loop. The loop is then generated twice:
+  * without these checks when the whole range of the loop is in bounds and with
+  * them otherwise, so the program still stops at the same iteration.
+  */
+  private void generateFor(final AbstractSyntaxTree forGen) {
     String llvmCode = "";
-    String startFlag = "startLoop" + nestedLoop;
-    String endFlag = "endLoop" + nestedLoop;
     String varName = forGen.getChild(0).getLabel();
-    int var;
     llvmCode += computeExprArith(forGen.getChild(1));
+    int start = count-1;
     if (symbolicTable.containsKey(varName)) {
-      llvmCode += "store i32 %" + (count-1) + ", i32* %" + varName + "\n";
+      llvmCode += "store i32 %" + start + ", i32* %" + varName + "\n";
     } else {
-      llvmCode += "%" + varName + " = alloca i32\n";
+      entryCode += "%" + varName + " = alloca i32\n";
       symbolicTable.put(varName, null);
-      llvmCode += "store i32 %" + (count-1) + ", i32* %" + varName + "\n";
+      llvmCode += "store i32 %" + start + ", i32* %" + varName + "\n";
+    }
+    List<AbstractSyntaxTree> hoisted = new ArrayList<AbstractSyntaxTree>();
+    if (boundsCheck) {
+      hoisted = hoistableIndexes(forGen);
+    }
+    if (hoisted.isEmpty()) {
+      output.append(llvmCode);
+      unrolledLoop(forGen);
+      return;
     }
+    int size = Integer.MAX_VALUE;
+    for (AbstractSyntaxTree index: hoisted) {
+      size = Math.min(size, arrays.get(index.getChild(0).getLabel()));
+    }
+    boundsCount++;
+    int checks = boundsCount;
     llvmCode += computeExprArith(forGen.getChild(2));
+    int bound = count-1;
+    llvmCode += "%" + count + " = icmp sge i32 %" + start + ", %" + bound + "\n";
+    llvmCode += "%" + (count+1) + " = icmp sge i32 %" + start + ", 0\n";
+    llvmCode += "%" + (count+2) + " = icmp sle i32 %" + bound + ", " + size + "\n";
+    llvmCode += "%" + (count+3) + " = and i1 %" + (count+1) + ", %" + (count+2) + "\n";
+    llvmCode += "%" + (count+4) + " = or i1 %" + count + ", %" + (count+3) + "\n";
+    llvmCode += "br i1 %" + (count+4) + ", label %hoistedChecks" + checks
+    + ", label %inLoopChecks" + checks + "\n";
+    count += 5;
+    llvmCode += "hoistedChecks" + checks + ":\n";
+    output.append(llvmCode);
+    checkedIndexes.addAll(hoisted);
+    final List<AbstractSyntaxTree> checked = hoisted;
+    Step loop = new Step() {
+      void run() {
+        unrolledLoop(forGen);
+      }
+    };
+    Step uncheck = new Step() {
+      void run() {
+        checkedIndexes.removeAll(checked);
+      }
+    };
+    schedule(loop, uncheck, "br label %endChecks" + checks + "\n" + "inLoopChecks" + checks + ":\n", loop,
+    "br label %endChecks" + checks + "\n" + "endChecks" + checks + ":\n");
+  }
+
+  //Generate the loop itself once the loop variable holds its initial value. The
+  //header compares the variable to the bound, computed again at each iteration,
+  //and the latch increments the variable.
+  private void forLoop(AbstractSyntaxTree forGen) {
+    nestedLoop++;
+    String llvmCode = "";
+    final String headerFlag = "loopHeader" + nestedLoop;
+    String bodyFlag = "loopBody" + nestedLoop;
+    final String latchFlag = "loopLatch" + nestedLoop;
+    final String exitFlag = "loopExit" + nestedLoop;
+    final String varName = forGen.getChild(0).getLabel();
+    //The variable is below the bound before the increment, it can't overflow
+    //unless the body assigns it.
+    Set<String> writes = new HashSet<String>();
+    collectWrites(forGen.getChild(3), writes);
+    final String increment = writes.contains(varName) ? "add" : "add nsw";
+    llvmCode += loopPreheader(nestedLoop);
+    llvmCode += headerFlag + ":\n";
     llvmCode += "%" + count + " = load i32, i32* %" + varName + "\n";
-    var = count;
+    int var = count;
     count++;
     if (symbolicTable.containsKey(forGen.getChild(2).getLabel())) {
       llvmCode += "%" + count + " = load i32, i32* %" + forGen.getChild(2).getLabel() + "\n";
       count++;
-      llvmCode += "%" + count + " = icmp slt i32 %" + (count-2) + ", %" + (count-1) + "\n";
     } else {
       llvmCode += computeExprArith(forGen.getChild(2));
-      llvmCode += "%" + count + " = icmp slt i32 %" + var + ", %" + (count-1) + "\n";
     }
-    llvmCode += "br i1 %" + count + ", label %" + startFlag + ", label %" + endFlag + "\n";
+    llvmCode += "%" + count + " = icmp slt i32 %" + var + ", %" + (count-1) + "\n";
+    llvmCode += branch(count, bodyFlag, exitFlag);
     count++;
-    llvmCode += startFlag + ":\n";
-    llvmCode += generateCode(forGen.getChild(3));
+    llvmCode += bodyFlag + ":\n";
+    output.append(llvmCode);
+    schedule(forGen.getChild(3), new Step() {
+      void run() {
+        output.append("br label %" + latchFlag + "\n");
+        output.append(latchFlag + ":\n");
+        output.append(increment(varName, increment));
+        output.append("br label %" + headerFlag + "\n");
+        output.append(exitFlag + ":\n");
+      }
+    });
+  }
+
+  //Add 1 to the variable of a FOR.
+  private String increment(String varName, String add) {
+    String llvmCode = "";
     llvmCode += "%" + count + " = load i32, i32* %" + varName + "\n";
+    llvmCode += "%" + (count+1) + " = " + add + " i32 1, %" + count + "\n";
+    llvmCode += "store i32 %" + (count+1) + ", i32* %" + varName + "\n";
+    count += 2;
+    return llvmCode;
+  }
+
+  /** A FOR whose body writes neither its variable nor a variable of its bound, and
+  * whose bound does not read its variable nor an array, runs bound - start times
+  * (or not at all), known before the loop. When the start and the bound are
+  * constants and all the copies of the body fit in UNROLL_BUDGET statements, the
+  * loop is fully unrolled. Otherwise the body is copied unrollFactor times, fewer if
+  * the copies would not fit, in a loop that runs while that many iterations are
+  * left; the bound is computed once before it. The iterations left after it are
+  * peeled when their number is constant, and run by the generic loop otherwise.
+  * Any other FOR, or one with a PARFOR inside, is the generic loop. The loops nested
+  * in a copy share its part of the budget, so the code grows by at most about
+  * UNROLL_BUDGET statements per unrolled loop at the top.
+  */
+  private void unrolledLoop(final AbstractSyntaxTree forGen) {
+    final String varName = forGen.getChild(0).getLabel();
+    AbstractSyntaxTree body = forGen.getChild(3);
+    Set<String> writes = new HashSet<String>();
+    Set<String> boundNames = new HashSet<String>();
+    collectWrites(body, writes);
+    collectNames(forGen.getChild(2), boundNames);
+    if (unrollFactor < 2 || writes.contains(varName) || boundNames.contains(varName)
+    || boundNames.contains("Index") || !Collections.disjoint(writes, boundNames) || containsParFor(body)) {
+      forLoop(forGen);
+      return;
+    }
+    int size = Math.max(1, statementCount(body));
+    final int budget = unrollBudget;
+    final Integer start = constantValue(forGen.getChild(1));
+    Integer bound = constantValue(forGen.getChild(2));
+    final long trips = start != null && bound != null ? Math.max(0, (long) bound - start) : -1;
+    //Give back the budget once the copies are generated.
+    Step restoreBudget = new Step() {
+      void run() {
+        unrollBudget = budget;
+      }
+    };
+    if (trips >= 0 && trips * size <= budget) {
+      unrollBudget = budget / (int) Math.max(1, trips);
+      work.add(restoreBudget);
+      peel(forGen, start, trips);
+      return;
+    }
+    final int factor = Math.min(unrollFactor, budget / size);
+    if (factor < 2) {
+      forLoop(forGen);
+      return;
+    }
+    unrollBudget = budget / factor;
+    nestedLoop++;
+    String llvmCode = "";
+    final String headerFlag = "loopHeader" + nestedLoop;
+    String bodyFlag = "loopBody" + nestedLoop;
+    final String latchFlag = "loopLatch" + nestedLoop;
+    final String exitFlag = "loopExit" + nestedLoop;
+    llvmCode += computeExprArith(forGen.getChild(2));
+    llvmCode += "%" + count + " = sext i32 %" + (count-1) + " to i64\n";
+    int wideBound = count;
     count++;
-    llvmCode += "%" + count + " = add i32 1, %" + (count-1) + "\n";
-    var = count;
+    llvmCode += loopPreheader(nestedLoop);
+    llvmCode += headerFlag + ":\n";
+    //The iterations left, in 64 bits so the difference can't overflow.
+    llvmCode += "%" + count + " = load i32, i32* %" + varName + "\n";
+    llvmCode += "%" + (count+1) + " = sext i32 %" + count + " to i64\n";
+    llvmCode += "%" + (count+2) + " = sub i64 %" + wideBound + ", %" + (count+1) + "\n";
+    llvmCode += "%" + (count+3) + " = icmp sge i64 %" + (count+2) + ", " + factor + "\n";
+    count += 3;
+    llvmCode += branch(count, bodyFlag, exitFlag);
     count++;
-    llvmCode += "store i32 %" + (count-1) + ", i32* %" + varName + "\n";
-    if (symbolicTable.containsKey(forGen.getChild(2).getLabel())) {
-      llvmCode += "%" + count + " = load i32, i32* %" + forGen.getChild(2).getLabel() + "\n";
-      count++;
-      llvmCode += "%" + count + " = icmp slt i32 %" + (count-2) + ", %" + (count-1) + "\n";
-    } else {
-      llvmCode += computeExprArith(forGen.getChild(2));
-      llvmCode += "%" + count + " = icmp slt i32 %" + var + ", %" + (count-1) + "\n";
+    llvmCode += bodyFlag + ":\n";
+    output.append(llvmCode);
+    Step increment = new Step() {
+      void run() {
+        output.append(increment(varName, "add nsw"));
+      }
+    };
+    List<Object> copies = new ArrayList<Object>();
+    for (int copy = 0; copy < factor; copy++) {
+      copies.add(body);
+      if (copy < factor - 1) {
+        copies.add(increment);
+      }
+    }
+    copies.add(new Step() {
+      void run() {
+        output.append("br label %" + latchFlag + "\n");
+        output.append(latchFlag + ":\n");
+        output.append(increment(varName, "add nsw"));
+        output.append("br label %" + headerFlag + "\n");
+        output.append(exitFlag + ":\n");
+      }
+    });
+    //The iterations left after the unrolled loop.
+    copies.add(new Step() {
+      void run() {
+        if (trips >= 0) {
+          long left = trips % factor;
+          peel(forGen, (int) (start + trips - left), left);
+        } else {
+          forLoop(forGen);
+        }
+      }
+    });
+    copies.add(restoreBudget);
+    schedule(copies.toArray());
+  }
+
+  //The iterations of a FOR one after the other, the variable holding the first
+  //value, then the value after the last iteration.
+  private void peel(AbstractSyntaxTree forGen, int first, long trips) {
+    String varName = forGen.getChild(0).getLabel();
+    List<Object> iterations = new ArrayList<Object>();
+    for (int i = 0; i < trips; i++) {
+      if (i > 0) {
+        iterations.add("store i32 " + (first + i) + ", i32* %" + varName + "\n");
+      }
+      iterations.add(forGen.getChild(3));
+    }
+    if (trips > 0) {
+      iterations.add("store i32 " + (first + trips) + ", i32* %" + varName + "\n");
+    }
+    schedule(iterations.toArray());
+  }
+
+  /** The value of an arithmetic expression of numbers, computed in the order and
+  * with the 32 bit operations of computeExprArith. Null when it reads a variable or
+  * an array, or when a division is by 0 or overflows.
+  */
+  private Integer constantValue(AbstractSyntaxTree exprArith) {
+    List<Operation> stack = new ArrayList<Operation>();
+    stack.add(new Operation(exprArith));
+    int last = 0;
+    while (!stack.isEmpty()) {
+      Operation operation = stack.get(stack.size() - 1);
+      AbstractSyntaxTree expr = operation.expr;
+      String value = expr.getLabel();
+      int size = expr.getChildren().size();
+      Integer result;
+      if (operation.step == 0) {
+        if (value.equals("Index")) {
+          return null;
+        }
+        if (size == 1 && expr.getChild(0).getChildren().size() > 0) {
+          stack.set(stack.size() - 1, new Operation(expr.getChild(0)));
+          continue;
+        } else if (size <= 1) {
+          String operand = size == 0 ? value : expr.getChild(0).getLabel();
+          if (symbolicTable.containsKey(operand) || arrays.containsKey(operand)) {
+            return null;
+          }
+          try {
+            last = Integer.parseInt(operand);
+          } catch (NumberFormatException e) {
+            return null;
+          }
+          stack.remove(stack.size() - 1);
+          continue;
+        }
+        operation.step = 1;
+        stack.add(new Operation(expr.getChild(0)));
+      } else if (operation.step == 1) {
+        operation.left = last;
+        operation.step = 2;
+        stack.add(new Operation(expr.getChild(1)));
+      } else if (operation.step == 2) {
+        result = constantOperation(value, operation.left, last, false);
+        if (result == null) {
+          return null;
+        }
+        if (size == 3) {
+          operation.left = result;
+          operation.step = 3;
+          stack.add(new Operation(expr.getChild(2)));
+        } else {
+          last = result;
+          stack.remove(stack.size() - 1);
+        }
+      } else {
+        result = constantOperation(expr.getChild(2).getLabel(), operation.left, last, true);
+        if (result == null) {
+          return null;
+        }
+        last = result;
+        stack.remove(stack.size() - 1);
+      }
+    }
+    return last;
+  }
+
+  //The result of binaryOperation on constants, null when it has none.
+  private Integer constantOperation(String value, int left, int right, boolean third) {
+    if (value.equals("+")) {
+      return left + right;
+    } else if (value.equals("-")) {
+      return left - right;
+    } else if (value.equals("*")) {
+      return left * right;
+    } else if (value.equals("/")) {
+      if (right == 0 || (left == Integer.MIN_VALUE && right == -1)) {
+        return null;
+      }
+      return left / right;
+    } else if (third) {
+      return left + right;
+    }
+    return null;
+  }
+
+  /** Find the array accesses of a FOR body that are indexed by the loop variable
+  * and can be checked before the loop. Only innermost loops are considered, and
+  * only when the body writes neither the loop variable nor a variable of the bound.
+  */
+  private List<AbstractSyntaxTree> hoistableIndexes(AbstractSyntaxTree forGen) {
+    List<AbstractSyntaxTree> indexes = new ArrayList<AbstractSyntaxTree>();
+    String varName = forGen.getChild(0).getLabel();
+    AbstractSyntaxTree body = forGen.getChild(3);
+    if (containsLoop(body)) {
+      return indexes;
+    }
+    Set<String> writes = new HashSet<String>();
+    Set<String> boundNames = new HashSet<String>();
+    collectWrites(body, writes);
+    collectNames(forGen.getChild(2), boundNames);
+    if (writes.contains(varName) || boundNames.contains("Index")
+    || !Collections.disjoint(writes, boundNames)) {
+      return indexes;
+    }
+    collectIndexes(body, varName, indexes);
+    return indexes;
+  }
+
+  //Collect the variables and arrays written by a piece of code.
+  private void collectWrites(AbstractSyntaxTree code, Set<String> writes) {
+    List<AbstractSyntaxTree> nodes = new ArrayList<AbstractSyntaxTree>();
+    collectNodes(code, nodes);
+    for (AbstractSyntaxTree node: nodes) {
+      List<AbstractSyntaxTree> targets = new ArrayList<AbstractSyntaxTree>();
+      if (node.getLabel().equals("Assign") || node.getLabel().equals("For")) {
+        targets.add(node.getChild(0));
+      } else if (node.getLabel().equals("Read")) {
+        targets.addAll(node.getChildren());
+      }
+      for (AbstractSyntaxTree target: targets) {
+        if (target.getLabel().equals("Index")) {
+          writes.add(target.getChild(0).getLabel());
+        } else {
+          writes.add(target.getLabel());
+        }
+      }
+    }
+  }
+
+  //Collect the names used by an expression, an array access is noted "Index".
+  private void collectNames(AbstractSyntaxTree expr, Set<String> names) {
+    List<AbstractSyntaxTree> nodes = new ArrayList<AbstractSyntaxTree>();
+    collectNodes(expr, nodes);
+    for (AbstractSyntaxTree node: nodes) {
+      if (node.getChildren().size() == 0 || node.getLabel().equals("Index")) {
+        names.add(node.getLabel());
+      }
+    }
+  }
+
+  //Collect the array accesses whose index is exactly the given variable.
+  private void collectIndexes(AbstractSyntaxTree code, String varName, List<AbstractSyntaxTree> indexes) {
+    List<AbstractSyntaxTree> nodes = new ArrayList<AbstractSyntaxTree>();
+    collectNodes(code, nodes);
+    for (AbstractSyntaxTree node: nodes) {
+      if (node.getLabel().equals("Index") && node.getChild(1).getChildren().size() == 0
+      && node.getChild(1).getLabel().equals(varName)) {
+        indexes.add(node);
+      }
+    }
+  }
+
+  //Check if a piece of code contains a PARFOR.
+  private boolean containsParFor(AbstractSyntaxTree code) {
+    List<AbstractSyntaxTree> nodes = new ArrayList<AbstractSyntaxTree>();
+    collectNodes(code, nodes);
+    for (AbstractSyntaxTree node: nodes) {
+      if (node.getLabel().equals("ParFor")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  //Check if a piece of code contains a loop.
+  private boolean containsLoop(AbstractSyntaxTree code) {
+    List<AbstractSyntaxTree> nodes = new ArrayList<AbstractSyntaxTree>();
+    collectNodes(code, nodes);
+    for (AbstractSyntaxTree node: nodes) {
+      if (node.getLabel().equals("While") || node.getLabel().equals("For")) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Generate the statements of the program as a sequence of internal functions
+  * called by @main, each holding consecutive statements up to outlineSize
+  * statements (a single statement can be larger). The scalar variables are module
+  * globals: a function copies the ones it uses into its own allocas on entry and
+  * back on exit, so inside the function they are still promoted to registers and
+  * the copies cost a load and a store per variable and function.
+  */
+  private String outlineBlock(AbstractSyntaxTree code) {
+    String llvmCode = "";
+    List<AbstractSyntaxTree> statements = code.getChildren();
+    int start = 0;
+    while (start < statements.size()) {
+      int end = start;
+      int size = 0;
+      while (end < statements.size()) {
+        int statementSize = statementCount(statements.get(end));
+        if (end > start && size + statementSize > outlineSize) {
+          break;
+        }
+        size += statementSize;
+        end++;
+      }
+      outlineCount++;
+      String function = outlineStatements(statements.subList(start, end), outlineCount);
+      globalCode += function;
+      llvmCode += "call void @outlined" + outlineCount + "()\n";
+      start = end;
     }
-    llvmCode += "br i1 %" + count + ", label %" + startFlag + ", label %" + endFlag + "\n";
-    count++;
-    llvmCode += endFlag + ":\n";
     return llvmCode;
   }
 
+  //Generate the function running some statements of the program.
+  private String outlineStatements(List<AbstractSyntaxTree> statements, int number) {
+    int mainCount = count;
+    String mainEntry = entryCode;
+    count = 1;
+    entryCode = "";
+    //Loop variables are declared by their first loop, give them a global too.
+    List<AbstractSyntaxTree> nodes = new ArrayList<AbstractSyntaxTree>();
+    for (AbstractSyntaxTree statement: statements) {
+      collectNodes(statement, nodes);
+    }
+    Set<String> names = new HashSet<String>();
+    for (AbstractSyntaxTree node: nodes) {
+      if (node.getChildren().size() == 0) {
+        names.add(node.getLabel());
+      }
+      if ((node.getLabel().equals("For") || node.getLabel().equals("ParFor"))
+      && !symbolicTable.containsKey(node.getChild(0).getLabel())) {
+        String varName = node.getChild(0).getLabel();
+        globalCode += "@.var." + varName + " = internal global i32 0, align 4\n";
+        symbolicTable.put(varName, null);
+      }
+    }
+    String copyIn = "";
+    String copyOut = "";
+    for (String name: symbolicTable.keySet()) {
+      if (names.contains(name)) {
+        copyIn += "%" + name + " = alloca i32\n";
+        copyIn += "%.in." + name + " = load i32, i32* @.var." + name + "\n";
+        copyIn += "store i32 %.in." + name + ", i32* %" + name + "\n";
+        copyOut += "%.out." + name + " = load i32, i32* %" + name + "\n";
+        copyOut += "store i32 %.out." + name + ", i32* @.var." + name + "\n";
+      }
+    }
+    StringBuilder body = new StringBuilder();
+    for (AbstractSyntaxTree statement: statements) {
+      body.append(generateCode(statement));
+    }
+    String function = "define internal void @outlined" + number + "() noinline {\n" + entryCode + copyIn
+    + body + copyOut + "ret void\n}\n";
+    count = mainCount;
+    entryCode = mainEntry;
+    return function;
+  }
+
+  //Number of statements of a piece of code, nested statements included.
+  private int statementCount(AbstractSyntaxTree code) {
+    List<AbstractSyntaxTree> nodes = new ArrayList<AbstractSyntaxTree>();
+    collectNodes(code, nodes);
+    int statements = 0;
+    for (AbstractSyntaxTree node: nodes) {
+      String label = node.getLabel();
+      if (label == "Assign" || label == "If" || label == "While" || label == "For" || label == "ParFor"
+      || label == "Print" || label == "Read") {
+        statements++;
+      }
+    }
+    return statements;
+  }
+
+  /** A PARFOR runs its iterations on a pool of threads. Its body is outlined in
+  * a function that runs the iterations of one chunk of the range, and each thread
+  * runs one chunk. The body can read any variable, write the elements of arrays
+  * that it only accesses at the index of the loop variable, and update reductions:
+  * s := s + expr, s := s - expr or s := s * expr where s is used nowhere else in
+  * the body. Each thread updates its own copy of s and the copies are combined
+  * after the loop. The variables of the loops nested in a PARFOR are private to
+  * each iteration. Any other body runs serially, like a FOR, with a warning.
+  * As a PARFOR nested in another one runs serially, the generation of the outlined
+  * body is the only call of generateCode() made from the work of another.
+  */
+  private void generateParFor(AbstractSyntaxTree parFor) {
+    String llvmCode = "";
+    String varName = parFor.getChild(0).getLabel();
+    Set<String> privates = new HashSet<String>();
+    LinkedHashMap<String, String> reductions = new LinkedHashMap<String, String>();
+    String reason = inParallel ? "it is nested in another PARFOR" : serialReason(parFor, privates, reductions);
+    if (reason != null) {
+      warnings.add("PARFOR " + varName + " runs serially, " + reason);
+      generateFor(parFor);
+      return;
+    }
+    if (parCount == 0) {
+      globalCode += parallelFunction;
+    }
+    parCount++;
+    int par = parCount;
+    llvmCode += computeExprArith(parFor.getChild(1));
+    int start = count-1;
+    llvmCode += computeExprArith(parFor.getChild(2));
+    int bound = count-1;
+    Set<String> loopNames = new HashSet<String>(privates);
+    loopNames.add(varName);
+    for (String name: loopNames) {
+      if (!symbolicTable.containsKey(name)) {
+        entryCode += "%" + name + " = alloca i32\n";
+        symbolicTable.put(name, null);
+      }
+    }
+    List<String> captured = new ArrayList<String>();
+    Set<String> names = new HashSet<String>();
+    collectNames(parFor.getChild(3), names);
+    for (String name: symbolicTable.keySet()) {
+      if (names.contains(name) && !name.equals(varName) && !privates.contains(name)
+      && !reductions.containsKey(name)) {
+        captured.add(name);
+      }
+    }
+    int slots = Math.max(1, captured.size() + reductions.size() * MAX_THREADS);
+    String context = "[" + slots + " x i32]";
+    entryCode += "%.parContext" + par + " = alloca " + context + ", align 64\n";
+    for (int i = 0; i < captured.size(); i++) {
+      llvmCode += "%" + count + " = load i32, i32* %" + captured.get(i) + "\n";
+      llvmCode += "%" + (count+1) + " = getelementptr inbounds " + context + ", " + context
+      + "* %.parContext" + par + ", i32 0, i32 " + i + "\n";
+      llvmCode += "store i32 %" + count + ", i32* %" + (count+1) + "\n";
+      count += 2;
+    }
+    globalCode += outlineParFor(parFor, par, context, captured, privates, reductions);
+    llvmCode += "%" + count + " = bitcast " + context + "* %.parContext" + par + " to i8*\n";
+    llvmCode += "call void @parallelFor(void (i8*, i32, i32, i32)* @parFor" + par + ", i8* %" + count
+    + ", i32 %" + start + ", i32 %" + bound + ")\n";
+    count++;
+    int reduction = 0;
+    for (Map.Entry<String, String> entry: reductions.entrySet()) {
+      String label = "reduce" + par + "_" + reduction;
+      String operation = entry.getValue().equals("*") ? "mul" : "add";
+      int base = captured.size() + reduction * MAX_THREADS;
+      llvmCode += "br label %" + label + "Start\n";
+      llvmCode += label + "Start:\n";
+      llvmCode += "%" + count + " = load i32, i32* @.poolChunks, align 4\n";
+      llvmCode += "%" + (count+1) + " = load i32, i32* %" + entry.getKey() + "\n";
+      llvmCode += "br label %" + label + "\n";
+      llvmCode += label + ":\n";
+      llvmCode += "%" + (count+2) + " = phi i32 [ 0, %" + label + "Start ], [ %" + (count+8) + ", %" + label + " ]\n";
+      llvmCode += "%" + (count+3) + " = phi i32 [ %" + (count+1) + ", %" + label + "Start ], [ %" + (count+7)
+      + ", %" + label + " ]\n";
+      llvmCode += "%" + (count+4) + " = add i32 %" + (count+2) + ", " + base + "\n";
+      llvmCode += "%" + (count+5) + " = getelementptr inbounds " + context + ", " + context
+      + "* %.parContext" + par + ", i32 0, i32 %" + (count+4) + "\n";
+      llvmCode += "%" + (count+6) + " = load i32, i32* %" + (count+5) + "\n";
+      llvmCode += "%" + (count+7) + " = " + operation + " i32 %" + (count+3) + ", %" + (count+6) + "\n";
+      llvmCode += "%" + (count+8) + " = add i32 %" + (count+2) + ", 1\n";
+      llvmCode += "%" + (count+9) + " = icmp slt i32 %" + (count+8) + ", %" + count + "\n";
+      llvmCode += "br i1 %" + (count+9) + ", label %" + label + ", label %" + label + "End\n";
+      llvmCode += label + "End:\n";
+      llvmCode += "store i32 %" + (count+7) + ", i32* %" + entry.getKey() + "\n";
+      count += 10;
+      reduction++;
+    }
+    //Leave the loop variable with the value a FOR would give it.
+    llvmCode += "%" + count + " = icmp slt i32 %" + start + ", %" + bound + "\n";
+    llvmCode += "%" + (count+1) + " = select i1 %" + count + ", i32 %" + bound + ", i32 %" + start + "\n";
+    llvmCode += "store i32 %" + (count+1) + ", i32* %" + varName + "\n";
+    count += 2;
+    output.append(llvmCode);
+  }
+
+  //Generate the function running the iterations from %.lo to %.hi of a PARFOR.
+  private String outlineParFor(AbstractSyntaxTree parFor, int par, String context, List<String> captured,
+  Set<String> privates, LinkedHashMap<String, String> reductions) {
+    String varName = parFor.getChild(0).getLabel();
+    int mainCount = count;
+    String mainEntry = entryCode;
+    Set<String> declared = new HashSet<String>(symbolicTable.keySet());
+    count = 1;
+    entryCode = "";
+    inParallel = true;
+    String llvmCode = "";
+    llvmCode += "%" + count + " = bitcast i8* %.ctx to " + context + "*\n";
+    int ctx = count;
+    count++;
+    for (int i = 0; i < captured.size(); i++) {
+      entryCode += "%" + captured.get(i) + " = alloca i32\n";
+      llvmCode += "%" + count + " = getelementptr inbounds " + context + ", " + context + "* %" + ctx
+      + ", i32 0, i32 " + i + "\n";
+      llvmCode += "%" + (count+1) + " = load i32, i32* %" + count + "\n";
+      llvmCode += "store i32 %" + (count+1) + ", i32* %" + captured.get(i) + "\n";
+      count += 2;
+    }
+    entryCode += "%" + varName + " = alloca i32\n";
+    llvmCode += "store i32 %.lo, i32* %" + varName + "\n";
+    for (Map.Entry<String, String> entry: reductions.entrySet()) {
+      entryCode += "%" + entry.getKey() + " = alloca i32\n";
+      llvmCode += "store i32 " + (entry.getValue().equals("*") ? 1 : 0) + ", i32* %" + entry.getKey() + "\n";
+    }
+    for (String name: privates) {
+      entryCode += "%" + name + " = alloca i32\n";
+    }
+    llvmCode += "%" + count + " = icmp slt i32 %.lo, %.hi\n";
+    llvmCode += "br i1 %" + count + ", label %parLoop" + par + ", label %parEnd" + par + "\n";
+    count++;
+    llvmCode += "parLoop" + par + ":\n";
+    llvmCode += generateCode(parFor.getChild(3));
+    llvmCode += "%" + count + " = load i32, i32* %" + varName + "\n";
+    llvmCode += "%" + (count+1) + " = add nsw i32 %" + count + ", 1\n";
+    llvmCode += "store i32 %" + (count+1) + ", i32* %" + varName + "\n";
+    llvmCode += "%" + (count+2) + " = icmp slt i32 %" + (count+1) + ", %.hi\n";
+    llvmCode += "br i1 %" + (count+2) + ", label %parLoop" + par + ", label %parEnd" + par + "\n";
+    count += 3;
+    llvmCode += "parEnd" + par + ":\n";
+    int reduction = 0;
+    for (String name: reductions.keySet()) {
+      int base = captured.size() + reduction * MAX_THREADS;
+      llvmCode += "%" + count + " = load i32, i32* %" + name + "\n";
+      llvmCode += "%" + (count+1) + " = add i32 %.chunk, " + base + "\n";
+      llvmCode += "%" + (count+2) + " = getelementptr inbounds " + context + ", " + context + "* %" + ctx
+      + ", i32 0, i32 %" + (count+1) + "\n";
+      llvmCode += "store i32 %" + count + ", i32* %" + (count+2) + "\n";
+      count += 3;
+      reduction++;
+    }
+    llvmCode += "ret void\n";
+    String function = "define internal void @parFor" + par + "(i8* %.ctx, i32 %.chunk, i32 %.lo, i32 %.hi) {\n"
+    + entryCode + llvmCode + "}\n";
+    symbolicTable.keySet().retainAll(declared);
+    count = mainCount;
+    entryCode = mainEntry;
+    inParallel = false;
+    return function;
+  }
+
+  //Return why a PARFOR can't run in parallel, or null and its reductions if it can.
+  //Also used by the NativeGenerator, which runs the PARFOR serially but keeps the
+  //variables private to its iterations.
+  static String serialReason(AbstractSyntaxTree parFor, Set<String> privates,
+  LinkedHashMap<String, String> reductions) {
+    String varName = parFor.getChild(0).getLabel();
+    if (parFor.getChild(3).getChildren().isEmpty()) {
+      return "its body is empty";
+    }
+    AbstractSyntaxTree body = parFor.getChild(3);
+    List<AbstractSyntaxTree> nodes = new ArrayList<AbstractSyntaxTree>();
+    collectNodes(body, nodes);
+    Set<String> arraysWritten = new HashSet<String>();
+    Map<String, Integer> updates = new LinkedHashMap<String, Integer>();
+    for (AbstractSyntaxTree node: nodes) {
+      if (node.getLabel().equals("Print") || node.getLabel().equals("Read")) {
+        return "its body does PRINT or READ";
+      } else if (node.getLabel().equals("For") || node.getLabel().equals("ParFor")) {
+        privates.add(node.getChild(0).getLabel());
+      }
+    }
+    if (privates.contains(varName)) {
+      return "a nested loop uses its variable";
+    }
+    for (AbstractSyntaxTree node: nodes) {
+      if (!node.getLabel().equals("Assign")) {
+        continue;
+      }
+      AbstractSyntaxTree target = node.getChild(0);
+      String name = target.getLabel();
+      if (name.equals("Index")) {
+        arraysWritten.add(target.getChild(0).getLabel());
+        continue;
+      } else if (privates.contains(name)) {
+        continue;
+      }
+      String kind = name.equals(varName) ? null : reductionKind(name, node.getChild(1));
+      if (kind == null) {
+        return "it writes " + name + " outside of a reduction";
+      } else if (reductions.containsKey(name) && !reductions.get(name).equals(kind)) {
+        return "it both adds to and multiplies " + name;
+      }
+      reductions.put(name, kind);
+      updates.put(name, updates.containsKey(name) ? updates.get(name) + 1 : 1);
+    }
+    for (String name: reductions.keySet()) {
+      //Each update uses the variable twice, as its target and as its first operand.
+      int uses = 0;
+      for (AbstractSyntaxTree node: nodes) {
+        if (node.getChildren().size() == 0 && node.getLabel().equals(name)) {
+          uses++;
+        }
+      }
+      if (uses != 2 * updates.get(name)) {
+        return "it uses the reduction " + name + " outside of its updates";
+      }
+    }
+    for (AbstractSyntaxTree node: nodes) {
+      if (node.getLabel().equals("Index") && arraysWritten.contains(node.getChild(0).getLabel())
+      && !(node.getChild(1).getChildren().size() == 0 && node.getChild(1).getLabel().equals(varName))) {
+        return "it accesses the array " + node.getChild(0).getLabel() + " at another index than " + varName;
+      }
+    }
+    List<AbstractSyntaxTree> boundNodes = new ArrayList<AbstractSyntaxTree>();
+    collectNodes(parFor.getChild(2), boundNodes);
+    for (AbstractSyntaxTree node: boundNodes) {
+      String name = node.getLabel().equals("Index") ? node.getChild(0).getLabel() : node.getLabel();
+      if (reductions.containsKey(name) || privates.contains(name) || arraysWritten.contains(name)) {
+        return "its body changes its bound";
+      }
+    }
+    return null;
+  }
+
+  //Return "+" if the expression adds to the variable, "*" if it multiplies it,
+  //null otherwise. A third operand is added unless it is labeled "*" or "/".
+  private static String reductionKind(String name, AbstractSyntaxTree expr) {
+    String op = expr.getLabel();
+    int size = expr.getChildren().size();
+    if (size < 2 || expr.getChild(0).getChildren().size() > 0 || !expr.getChild(0).getLabel().equals(name)) {
+      return null;
+    }
+    String last = size == 3 ? expr.getChild(2).getLabel() : "";
+    if ((op.equals("+") || op.equals("-")) && !last.equals("*") && !last.equals("/")) {
+      return "+";
+    } else if (op.equals("*") && (size == 2 || (last.equals("*") && expr.getChild(2).getChildren().size() > 0))) {
+      return "*";
+    }
+    return null;
+  }
+
+  //Collect a node and all its descendants, in preorder.
+  private static void collectNodes(AbstractSyntaxTree node, List<AbstractSyntaxTree> nodes) {
+    List<AbstractSyntaxTree> stack = new ArrayList<AbstractSyntaxTree>();
+    stack.add(node);
+    while (!stack.isEmpty()) {
+      node = stack.remove(stack.size() - 1);
+      nodes.add(node);
+      for (int i = node.getChildren().size() - 1; i >= 0; i--) {
+        stack.add(node.getChild(i));
+      }
+    }
+  }
+
+  /** Values of a PRINT are evaluated first, then written by a single call to
+  * @printInts (one call per PRINT_BATCH values) instead of one call per value.
+  */
   public String generatePrint(AbstractSyntaxTree print) {
     String llvmCode = "";
+    List<Integer> values = new ArrayList<Integer>();
     for (AbstractSyntaxTree child: print.getChildren()) {
       String varName = child.getLabel();
       if (symbolicTable.containsKey(varName)) {
         llvmCode += "%" + count + " = load i32, i32* %" + varName + "\n";
-        llvmCode += "call void @println(i32 %" + count + ")" + "\n";
+        values.add(count);
         count++;
       } else {
         llvmCode += computeExprArith(child);
-        llvmCode += "call void @println(i32 %" + (count-1) + ")" + "\n";
+        values.add(count-1);
+      }
+    }
+    if (values.size() == 1) {
+      return llvmCode + "call void @println(i32 %" + values.get(0) + ")\n";
+    }
+    for (int start = 0; start < values.size(); start += PRINT_BATCH) {
+      int batch = Math.min(PRINT_BATCH, values.size() - start);
+      for (int i = 0; i < batch; i++) {
+        llvmCode += "store i32 %" + values.get(start + i) + ", i32* getelementptr inbounds (["
+        + PRINT_BATCH + " x i32], [" + PRINT_BATCH + " x i32]* @.printArgs, i32 0, i32 " + i + ")\n";
       }
+      llvmCode += "call void @printInts(i32 " + batch + ", i32* getelementptr inbounds (["
+      + PRINT_BATCH + " x i32], [" + PRINT_BATCH + " x i32]* @.printArgs, i32 0, i32 0))\n";
     }
     return llvmCode;
   }
 
+  /** A READ of several variables fills them with a single call to @readInts
+  * (one call per PRINT_BATCH variables). The values go through a static array
+  * so the variables themselves never escape and can still be promoted to registers.
+  */
   public String generateRead(AbstractSyntaxTree read) {
     String llvmCode = "";
     for (AbstractSyntaxTree child: read.getChildren()) {
-      String varName = child.getLabel();
-      llvmCode += "%" + count + "= call i32 @readInt()\n";
-      if (symbolicTable.containsKey(varName)) {
-        llvmCode += "store i32 %" + count + ", i32* %" + varName + "\n";
-      } else {
-        throw new Error("Variable " + varName + " is not declared");
-      }
+      checkTarget(child);
+    }
+    if (read.getChildren().size() == 1) {
+      llvmCode += "%" + count + " = call i32 @readInt()\n";
       count++;
+      llvmCode += storeVariable(read.getChild(0), count-1);
+      return llvmCode;
+    }
+    List<AbstractSyntaxTree> vars = read.getChildren();
+    for (int start = 0; start < vars.size(); start += PRINT_BATCH) {
+      int batch = Math.min(PRINT_BATCH, vars.size() - start);
+      llvmCode += "call void @readInts(i32 " + batch + ", i32* getelementptr inbounds (["
+      + PRINT_BATCH + " x i32], [" + PRINT_BATCH + " x i32]* @.readArgs, i32 0, i32 0))\n";
+      for (int i = 0; i < batch; i++) {
+        llvmCode += "%" + count + " = load i32, i32* getelementptr inbounds (["
+        + PRINT_BATCH + " x i32], [" + PRINT_BATCH + " x i32]* @.readArgs, i32 0, i32 " + i + ")\n";
+        count++;
+        llvmCode += storeVariable(vars.get(start + i), count-1);
+      }
     }
     return llvmCode;
   }
@@ -0,0 +1,36 @@
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** Flight Recorder event of a whole compilation, from the start of the lexing to
+* the end of the execution when -exec is given.
+*/
+
+@Name("superfortran.Compilation")
+@Label("Compilation")
+@Category("Super Fortran")
+@Description("Compilation of a Super Fortran program")
+class CompilationEvent extends jdk.jfr.Event {
+  @Label("File")
+  String file;
+
+  @Label("Source Size")
+  @DataAmount
+  long sourceBytes;
+
+  @Label("Tokens")
+  long tokens;
+
+  @Label("AST Nodes")
+  @Description("Number of nodes of the AST, -1 when not counted")
+  long astNodes;
+
+  @Label("IR Size")
+  @DataAmount
+  long irBytes;
+
+  @Label("Outcome")
+  String outcome;
+}
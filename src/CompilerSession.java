@@ -0,0 +1,251 @@
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/** Compile many programs in the same JVM, without printing anything: each call
+* returns the IR code, or the diagnostics of the errors that stopped it. The
+* warnings of the code generator are diagnostics too, with the IR code or the error.
+* The session keeps what a compilation only needs while it runs and reuses it for
+* the next one: the lexer and its buffer (reset for each source), the reader over
+* the source, the buffer that decodes bytes into characters, the list of tokens
+* given to the parser and the buffer of the IR code. The parser and the code
+* generator hold the state of one program and are created for each compilation.
+* A session is not thread safe, use one per thread.
+*/
+
+public class CompilerSession {
+  //Largest list of tokens and buffers kept between two compilations, a larger one
+  //is dropped so a huge program does not hold its memory.
+  private static final int MAX_KEPT_TOKENS = 1 << 16;
+  private static final int MAX_KEPT_CHARS = 1 << 20;
+
+  private SourceReader reader = new SourceReader();
+  private Lexer lexer = new Lexer(reader);
+  private List<Symbol> tokens = new ArrayList<Symbol>();
+  private CharsetDecoder decoder = StandardCharsets.UTF_8.newDecoder()
+  .onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+  private CharBuffer chars = CharBuffer.allocate(1024);
+  private StringBuilder output = new StringBuilder(1 << 14);
+  private boolean boundsCheck;
+  private int outlineSize;
+  private int unrollFactor = -1;
+  private long evalBudget;
+
+  /** The outcome of a compilation: the IR code when it succeeded, and the
+  * diagnostics: the warnings, then the error when it failed.
+  */
+  public static class Result {
+    private final String llvmCode;
+    private final List<Diagnostic> diagnostics;
+    private final int tokenCount;
+
+    Result(String llvmCode, List<Diagnostic> diagnostics, int tokenCount) {
+      this.llvmCode = llvmCode;
+      this.diagnostics = diagnostics;
+      this.tokenCount = tokenCount;
+    }
+
+    public boolean succeeded() {
+      return llvmCode != null;
+    }
+
+    /** The IR code, null when the compilation failed.
+    */
+    public String getLlvmCode() {
+      return llvmCode;
+    }
+
+    public List<Diagnostic> getDiagnostics() {
+      return diagnostics;
+    }
+
+    /** Number of tokens lexed, EOS included.
+    */
+    public int getTokenCount() {
+      return tokenCount;
+    }
+  }
+
+  /** Enable or disable the checks of the array indexes, see CodeGenerator.
+  */
+  public void setBoundsCheck(boolean boundsCheck) {
+    this.boundsCheck = boundsCheck;
+  }
+
+  /** Split the programs into functions of about the given number of statements, see
+  * CodeGenerator, 0 to disable.
+  */
+  public void setOutlineSize(int statements) {
+    this.outlineSize = statements;
+  }
+
+  /** Copy the body of the FOR loops with a known trip count, see CodeGenerator,
+  * 0 to disable.
+  */
+  public void setUnrollFactor(int factor) {
+    this.unrollFactor = factor;
+  }
+
+  /** Run the programs at compile time for at most the given number of statements
+  * and loop tests, see PartialEvaluator, 0 to disable.
+  */
+  public void setEvalBudget(long steps) {
+    this.evalBudget = steps;
+  }
+
+  /** Compile the text of a program.
+  * @param source the program
+  */
+  public Result compile(CharSequence source) {
+    reader.reset(source);
+    try {
+      return compile();
+    } finally {
+      reader.reset(null);
+    }
+  }
+
+  /** Compile a program encoded in UTF-8, from the position to the limit of the
+  * buffer, which are not changed.
+  * @param source the bytes of the program
+  */
+  public Result compile(ByteBuffer source) {
+    ByteBuffer bytes = source.duplicate();
+    int needed = (int) (bytes.remaining() * (double) decoder.maxCharsPerByte()) + 1;
+    if (chars.capacity() < needed) {
+      chars = CharBuffer.allocate(Math.max(needed, 2 * chars.capacity()));
+    }
+    chars.clear();
+    decoder.reset();
+    decoder.decode(bytes, chars, true);
+    decoder.flush(chars);
+    chars.flip();
+    try {
+      return compile(chars);
+    } finally {
+      if (chars.capacity() > MAX_KEPT_CHARS) {
+        chars = CharBuffer.allocate(1024);
+      }
+    }
+  }
+
+  /** Compile a .sf file, encoded in UTF-8.
+  * @param file the program
+  */
+  public Result compile(Path file) throws IOException {
+    return compile(ByteBuffer.wrap(Files.readAllBytes(file)));
+  }
+
+  //Lex, parse and generate the program of the reader. An error of a phase is
+  //returned as a diagnostic, at the token where it was found.
+  private Result compile() {
+    lexer.reset(reader);
+    String phase = "lex";
+    Parser parser = null;
+    CodeGenerator generator = null;
+    try {
+      Symbol token;
+      do {
+        token = lexer.yylex();
+        tokens.add(token);
+      } while (token.getType() != LexicalUnit.EOS);
+      phase = "parse";
+      parser = new Parser(tokens);
+      AbstractSyntaxTree ast = parser.parseProgram();
+      Parser.cleanTree(ast);
+      phase = "codegen";
+      generator = new CodeGenerator(ast);
+      generator.setBoundsCheck(boundsCheck);
+      generator.setOutlineSize(outlineSize);
+      if (unrollFactor >= 0) {
+        generator.setUnrollFactor(unrollFactor);
+      }
+      generator.setEvalBudget(evalBudget);
+      generator.generateLLVM(output);
+      if (generator.getWarnings().isEmpty()) {
+        return new Result(output.toString(), Collections.<Diagnostic>emptyList(), tokens.size());
+      }
+      return new Result(output.toString(), warnings(generator), tokens.size());
+    } catch (IOException | RuntimeException | Error e) {
+      int line = 0;
+      int column = 0;
+      if (phase == "lex") {
+        line = lexer.getLine();
+        column = lexer.getColumn();
+      } else if (phase == "parse") {
+        Symbol at = parser != null ? parser.getLookahead() : tokens.get(0);
+        line = at.getLine();
+        column = at.getColumn();
+      }
+      String message = e.getMessage() != null ? e.getMessage().trim() : e.toString();
+      List<Diagnostic> diagnostics = generator != null ? warnings(generator) : new ArrayList<Diagnostic>();
+      diagnostics.add(new Diagnostic(phase, line, column, message));
+      return new Result(null, diagnostics, tokens.size());
+    } finally {
+      if (tokens.size() > MAX_KEPT_TOKENS) {
+        tokens = new ArrayList<Symbol>();
+      } else {
+        tokens.clear();
+      }
+      if (output.capacity() > MAX_KEPT_CHARS) {
+        output = new StringBuilder(1 << 14);
+      } else {
+        output.setLength(0);
+      }
+    }
+  }
+
+  //The warnings of the code generator, which does not know the lines of the nodes.
+  private static List<Diagnostic> warnings(CodeGenerator generator) {
+    List<Diagnostic> diagnostics = new ArrayList<Diagnostic>();
+    for (String warning: generator.getWarnings()) {
+      diagnostics.add(new Diagnostic("codegen", 0, 0, warning, true));
+    }
+    return diagnostics;
+  }
+
+  //A reader over a CharSequence, set again for each source.
+  private static class SourceReader extends Reader {
+    private CharSequence source;
+    private int position;
+
+    void reset(CharSequence source) {
+      this.source = source;
+      this.position = 0;
+    }
+
+    @Override
+    public int read(char[] buffer, int offset, int length) {
+      int left = source.length() - position;
+      if (left <= 0) {
+        return -1;
+      }
+      int count = Math.min(length, left);
+      if (source instanceof String) {
+        ((String) source).getChars(position, position + count, buffer, offset);
+      } else if (source instanceof CharBuffer && ((CharBuffer) source).hasArray()) {
+        CharBuffer chars = (CharBuffer) source;
+        System.arraycopy(chars.array(), chars.arrayOffset() + chars.position() + position, buffer, offset, count);
+      } else {
+        for (int i = 0; i < count; i++) {
+          buffer[offset + i] = source.charAt(position + i);
+        }
+      }
+      position += count;
+      return count;
+    }
+
+    @Override
+    public void close() {
+    }
+  }
+}
@@ -0,0 +1,188 @@
+import java.lang.management.ManagementFactory;
+
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.ObjectName;
+
+/** Statistics of all the compilations run in this JVM: totals, rates and a
+* histogram of the compile latencies, exposed through JMX. The counters are
+* updated once per phase and once per compilation, and can be updated by several
+* threads at once.
+* Starting the platform MBean server takes longer than compiling a small program,
+* so the statistics are only registered as superfortran:type=CompilerStats when
+* asked: by register(), or at the first compilation when the JVM runs with
+* -Dsuperfortran.jmx=true or with the remote JMX agent.
+*/
+
+public class CompilerStats implements CompilerStatsMXBean {
+  private static final long[] BUCKETS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000};
+  public static final String NAME = "superfortran:type=CompilerStats";
+  private static CompilerStats instance;
+  private static boolean registered;
+
+  private final LongAdder compilations = new LongAdder();
+  private final LongAdder failures = new LongAdder();
+  private final LongAdder sourceBytes = new LongAdder();
+  private final LongAdder tokens = new LongAdder();
+  private final LongAdder irBytes = new LongAdder();
+  private final LongAdder compileNanos = new LongAdder();
+  private final AtomicLongArray histogram = new AtomicLongArray(BUCKETS.length + 1);
+  private final Map<String, LongAdder> phaseNanos = new ConcurrentHashMap<String, LongAdder>();
+  private final Map<String, LongAdder> phaseCounts = new ConcurrentHashMap<String, LongAdder>();
+  private volatile long since = System.nanoTime();
+
+  /** The statistics of this JVM.
+  */
+  public static synchronized CompilerStats get() {
+    if (instance == null) {
+      instance = new CompilerStats();
+      if (Boolean.getBoolean("superfortran.jmx") || System.getProperty("com.sun.management.jmxremote") != null) {
+        register();
+      }
+    }
+    return instance;
+  }
+
+  /** Register the statistics in the platform MBean server, once.
+  */
+  public static synchronized void register() {
+    if (registered) {
+      return;
+    }
+    registered = true;
+    try {
+      ManagementFactory.getPlatformMBeanServer().registerMBean(get(), new ObjectName(NAME));
+    } catch (Exception e) {
+      System.err.println("Failed to register the compiler statistics: " + e.getMessage());
+    }
+  }
+
+  /** Add the time of one run of a phase.
+  */
+  public void recordPhase(String phase, long nanos) {
+    adder(phaseNanos, phase).add(nanos);
+    adder(phaseCounts, phase).increment();
+  }
+
+  private static LongAdder adder(Map<String, LongAdder> adders, String key) {
+    LongAdder adder = adders.get(key);
+    if (adder == null) {
+      adders.putIfAbsent(key, new LongAdder());
+      adder = adders.get(key);
+    }
+    return adder;
+  }
+
+  /** Add a finished compilation, the sizes are 0 when unknown.
+  */
+  public void recordCompilation(long nanos, boolean success, long source, long tokenCount, long ir) {
+    compilations.increment();
+    if (!success) {
+      failures.increment();
+    }
+    sourceBytes.add(source);
+    tokens.add(tokenCount);
+    irBytes.add(ir);
+    compileNanos.add(nanos);
+    long millis = nanos / 1000000;
+    int bucket = 0;
+    while (bucket < BUCKETS.length && millis >= BUCKETS[bucket]) {
+      bucket++;
+    }
+    histogram.incrementAndGet(bucket);
+  }
+
+  public long getCompilations() {
+    return compilations.sum();
+  }
+
+  public long getFailures() {
+    return failures.sum();
+  }
+
+  public long getSourceBytes() {
+    return sourceBytes.sum();
+  }
+
+  public long getTokens() {
+    return tokens.sum();
+  }
+
+  public long getIrBytes() {
+    return irBytes.sum();
+  }
+
+  public double getTotalCompileMillis() {
+    return compileNanos.sum() / 1e6;
+  }
+
+  public double getMeanCompileMillis() {
+    long count = compilations.sum();
+    return count == 0 ? 0 : getTotalCompileMillis() / count;
+  }
+
+  /** Compilations per second of wall time since the start or the last reset.
+  */
+  public double getCompilationsPerSecond() {
+    return compilations.sum() * 1e9 / Math.max(1, System.nanoTime() - since);
+  }
+
+  /** Tokens per second of compile time.
+  */
+  public double getTokensPerSecond() {
+    return tokens.sum() * 1e9 / Math.max(1, compileNanos.sum());
+  }
+
+  /** IR bytes per second of compile time.
+  */
+  public double getIrBytesPerSecond() {
+    return irBytes.sum() * 1e9 / Math.max(1, compileNanos.sum());
+  }
+
+  public long[] getLatencyBucketsMillis() {
+    return BUCKETS.clone();
+  }
+
+  public long[] getLatencyHistogram() {
+    long[] counts = new long[histogram.length()];
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = histogram.get(i);
+    }
+    return counts;
+  }
+
+  public Map<String, Double> getPhaseMillis() {
+    Map<String, Double> millis = new TreeMap<String, Double>();
+    for (Map.Entry<String, LongAdder> phase: phaseNanos.entrySet()) {
+      millis.put(phase.getKey(), phase.getValue().sum() / 1e6);
+    }
+    return millis;
+  }
+
+  public Map<String, Long> getPhaseCounts() {
+    Map<String, Long> counts = new TreeMap<String, Long>();
+    for (Map.Entry<String, LongAdder> phase: phaseCounts.entrySet()) {
+      counts.put(phase.getKey(), phase.getValue().sum());
+    }
+    return counts;
+  }
+
+  public void reset() {
+    compilations.reset();
+    failures.reset();
+    sourceBytes.reset();
+    tokens.reset();
+    irBytes.reset();
+    compileNanos.reset();
+    for (int i = 0; i < histogram.length(); i++) {
+      histogram.set(i, 0);
+    }
+    phaseNanos.clear();
+    phaseCounts.clear();
+    since = System.nanoTime();
+  }
+}
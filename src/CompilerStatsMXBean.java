@@ -0,0 +1,27 @@
+import java.util.Map;
+
+/** Management interface of the compiler statistics, registered as
+* superfortran:type=CompilerStats in the platform MBean server.
+*/
+
+public interface CompilerStatsMXBean {
+  long getCompilations();
+  long getFailures();
+  long getSourceBytes();
+  long getTokens();
+  long getIrBytes();
+  double getTotalCompileMillis();
+  double getMeanCompileMillis();
+  double getCompilationsPerSecond();
+  double getTokensPerSecond();
+  double getIrBytesPerSecond();
+  /** Upper bounds in ms of the latency buckets, the last one has no bound. */
+  long[] getLatencyBucketsMillis();
+  /** Number of compilations in each latency bucket. */
+  long[] getLatencyHistogram();
+  /** Total time in ms of each phase, subprocesses included. */
+  Map<String, Double> getPhaseMillis();
+  /** Number of runs of each phase. */
+  Map<String, Long> getPhaseCounts();
+  void reset();
+}
@@ -0,0 +1,62 @@
+/** An error or a warning found by a CompilerSession: the phase that found it (lex,
+* parse or codegen), where it is in the source and its message. The code generator
+* does not know the lines of the nodes, its errors and warnings have line 0.
+*/
+
+public class Diagnostic {
+  private final String phase;
+  private final int line;
+  private final int column;
+  private final String message;
+  private final boolean warning;
+
+  /** Initialize a diagnostic.
+  * @param phase : the phase that found the error
+  * @param line : the line of the error, from 1, 0 when unknown
+  * @param column : the column of the error, from 0
+  * @param message : the message of the error
+  */
+  public Diagnostic(String phase, int line, int column, String message) {
+    this(phase, line, column, message, false);
+  }
+
+  /** Initialize an error or a warning.
+  * @param phase : the phase that found it
+  * @param line : its line, from 1, 0 when unknown
+  * @param column : its column, from 0
+  * @param message : its message
+  * @param warning : true for a warning, which does not stop the compilation
+  */
+  public Diagnostic(String phase, int line, int column, String message, boolean warning) {
+    this.phase = phase;
+    this.line = line;
+    this.column = column;
+    this.message = message;
+    this.warning = warning;
+  }
+
+  public String getPhase() {
+    return phase;
+  }
+
+  public int getLine() {
+    return line;
+  }
+
+  public int getColumn() {
+    return column;
+  }
+
+  public String getMessage() {
+    return message;
+  }
+
+  public boolean isWarning() {
+    return warning;
+  }
+
+  @Override
+  public String toString() {
+    return (line > 0 ? line + ":" + column + ": " : "") + phase + (warning ? " warning: " : " error: ") + message;
+  }
+}
@@ -0,0 +1,346 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Incremental front end: keep the text, the tokens and the AST of a program and
+* update them after each edit of the text, lexing and parsing again as little as
+* possible. The tree is always the one Parser.startParse() gives for the text.
+* The lexer has a single state, so lexing from the start of any token gives the
+* same tokens as lexing the whole text. After an edit, the text is lexed again
+* from the token before the edit until a new token starts where an old one starts
+* (shifted by the edit), the old tokens are kept from there, with their line moved
+* when the edit added or removed lines.
+* The parser records the tokens of each statement and of each block. The statements
+* of a block are parsed one after the other, so in the deepest block holding all
+* the new tokens, only the statements that overlap them are parsed again, as a
+* sequence that replaces them in the block; every other subtree is kept. An edit
+* of the header of an IF or a loop parses the whole statement again in its own
+* block, and an edit outside of the statements (the name or the variables of the
+* program) parses the whole program again.
+* A lexical or syntax error is thrown like the Parser does, the next edit then
+* starts from scratch. The text is lexed before it is parsed, so a lexical error
+* after a syntax error would come first: on an error, the text is parsed again by
+* Parser.startParse(), which lexes as it parses, to throw the same error.
+*/
+
+public class IncrementalParser {
+  private String text;
+  private List<Symbol> tokens;
+  //Offset of each token in the text.
+  private int[] offsets;
+  private AbstractSyntaxTree ast;
+  //First token and token after the last one of each statement, and of the list of
+  //statements of each block.
+  private Map<Object, int[]> ranges;
+  private boolean valid;
+  private int relexed;
+  private int reparsed;
+
+  /** Lex and parse a whole program.
+  * @param text the text of the program
+  */
+  public IncrementalParser(String text) throws IOException {
+    this.text = text;
+    parseAll();
+  }
+
+  public String getText() {
+    return text;
+  }
+
+  public List<Symbol> getTokens() {
+    return tokens;
+  }
+
+  /** The AST of the current text, its unchanged subtrees are kept by the edits.
+  */
+  public AbstractSyntaxTree getTree() {
+    return ast;
+  }
+
+  /** Number of tokens lexed by the last edit.
+  */
+  public int getRelexedTokens() {
+    return relexed;
+  }
+
+  /** Number of tokens parsed by the last edit.
+  */
+  public int getReparsedTokens() {
+    return reparsed;
+  }
+
+  /** Replace a part of the text and update the tokens and the tree.
+  * @param start the offset of the first replaced character
+  * @param end the offset after the last replaced character
+  * @param replacement the new text of the part
+  */
+  public void edit(int start, int end, String replacement) throws IOException {
+    String edited = text.substring(0, start) + replacement + text.substring(end);
+    if (!valid) {
+      text = edited;
+      parseAll();
+      return;
+    }
+    boolean updated = false;
+    try {
+      updated = update(edited, start, end, replacement.length());
+    } catch (Error e) {
+      //Parse the whole text to throw its own error, if it has one.
+    }
+    text = edited;
+    if (!updated) {
+      parseAll();
+    }
+  }
+
+  //Lex and parse the whole text, or throw the error of the Parser.
+  private void parseAll() throws IOException {
+    valid = false;
+    try {
+      tokenizeAndParse();
+    } catch (Error e) {
+      new Parser(new BufferedReader(new StringReader(text))).startParse();
+      throw e;
+    }
+  }
+
+  private void tokenizeAndParse() throws IOException {
+    tokens = Parser.tokenize(new BufferedReader(new StringReader(text)));
+    offsets = new int[tokens.size()];
+    int lineStart = 0;
+    int line = 0;
+    for (int i = 0; i < offsets.length; i++) {
+      Symbol token = tokens.get(i);
+      while (line < token.getLine() - 1) {
+        lineStart = nextLine(text, lineStart);
+        line++;
+      }
+      offsets[i] = lineStart + token.getColumn();
+    }
+    Parser parser = new Parser(tokens);
+    ranges = new IdentityHashMap<Object, int[]>();
+    parser.setRanges(ranges);
+    ast = parser.parseProgram();
+    Parser.cleanTree(ast);
+    relexed = tokens.size();
+    reparsed = tokens.size();
+    valid = true;
+  }
+
+  //Lex again the edited part of the text, then parse again the statements it
+  //changed. False when the edit is outside of the statements, nothing is changed
+  //then or when an error is thrown.
+  private boolean update(String edited, int start, int end, int length) throws IOException {
+    int delta = length - (end - start);
+    int count = tokens.size();
+    //Lex from the token before the first one that the edit can change.
+    int first = 0;
+    int last = count - 1;
+    while (first < last) {
+      int middle = (first + last) / 2;
+      if (offsets[middle] + tokenLength(middle) < start) {
+        first = middle + 1;
+      } else {
+        last = middle;
+      }
+    }
+    int from = Math.max(0, first - 1);
+    int fromOffset = offsets[from];
+    int fromLine = tokens.get(from).getLine() - 1;
+    int fromColumn = tokens.get(from).getColumn();
+    StringReader reader = new StringReader(edited);
+    reader.skip(fromOffset);
+    Lexer lexer = new Lexer(reader);
+    List<Symbol> lexed = new ArrayList<Symbol>();
+    List<Integer> lexedOffsets = new ArrayList<Integer>();
+    int lineStart = fromOffset;
+    int line = 0;
+    int old = first;
+    int lineDelta = 0;
+    int columnDelta = 0;
+    while (true) {
+      Symbol token = lexer.yylex();
+      int tokenLine = token.getLine() - 1;
+      while (line < tokenLine) {
+        lineStart = nextLine(edited, lineStart);
+        line++;
+      }
+      int column = tokenLine == 0 ? fromColumn + token.getColumn() : token.getColumn();
+      int offset = lineStart + token.getColumn();
+      if (offset >= start + length) {
+        //Past the edit, the tokens are the old ones once a token starts like one.
+        while (old < count && offsets[old] < offset - delta) {
+          old++;
+        }
+        if (old < count && offsets[old] == offset - delta) {
+          lineDelta = fromLine + tokenLine - (tokens.get(old).getLine() - 1);
+          columnDelta = column - tokens.get(old).getColumn();
+          break;
+        }
+      }
+      lexed.add(new Symbol(token.getType(), fromLine + tokenLine, column, token.getValue()));
+      lexedOffsets.add(offset);
+    }
+    int to = old;
+    int tokenDelta = lexed.size() - (to - from);
+
+    //The deepest block holding the lexed tokens.
+    AbstractSyntaxTree program = ast;
+    List<AbstractSyntaxTree> block = null;
+    for (AbstractSyntaxTree child: program.getChildren()) {
+      if (child.getLabel() == "Code") {
+        block = child.getChildren();
+      }
+    }
+    int[] blockRange = ranges.get(block);
+    if (blockRange[0] > from || blockRange[1] < to) {
+      return false;
+    }
+    while (true) {
+      int index = lastStartingAt(block, from);
+      List<AbstractSyntaxTree> inner = null;
+      if (index >= 0 && ranges.get(block.get(index))[1] >= to) {
+        for (AbstractSyntaxTree child: block.get(index).getChildren()) {
+          int[] range = ranges.get(child.getChildren());
+          if (child.getLabel() == "Code" && range != null && range[0] <= from && to <= range[1]) {
+            inner = child.getChildren();
+          }
+        }
+      }
+      if (inner == null) {
+        break;
+      }
+      block = inner;
+    }
+
+    //The statements that overlap the lexed tokens, parsed again with the tokens
+    //between them.
+    int firstStatement = lastStartingAt(block, from);
+    if (firstStatement < 0 || ranges.get(block.get(firstStatement))[1] <= from) {
+      firstStatement++;
+    }
+    int lastStatement = firstStatement - 1;
+    while (lastStatement + 1 < block.size() && ranges.get(block.get(lastStatement + 1))[0] < to) {
+      lastStatement++;
+    }
+    int pieceStart = from;
+    int pieceEnd = to;
+    if (firstStatement <= lastStatement) {
+      pieceStart = Math.min(from, ranges.get(block.get(firstStatement))[0]);
+      pieceEnd = Math.max(to, ranges.get(block.get(lastStatement))[1]);
+    }
+    List<Symbol> piece = new ArrayList<Symbol>();
+    piece.addAll(tokens.subList(pieceStart, from));
+    piece.addAll(lexed);
+    piece.addAll(tokens.subList(to, pieceEnd));
+    Symbol next = tokens.get(pieceEnd);
+    piece.add(new Symbol(LexicalUnit.EOS, next.getLine() - 1 + lineDelta, next.getColumn(), ""));
+    Parser parser = new Parser(piece);
+    Map<Object, int[]> pieceRanges = new IdentityHashMap<Object, int[]>();
+    parser.setRanges(pieceRanges);
+    List<AbstractSyntaxTree> parsed = parser.parseStatements();
+    for (AbstractSyntaxTree statement: parsed) {
+      Parser.cleanTree(statement);
+    }
+
+    //Nothing failed, replace the tokens and the statements.
+    List<AbstractSyntaxTree> replaced = block.subList(firstStatement, lastStatement + 1);
+    List<AbstractSyntaxTree> stack = new ArrayList<AbstractSyntaxTree>(replaced);
+    while (!stack.isEmpty()) {
+      AbstractSyntaxTree node = stack.remove(stack.size() - 1);
+      ranges.remove(node);
+      ranges.remove(node.getChildren());
+      stack.addAll(node.getChildren());
+    }
+    replaced.clear();
+    block.addAll(firstStatement, parsed);
+    for (int[] range: ranges.values()) {
+      if (range[0] >= to) {
+        range[0] += tokenDelta;
+      }
+      if (range[1] >= to) {
+        range[1] += tokenDelta;
+      }
+    }
+    for (Map.Entry<Object, int[]> entry: pieceRanges.entrySet()) {
+      int[] range = entry.getValue();
+      ranges.put(entry.getKey(), new int[] {range[0] + pieceStart, range[1] + pieceStart});
+    }
+
+    int[] moved = new int[count + tokenDelta];
+    System.arraycopy(offsets, 0, moved, 0, from);
+    for (int i = 0; i < lexed.size(); i++) {
+      moved[from + i] = lexedOffsets.get(i);
+    }
+    System.arraycopy(offsets, to, moved, to + tokenDelta, count - to);
+    if (delta != 0) {
+      for (int i = to + tokenDelta; i < moved.length; i++) {
+        moved[i] += delta;
+      }
+    }
+    //The old tokens move to other lines, and on the line of the edit to other columns.
+    //When no line is added or removed, only the tokens of the edit line change.
+    int editLine = tokens.get(to).getLine();
+    for (int i = to; i < count; i++) {
+      Symbol token = tokens.get(i);
+      if (lineDelta == 0 && token.getLine() != editLine) {
+        break;
+      }
+      int column = token.getLine() == editLine ? token.getColumn() + columnDelta : token.getColumn();
+      if (lineDelta != 0 || column != token.getColumn()) {
+        tokens.set(i, new Symbol(token.getType(), token.getLine() - 1 + lineDelta, column, token.getValue()));
+      }
+    }
+    offsets = moved;
+    tokens.subList(from, to).clear();
+    tokens.addAll(from, lexed);
+    relexed = lexed.size();
+    reparsed = piece.size() - 1;
+    return true;
+  }
+
+  //Index of the last statement of a block starting at or before a token, -1 if none.
+  private int lastStartingAt(List<AbstractSyntaxTree> block, int token) {
+    int low = 0;
+    int high = block.size();
+    while (low < high) {
+      int middle = (low + high) / 2;
+      if (ranges.get(block.get(middle))[0] <= token) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    return low - 1;
+  }
+
+  private int tokenLength(int index) {
+    Object value = tokens.get(index).getValue();
+    return value == null ? 0 : value.toString().length();
+  }
+
+  //Offset of the line after the one at an offset, with the line terminators of the
+  //lexer: \r\n, \r, \n, \u000B, \u000C, \u0085, \u2028 and \u2029.
+  private static int nextLine(String text, int offset) {
+    while (offset < text.length()) {
+      char c = text.charAt(offset++);
+      if (c == '\r') {
+        if (offset < text.length() && text.charAt(offset) == '\n') {
+          offset++;
+        }
+        return offset;
+      }
+      if (c == '\n' || c == '\u000B' || c == '\u000C' || c == '\u0085' || c == '\u2028' || c == '\u2029') {
+        return offset;
+      }
+    }
+    return offset;
+  }
+
+}
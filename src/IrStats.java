@@ -0,0 +1,257 @@
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/** Measures of the IR code of a program, to follow how lean the code generator
+* keeps it: the instructions by opcode, the loads and stores of each variable, the
+* basic blocks and the instructions of each kind of statement. Only the functions
+* of the program are measured (@main and the functions holding its statements, made
+* by -outline or a PARFOR), not the runtime functions that print and read.
+* The statements are found by the markers of CodeGenerator.setStatementMarkers(),
+* which are removed from the code. An instruction belongs to the innermost statement
+* around it, so the instructions of an IF or a loop are its condition and branches,
+* not its body.
+* The report has one measure per line, sorted, so the reports of two versions of
+* the code generator can be compared with diff.
+*/
+
+public class IrStats {
+  /** First line of the code of a marked statement, followed by its number and
+  * its label.
+  */
+  static final String STATEMENT_MARKER = "; statement ";
+  /** Last line of the code of a marked statement.
+  */
+  static final String END_MARKER = "; end statement";
+
+  private String code;
+  private int instructions;
+  private int blocks;
+  private int largestBlock;
+  private String largestBlockName;
+  private Map<String, Integer> opcodes = new TreeMap<String, Integer>();
+  //Loads and stores of each variable, an array v is named v[].
+  private Map<String, int[]> variables = new TreeMap<String, int[]>();
+  //Label and instructions of each statement by number, the instructions outside
+  //the statements (variables, loop variables, calls of outlined functions) at 0.
+  private Map<Integer, String> labels = new HashMap<Integer, String>();
+  private Map<Integer, Integer> statementInstructions = new HashMap<Integer, Integer>();
+
+  /** Measure the IR code of a program generated with the statement markers.
+  * @param llvmCode the IR code
+  */
+  public IrStats(String llvmCode) {
+    List<String> lines = new ArrayList<String>();
+    StringBuilder stripped = new StringBuilder(llvmCode.length());
+    //The functions holding statements, found first since a function is only known
+    //to be part of the program at its first statement.
+    Set<String> programFunctions = new HashSet<String>();
+    programFunctions.add("main");
+    String function = null;
+    int start = 0;
+    while (start < llvmCode.length()) {
+      int end = llvmCode.indexOf('\n', start);
+      end = end < 0 ? llvmCode.length() : end;
+      String line = llvmCode.substring(start, end);
+      if (line.startsWith(STATEMENT_MARKER)) {
+        programFunctions.add(function);
+      } else if (!line.startsWith(END_MARKER)) {
+        stripped.append(llvmCode, start, Math.min(end + 1, llvmCode.length()));
+        if (line.startsWith("define ")) {
+          function = functionName(line);
+        }
+      }
+      lines.add(line);
+      start = end + 1;
+    }
+    code = stripped.toString();
+
+    List<Integer> statements = new ArrayList<Integer>();
+    statements.add(0);
+    //Variable addressed by each register holding the address of an array element.
+    Map<String, String> elements = new HashMap<String, String>();
+    boolean inProgram = false;
+    int blockSize = 0;
+    String blockName = null;
+    for (String line: lines) {
+      if (line.startsWith("define ")) {
+        function = functionName(line);
+        inProgram = programFunctions.contains(function);
+        elements.clear();
+        if (inProgram) {
+          blocks++;
+          blockName = function + ":entry";
+          blockSize = 0;
+        }
+        continue;
+      }
+      if (!inProgram || line.isEmpty()) {
+        continue;
+      }
+      if (line.startsWith(STATEMENT_MARKER)) {
+        String[] marker = line.substring(STATEMENT_MARKER.length()).split(" ");
+        int number = Integer.parseInt(marker[0]);
+        labels.put(number, marker[1]);
+        statements.add(number);
+      } else if (line.startsWith(END_MARKER)) {
+        statements.remove(statements.size() - 1);
+      } else if (line.startsWith(";")) {
+        continue;
+      } else if (line.equals("}")) {
+        endBlock(blockName, blockSize);
+        inProgram = false;
+      } else if (line.endsWith(":")) {
+        endBlock(blockName, blockSize);
+        blocks++;
+        blockName = function + ":" + line.substring(0, line.length() - 1);
+        blockSize = 0;
+      } else {
+        instructions++;
+        blockSize++;
+        Integer statement = statements.get(statements.size() - 1);
+        Integer count = statementInstructions.get(statement);
+        statementInstructions.put(statement, count == null ? 1 : count + 1);
+        instruction(line, elements);
+      }
+    }
+  }
+
+  /** The IR code without the statement markers.
+  */
+  public String getCode() {
+    return code;
+  }
+
+  /** The report of the measures, one per line:
+  *   the number of instructions and blocks, the largest block and the number of
+  *   instructions outside the statements,
+  *   opcode name count,
+  *   variable name loads n stores n,
+  *   construct label statements n instructions n per statement n max n,
+  * where the instructions of a construct are those of its statements (copies of an
+  * unrolled statement included) and max those of the largest statement.
+  * @param program the name of the program
+  */
+  public String report(String program) {
+    StringBuilder report = new StringBuilder();
+    report.append("program " + program + "\n");
+    report.append("instructions " + instructions + "\n");
+    report.append("blocks " + blocks + "\n");
+    report.append("largest block " + largestBlock + " " + largestBlockName + "\n");
+    Integer outside = statementInstructions.get(0);
+    report.append("outside statements " + (outside == null ? 0 : outside) + "\n");
+    for (Map.Entry<String, Integer> opcode: opcodes.entrySet()) {
+      report.append("opcode " + opcode.getKey() + " " + opcode.getValue() + "\n");
+    }
+    for (Map.Entry<String, int[]> variable: variables.entrySet()) {
+      report.append("variable " + variable.getKey() + " loads " + variable.getValue()[0] + " stores "
+      + variable.getValue()[1] + "\n");
+    }
+    //Statements, instructions and largest statement of each construct.
+    Map<String, int[]> constructs = new TreeMap<String, int[]>();
+    for (Map.Entry<Integer, String> statement: labels.entrySet()) {
+      Integer count = statementInstructions.get(statement.getKey());
+      if (count == null) {
+        count = 0;
+      }
+      int[] construct = constructs.get(statement.getValue());
+      if (construct == null) {
+        construct = new int[3];
+        constructs.put(statement.getValue(), construct);
+      }
+      construct[0]++;
+      construct[1] += count;
+      construct[2] = Math.max(construct[2], count);
+    }
+    for (Map.Entry<String, int[]> construct: constructs.entrySet()) {
+      int[] counts = construct.getValue();
+      report.append("construct " + construct.getKey() + " statements " + counts[0] + " instructions " + counts[1]
+      + String.format(Locale.ROOT, " per statement %.1f", counts[1] / (double) counts[0]) + " max " + counts[2]
+      + "\n");
+    }
+    return report.toString();
+  }
+
+  //Count an instruction, and the variable it loads or stores.
+  private void instruction(String line, Map<String, String> elements) {
+    String opcode;
+    String register = null;
+    int assign = line.indexOf(" = ");
+    if (line.startsWith("%") && assign > 0) {
+      register = line.substring(0, assign);
+      opcode = firstWord(line, assign + 3);
+    } else {
+      opcode = firstWord(line, 0);
+    }
+    Integer count = opcodes.get(opcode);
+    opcodes.put(opcode, count == null ? 1 : count + 1);
+    if (opcode.equals("getelementptr")) {
+      String array = variableName(pointer(line));
+      if (array != null && register != null) {
+        elements.put(register, array);
+      }
+    } else if (opcode.equals("load") || opcode.equals("store")) {
+      String pointer = pointer(line);
+      String name = elements.containsKey(pointer) ? elements.get(pointer) : variableName(pointer);
+      if (name != null) {
+        int[] accesses = variables.get(name);
+        if (accesses == null) {
+          accesses = new int[2];
+          variables.put(name, accesses);
+        }
+        accesses[opcode.equals("load") ? 0 : 1]++;
+      }
+    }
+  }
+
+  private void endBlock(String name, int size) {
+    if (name != null && size > largestBlock) {
+      largestBlock = size;
+      largestBlockName = name;
+    }
+  }
+
+  private static String firstWord(String line, int start) {
+    int end = line.indexOf(' ', start);
+    return line.substring(start, end < 0 ? line.length() : end);
+  }
+
+  //The first pointer operand of an instruction, after its type.
+  private static String pointer(String line) {
+    int start = line.indexOf("* ");
+    if (start < 0) {
+      return "";
+    }
+    start += 2;
+    int end = start;
+    while (end < line.length() && line.charAt(end) != ',' && line.charAt(end) != ' ') {
+      end++;
+    }
+    return line.substring(start, end);
+  }
+
+  //The variable of the program at an address: %x (an alloca of main or of a
+  //function), @.var.x (a global made by -outline) or @.array.v, null for the
+  //registers and the globals of the compiler.
+  private static String variableName(String pointer) {
+    if (pointer.startsWith("@.var.")) {
+      return pointer.substring("@.var.".length());
+    } else if (pointer.startsWith("@.array.")) {
+      return pointer.substring("@.array.".length()) + "[]";
+    } else if (pointer.startsWith("%") && pointer.length() > 1 && pointer.charAt(1) != '.'
+    && !Character.isDigit(pointer.charAt(1))) {
+      return pointer.substring(1);
+    }
+    return null;
+  }
+
+  private static String functionName(String define) {
+    int start = define.indexOf('@') + 1;
+    return define.substring(start, define.indexOf('(', start));
+  }
+}
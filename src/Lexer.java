@@ -35,12 +35,12 @@ class Lexer {
    * Translates characters to character classes
    */
   private static final String ZZ_CMAP_PACKED = 
-    "\11\0\1\11\1\5\1\44\1\11\1\4\22\0\1\11\7\0\1\36"+
-    "\1\37\1\10\1\41\1\33\1\40\1\0\1\7\1\1\11\6\1\34"+
-    "\1\0\1\43\1\35\1\42\2\0\1\24\1\12\1\3\1\22\1\13"+
+    "\11\0\1\11\1\5\1\46\1\11\1\4\22\0\1\11\7\0\1\36"+
+    "\1\37\1\10\1\43\1\33\1\42\1\0\1\7\1\1\11\6\1\34"+
+    "\1\0\1\45\1\35\1\44\2\0\1\24\1\12\1\3\1\22\1\13"+
     "\1\30\1\14\1\31\1\15\2\3\1\25\1\3\1\16\1\21\1\17"+
-    "\1\3\1\20\1\26\1\27\1\3\1\23\1\32\3\3\6\0\32\2"+
-    "\12\0\1\44\u1fa2\0\1\44\1\44\uffff\0\uffff\0\uffff\0\uffff\0\uffff\0\uffff\0\uffff\0\uffff\0\uffff\0\uffff\0\uffff\0\uffff\0\uffff\0\uffff\0\uffff\0\uffff\0\udfe6\0";
+    "\1\3\1\20\1\26\1\27\1\3\1\23\1\32\3\3\1\40\1\0"+
+    "\1\41\3\0\32\2\12\0\1\46\u1fa2\0\1\46\1\46\uffff\0\uffff\0\uffff\0\uffff\0\uffff\0\uffff\0\uffff\0\uffff\0\uffff\0\uffff\0\uffff\0\uffff\0\uffff\0\uffff\0\uffff\0\uffff\0\udfe6\0";
 
   /** 
    * Translates characters to character classes
@@ -55,16 +55,17 @@ class Lexer {
   private static final String ZZ_ACTION_PACKED_0 =
     "\1\0\1\1\1\2\1\3\1\1\2\4\1\2\1\5"+
     "\1\6\1\7\15\1\1\10\1\1\1\11\1\12\1\13"+
-    "\1\14\1\15\1\16\1\17\1\20\1\21\1\3\1\22"+
-    "\2\23\1\7\2\24\3\1\1\25\3\1\1\26\1\27"+
-    "\2\1\1\30\3\1\1\31\1\32\1\33\1\34\2\22"+
-    "\1\23\1\7\2\0\3\1\1\35\3\1\1\36\1\1"+
-    "\1\37\1\1\1\0\5\1\1\40\1\1\1\41\1\1"+
-    "\1\42\2\1\1\43\3\1\1\44\1\1\1\45\2\1"+
-    "\1\46\3\1\1\47\3\1\1\50\1\1\1\51\1\52";
+    "\1\14\1\15\1\16\1\17\1\20\1\21\1\22\1\23"+
+    "\1\3\1\24\2\25\1\7\2\26\3\1\1\27\4\1"+
+    "\1\30\1\31\2\1\1\32\3\1\1\33\1\34\1\35"+
+    "\1\36\2\24\1\25\1\7\2\0\3\1\1\37\4\1"+
+    "\1\40\1\1\1\41\1\1\1\0\5\1\1\42\2\1"+
+    "\1\43\1\1\1\44\2\1\1\45\3\1\1\46\2\1"+
+    "\1\47\2\1\1\50\1\1\1\51\2\1\1\52\3\1"+
+    "\1\53\1\1\1\54\1\55";
 
   private static int [] zzUnpackAction() {
-    int [] result = new int[112];
+    int [] result = new int[119];
     int offset = 0;
     offset = zzUnpackAction(ZZ_ACTION_PACKED_0, offset, result);
     return result;
@@ -89,23 +90,24 @@ class Lexer {
   private static final int [] ZZ_ROWMAP = zzUnpackRowMap();
 
   private static final String ZZ_ROWMAP_PACKED_0 =
-    "\0\0\0\45\0\112\0\157\0\224\0\271\0\45\0\336"+
-    "\0\u0103\0\u0128\0\45\0\u014d\0\u0172\0\u0197\0\u01bc\0\u01e1"+
-    "\0\u0206\0\u022b\0\u0250\0\u0275\0\u029a\0\u02bf\0\u02e4\0\u0309"+
-    "\0\45\0\u032e\0\u0353\0\45\0\45\0\45\0\45\0\u0378"+
-    "\0\u039d\0\112\0\u03c2\0\u03e7\0\u040c\0\u0431\0\u0456\0\u047b"+
-    "\0\u04a0\0\45\0\u04c5\0\u04ea\0\u050f\0\224\0\u0534\0\u0559"+
-    "\0\u057e\0\224\0\224\0\u05a3\0\u05c8\0\224\0\u05ed\0\u0612"+
-    "\0\u0637\0\45\0\45\0\45\0\45\0\u065c\0\u0681\0\u06a6"+
-    "\0\u06cb\0\u06f0\0\u0715\0\u073a\0\u075f\0\u0784\0\224\0\u07a9"+
-    "\0\u07ce\0\u07f3\0\224\0\u0818\0\224\0\u083d\0\u0862\0\u0887"+
-    "\0\u08ac\0\u08d1\0\u08f6\0\u091b\0\224\0\u0940\0\224\0\u0965"+
-    "\0\224\0\u098a\0\u09af\0\224\0\u09d4\0\u09f9\0\u0a1e\0\224"+
-    "\0\u0a43\0\224\0\u0a68\0\u0a8d\0\224\0\u0ab2\0\u0ad7\0\u0afc"+
-    "\0\224\0\u0b21\0\u0b46\0\u0b6b\0\224\0\u0b90\0\224\0\224";
+    "\0\0\0\47\0\116\0\165\0\234\0\303\0\47\0\352"+
+    "\0\u0111\0\u0138\0\47\0\u015f\0\u0186\0\u01ad\0\u01d4\0\u01fb"+
+    "\0\u0222\0\u0249\0\u0270\0\u0297\0\u02be\0\u02e5\0\u030c\0\u0333"+
+    "\0\47\0\u035a\0\u0381\0\47\0\47\0\47\0\47\0\47"+
+    "\0\47\0\u03a8\0\u03cf\0\116\0\u03f6\0\u041d\0\u0444\0\u046b"+
+    "\0\u0492\0\u04b9\0\u04e0\0\47\0\u0507\0\u052e\0\u0555\0\234"+
+    "\0\u057c\0\u05a3\0\u05ca\0\u05f1\0\234\0\234\0\u0618\0\u063f"+
+    "\0\234\0\u0666\0\u068d\0\u06b4\0\47\0\47\0\47\0\47"+
+    "\0\u06db\0\u0702\0\u0729\0\u0750\0\u0777\0\u079e\0\u07c5\0\u07ec"+
+    "\0\u0813\0\234\0\u083a\0\u0861\0\u0888\0\u08af\0\234\0\u08d6"+
+    "\0\234\0\u08fd\0\u0924\0\u094b\0\u0972\0\u0999\0\u09c0\0\u09e7"+
+    "\0\234\0\u0a0e\0\u0a35\0\234\0\u0a5c\0\234\0\u0a83\0\u0aaa"+
+    "\0\234\0\u0ad1\0\u0af8\0\u0b1f\0\234\0\u0b46\0\u0b6d\0\234"+
+    "\0\u0b94\0\u0bbb\0\234\0\u0be2\0\234\0\u0c09\0\u0c30\0\234"+
+    "\0\u0c57\0\u0c7e\0\u0ca5\0\234\0\u0ccc\0\234\0\234";
 
   private static int [] zzUnpackRowMap() {
-    int [] result = new int[112];
+    int [] result = new int[119];
     int offset = 0;
     offset = zzUnpackRowMap(ZZ_ROWMAP_PACKED_0, offset, result);
     return result;
@@ -132,92 +134,98 @@ class Lexer {
     "\1\12\1\13\1\14\1\15\1\5\1\16\1\17\1\20"+
     "\1\21\1\22\1\23\1\24\1\25\2\5\1\26\1\27"+
     "\1\5\1\30\1\31\1\32\1\33\1\34\1\35\1\36"+
-    "\1\37\1\40\1\41\47\0\1\42\1\43\3\0\1\42"+
-    "\37\0\1\44\1\4\1\45\2\0\1\44\3\0\21\45"+
-    "\13\0\1\46\1\47\1\5\2\0\1\46\3\0\21\5"+
-    "\17\0\1\7\40\0\1\10\1\43\3\0\1\10\45\0"+
-    "\1\50\1\51\43\0\1\52\36\0\1\46\1\47\1\5"+
-    "\2\0\1\46\3\0\1\5\1\53\17\5\13\0\1\46"+
-    "\1\47\1\5\2\0\1\46\3\0\4\5\1\54\6\5"+
-    "\1\55\5\5\13\0\1\46\1\47\1\5\2\0\1\46"+
-    "\3\0\16\5\1\56\2\5\13\0\1\46\1\47\1\5"+
-    "\2\0\1\46\3\0\7\5\1\57\11\5\13\0\1\46"+
-    "\1\47\1\5\2\0\1\46\3\0\6\5\1\60\12\5"+
-    "\13\0\1\46\1\47\1\5\2\0\1\46\3\0\1\5"+
-    "\1\61\17\5\13\0\1\46\1\47\1\5\2\0\1\46"+
-    "\3\0\6\5\1\62\12\5\13\0\1\46\1\47\1\5"+
-    "\2\0\1\46\3\0\7\5\1\63\11\5\13\0\1\46"+
-    "\1\47\1\5\2\0\1\46\3\0\12\5\1\64\6\5"+
-    "\13\0\1\46\1\47\1\5\2\0\1\46\3\0\4\5"+
-    "\1\65\14\5\13\0\1\46\1\47\1\5\2\0\1\46"+
-    "\3\0\7\5\1\66\7\5\1\67\1\5\13\0\1\46"+
-    "\1\47\1\5\2\0\1\46\3\0\7\5\1\70\11\5"+
-    "\13\0\1\46\1\47\1\5\2\0\1\46\3\0\17\5"+
-    "\1\71\1\5\47\0\1\72\51\0\2\2\36\0\1\73"+
-    "\44\0\1\74\4\0\1\75\3\0\2\43\3\0\1\43"+
-    "\37\0\2\44\1\76\2\0\1\44\3\0\21\76\13\0"+
-    "\2\77\1\45\2\0\1\77\3\0\21\45\13\0\2\46"+
-    "\1\100\2\0\1\46\3\0\21\100\13\0\1\46\2\47"+
-    "\2\0\1\46\3\0\21\47\12\0\4\50\1\101\1\13"+
-    "\37\50\10\102\1\103\34\102\1\0\1\46\1\47\1\5"+
-    "\2\0\1\46\3\0\2\5\1\104\16\5\13\0\1\46"+
-    "\1\47\1\5\2\0\1\46\3\0\10\5\1\105\10\5"+
-    "\13\0\1\46\1\47\1\5\2\0\1\46\3\0\14\5"+
-    "\1\106\4\5\13\0\1\46\1\47\1\5\2\0\1\46"+
-    "\3\0\15\5\1\107\3\5\13\0\1\46\1\47\1\5"+
-    "\2\0\1\46\3\0\3\5\1\110\15\5\13\0\1\46"+
-    "\1\47\1\5\2\0\1\46\3\0\12\5\1\111\6\5"+
-    "\13\0\1\46\1\47\1\5\2\0\1\46\3\0\6\5"+
-    "\1\112\12\5\13\0\1\46\1\47\1\5\2\0\1\46"+
-    "\3\0\10\5\1\113\10\5\13\0\1\46\1\47\1\5"+
-    "\2\0\1\46\3\0\1\5\1\114\17\5\13\0\1\46"+
-    "\1\47\1\5\2\0\1\46\3\0\6\5\1\115\12\5"+
-    "\13\0\1\46\1\47\1\5\2\0\1\46\3\0\3\5"+
-    "\1\116\15\5\15\0\1\76\6\0\21\76\13\0\2\77"+
-    "\3\0\1\77\40\0\2\100\6\0\21\100\17\0\1\13"+
-    "\37\0\10\102\1\117\34\102\7\0\1\13\1\103\35\0"+
-    "\1\46\1\47\1\5\2\0\1\46\3\0\3\5\1\120"+
-    "\15\5\13\0\1\46\1\47\1\5\2\0\1\46\3\0"+
-    "\3\5\1\121\1\5\1\122\10\5\1\123\1\5\1\124"+
-    "\13\0\1\46\1\47\1\5\2\0\1\46\3\0\1\5"+
-    "\1\125\17\5\13\0\1\46\1\47\1\5\2\0\1\46"+
-    "\3\0\4\5\1\126\14\5\13\0\1\46\1\47\1\5"+
-    "\2\0\1\46\3\0\10\5\1\127\10\5\13\0\1\46"+
-    "\1\47\1\5\2\0\1\46\3\0\3\5\1\130\15\5"+
-    "\13\0\1\46\1\47\1\5\2\0\1\46\3\0\4\5"+
-    "\1\131\14\5\13\0\1\46\1\47\1\5\2\0\1\46"+
-    "\3\0\13\5\1\132\5\5\12\0\7\102\1\13\1\117"+
-    "\34\102\1\0\1\46\1\47\1\5\2\0\1\46\3\0"+
-    "\4\5\1\133\14\5\13\0\1\46\1\47\1\5\2\0"+
-    "\1\46\3\0\16\5\1\134\2\5\13\0\1\46\1\47"+
-    "\1\5\2\0\1\46\3\0\6\5\1\135\12\5\13\0"+
-    "\1\46\1\47\1\5\2\0\1\46\3\0\7\5\1\136"+
-    "\11\5\13\0\1\46\1\47\1\5\2\0\1\46\3\0"+
-    "\17\5\1\137\1\5\13\0\1\46\1\47\1\5\2\0"+
-    "\1\46\3\0\15\5\1\140\3\5\13\0\1\46\1\47"+
-    "\1\5\2\0\1\46\3\0\12\5\1\141\6\5\13\0"+
-    "\1\46\1\47\1\5\2\0\1\46\3\0\1\5\1\142"+
-    "\17\5\13\0\1\46\1\47\1\5\2\0\1\46\3\0"+
-    "\5\5\1\143\13\5\13\0\1\46\1\47\1\5\2\0"+
-    "\1\46\3\0\7\5\1\144\11\5\13\0\1\46\1\47"+
-    "\1\5\2\0\1\46\3\0\6\5\1\145\12\5\13\0"+
-    "\1\46\1\47\1\5\2\0\1\46\3\0\3\5\1\146"+
-    "\15\5\13\0\1\46\1\47\1\5\2\0\1\46\3\0"+
-    "\1\147\20\5\13\0\1\46\1\47\1\5\2\0\1\46"+
-    "\3\0\6\5\1\150\12\5\13\0\1\46\1\47\1\5"+
-    "\2\0\1\46\3\0\2\5\1\151\16\5\13\0\1\46"+
-    "\1\47\1\5\2\0\1\46\3\0\13\5\1\152\5\5"+
-    "\13\0\1\46\1\47\1\5\2\0\1\46\3\0\13\5"+
-    "\1\153\5\5\13\0\1\46\1\47\1\5\2\0\1\46"+
-    "\3\0\7\5\1\154\11\5\13\0\1\46\1\47\1\5"+
-    "\2\0\1\46\3\0\1\5\1\155\17\5\13\0\1\46"+
-    "\1\47\1\5\2\0\1\46\3\0\1\5\1\156\17\5"+
-    "\13\0\1\46\1\47\1\5\2\0\1\46\3\0\2\5"+
-    "\1\157\16\5\13\0\1\46\1\47\1\5\2\0\1\46"+
-    "\3\0\14\5\1\160\4\5\12\0";
+    "\1\37\1\40\1\41\1\42\1\43\51\0\1\44\1\45"+
+    "\3\0\1\44\41\0\1\46\1\4\1\47\2\0\1\46"+
+    "\3\0\21\47\15\0\1\50\1\51\1\5\2\0\1\50"+
+    "\3\0\21\5\21\0\1\7\42\0\1\10\1\45\3\0"+
+    "\1\10\47\0\1\52\1\53\45\0\1\54\40\0\1\50"+
+    "\1\51\1\5\2\0\1\50\3\0\1\5\1\55\17\5"+
+    "\15\0\1\50\1\51\1\5\2\0\1\50\3\0\4\5"+
+    "\1\56\6\5\1\57\5\5\15\0\1\50\1\51\1\5"+
+    "\2\0\1\50\3\0\16\5\1\60\2\5\15\0\1\50"+
+    "\1\51\1\5\2\0\1\50\3\0\7\5\1\61\11\5"+
+    "\15\0\1\50\1\51\1\5\2\0\1\50\3\0\6\5"+
+    "\1\62\3\5\1\63\6\5\15\0\1\50\1\51\1\5"+
+    "\2\0\1\50\3\0\1\5\1\64\17\5\15\0\1\50"+
+    "\1\51\1\5\2\0\1\50\3\0\6\5\1\65\12\5"+
+    "\15\0\1\50\1\51\1\5\2\0\1\50\3\0\7\5"+
+    "\1\66\11\5\15\0\1\50\1\51\1\5\2\0\1\50"+
+    "\3\0\12\5\1\67\6\5\15\0\1\50\1\51\1\5"+
+    "\2\0\1\50\3\0\4\5\1\70\14\5\15\0\1\50"+
+    "\1\51\1\5\2\0\1\50\3\0\7\5\1\71\7\5"+
+    "\1\72\1\5\15\0\1\50\1\51\1\5\2\0\1\50"+
+    "\3\0\7\5\1\73\11\5\15\0\1\50\1\51\1\5"+
+    "\2\0\1\50\3\0\17\5\1\74\1\5\51\0\1\75"+
+    "\55\0\2\2\36\0\1\76\46\0\1\77\6\0\1\100"+
+    "\3\0\2\45\3\0\1\45\41\0\2\46\1\101\2\0"+
+    "\1\46\3\0\21\101\15\0\2\102\1\47\2\0\1\102"+
+    "\3\0\21\47\15\0\2\50\1\103\2\0\1\50\3\0"+
+    "\21\103\15\0\1\50\2\51\2\0\1\50\3\0\21\51"+
+    "\14\0\4\52\1\104\1\13\41\52\10\105\1\106\36\105"+
+    "\1\0\1\50\1\51\1\5\2\0\1\50\3\0\2\5"+
+    "\1\107\16\5\15\0\1\50\1\51\1\5\2\0\1\50"+
+    "\3\0\10\5\1\110\10\5\15\0\1\50\1\51\1\5"+
+    "\2\0\1\50\3\0\14\5\1\111\4\5\15\0\1\50"+
+    "\1\51\1\5\2\0\1\50\3\0\15\5\1\112\3\5"+
+    "\15\0\1\50\1\51\1\5\2\0\1\50\3\0\3\5"+
+    "\1\113\15\5\15\0\1\50\1\51\1\5\2\0\1\50"+
+    "\3\0\6\5\1\114\12\5\15\0\1\50\1\51\1\5"+
+    "\2\0\1\50\3\0\12\5\1\115\6\5\15\0\1\50"+
+    "\1\51\1\5\2\0\1\50\3\0\6\5\1\116\12\5"+
+    "\15\0\1\50\1\51\1\5\2\0\1\50\3\0\10\5"+
+    "\1\117\10\5\15\0\1\50\1\51\1\5\2\0\1\50"+
+    "\3\0\1\5\1\120\17\5\15\0\1\50\1\51\1\5"+
+    "\2\0\1\50\3\0\6\5\1\121\12\5\15\0\1\50"+
+    "\1\51\1\5\2\0\1\50\3\0\3\5\1\122\15\5"+
+    "\17\0\1\101\6\0\21\101\15\0\2\102\3\0\1\102"+
+    "\42\0\2\103\6\0\21\103\21\0\1\13\41\0\10\105"+
+    "\1\123\36\105\7\0\1\13\1\106\37\0\1\50\1\51"+
+    "\1\5\2\0\1\50\3\0\3\5\1\124\15\5\15\0"+
+    "\1\50\1\51\1\5\2\0\1\50\3\0\3\5\1\125"+
+    "\1\5\1\126\10\5\1\127\1\5\1\130\15\0\1\50"+
+    "\1\51\1\5\2\0\1\50\3\0\1\5\1\131\17\5"+
+    "\15\0\1\50\1\51\1\5\2\0\1\50\3\0\4\5"+
+    "\1\132\14\5\15\0\1\50\1\51\1\5\2\0\1\50"+
+    "\3\0\16\5\1\133\2\5\15\0\1\50\1\51\1\5"+
+    "\2\0\1\50\3\0\10\5\1\134\10\5\15\0\1\50"+
+    "\1\51\1\5\2\0\1\50\3\0\3\5\1\135\15\5"+
+    "\15\0\1\50\1\51\1\5\2\0\1\50\3\0\4\5"+
+    "\1\136\14\5\15\0\1\50\1\51\1\5\2\0\1\50"+
+    "\3\0\13\5\1\137\5\5\14\0\7\105\1\13\1\123"+
+    "\36\105\1\0\1\50\1\51\1\5\2\0\1\50\3\0"+
+    "\4\5\1\140\14\5\15\0\1\50\1\51\1\5\2\0"+
+    "\1\50\3\0\16\5\1\141\2\5\15\0\1\50\1\51"+
+    "\1\5\2\0\1\50\3\0\6\5\1\142\12\5\15\0"+
+    "\1\50\1\51\1\5\2\0\1\50\3\0\7\5\1\143"+
+    "\11\5\15\0\1\50\1\51\1\5\2\0\1\50\3\0"+
+    "\17\5\1\144\1\5\15\0\1\50\1\51\1\5\2\0"+
+    "\1\50\3\0\15\5\1\145\3\5\15\0\1\50\1\51"+
+    "\1\5\2\0\1\50\3\0\7\5\1\146\11\5\15\0"+
+    "\1\50\1\51\1\5\2\0\1\50\3\0\12\5\1\147"+
+    "\6\5\15\0\1\50\1\51\1\5\2\0\1\50\3\0"+
+    "\1\5\1\150\17\5\15\0\1\50\1\51\1\5\2\0"+
+    "\1\50\3\0\5\5\1\151\13\5\15\0\1\50\1\51"+
+    "\1\5\2\0\1\50\3\0\7\5\1\152\11\5\15\0"+
+    "\1\50\1\51\1\5\2\0\1\50\3\0\6\5\1\153"+
+    "\12\5\15\0\1\50\1\51\1\5\2\0\1\50\3\0"+
+    "\3\5\1\154\15\5\15\0\1\50\1\51\1\5\2\0"+
+    "\1\50\3\0\6\5\1\155\12\5\15\0\1\50\1\51"+
+    "\1\5\2\0\1\50\3\0\1\156\20\5\15\0\1\50"+
+    "\1\51\1\5\2\0\1\50\3\0\6\5\1\157\12\5"+
+    "\15\0\1\50\1\51\1\5\2\0\1\50\3\0\2\5"+
+    "\1\160\16\5\15\0\1\50\1\51\1\5\2\0\1\50"+
+    "\3\0\13\5\1\161\5\5\15\0\1\50\1\51\1\5"+
+    "\2\0\1\50\3\0\13\5\1\162\5\5\15\0\1\50"+
+    "\1\51\1\5\2\0\1\50\3\0\7\5\1\163\11\5"+
+    "\15\0\1\50\1\51\1\5\2\0\1\50\3\0\1\5"+
+    "\1\164\17\5\15\0\1\50\1\51\1\5\2\0\1\50"+
+    "\3\0\1\5\1\165\17\5\15\0\1\50\1\51\1\5"+
+    "\2\0\1\50\3\0\2\5\1\166\16\5\15\0\1\50"+
+    "\1\51\1\5\2\0\1\50\3\0\14\5\1\167\4\5"+
+    "\14\0";
 
   private static int [] zzUnpackTrans() {
-    int [] result = new int[2997];
+    int [] result = new int[3315];
     int offset = 0;
     offset = zzUnpackTrans(ZZ_TRANS_PACKED_0, offset, result);
     return result;
@@ -256,11 +264,11 @@ class Lexer {
 
   private static final String ZZ_ATTRIBUTE_PACKED_0 =
     "\1\0\1\11\4\1\1\11\3\1\1\11\15\1\1\11"+
-    "\2\1\4\11\12\1\1\11\17\1\4\11\4\1\2\0"+
-    "\13\1\1\0\41\1";
+    "\2\1\6\11\12\1\1\11\20\1\4\11\4\1\2\0"+
+    "\14\1\1\0\44\1";
 
   private static int [] zzUnpackAttribute() {
-    int [] result = new int[112];
+    int [] result = new int[119];
     int offset = 0;
     offset = zzUnpackAttribute(ZZ_ATTRIBUTE_PACKED_0, offset, result);
     return result;
@@ -337,18 +345,18 @@ class Lexer {
 
   /* user code: */
 
-  //The symbolic table data structure
-  static LinkedHashMap<String, Integer> symbolicTable = new LinkedHashMap<String, Integer>();
+  //The symbolic table data structure, of the input since the last reset
+  private LinkedHashMap<String, Integer> symbolicTable = new LinkedHashMap<String, Integer>();
 
   //Create the symbolic table, keep the input order
-  public static void table(Object varName, int line) {
+  public void table(Object varName, int line) {
     if (!symbolicTable.containsKey(varName.toString())) {
       symbolicTable.put(varName.toString(), line);
     }
   }
 
   //Sort in lexical order than print the symbolic table
-  private static void printTable() {
+  private void printTable() {
     System.out.println("\nIdentifiers");
     TreeMap<String, Integer> sorted = new TreeMap<>();
     sorted.putAll(symbolicTable);
@@ -358,6 +366,21 @@ class Lexer {
 
   }
 
+  //Read another input with the same buffer, from the first line
+  public void reset(java.io.Reader reader) {
+    yyreset(reader);
+    symbolicTable.clear();
+  }
+
+  //Line (from 1) and column of the last matched text, where an error was found
+  public int getLine() {
+    return yyline + 1;
+  }
+
+  public int getColumn() {
+    return yycolumn;
+  }
+
   //Print then return the symbol
   public static Symbol token(LexicalUnit tokenType, int line, int column, Object value) {
     Symbol sym = new Symbol(tokenType, line, column, value);
@@ -428,7 +451,7 @@ class Lexer {
     char [] map = new char[0x110000];
     int i = 0;  /* index in packed string  */
     int j = 0;  /* index in unpacked array */
-    while (i < 144) {
+    while (i < 150) {
       int  count = packed.charAt(i++);
       char value = packed.charAt(i++);
       do map[j++] = value; while (--count > 0);
@@ -796,172 +819,184 @@ class Lexer {
           case 1: 
             { syntaxError(yyline, yytext());
             }
-          case 43: break;
+          case 46: break;
           case 2: 
             { return token(LexicalUnit.NUMBER, yyline, yycolumn, yytext());
             }
-          case 44: break;
+          case 47: break;
           case 3: 
             { table(yytext(), yyline);
                     return token(LexicalUnit.VARNAME, yyline, yycolumn, yytext());
             }
-          case 45: break;
+          case 48: break;
           case 4: 
             { return token(LexicalUnit.ENDLINE, yyline, yycolumn, yytext());
             }
-          case 46: break;
+          case 49: break;
           case 5: 
             { return token(LexicalUnit.DIVIDE, yyline, yycolumn, yytext());
             }
-          case 47: break;
+          case 50: break;
           case 6: 
             { return token(LexicalUnit.TIMES, yyline, yycolumn, yytext());
             }
-          case 48: break;
+          case 51: break;
           case 7: 
             { 
             }
-          case 49: break;
+          case 52: break;
           case 8: 
             { return token(LexicalUnit.COMMA, yyline, yycolumn, yytext());
             }
-          case 50: break;
+          case 53: break;
           case 9: 
             { return token(LexicalUnit.EQ, yyline, yycolumn, yytext());
             }
-          case 51: break;
+          case 54: break;
           case 10: 
             { return token(LexicalUnit.LPAREN, yyline, yycolumn, yytext());
             }
-          case 52: break;
+          case 55: break;
           case 11: 
             { return token(LexicalUnit.RPAREN, yyline, yycolumn, yytext());
             }
-          case 53: break;
+          case 56: break;
           case 12: 
-            { return token(LexicalUnit.MINUS, yyline, yycolumn, yytext());
+            { return token(LexicalUnit.LBRACKET, yyline, yycolumn, yytext());
             }
-          case 54: break;
+          case 57: break;
           case 13: 
-            { return token(LexicalUnit.PLUS, yyline, yycolumn, yytext());
+            { return token(LexicalUnit.RBRACKET, yyline, yycolumn, yytext());
             }
-          case 55: break;
+          case 58: break;
           case 14: 
-            { return token(LexicalUnit.GT, yyline, yycolumn, yytext());
+            { return token(LexicalUnit.MINUS, yyline, yycolumn, yytext());
             }
-          case 56: break;
+          case 59: break;
           case 15: 
-            { return token(LexicalUnit.LT, yyline, yycolumn, yytext());
+            { return token(LexicalUnit.PLUS, yyline, yycolumn, yytext());
             }
-          case 57: break;
+          case 60: break;
           case 16: 
-            { illegalNumError(yyline, yytext());
+            { return token(LexicalUnit.GT, yyline, yycolumn, yytext());
             }
-          case 58: break;
+          case 61: break;
           case 17: 
-            { varNumError(yyline, yytext());
+            { return token(LexicalUnit.LT, yyline, yycolumn, yytext());
             }
-          case 59: break;
+          case 62: break;
           case 18: 
-            { varCapError(yyline, yytext());
+            { illegalNumError(yyline, yytext());
             }
-          case 60: break;
+          case 63: break;
           case 19: 
-            { return token(LexicalUnit.PROGNAME, yyline, yycolumn, yytext());
+            { varNumError(yyline, yytext());
             }
-          case 61: break;
+          case 64: break;
           case 20: 
-            { commentError(yyline, yytext());
+            { varCapError(yyline, yytext());
             }
-          case 62: break;
+          case 65: break;
           case 21: 
-            { return token(LexicalUnit.IF, yyline, yycolumn, yytext());
+            { return token(LexicalUnit.PROGNAME, yyline, yycolumn, yytext());
             }
-          case 63: break;
+          case 66: break;
           case 22: 
-            { return token(LexicalUnit.OR, yyline, yycolumn, yytext());
+            { commentError(yyline, yytext());
             }
-          case 64: break;
+          case 67: break;
           case 23: 
-            { return token(LexicalUnit.DO, yyline, yycolumn, yytext());
+            { return token(LexicalUnit.IF, yyline, yycolumn, yytext());
             }
-          case 65: break;
+          case 68: break;
           case 24: 
-            { return token(LexicalUnit.TO, yyline, yycolumn, yytext());
+            { return token(LexicalUnit.OR, yyline, yycolumn, yytext());
             }
-          case 66: break;
+          case 69: break;
           case 25: 
-            { return token(LexicalUnit.ASSIGN, yyline, yycolumn, yytext());
+            { return token(LexicalUnit.DO, yyline, yycolumn, yytext());
             }
-          case 67: break;
+          case 70: break;
           case 26: 
-            { return token(LexicalUnit.GEQ, yyline, yycolumn, yytext());
+            { return token(LexicalUnit.TO, yyline, yycolumn, yytext());
             }
-          case 68: break;
+          case 71: break;
           case 27: 
-            { return token(LexicalUnit.LEQ, yyline, yycolumn, yytext());
+            { return token(LexicalUnit.ASSIGN, yyline, yycolumn, yytext());
             }
-          case 69: break;
+          case 72: break;
           case 28: 
-            { return token(LexicalUnit.NEQ, yyline, yycolumn, yytext());
+            { return token(LexicalUnit.GEQ, yyline, yycolumn, yytext());
             }
-          case 70: break;
+          case 73: break;
           case 29: 
-            { return token(LexicalUnit.NOT, yyline, yycolumn, yytext());
+            { return token(LexicalUnit.LEQ, yyline, yycolumn, yytext());
             }
-          case 71: break;
+          case 74: break;
           case 30: 
-            { return token(LexicalUnit.AND, yyline, yycolumn, yytext());
+            { return token(LexicalUnit.NEQ, yyline, yycolumn, yytext());
             }
-          case 72: break;
+          case 75: break;
           case 31: 
-            { return token(LexicalUnit.FOR, yyline, yycolumn, yytext());
+            { return token(LexicalUnit.NOT, yyline, yycolumn, yytext());
             }
-          case 73: break;
+          case 76: break;
           case 32: 
-            { return token(LexicalUnit.ELSE, yyline, yycolumn, yytext());
+            { return token(LexicalUnit.AND, yyline, yycolumn, yytext());
             }
-          case 74: break;
+          case 77: break;
           case 33: 
-            { return token(LexicalUnit.READ, yyline, yycolumn, yytext());
+            { return token(LexicalUnit.FOR, yyline, yycolumn, yytext());
             }
-          case 75: break;
+          case 78: break;
           case 34: 
-            { return token(LexicalUnit.THEN, yyline, yycolumn, yytext());
+            { return token(LexicalUnit.ELSE, yyline, yycolumn, yytext());
             }
-          case 76: break;
+          case 79: break;
           case 35: 
-            { return token(LexicalUnit.ENDIF, yyline, yycolumn, yytext());
+            { return token(LexicalUnit.READ, yyline, yycolumn, yytext());
             }
-          case 77: break;
+          case 80: break;
           case 36: 
-            { return token(LexicalUnit.PRINT, yyline, yycolumn, yytext());
+            { return token(LexicalUnit.THEN, yyline, yycolumn, yytext());
             }
-          case 78: break;
+          case 81: break;
           case 37: 
-            { return token(LexicalUnit.WHILE, yyline, yycolumn, yytext());
+            { return token(LexicalUnit.ENDIF, yyline, yycolumn, yytext());
             }
-          case 79: break;
+          case 82: break;
           case 38: 
-            { return token(LexicalUnit.ENDFOR, yyline, yycolumn, yytext());
+            { return token(LexicalUnit.PRINT, yyline, yycolumn, yytext());
             }
-          case 80: break;
+          case 83: break;
           case 39: 
-            { return token(LexicalUnit.ENDPROG, yyline, yycolumn, yytext());
+            { return token(LexicalUnit.WHILE, yyline, yycolumn, yytext());
             }
-          case 81: break;
+          case 84: break;
           case 40: 
-            { return token(LexicalUnit.ENDWHILE, yyline, yycolumn, yytext());
+            { return token(LexicalUnit.ENDFOR, yyline, yycolumn, yytext());
             }
-          case 82: break;
+          case 85: break;
           case 41: 
-            { return token(LexicalUnit.BEGINPROG, yyline, yycolumn, yytext());
+            { return token(LexicalUnit.PARFOR, yyline, yycolumn, yytext());
             }
-          case 83: break;
+          case 86: break;
           case 42: 
+            { return token(LexicalUnit.ENDPROG, yyline, yycolumn, yytext());
+            }
+          case 87: break;
+          case 43: 
+            { return token(LexicalUnit.ENDWHILE, yyline, yycolumn, yytext());
+            }
+          case 88: break;
+          case 44: 
+            { return token(LexicalUnit.BEGINPROG, yyline, yycolumn, yytext());
+            }
+          case 89: break;
+          case 45: 
             { return token(LexicalUnit.VARIABLES, yyline, yycolumn, yytext());
             }
-          case 84: break;
+          case 90: break;
           default:
             zzScanError(ZZ_NO_MATCH);
         }
@@ -11,6 +11,8 @@ public enum LexicalUnit{
     NUMBER,
     LPAREN,
     RPAREN,
+    LBRACKET,
+    RBRACKET,
     MINUS,
     PLUS,
     TIMES,
@@ -34,6 +36,7 @@ public enum LexicalUnit{
     FOR,
     TO,
     ENDFOR,
+    PARFOR,
     PRINT,
     READ,
     EOS
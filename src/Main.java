@@ -1,7 +1,27 @@
 import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
 import java.io.FileReader;
 import java.io.BufferedWriter;
 import java.io.FileWriter;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
 
 /** Main class that is used to launch the compilation.
 * Main function that fetch the relevant parameters on the
@@ -11,75 +31,453 @@ import java.io.FileWriter;
 * Give an error message if the input file was not found or the compilation failed.
 * Options -o: generate the IR code in a .ll file having the same name as the .sf file.
 * Option -o output.ll : generate the IR code in the specified file.
-* Option -o [output.ll] -exec: execute the .sf program after compilation
+* Option -o [output.ll] -exec: execute the .sf program after compilation, the bitcode
+* given to lli is written by the BitcodeWriter
+* Option -llvm-as: with -exec, make the bitcode with llvm-as from the .ll file instead
+* Option -bounds-check: check the array indexes at run time (anywhere after input.sf)
+* Option -outline n: split the program into functions of about n statements
+* Option -unroll n: copy n times the body of the FOR loops with a known trip count,
+* fully unrolling the short ones (default 4, 0 to disable)
+* Option -eval n: run the program at compile time for at most n statements and loop
+* tests (see PartialEvaluator): a program that ends without READ only prints its
+* output, otherwise the statements run first are folded
+* Option -profile-generate file.prof: count the sides taken by the branches and
+* write them in file.prof (or $SF_PROFILE) when the program exits
+* Option -profile-use file.prof[,more.prof]: give the branches the weights of the
+* counts written by instrumented runs
+* Option -ast-out file.ast: write the AST of the program in file.ast (see AstFile), which
+* can be compiled instead of the .sf file
+* Option -wt tree.tex: write the AST of the program as a LaTeX forest tree in tree.tex,
+* as a Graphviz digraph for a .dot or .gv file, in the brackets of printTree otherwise
+* (see TreeWriter)
+* Option -ir-stats stats.txt: write in stats.txt the measures of the IR code of the
+* program (see IrStats): instructions by opcode and by kind of statement, loads and
+* stores of each variable, basic blocks
+* Option -native program [-exec]: write a static x86-64 Linux executable instead of
+* the IR code (see NativeGenerator) and, with -exec, run it; -outline, -unroll, -eval
+* and the profiles do not apply to it
+* Option -watch: compile input.sf, or every .sf file of the directory input, again
+* each time it changes, without printing the IR code, until the JVM is stopped
+* Option -time-phases: print the time and memory used by each phase on stderr
+* Option -time-phases-json report.json: write the same report as JSON in a file
 *
 * @param args the arguments given to the compiler
 */
 
 public class Main {
+  //Time without new event that ends a burst of saves in -watch.
+  private static final long WATCH_DEBOUNCE_MS = 20;
 
-  public static void main(String[] args) {
-    boolean toFile = false;
-    boolean toExec = false;
+  //The options of the compilation of a program, parsed once by main().
+  private static class Options {
+    boolean toFile;
+    boolean toExec;
+    boolean llvmAs;
     String output = "";
+    boolean boundsCheck;
+    int outline;
+    int unroll = -1;
+    long eval;
+    String profileGenerate;
+    String profileUse;
+    String astOutput;
+    String treeOutput;
+    String irStats;
+    String nativeOutput;
+    boolean timePhases;
+
+    //The options of a file of a watched directory, whose outputs are written next
+    //to it: file.ll, file.ast, the tree with the extension of the -wt file (.txt
+    //without one), file.stats and the executable file.
+    Options forFile(String name) {
+      String base = name.substring(0, name.length() - ".sf".length());
+      Options file = new Options();
+      file.toFile = toFile;
+      file.toExec = toExec;
+      file.llvmAs = llvmAs;
+      file.output = toFile ? base + ".ll" : output;
+      file.boundsCheck = boundsCheck;
+      file.outline = outline;
+      file.unroll = unroll;
+      file.eval = eval;
+      file.profileGenerate = profileGenerate;
+      file.profileUse = profileUse;
+      if (astOutput != null) {
+        file.astOutput = base + ".ast";
+      }
+      if (treeOutput != null) {
+        int dot = treeOutput.lastIndexOf('.');
+        file.treeOutput = base + (dot >= 0 ? treeOutput.substring(dot) : ".txt");
+      }
+      if (irStats != null) {
+        file.irStats = base + ".stats";
+      }
+      if (nativeOutput != null) {
+        file.nativeOutput = base;
+      }
+      file.timePhases = timePhases;
+      return file;
+    }
+  }
+
+  public static void main(String[] args) {
+    Options options = new Options();
+
+    List<String> params = new ArrayList<String>(Arrays.asList(args));
+    options.boundsCheck = params.remove("-bounds-check");
+    options.llvmAs = params.remove("-llvm-as");
+    int outlineIndex = params.indexOf("-outline");
+    if (outlineIndex >= 0 && outlineIndex + 1 < params.size()) {
+      options.outline = Integer.parseInt(params.get(outlineIndex + 1));
+      params.subList(outlineIndex, outlineIndex + 2).clear();
+    }
+    int unrollIndex = params.indexOf("-unroll");
+    if (unrollIndex >= 0 && unrollIndex + 1 < params.size()) {
+      options.unroll = Integer.parseInt(params.get(unrollIndex + 1));
+      params.subList(unrollIndex, unrollIndex + 2).clear();
+    }
+    int evalIndex = params.indexOf("-eval");
+    if (evalIndex >= 0 && evalIndex + 1 < params.size()) {
+      options.eval = Long.parseLong(params.get(evalIndex + 1));
+      params.subList(evalIndex, evalIndex + 2).clear();
+    }
+    int generateIndex = params.indexOf("-profile-generate");
+    if (generateIndex >= 0 && generateIndex + 1 < params.size()) {
+      options.profileGenerate = params.get(generateIndex + 1);
+      params.subList(generateIndex, generateIndex + 2).clear();
+    }
+    int useIndex = params.indexOf("-profile-use");
+    if (useIndex >= 0 && useIndex + 1 < params.size()) {
+      options.profileUse = params.get(useIndex + 1);
+      params.subList(useIndex, useIndex + 2).clear();
+    }
+    int astIndex = params.indexOf("-ast-out");
+    if (astIndex >= 0 && astIndex + 1 < params.size()) {
+      options.astOutput = params.get(astIndex + 1);
+      params.subList(astIndex, astIndex + 2).clear();
+    }
+    int treeIndex = params.indexOf("-wt");
+    if (treeIndex >= 0 && treeIndex + 1 < params.size()) {
+      options.treeOutput = params.get(treeIndex + 1);
+      params.subList(treeIndex, treeIndex + 2).clear();
+    }
+    int statsIndex = params.indexOf("-ir-stats");
+    if (statsIndex >= 0 && statsIndex + 1 < params.size()) {
+      options.irStats = params.get(statsIndex + 1);
+      params.subList(statsIndex, statsIndex + 2).clear();
+    }
+    int nativeIndex = params.indexOf("-native");
+    if (nativeIndex >= 0 && nativeIndex + 1 < params.size()) {
+      options.nativeOutput = params.get(nativeIndex + 1);
+      params.subList(nativeIndex, nativeIndex + 2).clear();
+    }
+    boolean watch = params.remove("-watch");
+    options.timePhases = params.remove("-time-phases");
+    String timeJson = null;
+    int json = params.indexOf("-time-phases-json");
+    if (json >= 0 && json + 1 < params.size()) {
+      timeJson = params.get(json + 1);
+      params.subList(json, json + 2).clear();
+    }
+    args = params.toArray(new String[0]);
 
     if (args.length < 1 || args.length > 4) {
-      System.out.println("Usage: java -jar Part3.jar input.sf --option [-o [output.ll] [-exec]]");
+      System.out.println("Usage: java -jar Part3.jar input.sf|input.ast --option [-o [output.ll] [-exec [-llvm-as]]]"
+      + " [-bounds-check] [-outline n] [-unroll n] [-eval n] [-profile-generate file.prof | -profile-use file.prof]"
+      + " [-ast-out file.ast] [-wt tree.tex|tree.dot] [-ir-stats stats.txt] [-native program [-exec]] [-watch]"
+      + " [-time-phases] [-time-phases-json report.json]");
     }
 
     if (args.length > 1 && args[1].equals("-o")) {
-      toFile = true;
+      options.toFile = true;
       if (args.length > 2 && !(args[2].equals("-exec"))) {
-        output += args[2];
+        options.output += args[2];
         if (args.length > 3 && (args[3].equals("-exec"))) {
-          toExec = true;
+          options.toExec = true;
         }
       } else if (args.length > 2 && args[2].equals("-exec")) {
-        toExec = true;
+        options.toExec = true;
+      }
+    } else if (options.nativeOutput != null && args.length > 1 && args[1].equals("-exec")) {
+      options.toExec = true;
+    }
+    if (watch) {
+      try {
+        watch(args[0], options);
+      } catch (Exception e) {
+        System.err.println("Failed to watch " + args[0] + ": " + e.getMessage());
+      }
+      return;
+    }
+    PhaseTimer timer = new PhaseTimer(options.timePhases || timeJson != null, args[0]);
+    boolean success = false;
+    try {
+      success = startCompilation(args[0], options, true, timer);
+    } finally {
+      timer.finish(success);
+    }
+    if (options.timePhases) {
+      System.err.print(timer.report());
+    }
+    if (timeJson != null) {
+      try {
+        BufferedWriter writer = new BufferedWriter(new FileWriter(timeJson));
+        writer.write(timer.toJson());
+        writer.close();
+      } catch (Exception e) {
+        System.err.println("Failed to write " + timeJson);
       }
     }
-    startCompilation(args[0], toFile, toExec, output);
   }
 
-  private static void startCompilation(String filePath, boolean toFile, boolean toExec, String output) {
-    try {
+  /** Lex and parse a file into its final AST, following the phases with the timer.
+  * A .ast file written by -ast-out is loaded instead.
+  * @param filePath the file to compile
+  * @param timer the timer of the compilation
+  */
+  static AbstractSyntaxTree parse(String filePath, PhaseTimer timer) throws IOException {
+    AbstractSyntaxTree ast;
+    timer.count("sourceBytes", new File(filePath).length());
+    if (filePath.endsWith(".ast")) {
+      timer.start("load");
+      ast = AstFile.read(filePath);
+      timer.stop();
+    } else if (timer.isEnabled()) {
+      //Lex the whole file first, so the lexer and the parser are measured apart.
+      timer.start("lex");
+      List<Symbol> tokens = Parser.tokenize(new BufferedReader(new FileReader(filePath)));
+      timer.start("parse");
+      ast = new Parser(tokens).parseProgram();
+      timer.start("passes");
+      Parser.cleanTree(ast);
+      timer.stop();
+      timer.count("tokens", tokens.size());
+    } else {
+      timer.start("parse");
       Parser parser = new Parser(new BufferedReader(new FileReader(filePath)));
-      AbstractSyntaxTree ast = parser.startParse();
+      ast = parser.startParse();
+      timer.stop();
+      timer.count("tokens", parser.getTokenCount());
+    }
+    if (timer.countsNodes()) {
+      timer.count("astNodes", ast.size());
+    }
+    return ast;
+  }
+
+  /** Generate the IR code of a program, following the phase with the timer.
+  * @param generator the code generator of the program
+  * @param timer the timer of the compilation
+  */
+  static String generate(CodeGenerator generator, PhaseTimer timer) {
+    timer.start("codegen");
+    String llvmCode = generator.generateLLVM();
+    for (String warning: generator.getWarnings()) {
+      System.err.println("Warning: " + warning);
+    }
+    timer.stop();
+    timer.count("irBytes", llvmCode.length());
+    return llvmCode;
+  }
+
+  /** Compile the .sf file, or every .sf file of a directory, then wait for them to
+  * change and compile again the ones that changed, in the same JVM so the compiler
+  * stays warm. The events of a burst of saves are collected until none comes for
+  * WATCH_DEBOUNCE_MS, and a file whose content did not change is skipped. The IR code
+  * is not printed, and the outputs of each file of a directory are written next to
+  * it (see Options.forFile). The latency of each compilation (and execution) is
+  * printed on stderr.
+  * Runs until the JVM is stopped.
+  * @param path the file or directory to watch
+  * @param options the options of the compilations
+  */
+  private static void watch(String path, Options options) throws IOException, InterruptedException {
+    Path watched = Paths.get(path).toAbsolutePath().normalize();
+    boolean directory = Files.isDirectory(watched);
+    Path dir = directory ? watched : watched.getParent();
+    WatchService service = FileSystems.getDefault().newWatchService();
+    dir.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+    Map<Path, byte[]> contents = new HashMap<Path, byte[]>();
+    Set<Path> changed = new LinkedHashSet<Path>();
+    if (directory) {
+      DirectoryStream<Path> files = Files.newDirectoryStream(dir, "*.sf");
+      for (Path file: files) {
+        changed.add(file);
+      }
+      files.close();
+    } else {
+      changed.add(watched);
+    }
+    System.err.println("Watching " + path + ", stop with Ctrl-C");
+    while (true) {
+      for (Path file: changed) {
+        byte[] content;
+        try {
+          content = Files.readAllBytes(file);
+        } catch (NoSuchFileException e) {
+          continue;
+        }
+        byte[] previous = contents.put(file, content);
+        if (Arrays.equals(previous, content)) {
+          continue;
+        }
+        Options fileOptions = directory ? options.forFile(file.toString()) : options;
+        long start = System.nanoTime();
+        PhaseTimer timer = new PhaseTimer(options.timePhases, file.toString());
+        boolean success = false;
+        try {
+          success = startCompilation(file.toString(), fileOptions, false, timer);
+        } catch (Error e) {
+          //A syntax error while editing, keep watching.
+          System.err.println(e.getMessage().trim());
+        } finally {
+          timer.finish(success);
+        }
+        if (options.timePhases) {
+          System.err.print(timer.report());
+        }
+        System.err.println(file.getFileName() + (success ? " compiled" : " failed") + " in "
+        + (System.nanoTime() - start) / 1000000 + " ms");
+      }
+      changed.clear();
+      WatchKey key = service.take();
+      do {
+        for (WatchEvent<?> event: key.pollEvents()) {
+          if (event.kind() == StandardWatchEventKinds.OVERFLOW) {
+            continue;
+          }
+          Path file = dir.resolve((Path) event.context());
+          if (directory ? file.toString().endsWith(".sf") : file.equals(watched)) {
+            changed.add(file);
+          }
+        }
+        key.reset();
+        key = service.poll(WATCH_DEBOUNCE_MS, TimeUnit.MILLISECONDS);
+      } while (key != null);
+    }
+  }
+
+  private static boolean startCompilation(String filePath, Options options, boolean printCode, PhaseTimer timer) {
+    try {
+      AbstractSyntaxTree ast = parse(filePath, timer);
+      if (options.astOutput != null) {
+        timer.start("ast");
+        AstFile.write(ast, options.astOutput);
+        timer.stop();
+      }
+      if (options.treeOutput != null) {
+        timer.start("tree");
+        TreeWriter.write(ast, options.treeOutput);
+        timer.stop();
+      }
       //System.out.println(ast.printTree());
+      if (options.nativeOutput != null) {
+        return compileNative(ast, options.nativeOutput, options.toExec, options.boundsCheck, timer);
+      }
       CodeGenerator generator = new CodeGenerator(ast);
-      String llvmCode = generator.generateLLVM();
-      System.out.println(llvmCode);
+      generator.setBoundsCheck(options.boundsCheck);
+      generator.setOutlineSize(options.outline);
+      if (options.unroll >= 0) {
+        generator.setUnrollFactor(options.unroll);
+      }
+      generator.setEvalBudget(options.eval);
+      generator.setProfileGenerate(options.profileGenerate);
+      if (options.profileUse != null) {
+        generator.setProfileUse(CodeGenerator.readProfile(options.profileUse));
+      }
+      generator.setStatementMarkers(options.irStats != null);
+      String llvmCode = generate(generator, timer);
+      if (options.irStats != null) {
+        timer.start("irstats");
+        IrStats stats = new IrStats(llvmCode);
+        llvmCode = stats.getCode();
+        BufferedWriter writer = new BufferedWriter(new FileWriter(options.irStats));
+        writer.write(stats.report(ast.getLabel()));
+        writer.close();
+        timer.stop();
+      }
+      if (printCode) {
+        timer.start("print");
+        System.out.println(llvmCode);
+        timer.stop();
+      }
 
       //Write the IR code to a file.
-      if (toFile) {
-        generator.writeToFile(llvmCode, output);
+      if (options.toFile) {
+        timer.start("write");
+        generator.writeToFile(llvmCode, options.output);
+        timer.stop();
       }
 
       //Execute code written in the .ll file.
       try {
-        if (toExec) {
+        if (options.toExec) {
           String llFileName, bcFileName;
-          if (output.isEmpty()) {
+          if (options.output.isEmpty()) {
             llFileName = ast.getLabel().toLowerCase() + ".ll";
             bcFileName = ast.getLabel().toLowerCase() + ".bc";
           } else {
-            llFileName = output;
-            bcFileName = output.replace(".ll", ".bc");
+            llFileName = options.output;
+            bcFileName = options.output.replace(".ll", ".bc");
           }
-          ProcessBuilder pb = new ProcessBuilder("llvm-as", llFileName, "-o", bcFileName);
-          pb.inheritIO();
-          pb.start().waitFor();
+          //Write the bitcode directly, or with llvm-as if asked or if the IR code
+          //is not known by the BitcodeWriter, which writes no metadata.
+          boolean assembled = false;
+          if (!options.llvmAs && options.profileUse == null) {
+            timer.start("bitcode");
+            try {
+              new BitcodeWriter(llvmCode).writeToFile(bcFileName);
+              assembled = true;
+            } catch (Error e) {
+              System.err.println(e.getMessage() + ", running llvm-as");
+            }
+            timer.stop();
+          }
+          if (!assembled) {
+            timer.startExternal("llvm-as");
+            ProcessBuilder pb = new ProcessBuilder("llvm-as", llFileName, "-o", bcFileName);
+            pb.inheritIO();
+            timer.stopExternal(pb.start().waitFor());
+          }
+          timer.startExternal("lli");
           ProcessBuilder pb2 = new ProcessBuilder("lli", bcFileName);
           pb2.inheritIO();
-          pb2.start().waitFor();
+          timer.stopExternal(pb2.start().waitFor());
         }
       } catch (Exception e) {
+        timer.stopExternal(-1);
         System.err.println("Failed to execute the llvm file");
       }
     } catch (Exception e) {
       e.printStackTrace();
       System.err.println("Failed to compile " + filePath);
+      return false;
+    }
+    return true;
+  }
+
+  //Write the executable of a program with the NativeGenerator, and run it if asked.
+  private static boolean compileNative(AbstractSyntaxTree ast, String output, boolean toExec, boolean boundsCheck,
+  PhaseTimer timer) throws IOException {
+    timer.start("native");
+    NativeGenerator generator = new NativeGenerator(ast);
+    generator.setBoundsCheck(boundsCheck);
+    byte[] executable = generator.generate();
+    timer.count("nativeBytes", executable.length);
+    generator.writeToFile(executable, output);
+    timer.stop();
+    if (toExec) {
+      try {
+        timer.startExternal("run");
+        ProcessBuilder pb = new ProcessBuilder(new File(output).getAbsolutePath());
+        pb.inheritIO();
+        timer.stopExternal(pb.start().waitFor());
+      } catch (Exception e) {
+        timer.stopExternal(-1);
+        System.err.println("Failed to execute " + output);
+      }
     }
+    return true;
   }
 
 }
@@ -0,0 +1,1243 @@
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** Class that generates a static x86-64 Linux executable from the AST, without
+* LLVM. The program is lowered to a linear code on virtual registers (the variables
+* and the temporaries of the expressions), the registers are allocated by linear
+* scan, and the machine code is written by the X86Assembler in an ELF file with no
+* library: PRINT and READ are done by a small runtime that calls write(2) and
+* read(2) with raw system calls.
+* The programs behave like their IR code run by lli: the same output, buffered the
+* same way, the same READ errors and exit status, the same checks of the array
+* indexes with -bounds-check. A PARFOR runs serially, its iterations keeping the
+* variables of their nested loops to themselves like the threads do.
+*/
+
+public class NativeGenerator {
+  //Address of the executable (headers, messages, code) and of its zeroed data.
+  private static final long CODE_ADDRESS = 0x400000;
+  private static final long DATA_ADDRESS = 0x10000000;
+  //Sizes of the ELF header and of its two program headers.
+  private static final int HEADERS = 64 + 2 * 56;
+
+  //Registers given to the variables and temporaries. RAX, RCX, RDX and R11 are
+  //scratch registers of the code and of the runtime (RCX and R11 are clobbered by
+  //syscall, RAX and RDX by idiv).
+  private static final int[] REGISTERS = {X86Assembler.RBX, X86Assembler.RSI, X86Assembler.RDI, X86Assembler.R8,
+  X86Assembler.R9, X86Assembler.R10, X86Assembler.R12, X86Assembler.R13, X86Assembler.R14, X86Assembler.R15};
+
+  //Data of the runtime: the output and input buffers like the IR code, the digits of
+  //the integer being printed and the state of the one being read.
+  private static final int BUFFER = 65536;
+  private static final long OUT_BUFFER = DATA_ADDRESS;
+  private static final long IN_BUFFER = OUT_BUFFER + BUFFER;
+  private static final long DIGITS = IN_BUFFER + BUFFER;
+  private static final long OUT_POSITION = DIGITS + 32;
+  private static final long IN_POSITION = OUT_POSITION + 4;
+  private static final long IN_LENGTH = IN_POSITION + 4;
+  private static final long READ_MINUS = IN_LENGTH + 4;
+  private static final long READ_VALUE = READ_MINUS + 4;
+  private static final long SPILLS = READ_VALUE + 8;
+
+  //Values read by one call of @readInts in the IR code.
+  private static final int READ_BATCH = 16;
+
+  private static final String[] MESSAGES = {"READ: unexpected end of input\n", "READ: malformed integer\n",
+  "READ: integer out of range\n", "Array index out of bounds\n"};
+
+  //Operations of the linear code, with their operands:
+  //  MOVE dst src, ADD/SUB/MUL/DIV dst a b, LOAD dst array index, STORE array index src,
+  //  SET dst condition a b (dst = a condition b), BRANCH condition a b label (jump when
+  //  a condition b), JUMP label, LABEL label, PRINT src, READ dst, CHECK array index,
+  //  END.
+  private static final int MOVE = 0;
+  private static final int ADD = 1;
+  private static final int SUB = 2;
+  private static final int MUL = 3;
+  private static final int DIV = 4;
+  private static final int LOAD = 5;
+  private static final int STORE = 6;
+  private static final int SET = 7;
+  private static final int BRANCH = 8;
+  private static final int JUMP = 9;
+  private static final int LABEL = 10;
+  private static final int PRINT = 11;
+  private static final int READ = 12;
+  private static final int CHECK = 13;
+  private static final int END = 14;
+
+  private AbstractSyntaxTree ast;
+  private boolean boundsCheck;
+  private Map<String, Integer> variables;
+  private Map<String, Integer> arrays;
+  private List<Integer> arraySizes;
+  private List<int[]> code;
+  //First and last instruction of each loop, the inner loops first.
+  private List<int[]> loops;
+  private int labelCount;
+  private boolean inParallel;
+  //Lowering left to do, the next one last: statements and blocks, instructions to
+  //add and steps to run.
+  private List<Object> work;
+
+  //Virtual registers: the constants are immediates, the variables live across the
+  //loops that use them.
+  private int registerCount;
+  private boolean[] constant;
+  private int[] value;
+  private boolean[] variable;
+  private Map<Integer, Integer> constants;
+
+  //Physical register of each virtual register, or -1 with its spill slot.
+  private int[] location;
+  private int[] slot;
+  private int slotCount;
+  private long[] arrayAddresses;
+
+  /** Initialize a generator.
+  * @param ast the AST of the program
+  */
+  public NativeGenerator(AbstractSyntaxTree ast) {
+    this.ast = ast;
+    this.boundsCheck = false;
+    this.variables = new LinkedHashMap<String, Integer>();
+    this.arrays = new LinkedHashMap<String, Integer>();
+    this.arraySizes = new ArrayList<Integer>();
+    this.code = new ArrayList<int[]>();
+    this.loops = new ArrayList<int[]>();
+    this.labelCount = 0;
+    this.inParallel = false;
+    this.work = new ArrayList<Object>();
+    this.registerCount = 0;
+    this.constant = new boolean[64];
+    this.value = new int[64];
+    this.variable = new boolean[64];
+    this.constants = new HashMap<Integer, Integer>();
+  }
+
+  /** Check the array indexes at run time, see CodeGenerator.setBoundsCheck().
+  */
+  public void setBoundsCheck(boolean boundsCheck) {
+    this.boundsCheck = boundsCheck;
+  }
+
+  /** Generate the executable.
+  * @return the content of the ELF file
+  */
+  public byte[] generate() {
+    for (AbstractSyntaxTree child: ast.getChildren()) {
+      if (child.getLabel() == "Variables") {
+        declare(child);
+      } else if (child.getLabel() == "Code") {
+        statement(child);
+      }
+    }
+    add(END);
+    allocate();
+    return assemble();
+  }
+
+  /** Write the executable, which can be run directly.
+  */
+  public void writeToFile(byte[] executable, String filePath) throws IOException {
+    OutputStream file = new FileOutputStream(filePath);
+    try {
+      file.write(executable);
+    } finally {
+      file.close();
+    }
+    new File(filePath).setExecutable(true);
+  }
+
+  //Declare the scalars and the arrays, with the errors of the CodeGenerator.
+  private void declare(AbstractSyntaxTree vars) {
+    for (AbstractSyntaxTree child: vars.getChildren()) {
+      if (child.getLabel().equals("Array")) {
+        String arrayName = child.getChild(0).getLabel();
+        int size;
+        try {
+          size = Integer.parseInt(child.getChild(1).getLabel());
+        } catch (NumberFormatException e) {
+          throw new Error("Array " + arrayName + " is too large");
+        }
+        if (size == 0) {
+          throw new Error("Array " + arrayName + " must have at least one element");
+        }
+        arrays.put(arrayName, arraySizes.size());
+        arraySizes.add(size);
+      } else {
+        variable(child.getLabel());
+      }
+    }
+  }
+
+  //The register of a variable, declared by its first use for the loop variables.
+  private int variable(String name) {
+    Integer register = variables.get(name);
+    if (register == null) {
+      register = newRegister();
+      variable[register] = true;
+      variables.put(name, register);
+    }
+    return register;
+  }
+
+  private int temporary() {
+    return newRegister();
+  }
+
+  private int constant(int number) {
+    Integer register = constants.get(number);
+    if (register == null) {
+      register = newRegister();
+      constant[register] = true;
+      value[register] = number;
+      constants.put(number, register);
+    }
+    return register;
+  }
+
+  private int newRegister() {
+    if (registerCount == constant.length) {
+      constant = Arrays.copyOf(constant, 2 * registerCount);
+      value = Arrays.copyOf(value, 2 * registerCount);
+      variable = Arrays.copyOf(variable, 2 * registerCount);
+    }
+    return registerCount++;
+  }
+
+  private int newLabel() {
+    return labelCount++;
+  }
+
+  private void add(int... instruction) {
+    code.add(instruction);
+  }
+
+  /** Lower a statement, or all the statements of a block. The statements are
+  * lowered from a stack of work like CodeGenerator.generateCode(), so their nesting
+  * is only limited by memory: a statement with a body adds the instructions before
+  * it, then pushes the body and what comes after it, instructions or steps.
+  */
+  private void statement(AbstractSyntaxTree code) {
+    work.add(code);
+    while (!work.isEmpty()) {
+      Object next = work.remove(work.size() - 1);
+      if (next instanceof Step) {
+        ((Step) next).run();
+      } else if (next instanceof int[]) {
+        add((int[]) next);
+      } else {
+        lower((AbstractSyntaxTree) next);
+      }
+    }
+  }
+
+  //A part of the lowering of a statement that runs once its body is lowered.
+  private abstract static class Step {
+    abstract void run();
+  }
+
+  //Push work to do in the given order, before the work already pushed.
+  private void schedule(Object... items) {
+    for (int i = items.length - 1; i >= 0; i--) {
+      work.add(items[i]);
+    }
+  }
+
+  private void lower(AbstractSyntaxTree code) {
+    String label = code.getLabel();
+    if (label == "Assign") {
+      checkTarget(code.getChild(0));
+      int value = expression(code.getChild(1));
+      store(code.getChild(0), value);
+    } else if (label == "If") {
+      int elseLabel = newLabel();
+      int endLabel = newLabel();
+      branch(code.getChild(0), false, elseLabel);
+      schedule(code.getChild(1), new int[] {JUMP, endLabel}, new int[] {LABEL, elseLabel}, code.getChild(2),
+      new int[] {LABEL, endLabel});
+    } else if (label == "While") {
+      //The condition is tested before the loop and at the end of each iteration.
+      final AbstractSyntaxTree cond = code.getChild(0);
+      final int bodyLabel = newLabel();
+      final int exitLabel = newLabel();
+      branch(cond, false, exitLabel);
+      add(LABEL, bodyLabel);
+      final int first = this.code.size() - 1;
+      schedule(code.getChild(1), new Step() {
+        void run() {
+          branch(cond, true, bodyLabel);
+          loops.add(new int[] {first, NativeGenerator.this.code.size() - 1});
+          add(LABEL, exitLabel);
+        }
+      });
+    } else if (label == "For") {
+      forLoop(code);
+    } else if (label == "ParFor") {
+      parFor(code);
+    } else if (label == "Print") {
+      List<Integer> values = new ArrayList<Integer>();
+      for (AbstractSyntaxTree child: code.getChildren()) {
+        values.add(expression(child));
+      }
+      for (int value: values) {
+        add(PRINT, value);
+      }
+    } else if (label == "Read") {
+      for (AbstractSyntaxTree child: code.getChildren()) {
+        checkTarget(child);
+      }
+      //The values of a batch are read before any is stored, like @readInts.
+      List<AbstractSyntaxTree> vars = code.getChildren();
+      for (int start = 0; start < vars.size(); start += READ_BATCH) {
+        int batch = Math.min(READ_BATCH, vars.size() - start);
+        List<Integer> values = new ArrayList<Integer>();
+        for (int i = 0; i < batch; i++) {
+          int value = temporary();
+          add(READ, value);
+          values.add(value);
+        }
+        for (int i = 0; i < batch; i++) {
+          store(vars.get(start + i), values.get(i));
+        }
+      }
+    } else if (label == "Code") {
+      schedule(code.getChildren().toArray());
+    }
+  }
+
+  //A FOR, its bound computed again before each iteration like in the IR code.
+  private void forLoop(final AbstractSyntaxTree forGen) {
+    int start = expression(forGen.getChild(1));
+    final int var = variable(forGen.getChild(0).getLabel());
+    add(MOVE, var, start);
+    final int bodyLabel = newLabel();
+    final int exitLabel = newLabel();
+    add(BRANCH, X86Assembler.GREATER_EQUAL, var, expression(forGen.getChild(2)), exitLabel);
+    add(LABEL, bodyLabel);
+    final int first = code.size() - 1;
+    schedule(forGen.getChild(3), new Step() {
+      void run() {
+        add(ADD, var, var, constant(1));
+        add(BRANCH, X86Assembler.LESS, var, expression(forGen.getChild(2)), bodyLabel);
+        loops.add(new int[] {first, code.size() - 1});
+        add(LABEL, exitLabel);
+      }
+    });
+  }
+
+  //A PARFOR that the CodeGenerator runs in parallel gives its nested loops their
+  //own variables, which keep their value for the rest of the program: they are
+  //saved before the loop and restored after it.
+  private void parFor(AbstractSyntaxTree parFor) {
+    final Set<String> privates = new HashSet<String>();
+    if (inParallel || CodeGenerator.serialReason(parFor, privates, new LinkedHashMap<String, String>()) != null) {
+      forLoop(parFor);
+      return;
+    }
+    final List<Integer> saved = new ArrayList<Integer>();
+    for (String name: privates) {
+      int copy = temporary();
+      add(MOVE, copy, variable(name));
+      saved.add(copy);
+    }
+    inParallel = true;
+    work.add(new Step() {
+      void run() {
+        inParallel = false;
+        int i = 0;
+        for (String name: privates) {
+          add(MOVE, variable(name), saved.get(i));
+          i++;
+        }
+      }
+    });
+    forLoop(parFor);
+  }
+
+  //Check that the target of an assignment or of a READ is declared.
+  private void checkTarget(AbstractSyntaxTree target) {
+    if (target.getLabel().equals("Index")) {
+      if (!arrays.containsKey(target.getChild(0).getLabel())) {
+        throw new Error("Variable " + target.getChild(0).getLabel() + " is not an array");
+      }
+    } else if (arrays.containsKey(target.getLabel())) {
+      throw new Error("Array " + target.getLabel() + " must be indexed");
+    } else if (!variables.containsKey(target.getLabel())) {
+      throw new Error("Variable " + target.getLabel() + " is not declared");
+    }
+  }
+
+  //Store a value in a variable or an array element.
+  private void store(AbstractSyntaxTree target, int value) {
+    if (target.getLabel().equals("Index")) {
+      int array = arrays.get(target.getChild(0).getLabel());
+      int index = index(array, target.getChild(1));
+      add(STORE, array, index, value);
+    } else {
+      add(MOVE, variable(target.getLabel()), value);
+    }
+  }
+
+  //Compute the index of an array element, and check it.
+  private int index(int array, AbstractSyntaxTree expr) {
+    return checkIndex(array, expression(expr));
+  }
+
+  //Check the index of an array element held by a register.
+  private int checkIndex(int array, int index) {
+    if (boundsCheck) {
+      add(CHECK, array, index);
+    }
+    return index;
+  }
+
+  //An operation of expression() waiting for its operands.
+  private static class Operation {
+    AbstractSyntaxTree expr;
+    int step;
+    int left;
+
+    Operation(AbstractSyntaxTree expr) {
+      this.expr = expr;
+    }
+  }
+
+  /** Compute an arithmetic expression into a register, walking the tree like
+  * CodeGenerator.computeExprArith(), the indexes of array elements on the same
+  * stack. The operations on constants are done here.
+  */
+  private int expression(AbstractSyntaxTree exprArith) {
+    List<Operation> stack = new ArrayList<Operation>();
+    stack.add(new Operation(exprArith));
+    int last = -1;
+    while (!stack.isEmpty()) {
+      Operation operation = stack.get(stack.size() - 1);
+      AbstractSyntaxTree expr = operation.expr;
+      String value = expr.getLabel();
+      int size = expr.getChildren().size();
+      if (operation.step == 0) {
+        if (value.equals("Index")) {
+          String arrayName = expr.getChild(0).getLabel();
+          if (!arrays.containsKey(arrayName)) {
+            throw new Error("Variable " + arrayName + " is not an array");
+          }
+          operation.step = 1;
+          stack.add(new Operation(expr.getChild(1)));
+          continue;
+        } else if (arrays.containsKey(value) && size == 0) {
+          throw new Error("Array " + value + " must be indexed");
+        }
+        if (size == 1 && expr.getChild(0).getChildren().size() > 0) {
+          //The operand is itself an expression or an array element.
+          stack.set(stack.size() - 1, new Operation(expr.getChild(0)));
+          continue;
+        } else if (size <= 1) {
+          last = operand(size == 0 ? value : expr.getChild(0).getLabel());
+          stack.remove(stack.size() - 1);
+          continue;
+        }
+        operation.step = 1;
+        stack.add(new Operation(expr.getChild(0)));
+      } else if (value.equals("Index")) {
+        //The index is computed, load the element.
+        int array = arrays.get(expr.getChild(0).getLabel());
+        int index = checkIndex(array, last);
+        last = temporary();
+        add(LOAD, last, array, index);
+        stack.remove(stack.size() - 1);
+      } else if (operation.step == 1) {
+        operation.left = last;
+        operation.step = 2;
+        stack.add(new Operation(expr.getChild(1)));
+      } else if (operation.step == 2) {
+        last = binaryOperation(value, operation.left, last, false);
+        if (size == 3) {
+          operation.left = last;
+          operation.step = 3;
+          stack.add(new Operation(expr.getChild(2)));
+        } else {
+          stack.remove(stack.size() - 1);
+        }
+      } else {
+        last = binaryOperation(expr.getChild(2).getLabel(), operation.left, last, true);
+        stack.remove(stack.size() - 1);
+      }
+    }
+    return last;
+  }
+
+  //A variable or an integer literal, truncated to 32 bits like an i32 of the IR
+  //code when it is larger.
+  private int operand(String name) {
+    if (variables.containsKey(name)) {
+      return variables.get(name);
+    }
+    try {
+      return constant((int) Long.parseLong(name));
+    } catch (NumberFormatException e) {
+      throw new Error("Variable " + name + " is not declared");
+    }
+  }
+
+  //The operation of an arithmetic operator, see CodeGenerator.binaryOperation().
+  //A division by 0 or of the smallest integer by -1 is left to run time.
+  private int binaryOperation(String operator, int left, int right, boolean third) {
+    int operation;
+    if (operator.equals("+")) {
+      operation = ADD;
+    } else if (operator.equals("-")) {
+      operation = SUB;
+    } else if (operator.equals("*")) {
+      operation = MUL;
+    } else if (operator.equals("/")) {
+      operation = DIV;
+    } else if (third) {
+      operation = ADD;
+    } else {
+      throw new Error("Unknown operator " + operator);
+    }
+    if (constant[left] && constant[right]) {
+      int a = value[left];
+      int b = value[right];
+      if (operation == ADD) {
+        return constant(a + b);
+      } else if (operation == SUB) {
+        return constant(a - b);
+      } else if (operation == MUL) {
+        return constant(a * b);
+      } else if (b != 0 && !(a == Integer.MIN_VALUE && b == -1)) {
+        return constant(a / b);
+      }
+    }
+    int result = temporary();
+    add(operation, result, left, right);
+    return result;
+  }
+
+  /** Jump to a label when a condition is true, or when it is false. A chain of AND
+  * and OR is combined from its end like CodeGenerator.generateCond(), on 1 bit: AND
+  * is true when both sides are equal and OR when they differ.
+  */
+  private void branch(AbstractSyntaxTree cond, boolean when, int label) {
+    List<Integer> results = new ArrayList<Integer>();
+    List<String> operators = new ArrayList<String>();
+    while (true) {
+      AbstractSyntaxTree simpleCond = cond.getChild(0);
+      int left = expression(simpleCond.getChild(0));
+      int right = expression(simpleCond.getChild(1));
+      int condition = condition(simpleCond.getLabel());
+      if (cond.getChildren().size() > 1 && (cond.getChild(1).getLabel().equals("AND")
+      || cond.getChild(1).getLabel().equals("OR"))) {
+        operators.add(cond.getChild(1).getLabel());
+        cond = cond.getChild(1);
+      } else if (operators.isEmpty()) {
+        add(BRANCH, when ? condition : negate(condition), left, right, label);
+        return;
+      } else {
+        operators.add(null);
+      }
+      int result = temporary();
+      add(SET, result, condition, left, right);
+      results.add(result);
+      if (operators.get(operators.size() - 1) == null) {
+        break;
+      }
+    }
+    int result = results.get(results.size() - 1);
+    for (int i = results.size() - 2; i >= 0; i--) {
+      int combined = temporary();
+      add(SET, combined, operators.get(i).equals("AND") ? X86Assembler.EQUAL : X86Assembler.NOT_EQUAL,
+      results.get(i), result);
+      result = combined;
+    }
+    add(BRANCH, when ? X86Assembler.NOT_EQUAL : X86Assembler.EQUAL, result, constant(0), label);
+  }
+
+  //The condition code of a comparison, signed like icmp.
+  private static int condition(String comparison) {
+    if (comparison.equals("=")) {
+      return X86Assembler.EQUAL;
+    } else if (comparison.equals(">=")) {
+      return X86Assembler.GREATER_EQUAL;
+    } else if (comparison.equals(">")) {
+      return X86Assembler.GREATER;
+    } else if (comparison.equals("<=")) {
+      return X86Assembler.LESS_EQUAL;
+    } else if (comparison.equals("<")) {
+      return X86Assembler.LESS;
+    } else if (comparison.equals("<>")) {
+      return X86Assembler.NOT_EQUAL;
+    }
+    throw new Error("Unknown comparison " + comparison);
+  }
+
+  //The condition code of the opposite condition, which differs in its low bit.
+  private static int negate(int condition) {
+    return condition ^ 1;
+  }
+
+  /** Allocate the registers by linear scan. The live interval of a register goes
+  * from its first to its last use. A variable used in a loop is live in the whole
+  * loop, since its value goes from one iteration to the next, and the loops are
+  * extended from the inner ones out. A temporary is used in the statement that
+  * computes it, so it never crosses the boundary of a loop. The intervals are taken
+  * by their start, each gets a free register or, when there is none, the register
+  * of the interval that ends last, which is spilled to memory for its whole life.
+  */
+  private void allocate() {
+    int[] start = new int[registerCount];
+    int[] end = new int[registerCount];
+    Arrays.fill(start, -1);
+    for (int i = 0; i < code.size(); i++) {
+      for (int register: operands(code.get(i))) {
+        if (!constant[register]) {
+          if (start[register] < 0) {
+            start[register] = i;
+          }
+          end[register] = i;
+        }
+      }
+    }
+    List<Integer> vars = new ArrayList<Integer>(variables.values());
+    for (int[] loop: loops) {
+      for (int var: vars) {
+        if (start[var] >= 0 && start[var] <= loop[1] && end[var] >= loop[0]) {
+          start[var] = Math.min(start[var], loop[0]);
+          end[var] = Math.max(end[var], loop[1]);
+        }
+      }
+    }
+
+    final int[] starts = start;
+    final int[] ends = end;
+    List<Integer> intervals = new ArrayList<Integer>();
+    for (int register = 0; register < registerCount; register++) {
+      if (start[register] >= 0) {
+        intervals.add(register);
+      }
+    }
+    intervals.sort(new Comparator<Integer>() {
+      @Override
+      public int compare(Integer a, Integer b) {
+        return Integer.compare(starts[a], starts[b]);
+      }
+    });
+    location = new int[registerCount];
+    slot = new int[registerCount];
+    Arrays.fill(location, -1);
+    List<Integer> free = new ArrayList<Integer>();
+    for (int i = REGISTERS.length - 1; i >= 0; i--) {
+      free.add(REGISTERS[i]);
+    }
+    //Intervals holding a register, by increasing end.
+    List<Integer> active = new ArrayList<Integer>();
+    for (int interval: intervals) {
+      while (!active.isEmpty() && ends[active.get(0)] < starts[interval]) {
+        free.add(location[active.remove(0)]);
+      }
+      if (free.isEmpty()) {
+        int last = active.get(active.size() - 1);
+        if (ends[last] > ends[interval]) {
+          location[interval] = location[last];
+          location[last] = -1;
+          slot[last] = slotCount++;
+          active.remove(active.size() - 1);
+        } else {
+          slot[interval] = slotCount++;
+          continue;
+        }
+      } else {
+        location[interval] = free.remove(free.size() - 1);
+      }
+      int position = active.size();
+      while (position > 0 && ends[active.get(position - 1)] > ends[interval]) {
+        position--;
+      }
+      active.add(position, interval);
+    }
+  }
+
+  //The registers used or defined by an instruction.
+  private static int[] operands(int[] instruction) {
+    switch (instruction[0]) {
+      case MOVE:
+        return new int[] {instruction[1], instruction[2]};
+      case ADD:
+      case SUB:
+      case MUL:
+      case DIV:
+        return new int[] {instruction[1], instruction[2], instruction[3]};
+      case LOAD:
+        return new int[] {instruction[1], instruction[3]};
+      case STORE:
+        return new int[] {instruction[2], instruction[3]};
+      case SET:
+        return new int[] {instruction[1], instruction[3], instruction[4]};
+      case BRANCH:
+        return new int[] {instruction[2], instruction[3]};
+      case PRINT:
+      case READ:
+        return new int[] {instruction[1]};
+      case CHECK:
+        return new int[] {instruction[2]};
+      default:
+        return new int[0];
+    }
+  }
+
+  /** Lay out the data, write the machine code of the program and of its runtime,
+  * and wrap them in an ELF executable.
+  */
+  private byte[] assemble() {
+    long address = SPILLS + 4L * slotCount;
+    arrayAddresses = new long[arraySizes.size()];
+    for (int i = 0; i < arraySizes.size(); i++) {
+      address = (address + 15) & ~15L;
+      arrayAddresses[i] = address;
+      address += 4L * arraySizes.get(i);
+    }
+    if (address > Integer.MAX_VALUE) {
+      throw new Error("The arrays are too large for a native executable");
+    }
+    long dataSize = address - DATA_ADDRESS;
+
+    ByteBuffer messages = ByteBuffer.allocate(256);
+    long[] messageAddresses = new long[MESSAGES.length];
+    for (int i = 0; i < MESSAGES.length; i++) {
+      messageAddresses[i] = CODE_ADDRESS + HEADERS + messages.position();
+      messages.put(MESSAGES[i].getBytes(StandardCharsets.US_ASCII));
+    }
+    int codeOffset = (HEADERS + messages.position() + 15) & ~15;
+    X86Assembler asm = new X86Assembler(CODE_ADDRESS + codeOffset);
+    Runtime runtime = new Runtime(asm, messageAddresses);
+    emitProgram(asm, runtime);
+    runtime.emit();
+    byte[] machineCode = asm.finish();
+
+    ByteBuffer file = ByteBuffer.allocate(codeOffset + machineCode.length).order(ByteOrder.LITTLE_ENDIAN);
+    file.put(new byte[] {0x7F, 'E', 'L', 'F', 2, 1, 1, 0, 0, 0, 0, 0, 0, 0, 0, 0});
+    file.putShort((short) 2);
+    file.putShort((short) 0x3E);
+    file.putInt(1);
+    file.putLong(CODE_ADDRESS + codeOffset);
+    file.putLong(64);
+    file.putLong(0);
+    file.putInt(0);
+    file.putShort((short) 64);
+    file.putShort((short) 56);
+    file.putShort((short) 2);
+    file.putShort((short) 64);
+    file.putShort((short) 0);
+    file.putShort((short) 0);
+    //The code, readable and executable, then the data, readable and writable.
+    programHeader(file, 5, 0, CODE_ADDRESS, file.capacity(), file.capacity());
+    programHeader(file, 6, 0, DATA_ADDRESS, 0, dataSize);
+    file.put(messages.array(), 0, messages.position());
+    file.position(codeOffset);
+    file.put(machineCode);
+    return file.array();
+  }
+
+  private static void programHeader(ByteBuffer file, int flags, long offset, long address, long fileSize,
+  long memorySize) {
+    file.putInt(1);
+    file.putInt(flags);
+    file.putLong(offset);
+    file.putLong(address);
+    file.putLong(address);
+    file.putLong(fileSize);
+    file.putLong(memorySize);
+    file.putLong(0x1000);
+  }
+
+  //Write the machine code of the linear code.
+  private void emitProgram(X86Assembler asm, Runtime runtime) {
+    int[] labels = new int[labelCount];
+    for (int i = 0; i < labelCount; i++) {
+      labels[i] = asm.newLabel();
+    }
+    for (int[] instruction: code) {
+      switch (instruction[0]) {
+        case MOVE:
+          if (location[instruction[1]] >= 0) {
+            moveTo(asm, location[instruction[1]], instruction[2]);
+          } else if (constant[instruction[2]]) {
+            asm.movImm(spill(instruction[1]), value[instruction[2]]);
+          } else {
+            asm.mov(spill(instruction[1]), read(asm, instruction[2], X86Assembler.R11));
+          }
+          break;
+        case ADD:
+        case SUB:
+        case MUL:
+          arithmetic(asm, instruction[0], instruction[1], instruction[2], instruction[3]);
+          break;
+        case DIV:
+          moveTo(asm, X86Assembler.RAX, instruction[2]);
+          if (constant[instruction[3]] && powerOfTwo(value[instruction[3]]) > 0) {
+            //Shift instead, rounding toward 0 like idiv: a negative dividend gets
+            //the divisor minus 1 added first.
+            int shift = powerOfTwo(value[instruction[3]]);
+            asm.mov(X86Assembler.RDX, X86Assembler.RAX);
+            asm.shiftImm(X86Assembler.SAR, X86Assembler.RDX, 31);
+            asm.shiftImm(X86Assembler.SHR, X86Assembler.RDX, 32 - shift);
+            asm.alu(X86Assembler.ADD, X86Assembler.RAX, X86Assembler.RDX);
+            asm.shiftImm(X86Assembler.SAR, X86Assembler.RAX, shift);
+            write(asm, instruction[1], X86Assembler.RAX);
+            break;
+          }
+          asm.cdq();
+          if (constant[instruction[3]]) {
+            asm.movImm(X86Assembler.RCX, value[instruction[3]]);
+            asm.idiv(X86Assembler.RCX);
+          } else if (location[instruction[3]] >= 0) {
+            asm.idiv(location[instruction[3]]);
+          } else {
+            asm.idiv(spill(instruction[3]));
+          }
+          write(asm, instruction[1], X86Assembler.RAX);
+          break;
+        case LOAD: {
+          X86Assembler.Memory element = element(asm, instruction[2], instruction[3]);
+          int target = location[instruction[1]] >= 0 ? location[instruction[1]] : X86Assembler.RAX;
+          asm.mov(target, element);
+          write(asm, instruction[1], target);
+          break;
+        }
+        case STORE: {
+          X86Assembler.Memory element = element(asm, instruction[1], instruction[2]);
+          if (constant[instruction[3]]) {
+            asm.movImm(element, value[instruction[3]]);
+          } else {
+            asm.mov(element, read(asm, instruction[3], X86Assembler.RAX));
+          }
+          break;
+        }
+        case SET:
+          compare(asm, instruction[3], instruction[4]);
+          asm.setcc(instruction[2], X86Assembler.RAX);
+          write(asm, instruction[1], X86Assembler.RAX);
+          break;
+        case BRANCH:
+          compare(asm, instruction[2], instruction[3]);
+          asm.jcc(instruction[1], labels[instruction[4]]);
+          break;
+        case JUMP:
+          asm.jmp(labels[instruction[1]]);
+          break;
+        case LABEL:
+          asm.bind(labels[instruction[1]]);
+          break;
+        case PRINT:
+          moveTo(asm, X86Assembler.RAX, instruction[1]);
+          asm.call(runtime.printInt);
+          break;
+        case READ:
+          asm.call(runtime.readInt);
+          write(asm, instruction[1], X86Assembler.RAX);
+          break;
+        case CHECK:
+          asm.aluImm(X86Assembler.CMP, read(asm, instruction[2], X86Assembler.R11), arraySizes.get(instruction[1]));
+          asm.jcc(X86Assembler.ABOVE_EQUAL, runtime.boundsFail);
+          break;
+        default:
+          asm.jmp(runtime.exit);
+          break;
+      }
+    }
+  }
+
+  //The exponent of a power of 2 from 2 to 2^30, 0 for any other number.
+  private static int powerOfTwo(int number) {
+    return number > 1 && (number & (number - 1)) == 0 ? Integer.numberOfTrailingZeros(number) : 0;
+  }
+
+  //dst = a op b for ADD, SUB and MUL, computed in the register of dst, or in R11
+  //when dst is spilled or b is in the register of dst.
+  private void arithmetic(X86Assembler asm, int operation, int dst, int a, int b) {
+    int target = location[dst] >= 0 ? location[dst] : X86Assembler.R11;
+    if (!constant[b] && location[b] == target) {
+      if (operation == SUB) {
+        target = X86Assembler.R11;
+      } else {
+        int swap = a;
+        a = b;
+        b = swap;
+      }
+    }
+    moveTo(asm, target, a);
+    if (operation == MUL) {
+      if (constant[b]) {
+        asm.imulImm(target, target, value[b]);
+      } else if (location[b] >= 0) {
+        asm.imul(target, location[b]);
+      } else {
+        asm.imul(target, spill(b));
+      }
+    } else {
+      int alu = operation == ADD ? X86Assembler.ADD : X86Assembler.SUB;
+      if (constant[b]) {
+        asm.aluImm(alu, target, value[b]);
+      } else if (location[b] >= 0) {
+        asm.alu(alu, target, location[b]);
+      } else {
+        asm.alu(alu, target, spill(b));
+      }
+    }
+    write(asm, dst, target);
+  }
+
+  //Compare a to b, setting the flags.
+  private void compare(X86Assembler asm, int a, int b) {
+    int left = read(asm, a, X86Assembler.R11);
+    if (constant[b]) {
+      asm.aluImm(X86Assembler.CMP, left, value[b]);
+    } else if (location[b] >= 0) {
+      asm.alu(X86Assembler.CMP, left, location[b]);
+    } else {
+      asm.alu(X86Assembler.CMP, left, spill(b));
+    }
+  }
+
+  //The address of an array element, its index sign extended in R11 like the sext of
+  //the IR code, or folded in the address when it is a constant in bounds.
+  private X86Assembler.Memory element(X86Assembler asm, int array, int index) {
+    long base = arrayAddresses[array];
+    if (constant[index] && value[index] >= 0 && value[index] < arraySizes.get(array)) {
+      return new X86Assembler.Memory(base + 4L * value[index]);
+    }
+    if (constant[index]) {
+      asm.movImm(X86Assembler.R11, value[index]);
+      asm.movsxd(X86Assembler.R11, X86Assembler.R11);
+    } else if (location[index] >= 0) {
+      asm.movsxd(X86Assembler.R11, location[index]);
+    } else {
+      asm.movsxd(X86Assembler.R11, spill(index));
+    }
+    return new X86Assembler.Memory(base, X86Assembler.R11, 4);
+  }
+
+  //The register holding a value, the scratch one when it is a constant or spilled.
+  private int read(X86Assembler asm, int register, int scratch) {
+    if (!constant[register] && location[register] >= 0) {
+      return location[register];
+    }
+    moveTo(asm, scratch, register);
+    return scratch;
+  }
+
+  private void moveTo(X86Assembler asm, int target, int register) {
+    if (constant[register]) {
+      asm.movImm(target, value[register]);
+    } else if (location[register] < 0) {
+      asm.mov(target, spill(register));
+    } else if (location[register] != target) {
+      asm.mov(target, location[register]);
+    }
+  }
+
+  //Put a result computed in a physical register in its virtual register.
+  private void write(X86Assembler asm, int register, int result) {
+    if (location[register] < 0) {
+      asm.mov(spill(register), result);
+    } else if (location[register] != result) {
+      asm.mov(location[register], result);
+    }
+  }
+
+  private X86Assembler.Memory spill(int register) {
+    return new X86Assembler.Memory(SPILLS + 4L * slot[register]);
+  }
+
+  /** The runtime of a native program, the same as the functions of the IR code:
+  * printInt formats an integer in the output buffer, which flushOut writes to
+  * stdout when it is full, before reading and at the exit; readInt parses an
+  * integer from the input buffer, filled by peekIn; a READ error or an index out
+  * of bounds flushes the output, writes a message on stderr and exits with status
+  * 1, 2 or 3. The functions keep the registers given to the program, and may change
+  * RAX, RCX, RDX and R11.
+  */
+  private static class Runtime {
+    //Linux system calls.
+    private static final int SYS_READ = 0;
+    private static final int SYS_WRITE = 1;
+    private static final int SYS_EXIT_GROUP = 231;
+
+    private X86Assembler asm;
+    private long[] messages;
+    int printInt;
+    int readInt;
+    int boundsFail;
+    int exit;
+    private int flushOut;
+    private int peekIn;
+    private int fail;
+    private int eofFail;
+    private int malformedFail;
+    private int rangeFail;
+
+    Runtime(X86Assembler asm, long[] messages) {
+      this.asm = asm;
+      this.messages = messages;
+      printInt = asm.newLabel();
+      readInt = asm.newLabel();
+      boundsFail = asm.newLabel();
+      exit = asm.newLabel();
+      flushOut = asm.newLabel();
+      peekIn = asm.newLabel();
+      fail = asm.newLabel();
+      eofFail = asm.newLabel();
+      malformedFail = asm.newLabel();
+      rangeFail = asm.newLabel();
+    }
+
+    void emit() {
+      emitExit();
+      emitFlushOut();
+      emitPrintInt();
+      emitPeekIn();
+      emitReadInt();
+      emitFail();
+    }
+
+    //Flush the output and exit with status 0.
+    private void emitExit() {
+      asm.bind(exit);
+      asm.call(flushOut);
+      asm.movImm(X86Assembler.RDI, 0);
+      asm.movImm(X86Assembler.RAX, SYS_EXIT_GROUP);
+      asm.syscall();
+    }
+
+    //Write the output buffer until it is empty or write(2) fails.
+    private void emitFlushOut() {
+      int loop = asm.newLabel();
+      int end = asm.newLabel();
+      asm.bind(flushOut);
+      asm.push(X86Assembler.RSI);
+      asm.push(X86Assembler.RDI);
+      asm.mov(X86Assembler.RDX, new X86Assembler.Memory(OUT_POSITION));
+      asm.movImm(X86Assembler.RSI, (int) OUT_BUFFER);
+      asm.bind(loop);
+      asm.aluImm(X86Assembler.CMP, X86Assembler.RDX, 0);
+      asm.jcc(X86Assembler.LESS_EQUAL, end);
+      asm.movImm(X86Assembler.RDI, 1);
+      asm.movImm(X86Assembler.RAX, SYS_WRITE);
+      asm.syscall();
+      asm.aluqImm(X86Assembler.CMP, X86Assembler.RAX, 0);
+      asm.jcc(X86Assembler.LESS_EQUAL, end);
+      asm.aluq(X86Assembler.ADD, X86Assembler.RSI, X86Assembler.RAX);
+      asm.aluq(X86Assembler.SUB, X86Assembler.RDX, X86Assembler.RAX);
+      asm.jmp(loop);
+      asm.bind(end);
+      asm.movImm(new X86Assembler.Memory(OUT_POSITION), 0);
+      asm.pop(X86Assembler.RDI);
+      asm.pop(X86Assembler.RSI);
+      asm.ret();
+    }
+
+    //Print EAX and a line feed, the digits being made from the last one.
+    private void emitPrintInt() {
+      int format = asm.newLabel();
+      int positive = asm.newLabel();
+      int digits = asm.newLabel();
+      int copy = asm.newLabel();
+      asm.bind(printInt);
+      asm.aluImm(X86Assembler.CMP, new X86Assembler.Memory(OUT_POSITION), BUFFER - 12);
+      asm.jcc(X86Assembler.LESS_EQUAL, format);
+      asm.push(X86Assembler.RAX);
+      asm.call(flushOut);
+      asm.pop(X86Assembler.RAX);
+      asm.bind(format);
+      asm.push(X86Assembler.RSI);
+      asm.push(X86Assembler.RDI);
+      asm.movsxd(X86Assembler.RAX, X86Assembler.RAX);
+      asm.mov(X86Assembler.RDI, new X86Assembler.Memory(OUT_POSITION));
+      asm.testq(X86Assembler.RAX, X86Assembler.RAX);
+      asm.jcc(X86Assembler.NOT_SIGN, positive);
+      asm.movImm(X86Assembler.RDX, '-');
+      asm.movByte(new X86Assembler.Memory(OUT_BUFFER, X86Assembler.RDI, 1), X86Assembler.RDX);
+      asm.aluImm(X86Assembler.ADD, X86Assembler.RDI, 1);
+      asm.negq(X86Assembler.RAX);
+      asm.bind(positive);
+      asm.movImm(X86Assembler.RSI, 0);
+      asm.movImm(X86Assembler.RCX, 10);
+      asm.bind(digits);
+      asm.movImm(X86Assembler.RDX, 0);
+      asm.divq(X86Assembler.RCX);
+      asm.aluImm(X86Assembler.ADD, X86Assembler.RDX, '0');
+      asm.movByte(new X86Assembler.Memory(DIGITS, X86Assembler.RSI, 1), X86Assembler.RDX);
+      asm.aluImm(X86Assembler.ADD, X86Assembler.RSI, 1);
+      asm.testq(X86Assembler.RAX, X86Assembler.RAX);
+      asm.jcc(X86Assembler.NOT_EQUAL, digits);
+      asm.bind(copy);
+      asm.aluImm(X86Assembler.SUB, X86Assembler.RSI, 1);
+      asm.movzxByte(X86Assembler.RAX, new X86Assembler.Memory(DIGITS, X86Assembler.RSI, 1));
+      asm.movByte(new X86Assembler.Memory(OUT_BUFFER, X86Assembler.RDI, 1), X86Assembler.RAX);
+      asm.aluImm(X86Assembler.ADD, X86Assembler.RDI, 1);
+      asm.test(X86Assembler.RSI, X86Assembler.RSI);
+      asm.jcc(X86Assembler.NOT_EQUAL, copy);
+      asm.movImm(X86Assembler.RDX, '\n');
+      asm.movByte(new X86Assembler.Memory(OUT_BUFFER, X86Assembler.RDI, 1), X86Assembler.RDX);
+      asm.aluImm(X86Assembler.ADD, X86Assembler.RDI, 1);
+      asm.mov(new X86Assembler.Memory(OUT_POSITION), X86Assembler.RDI);
+      asm.pop(X86Assembler.RDI);
+      asm.pop(X86Assembler.RSI);
+      asm.ret();
+    }
+
+    //The next input character in EAX, without consuming it, or -1 at the end of
+    //the input. An empty buffer is filled after flushing the output.
+    private void emitPeekIn() {
+      int ready = asm.newLabel();
+      int eof = asm.newLabel();
+      asm.bind(peekIn);
+      asm.mov(X86Assembler.RAX, new X86Assembler.Memory(IN_POSITION));
+      asm.alu(X86Assembler.CMP, X86Assembler.RAX, new X86Assembler.Memory(IN_LENGTH));
+      asm.jcc(X86Assembler.LESS, ready);
+      asm.call(flushOut);
+      asm.push(X86Assembler.RSI);
+      asm.push(X86Assembler.RDI);
+      asm.movImm(X86Assembler.RDI, 0);
+      asm.movImm(X86Assembler.RSI, (int) IN_BUFFER);
+      asm.movImm(X86Assembler.RDX, BUFFER);
+      asm.movImm(X86Assembler.RAX, SYS_READ);
+      asm.syscall();
+      asm.pop(X86Assembler.RDI);
+      asm.pop(X86Assembler.RSI);
+      asm.movImm(new X86Assembler.Memory(IN_POSITION), 0);
+      asm.aluqImm(X86Assembler.CMP, X86Assembler.RAX, 0);
+      asm.jcc(X86Assembler.LESS_EQUAL, eof);
+      asm.mov(new X86Assembler.Memory(IN_LENGTH), X86Assembler.RAX);
+      asm.movImm(X86Assembler.RAX, 0);
+      asm.jmp(ready);
+      asm.bind(eof);
+      asm.movImm(new X86Assembler.Memory(IN_LENGTH), 0);
+      asm.movImm(X86Assembler.RAX, -1);
+      asm.ret();
+      asm.bind(ready);
+      asm.movzxByte(X86Assembler.RAX, new X86Assembler.Memory(IN_BUFFER, X86Assembler.RAX, 1));
+      asm.ret();
+    }
+
+    //Read an integer in EAX: blanks, an optional sign, digits, then a blank or
+    //the end of the input. The value is accumulated on 64 bits and checked after
+    //each digit, like @readInt.
+    private void emitReadInt() {
+      int skip = asm.newLabel();
+      int skipNext = asm.newLabel();
+      int signNext = asm.newLabel();
+      int first = asm.newLabel();
+      int digits = asm.newLabel();
+      int value = asm.newLabel();
+      int positive = asm.newLabel();
+      X86Assembler.Memory position = new X86Assembler.Memory(IN_POSITION);
+      X86Assembler.Memory minus = new X86Assembler.Memory(READ_MINUS);
+      X86Assembler.Memory number = new X86Assembler.Memory(READ_VALUE);
+      asm.bind(readInt);
+      asm.bind(skip);
+      asm.call(peekIn);
+      asm.aluImm(X86Assembler.CMP, X86Assembler.RAX, ' ');
+      asm.jcc(X86Assembler.EQUAL, skipNext);
+      asm.mov(X86Assembler.RDX, X86Assembler.RAX);
+      asm.aluImm(X86Assembler.SUB, X86Assembler.RDX, 9);
+      asm.aluImm(X86Assembler.CMP, X86Assembler.RDX, 5);
+      asm.jcc(X86Assembler.BELOW, skipNext);
+      asm.aluImm(X86Assembler.CMP, X86Assembler.RAX, 0);
+      asm.jcc(X86Assembler.LESS, eofFail);
+      asm.aluImm(X86Assembler.CMP, X86Assembler.RAX, '-');
+      asm.setcc(X86Assembler.EQUAL, X86Assembler.RDX);
+      asm.mov(minus, X86Assembler.RDX);
+      asm.jcc(X86Assembler.EQUAL, signNext);
+      asm.aluImm(X86Assembler.CMP, X86Assembler.RAX, '+');
+      asm.jcc(X86Assembler.NOT_EQUAL, first);
+      asm.bind(signNext);
+      asm.aluImm(X86Assembler.ADD, position, 1);
+      asm.call(peekIn);
+      asm.bind(first);
+      asm.aluImm(X86Assembler.SUB, X86Assembler.RAX, '0');
+      asm.aluImm(X86Assembler.CMP, X86Assembler.RAX, 10);
+      asm.jcc(X86Assembler.ABOVE_EQUAL, malformedFail);
+      asm.movImm(X86Assembler.RDX, 0);
+      asm.movq(number, X86Assembler.RDX);
+      asm.bind(digits);
+      asm.movq(X86Assembler.RDX, number);
+      asm.imulqImm(X86Assembler.RDX, X86Assembler.RDX, 10);
+      asm.aluq(X86Assembler.ADD, X86Assembler.RDX, X86Assembler.RAX);
+      asm.movq(number, X86Assembler.RDX);
+      asm.aluImm(X86Assembler.ADD, position, 1);
+      asm.movImm(X86Assembler.RCX, Integer.MIN_VALUE);
+      asm.aluq(X86Assembler.CMP, X86Assembler.RDX, X86Assembler.RCX);
+      asm.jcc(X86Assembler.ABOVE, rangeFail);
+      asm.call(peekIn);
+      asm.mov(X86Assembler.RDX, X86Assembler.RAX);
+      asm.aluImm(X86Assembler.SUB, X86Assembler.RAX, '0');
+      asm.aluImm(X86Assembler.CMP, X86Assembler.RAX, 10);
+      asm.jcc(X86Assembler.BELOW, digits);
+      asm.aluImm(X86Assembler.CMP, X86Assembler.RDX, ' ');
+      asm.jcc(X86Assembler.EQUAL, value);
+      asm.aluImm(X86Assembler.CMP, X86Assembler.RDX, 0);
+      asm.jcc(X86Assembler.LESS, value);
+      asm.aluImm(X86Assembler.SUB, X86Assembler.RDX, 9);
+      asm.aluImm(X86Assembler.CMP, X86Assembler.RDX, 5);
+      asm.jcc(X86Assembler.ABOVE_EQUAL, malformedFail);
+      asm.bind(value);
+      asm.movq(X86Assembler.RAX, number);
+      asm.aluImm(X86Assembler.CMP, minus, 0);
+      asm.jcc(X86Assembler.EQUAL, positive);
+      asm.negq(X86Assembler.RAX);
+      asm.bind(positive);
+      asm.movImm(X86Assembler.RCX, Integer.MAX_VALUE);
+      asm.aluq(X86Assembler.CMP, X86Assembler.RAX, X86Assembler.RCX);
+      asm.jcc(X86Assembler.GREATER, rangeFail);
+      asm.ret();
+      asm.bind(skipNext);
+      asm.aluImm(X86Assembler.ADD, position, 1);
+      asm.jmp(skip);
+    }
+
+    //Flush the output, write the message at RSI of RDX bytes on stderr and exit with
+    //the status in RDI.
+    private void emitFail() {
+      failWith(eofFail, 0, 1);
+      failWith(malformedFail, 1, 2);
+      failWith(rangeFail, 2, 2);
+      failWith(boundsFail, 3, 3);
+      asm.bind(fail);
+      asm.push(X86Assembler.RDX);
+      asm.call(flushOut);
+      asm.pop(X86Assembler.RDX);
+      asm.push(X86Assembler.RDI);
+      asm.movImm(X86Assembler.RDI, 2);
+      asm.movImm(X86Assembler.RAX, SYS_WRITE);
+      asm.syscall();
+      asm.pop(X86Assembler.RDI);
+      asm.movImm(X86Assembler.RAX, SYS_EXIT_GROUP);
+      asm.syscall();
+    }
+
+    private void failWith(int label, int message, int status) {
+      asm.bind(label);
+      asm.movImm(X86Assembler.RSI, (int) messages[message]);
+      asm.movImm(X86Assembler.RDX, MESSAGES[message].length());
+      asm.movImm(X86Assembler.RDI, status);
+      asm.jmp(fail);
+    }
+  }
+}
@@ -5,478 +5,700 @@ import java.io.IOException;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
 
 /** Parser class that check that the rule of the grammar are respected
 * by the .sf input program and generate an abstract syntax tree. It
 * returns a AST. During the parsing the relevant nodes are added to the AST.
+* The parser is driven by the LL(1) action table of the grammar, computed from
+* its first and follow sets when the class is loaded, with a stack on the heap.
 * @param filePath path to the file to parse
 */
 
 public class Parser {
   private Lexer scanner;
+  private Iterator<Symbol> tokens;
   private Symbol lookahead;
+  //Tokens read before EOS.
+  private int tokenCount;
+  //Index of the lookahead among the tokens.
+  private int position;
+  private Map<Object, int[]> ranges;
 
   public Parser(BufferedReader filePath) throws IOException {
     this.scanner = new Lexer(filePath);
     this.lookahead = scanner.yylex();
+    this.tokenCount = lookahead.getType() != LexicalUnit.EOS ? 1 : 0;
   }
 
-  /** Fetch the next token to parse.
+  /** Parse tokens that were already read by the lexer.
+  * @param tokens the tokens of the program, ending by EOS
+  */
+  public Parser(List<Symbol> tokens) {
+    this.tokens = tokens.iterator();
+    this.lookahead = this.tokens.next();
+    this.tokenCount = lookahead.getType() != LexicalUnit.EOS ? 1 : 0;
+  }
+
+  /** Read all the tokens of a program, so the lexing can be measured apart from
+  * the parsing.
+  * @param filePath the program to read
+  * @return the tokens, the last one is EOS
+  */
+  public static List<Symbol> tokenize(BufferedReader filePath) throws IOException {
+    Lexer lexer = new Lexer(filePath);
+    List<Symbol> tokens = new ArrayList<Symbol>();
+    Symbol token;
+    do {
+      token = lexer.yylex();
+      tokens.add(token);
+    } while (token.getType() != LexicalUnit.EOS);
+    return tokens;
+  }
+
+  /** Fetch the next token to parse. Like the lexer, a token list keeps
+  * returning EOS at its end.
   */
   private void nextToken() throws IOException {
-    this.lookahead = scanner.yylex();
+    if (tokens == null) {
+      this.lookahead = scanner.yylex();
+      position++;
+    } else if (tokens.hasNext()) {
+      this.lookahead = tokens.next();
+      position++;
+    }
+    if (lookahead.getType() != LexicalUnit.EOS) {
+      tokenCount++;
+    }
+  }
+
+  /** Number of tokens read so far, EOS included.
+  */
+  public int getTokenCount() {
+    return tokenCount + 1;
+  }
+
+  /** The token being parsed, the one of the error after a syntax error.
+  */
+  Symbol getLookahead() {
+    return lookahead;
   }
 
-  /** Compare the expected token to the current token. It doesn't return anything.
-  * It is used when the comparaison is irrelevant to the AST and only used to check
-  * the correctness of the grammar.
+  /** Record the tokens of each statement and block while parsing, for the
+  * IncrementalParser: the range [first token, token after the last one) of each
+  * statement node, and of the list of statements of each block (its children).
+  * @param ranges the map filled with the ranges, by identity of the node or list
+  */
+  void setRanges(Map<Object, int[]> ranges) {
+    this.ranges = ranges;
+  }
+
+  /** Compare the expected token to the current token and read the next one.
   * @param token the expected token.
+  * @return the matched token
   */
-  private void compareToken(LexicalUnit token) throws IOException {
+  private Symbol compareToken(LexicalUnit token) throws IOException {
     if (!(lookahead.getType().equals(token))){
       throw new Error("\nError at line " + lookahead.getLine() + ": " +
       lookahead.getType() + " expected " + token);
     }
+    Symbol matched = lookahead;
     nextToken();
+    return matched;
   }
 
-  /** Compare the expected token to the current token. Variant of compareToken()
-  * method. It return a AST node with a label relevant to the AST. It check the
-  * correctness of the grammar like the previous method.
-  * @param token the expected token.
-  * @return a new AST node with a relevant label
+  /** Skip empty lines
   */
-  private AbstractSyntaxTree compareTokenAdd(LexicalUnit token) throws IOException {
-    if (!(lookahead.getType().equals(token))){
-      throw new Error("\nError at line " + lookahead.getLine() + ": " +
-      lookahead.getType() + " expected " + token);
+  private void skipEndline() throws IOException {
+    while (lookahead.getType().equals(LexicalUnit.ENDLINE)) {
+      nextToken();
     }
-    String label = lookahead.getValue().toString();
-    nextToken();
-    return new AbstractSyntaxTree(label);
   }
 
   /** Start the parsing of the input file at the initial symbol of the grammar.
   */
   public AbstractSyntaxTree startParse() throws IOException {
-    return program();
+    AbstractSyntaxTree ast = parseProgram();
+    cleanTree(ast);
+    return ast;
   }
 
+  /** Parse the program without the cleaning of the final AST.
+  * The symbols still to match are kept on a stack: the top nonterminal is
+  * replaced by the right-hand side of the production chosen in the action table
+  * for the lookahead, the top terminal is compared to the lookahead. Under the
+  * right-hand side, a production leaves a marker: once its symbols are matched,
+  * their values (tokens, nodes or lists of nodes) are on the value stack and the
+  * production builds its own value from them. Nothing is recursive, so the size
+  * of the program is only limited by memory.
+  */
+  public AbstractSyntaxTree parseProgram() throws IOException {
+    return (AbstractSyntaxTree) parse(NONTERMINAL);
+  }
 
-  /** Skip empty lines
+  /** Parse statements up to EOS, with empty lines around them, like a piece of a
+  * block. The statements are not cleaned.
+  * @return the statements, in order
   */
-  private void skipEndline() throws IOException {
-    while (lookahead.getType().equals(LexicalUnit.ENDLINE)) {
-      nextToken();
+  List<AbstractSyntaxTree> parseStatements() throws IOException {
+    return reverse(parse(SKIP, NONTERMINAL + CODE, SKIP, LexicalUnit.EOS.ordinal()));
+  }
+
+  //Parse the given symbols, return the value of the first one.
+  private Object parse(int... start) throws IOException {
+    IntStack symbols = new IntStack();
+    IntStack starts = new IntStack();
+    List<Object> values = new ArrayList<Object>();
+    for (int i = start.length - 1; i >= 0; i--) {
+      symbols.push(start[i]);
+    }
+    while (symbols.size > 0) {
+      int symbol = symbols.pop();
+      if (symbol == SKIP) {
+        skipEndline();
+      } else if (symbol >= ACTION) {
+        int production = symbol - ACTION;
+        int size = valueCount[production];
+        Object[] args = new Object[size];
+        for (int i = size - 1; i >= 0; i--) {
+          args[i] = values.remove(values.size() - 1);
+        }
+        Object value = reduce(production, args);
+        if (ranges != null) {
+          int first = starts.pop();
+          //The list of a block is built by the chain of its Code productions, the
+          //outermost one is reduced last.
+          if (lhs[production] == INSTRUCTION || lhs[production] == CODE) {
+            ranges.put(value, new int[] {first, position});
+          }
+        }
+        values.add(value);
+      } else if (symbol >= NONTERMINAL) {
+        int production = predict(symbol - NONTERMINAL);
+        if (ranges != null) {
+          starts.push(position);
+        }
+        symbols.push(ACTION + production);
+        for (int i = rules[production].length - 1; i >= 0; i--) {
+          symbols.push(rules[production][i]);
+        }
+      } else {
+        values.add(compareToken(TERMINALS[symbol]));
+      }
     }
+    return values.get(0);
   }
 
-  //[01] <Program> -> BEGINPROG [ProgName] [EndLine] <Variables> <Code> ENDPROG
-  private AbstractSyntaxTree program() throws IOException {
-    AbstractSyntaxTree ast = new AbstractSyntaxTree();
-    skipEndline();
-    compareToken(LexicalUnit.BEGINPROG);
-    ast.addLabel(compareTokenAdd(LexicalUnit.PROGNAME).getLabel());
-    compareToken(LexicalUnit.ENDLINE);
-    skipEndline();
-    ast.addChild(variables());
-    skipEndline();
-    ast.addChild(code());
-    skipEndline();
-    compareToken(LexicalUnit.ENDPROG);
-    skipEndline();
-    compareToken(LexicalUnit.EOS);
+  /** Passes run on the final AST.
+  */
+  public static void cleanTree(AbstractSyntaxTree ast) {
     ast.removeEpsilons();  // Remove useless nodes.
     ast.removeBadMinus();  // Correct bad minus bug in case it appears.
-    return ast;
   }
 
-  //[02] <Variables> -> VARIABLES <VarList> [EndLine]
-  //[03] <Variables> -> EPSILON
-  private AbstractSyntaxTree variables() throws IOException {
-    if (lookahead.getType().equals(LexicalUnit.VARIABLES)) {
-      compareToken(LexicalUnit.VARIABLES);
-      return new AbstractSyntaxTree("Variables", varlist());
-    } else {
-      return new AbstractSyntaxTree("Epsilon");
+  //Production of a nonterminal for the lookahead. Like a recursive descent parser,
+  //a nonterminal without entry takes its last production (EPSILON when it has one)
+  //and the error appears at the next terminal, except the ones with an error message.
+  private int predict(int nonterminal) {
+    int production = table[nonterminal][lookahead.getType().ordinal()];
+    if (production != 0) {
+      return production;
+    }
+    if (ERRORS[nonterminal] != null) {
+      throw new Error("\nError at line " + lookahead.getLine() + ": " +
+      lookahead.getType() + ERRORS[nonterminal]);
+    }
+    return lastProduction[nonterminal];
+  }
+
+  //Value of a production from the values of its symbols, the same as the
+  //recursive descent parser built, except for the blocks: their statements are
+  //the children of a single Code node instead of a chain of Code nodes. Lists of
+  //statements, variables and expressions are built backwards, the production
+  //that holds the whole list reverses it.
+  @SuppressWarnings("unchecked")
+  private static Object reduce(int production, Object[] args) {
+    switch (production) {
+      case 1:
+        AbstractSyntaxTree program = new AbstractSyntaxTree(label(args[1]));
+        program.addChild((AbstractSyntaxTree) args[3]);
+        program.addChild(block(args[4]));
+        return program;
+      case 2:
+        return new AbstractSyntaxTree("Variables", reverse(args[1]));
+      case 4:
+        return append(args[2], arraySize((Symbol) args[0], (AbstractSyntaxTree) args[1]));
+      case 5:
+      case 52:
+      case 59:
+        return args[1];
+      case 6:
+      case 8:
+      case 53:
+      case 60:
+        return new ArrayList<AbstractSyntaxTree>();
+      case 7:
+        return append(args[1], (AbstractSyntaxTree) args[0]);
+      case 9:
+        return new AbstractSyntaxTree("Assign", (List<AbstractSyntaxTree>) args[0]);
+      case 10:
+        return new AbstractSyntaxTree("If", (List<AbstractSyntaxTree>) args[0]);
+      case 11:
+        return new AbstractSyntaxTree("While", (List<AbstractSyntaxTree>) args[0]);
+      case 12:
+        return new AbstractSyntaxTree("For", (List<AbstractSyntaxTree>) args[0]);
+      case 13:
+        return new AbstractSyntaxTree("Print", (List<AbstractSyntaxTree>) args[0]);
+      case 14:
+        return new AbstractSyntaxTree("Read", (List<AbstractSyntaxTree>) args[0]);
+      case 61:
+        return new AbstractSyntaxTree("ParFor", (List<AbstractSyntaxTree>) args[0]);
+      case 15:
+        return nodes(index((Symbol) args[0], (AbstractSyntaxTree) args[1]), args[3]);
+      case 16:
+      case 17:
+        return operation((AbstractSyntaxTree) args[0], (AbstractSyntaxTree) args[1]);
+      case 18:
+      case 20:
+        AbstractSyntaxTree operator = new AbstractSyntaxTree((String) args[0]);
+        operator.addChild((AbstractSyntaxTree) args[1]);
+        operator.addChild((AbstractSyntaxTree) args[2]);
+        return operator;
+      case 3:
+      case 19:
+      case 21:
+      case 36:
+      case 38:
+        return new AbstractSyntaxTree("Epsilon");
+      case 22:
+        return index((Symbol) args[0], (AbstractSyntaxTree) args[1]);
+      case 23:
+      case 54:
+        return new AbstractSyntaxTree(label(args[production == 23 ? 0 : 1]));
+      case 24:
+      case 56:
+        return args[1];
+      case 25:
+        AbstractSyntaxTree minus = new AbstractSyntaxTree(label(args[0]));
+        minus.addChild(new AbstractSyntaxTree("0"));
+        minus.addChild((AbstractSyntaxTree) args[1]);
+        return minus;
+      case 30:
+        List<AbstractSyntaxTree> parsedIf = nodes(args[2], block(args[5]));
+        parsedIf.addAll((List<AbstractSyntaxTree>) args[6]);
+        return parsedIf;
+      case 31:
+        return nodes(block(args[2]));
+      case 32:
+        //An IF without ELSE has an empty ELSE block.
+        return nodes(new AbstractSyntaxTree("Code"));
+      case 33:
+        AbstractSyntaxTree cond = new AbstractSyntaxTree("Cond");
+        cond.addChild((List<AbstractSyntaxTree>) args[0]);
+        cond.addChild((AbstractSyntaxTree) args[1]);
+        return cond;
+      case 34:
+        return nodes(args[0], args[1]);
+      case 35:
+        AbstractSyntaxTree and = new AbstractSyntaxTree(label(args[0]));
+        and.addChild((AbstractSyntaxTree) args[1]);
+        and.addChild((AbstractSyntaxTree) args[2]);
+        return and;
+      case 37:
+        AbstractSyntaxTree or = new AbstractSyntaxTree(label(args[0]));
+        or.addChild((List<AbstractSyntaxTree>) args[1]);
+        or.addChild((AbstractSyntaxTree) args[2]);
+        return or;
+      case 39:
+        AbstractSyntaxTree not = (AbstractSyntaxTree) args[1];
+        not.reverseCond(not);
+        return not;
+      case 40:
+        AbstractSyntaxTree comparison = new AbstractSyntaxTree((String) args[1]);
+        comparison.addChild((AbstractSyntaxTree) args[0]);
+        comparison.addChild((AbstractSyntaxTree) args[2]);
+        return comparison;
+      case 47:
+        return nodes(args[1], block(args[3]));
+      case 48:
+      case 62:
+        return nodes(new AbstractSyntaxTree(label(args[1])), args[3], args[5], block(args[7]));
+      case 49:
+      case 50:
+        return reverse(args[2]);
+      case 51:
+        return append(args[1], (AbstractSyntaxTree) args[0]);
+      case 55:
+      case 57:
+        return null;
+      case 58:
+        return append(args[2], index((Symbol) args[0], (AbstractSyntaxTree) args[1]));
+      default:
+        //Operators and comparisons.
+        return label(args[0]);
     }
   }
 
-  //[04] <VarList> -> [VarName] <VarListEnd>
-  private List<AbstractSyntaxTree> varlist() throws IOException {
-    List<AbstractSyntaxTree> var = new ArrayList<AbstractSyntaxTree>();
-    var.add(compareTokenAdd(LexicalUnit.VARNAME));
-    var.addAll(varlistend());
-    return var;
+  private static String label(Object token) {
+    return ((Symbol) token).getValue().toString();
   }
 
-  //[05] <VarListEnd> -> COMMA <VarList>
-  //[06] <VarListEnd> -> EPSILON
-  private List<AbstractSyntaxTree> varlistend() throws IOException {
-    if (lookahead.getType().equals(LexicalUnit.COMMA)) {
-      List<AbstractSyntaxTree> var = new ArrayList<AbstractSyntaxTree>();
-      compareToken(LexicalUnit.COMMA);
-      var.add(compareTokenAdd(LexicalUnit.VARNAME));
-      var.addAll(varlistend());
-      return var;
-    } else {
-      return new ArrayList<AbstractSyntaxTree>();
+  private static List<AbstractSyntaxTree> nodes(Object... nodes) {
+    List<AbstractSyntaxTree> list = new ArrayList<AbstractSyntaxTree>();
+    for (Object node: nodes) {
+      list.add((AbstractSyntaxTree) node);
     }
+    return list;
   }
 
-  //[07] <Code> -> <Instruction> [EndLine] <Code>
-  //[08] <Code> -> EPSILON
-  private AbstractSyntaxTree code() throws IOException {
-    AbstractSyntaxTree ast = new AbstractSyntaxTree("Code");
-    switch(lookahead.getType()) {
-      case VARNAME:
-      case IF:
-      case WHILE:
-      case FOR:
-      case PRINT:
-      case READ:
-        ast.addChild(instruction());
-        skipEndline();
-        ast.addChild(code());
-        return ast;
-      default:
-        return new AbstractSyntaxTree("Epsilon");
-    }
+  @SuppressWarnings("unchecked")
+  private static List<AbstractSyntaxTree> append(Object list, AbstractSyntaxTree node) {
+    ((List<AbstractSyntaxTree>) list).add(node);
+    return (List<AbstractSyntaxTree>) list;
   }
 
-  //[09] <Instruction> -> <Assign>
-  //[10] <Instruction> -> <If>
-  //[11] <Instruction> -> <While>
-  //[12] <Instruction> -> <For>
-  //[13] <Instruction> -> <Print>
-  //[14] <Instruction> -> <Read>
-  private AbstractSyntaxTree instruction() throws IOException {
-    switch(lookahead.getType()) {
-      case VARNAME:
-        return new AbstractSyntaxTree("Assign", assign());
-      case IF:
-        return new AbstractSyntaxTree("If", parse_if());
-      case WHILE:
-        return new AbstractSyntaxTree("While", parse_while());
-      case FOR:
-        return new AbstractSyntaxTree("For", parse_for());
-      case PRINT:
-        return new AbstractSyntaxTree("Print", parse_print());
-      case READ:
-        return new AbstractSyntaxTree("Read", parse_read());
-      default:
-        return new AbstractSyntaxTree("Epsilon");
+  @SuppressWarnings("unchecked")
+  private static List<AbstractSyntaxTree> reverse(Object list) {
+    Collections.reverse((List<AbstractSyntaxTree>) list);
+    return (List<AbstractSyntaxTree>) list;
+  }
+
+  //A block of statements: a Code node holding the whole list, even when empty.
+  private static AbstractSyntaxTree block(Object statements) {
+    return new AbstractSyntaxTree("Code", reverse(statements));
+  }
+
+  //A variable declaration, an array when it has a size.
+  private static AbstractSyntaxTree arraySize(Symbol var, AbstractSyntaxTree size) {
+    if (size == null) {
+      return new AbstractSyntaxTree(label(var));
     }
+    return new AbstractSyntaxTree("Array", nodes(new AbstractSyntaxTree(label(var)), size));
   }
 
-  //[15] <Assign> -> [VarName] ASSIGN <ExprArith>
-  private List<AbstractSyntaxTree> assign() throws IOException {
-    List<AbstractSyntaxTree> arr = new ArrayList<AbstractSyntaxTree>();
-    arr.add(compareTokenAdd(LexicalUnit.VARNAME));
-    compareToken(LexicalUnit.ASSIGN);
-    arr.add(exprArith());
-    return arr;
-  }
-
-  //[16] <ExprArith> -> <HpProd> <LpExpr>
-  private AbstractSyntaxTree exprArith() throws IOException {
-      AbstractSyntaxTree ast = new AbstractSyntaxTree();
-      ast.addChild(hpProd());
-      ast.addChildLabel(lpExpr());
-      ast.removeEpsilons();
-      if (ast.getChildren().size() == 1) {
-        AbstractSyntaxTree atomExpr = ast.getChild(0);
-        return atomExpr;
-      }
-      return ast;
+  //A variable reference, an array element when it has an index.
+  private static AbstractSyntaxTree index(Symbol var, AbstractSyntaxTree index) {
+    if (index == null) {
+      return new AbstractSyntaxTree(label(var));
     }
+    return new AbstractSyntaxTree("Index", nodes(new AbstractSyntaxTree(label(var)), index));
+  }
 
-  //[17] <HpProd> -> <SimpleExpr> <HpExpr>
-  private AbstractSyntaxTree hpProd() throws IOException {
+  //[16] and [17]: the first operand, then the operator and the operands that
+  //follow it. The EPSILON that ends the chain of operators is removed, the
+  //operands themselves were already cleaned. A single operand is returned as is.
+  private static AbstractSyntaxTree operation(AbstractSyntaxTree first, AbstractSyntaxTree rest) {
     AbstractSyntaxTree ast = new AbstractSyntaxTree();
-    ast.addChild(simpleExpr());
-    ast.addChildLabel(hpExpr());
-    ast.removeEpsilons();
+    ast.addChild(first);
+    ast.addChildLabel(rest);
     if (ast.getChildren().size() == 1) {
-      AbstractSyntaxTree atomExpr = ast.getChild(0);
-      return atomExpr;
+      return first;
     }
+    AbstractSyntaxTree node = ast;
+    List<AbstractSyntaxTree> children = node.getChildren();
+    while (children.get(children.size() - 1).getLabel() != "Epsilon") {
+      node = children.get(children.size() - 1);
+      children = node.getChildren();
+    }
+    children.remove(children.size() - 1);
     return ast;
   }
 
-  //[18] <HpExpr> -> <HpOp> <SimpleExpr> <HpExpr>
-  //[19] <HpExpr> -> EPSILON
-  private AbstractSyntaxTree hpExpr() throws IOException {
-    if (lookahead.getType().equals(LexicalUnit.TIMES) ||
-    lookahead.getType().equals(LexicalUnit.DIVIDE)) {
-      AbstractSyntaxTree ast = new AbstractSyntaxTree(hpOp());
-      ast.addChild(simpleExpr());
-      ast.addChild(hpExpr());
-      return ast;
+  /** Print the action table as CSV (-table) or the first and follow sets
+  * (-first-follow), as found in doc/.
+  */
+  public static void main(String[] args) {
+    if (args.length == 1 && args[0].equals("-table")) {
+      System.out.print(actionTable());
+    } else if (args.length == 1 && args[0].equals("-first-follow")) {
+      System.out.print(firstFollow());
     } else {
-      return new AbstractSyntaxTree("Epsilon");
+      System.out.println("Usage: java Parser -table | -first-follow");
     }
   }
 
-  //[20] <LpExpr> -> <LpOp> <HpProd> <LpExpr>
-  //[21] <LpExpr> -> EPSILON
-  private AbstractSyntaxTree lpExpr() throws IOException {
-    if (lookahead.getType().equals(LexicalUnit.PLUS) ||
-    lookahead.getType().equals(LexicalUnit.MINUS)) {
-      AbstractSyntaxTree ast = new AbstractSyntaxTree(lpOp());
-      ast.addChild(hpProd());
-      ast.addChild(lpExpr());
-      return ast;
-    } else {
-      return new AbstractSyntaxTree("Epsilon");
+  /** The action table: one line per nonterminal, one column per terminal.
+  */
+  public static String actionTable() {
+    StringBuilder csv = new StringBuilder();
+    for (int t = 1; t < TERMINALS.length; t++) {
+      csv.append("," + TERMINALS[t]);
     }
-  }
-
-  //[22] <SimpleExpr> -> [VarName]
-  //[23] <SimpleExpr> -> [Number]
-  //[24] <SimpleExpr>	-> LPAREN <ExprArith> RPAREN
-  //[25] <SimpleExpr>	-> MINUS <SimpleExpr>
-  private AbstractSyntaxTree simpleExpr() throws IOException {
-    switch(lookahead.getType()) {
-      case VARNAME:
-        AbstractSyntaxTree ast1 = new AbstractSyntaxTree();
-        ast1.addLabel(compareTokenAdd(LexicalUnit.VARNAME).getLabel());
-        return ast1;
-      case NUMBER:
-        AbstractSyntaxTree ast2 = new AbstractSyntaxTree();
-        ast2.addLabel(compareTokenAdd(LexicalUnit.NUMBER).getLabel());
-        return ast2;
-      case LPAREN:
-        compareToken(LexicalUnit.LPAREN);
-        AbstractSyntaxTree ast3 = exprArith();
-        compareToken(LexicalUnit.RPAREN);
-        return ast3;
-      case MINUS:
-        AbstractSyntaxTree ast4 = new AbstractSyntaxTree();
-        ast4.addLabel(compareTokenAdd(LexicalUnit.MINUS).getLabel());
-        ast4.addChild(new AbstractSyntaxTree("0"));
-        ast4.addChild(simpleExpr());
-        return ast4;
-      default:
-        throw new Error("\nError at line " + lookahead.getLine() + ": " +
-        lookahead.getType() + " expected a number, a variable or an arithmetic expression");
+    csv.append("\n");
+    for (int n = 0; n < NONTERMINALS.length; n++) {
+      csv.append(NONTERMINALS[n]);
+      for (int t = 1; t < TERMINALS.length; t++) {
+        csv.append("," + (table[n][t] == 0 ? "" : Integer.toString(table[n][t])));
+      }
+      csv.append("\n");
     }
+    return csv.toString();
   }
 
-  //[26] <LpOp> -> PLUS
-  //[27] <LpOp> -> MINUS
-  private String lpOp() throws IOException {
-    String op = "";
-    if (lookahead.getType().equals(LexicalUnit.PLUS)) {
-      op += compareTokenAdd(LexicalUnit.PLUS).getLabel();
-      return op;
-    } else if (lookahead.getType().equals(LexicalUnit.MINUS)) {
-      op += compareTokenAdd(LexicalUnit.MINUS).getLabel();
-      return op;
-    } else {
-      throw new Error("\nError at line " + lookahead.getLine() + ": " +
-      lookahead.getType() + " expected addition or substraction operator");
+  /** The first and follow sets of the nonterminals.
+  */
+  public static String firstFollow() {
+    StringBuilder sets = new StringBuilder();
+    sets.append("-------------- First Set -------------------\n\n");
+    for (int n = 0; n < NONTERMINALS.length; n++) {
+      sets.append("First(<" + NONTERMINALS[n] + ">) = " + terminals(first[n], nullable[n]) + "\n");
     }
-  }
-
-  //[28] <HpOp> -> TIMES
-  //[29] <HpOp> -> DIVIDE
-  private String hpOp() throws IOException {
-    String op = "";
-    if (lookahead.getType().equals(LexicalUnit.TIMES)) {
-      op += compareTokenAdd(LexicalUnit.TIMES).getLabel();
-      return op;
-    } else if (lookahead.getType().equals(LexicalUnit.DIVIDE)) {
-      op += compareTokenAdd(LexicalUnit.DIVIDE).getLabel();
-      return op;
-    } else {
-      throw new Error("\nError at line " + lookahead.getLine() + ": " +
-      lookahead.getType() + " expected multiplication or division operator");
+    sets.append("\n-------------- Follow Set --------------------------\n\n");
+    for (int n = 0; n < NONTERMINALS.length; n++) {
+      sets.append("Follow(<" + NONTERMINALS[n] + ">) = " + terminals(follow[n], false) + "\n");
     }
+    return sets.toString();
   }
 
-  //[30] <If> -> IF <Cond> THEN <Code> <IfElse> ENDIF
-  private List<AbstractSyntaxTree> parse_if() throws IOException {
-    List<AbstractSyntaxTree> arr = new ArrayList<AbstractSyntaxTree>();
-    compareTokenAdd(LexicalUnit.IF);
-    compareToken(LexicalUnit.LPAREN);
-    arr.add(cond());
-    compareToken(LexicalUnit.RPAREN);
-    compareToken(LexicalUnit.THEN);
-    skipEndline();
-    arr.add(code());
-    arr.addAll(ifElse());
-    compareToken(LexicalUnit.ENDIF);
-    return arr;
-  }
-
-  //[31] <IfElse> -> ELSE [EndLine] <Code>
-  //[32] <IfElse> -> EPSILON
-  private List<AbstractSyntaxTree> ifElse() throws IOException {
-    if (lookahead.getType().equals(LexicalUnit.ELSE)) {
-      List<AbstractSyntaxTree> arr = new ArrayList<AbstractSyntaxTree>();
-      compareToken(LexicalUnit.ELSE);
-      compareToken(LexicalUnit.ENDLINE);
-      arr.add(code());
-      return arr;
-    } else {
-      return new ArrayList<AbstractSyntaxTree>();
+  private static String terminals(boolean[] set, boolean epsilon) {
+    List<String> names = new ArrayList<String>();
+    for (int t = 1; t < TERMINALS.length; t++) {
+      if (set[t]) {
+        names.add(TERMINALS[t].toString());
+      }
     }
+    if (epsilon) {
+      names.add("EPSILON");
+    }
+    return "{" + String.join(", ", names) + "}";
   }
 
-  //[33] <Cond> -> <PCond> <LpCond>
-  private AbstractSyntaxTree cond() throws IOException {
-    AbstractSyntaxTree ast = new AbstractSyntaxTree("Cond");
-    ast.addChild(pCond());
-    ast.addChild(lpCond());
-    return ast;
-  }
-
-  //[34] <PCond> -> <SimpleCond> <HpCond>
-  private List<AbstractSyntaxTree> pCond() throws IOException {
-    List<AbstractSyntaxTree> arr = new ArrayList<AbstractSyntaxTree>();
-    arr.add(simpleCond());
-    arr.add(hpCond());
-    return arr;
-  }
-
-  //[35] <HpCond> -> AND <SimpleCond> <HpCond>
-  //[36] <HpCond> -> EPSILON
-  private AbstractSyntaxTree hpCond() throws IOException {
-    if (lookahead.getType().equals(LexicalUnit.AND)) {
-      AbstractSyntaxTree ast = new AbstractSyntaxTree();
-      ast.addLabel(compareTokenAdd(LexicalUnit.AND).getLabel());
-      ast.addChild(simpleCond());
-      ast.addChild(hpCond());
-      return ast;
-    } else {
-      return new AbstractSyntaxTree("Epsilon");
+  /** The grammar of doc/super_fortran_grammar.txt, one production per number. A
+  * production is its nonterminal then its symbols: <Nonterminal>, a terminal, or
+  * ENDLINES for any number of empty lines (skipped whatever the lookahead is).
+  */
+  private static final String[][] GRAMMAR = {
+    {},
+    {"Program", "ENDLINES", "BEGINPROG", "PROGNAME", "ENDLINE", "ENDLINES", "<Variables>", "ENDLINES",
+      "<Code>", "ENDLINES", "ENDPROG", "ENDLINES", "EOS"},
+    {"Variables", "VARIABLES", "<VarList>"},
+    {"Variables"},
+    {"VarList", "VARNAME", "<ArraySize>", "<VarListEnd>"},
+    {"VarListEnd", "COMMA", "<VarList>"},
+    {"VarListEnd"},
+    {"Code", "<Instruction>", "ENDLINES", "<Code>"},
+    {"Code"},
+    {"Instruction", "<Assign>"},
+    {"Instruction", "<If>"},
+    {"Instruction", "<While>"},
+    {"Instruction", "<For>"},
+    {"Instruction", "<Print>"},
+    {"Instruction", "<Read>"},
+    {"Assign", "VARNAME", "<Index>", "ASSIGN", "<ExprArith>"},
+    {"ExprArith", "<HpProd>", "<LpExpr>"},
+    {"HpProd", "<SimpleExpr>", "<HpExpr>"},
+    {"HpExpr", "<HpOp>", "<SimpleExpr>", "<HpExpr>"},
+    {"HpExpr"},
+    {"LpExpr", "<LpOp>", "<HpProd>", "<LpExpr>"},
+    {"LpExpr"},
+    {"SimpleExpr", "VARNAME", "<Index>"},
+    {"SimpleExpr", "NUMBER"},
+    {"SimpleExpr", "LPAREN", "<ExprArith>", "RPAREN"},
+    {"SimpleExpr", "MINUS", "<SimpleExpr>"},
+    {"LpOp", "PLUS"},
+    {"LpOp", "MINUS"},
+    {"HpOp", "TIMES"},
+    {"HpOp", "DIVIDE"},
+    {"If", "IF", "LPAREN", "<Cond>", "RPAREN", "THEN", "ENDLINES", "<Code>", "<IfElse>", "ENDIF"},
+    {"IfElse", "ELSE", "ENDLINE", "<Code>"},
+    {"IfElse"},
+    {"Cond", "<PCond>", "<LpCond>"},
+    {"PCond", "<SimpleCond>", "<HpCond>"},
+    {"HpCond", "AND", "<SimpleCond>", "<HpCond>"},
+    {"HpCond"},
+    {"LpCond", "OR", "<PCond>", "<LpCond>"},
+    {"LpCond"},
+    {"SimpleCond", "NOT", "<SimpleCond>"},
+    {"SimpleCond", "<ExprArith>", "<Comp>", "<ExprArith>"},
+    {"Comp", "EQ"},
+    {"Comp", "GEQ"},
+    {"Comp", "GT"},
+    {"Comp", "LEQ"},
+    {"Comp", "LT"},
+    {"Comp", "NEQ"},
+    {"While", "WHILE", "<Cond>", "DO", "ENDLINES", "<Code>", "ENDWHILE"},
+    {"For", "FOR", "VARNAME", "ASSIGN", "<ExprArith>", "TO", "<ExprArith>", "DO", "ENDLINES", "<Code>",
+      "ENDFOR"},
+    {"Print", "PRINT", "LPAREN", "<ExpList>", "RPAREN"},
+    {"Read", "READ", "LPAREN", "<RefList>", "RPAREN"},
+    {"ExpList", "<ExprArith>", "<ExpListEnd>"},
+    {"ExpListEnd", "COMMA", "<ExpList>"},
+    {"ExpListEnd"},
+    {"ArraySize", "LBRACKET", "NUMBER", "RBRACKET"},
+    {"ArraySize"},
+    {"Index", "LBRACKET", "<ExprArith>", "RBRACKET"},
+    {"Index"},
+    {"RefList", "VARNAME", "<Index>", "<RefListEnd>"},
+    {"RefListEnd", "COMMA", "<RefList>"},
+    {"RefListEnd"},
+    {"Instruction", "<ParFor>"},
+    {"ParFor", "PARFOR", "VARNAME", "ASSIGN", "<ExprArith>", "TO", "<ExprArith>", "DO", "ENDLINES", "<Code>",
+      "ENDFOR"}
+  };
+
+  //Error of the nonterminals that have no production to fall back on.
+  private static final String[][] ERROR_MESSAGES = {
+    {"Instruction", " expected an instruction"},
+    {"SimpleExpr", " expected a number, a variable or an arithmetic expression"},
+    {"LpOp", " expected addition or substraction operator"},
+    {"HpOp", " expected multiplication or division operator"},
+    {"Comp", " expected a comparison operator"}
+  };
+
+  //Symbols on the parsing stack: terminals are the ordinals of LexicalUnit, then
+  //come the nonterminals, the empty lines and the markers of the productions.
+  private static final LexicalUnit[] TERMINALS = LexicalUnit.values();
+  private static final int NONTERMINAL = TERMINALS.length;
+  private static final String[] NONTERMINALS;
+  private static final int SKIP;
+  private static final int ACTION;
+  private static final String[] ERRORS;
+  private static final int CODE;
+  private static final int INSTRUCTION;
+
+  private static final int[][] rules = new int[GRAMMAR.length][];
+  private static final int[] lhs = new int[GRAMMAR.length];
+  //Number of values a production takes, one per symbol but the empty lines.
+  private static final int[] valueCount = new int[GRAMMAR.length];
+  private static final int[] lastProduction;
+  private static final boolean[] nullable;
+  private static final boolean[][] first;
+  private static final boolean[][] follow;
+  private static final int[][] table;
+
+  static {
+    List<String> names = new ArrayList<String>();
+    for (int p = 1; p < GRAMMAR.length; p++) {
+      if (!names.contains(GRAMMAR[p][0])) {
+        names.add(GRAMMAR[p][0]);
+      }
+    }
+    NONTERMINALS = names.toArray(new String[0]);
+    SKIP = NONTERMINAL + NONTERMINALS.length;
+    ACTION = SKIP + 1;
+    CODE = names.indexOf("Code");
+    INSTRUCTION = names.indexOf("Instruction");
+    ERRORS = new String[NONTERMINALS.length];
+    for (String[] error: ERROR_MESSAGES) {
+      ERRORS[names.indexOf(error[0])] = error[1];
+    }
+    lastProduction = new int[NONTERMINALS.length];
+    for (int p = 1; p < GRAMMAR.length; p++) {
+      lhs[p] = names.indexOf(GRAMMAR[p][0]);
+      lastProduction[lhs[p]] = p;
+      rules[p] = new int[GRAMMAR[p].length - 1];
+      for (int i = 1; i < GRAMMAR[p].length; i++) {
+        String symbol = GRAMMAR[p][i];
+        if (symbol.equals("ENDLINES")) {
+          rules[p][i - 1] = SKIP;
+        } else if (symbol.startsWith("<")) {
+          rules[p][i - 1] = NONTERMINAL + names.indexOf(symbol.substring(1, symbol.length() - 1));
+          valueCount[p]++;
+        } else {
+          rules[p][i - 1] = LexicalUnit.valueOf(symbol).ordinal();
+          valueCount[p]++;
+        }
+      }
+    }
+    //The first sets, the empty lines count as a nullable symbol starting by ENDLINE.
+    nullable = new boolean[NONTERMINALS.length];
+    first = new boolean[NONTERMINALS.length][NONTERMINAL];
+    boolean changed = true;
+    while (changed) {
+      changed = false;
+      for (int p = 1; p < GRAMMAR.length; p++) {
+        boolean[] firstOfRule = new boolean[NONTERMINAL];
+        boolean empty = firstOf(rules[p], 0, firstOfRule);
+        changed |= addAll(first[lhs[p]], firstOfRule);
+        if (empty && !nullable[lhs[p]]) {
+          nullable[lhs[p]] = true;
+          changed = true;
+        }
+      }
+    }
+    follow = new boolean[NONTERMINALS.length][NONTERMINAL];
+    changed = true;
+    while (changed) {
+      changed = false;
+      for (int p = 1; p < GRAMMAR.length; p++) {
+        for (int i = 0; i < rules[p].length; i++) {
+          int symbol = rules[p][i];
+          if (symbol < NONTERMINAL || symbol == SKIP) {
+            continue;
+          }
+          boolean[] firstOfRest = new boolean[NONTERMINAL];
+          boolean empty = firstOf(rules[p], i + 1, firstOfRest);
+          changed |= addAll(follow[symbol - NONTERMINAL], firstOfRest);
+          if (empty) {
+            changed |= addAll(follow[symbol - NONTERMINAL], follow[lhs[p]]);
+          }
+        }
+      }
+    }
+    table = new int[NONTERMINALS.length][NONTERMINAL];
+    for (int p = 1; p < GRAMMAR.length; p++) {
+      boolean[] lookaheads = new boolean[NONTERMINAL];
+      if (firstOf(rules[p], 0, lookaheads)) {
+        addAll(lookaheads, follow[lhs[p]]);
+      }
+      for (int t = 0; t < NONTERMINAL; t++) {
+        if (lookaheads[t]) {
+          if (table[lhs[p]][t] != 0) {
+            throw new Error("The grammar is not LL(1): productions " + table[lhs[p]][t] + " and " + p
+            + " both start by " + TERMINALS[t]);
+          }
+          table[lhs[p]][t] = p;
+        }
+      }
     }
   }
 
-  //[37] <LpCond> -> OR <PCond> <LpCond>
-  //[38] <LpCond> -> EPSILON
-  private AbstractSyntaxTree lpCond() throws IOException {
-    if (lookahead.getType().equals(LexicalUnit.OR)) {
-      AbstractSyntaxTree ast = new AbstractSyntaxTree();
-      ast.addLabel(compareTokenAdd(LexicalUnit.OR).getLabel());
-      ast.addChild(pCond());
-      ast.addChild(lpCond());
-      return ast;
-    } else {
-      return new AbstractSyntaxTree("Epsilon");
+  //Add the first set of the symbols from start to the set, true if they can be empty.
+  private static boolean firstOf(int[] symbols, int start, boolean[] set) {
+    for (int i = start; i < symbols.length; i++) {
+      int symbol = symbols[i];
+      if (symbol == SKIP) {
+        set[LexicalUnit.ENDLINE.ordinal()] = true;
+      } else if (symbol >= NONTERMINAL) {
+        addAll(set, first[symbol - NONTERMINAL]);
+        if (!nullable[symbol - NONTERMINAL]) {
+          return false;
+        }
+      } else {
+        set[symbol] = true;
+        return false;
+      }
     }
+    return true;
   }
 
-  //[39] <SimpleCond> -> NOT <SimpleCond>
-  //[40] <SimpleCond> -> <ExprArith> <Comp> <ExprArith>
-  private AbstractSyntaxTree simpleCond() throws IOException {
-    if (lookahead.getType().equals(LexicalUnit.NOT)) {
-      compareToken(LexicalUnit.NOT);
-      AbstractSyntaxTree ast = simpleCond();
-      ast.reverseCond(ast);
-      return ast;
-    } else {
-      AbstractSyntaxTree ast = new AbstractSyntaxTree();
-      ast.addChild(exprArith());
-      ast.addLabel(comp());
-      ast.addChild(exprArith());
-      return ast;
+  private static boolean addAll(boolean[] set, boolean[] added) {
+    boolean changed = false;
+    for (int i = 0; i < set.length; i++) {
+      if (added[i] && !set[i]) {
+        set[i] = true;
+        changed = true;
+      }
     }
+    return changed;
   }
 
-  //[41] <Comp>	-> EQ
-  //[42] <Comp> -> GEQ
-  //[43] <Comp> -> GT
-  //[44] <Comp> -> LEQ
-  //[45] <Comp> -> LT
-  //[46] <Comp> -> NEQ
-  private String comp() throws IOException {
-    switch(lookahead.getType()) {
-      case EQ:
-        return compareTokenAdd(LexicalUnit.EQ).getLabel();
-      case GEQ:
-        return compareTokenAdd(LexicalUnit.GEQ).getLabel();
-      case GT:
-        return compareTokenAdd(LexicalUnit.GT).getLabel();
-      case LEQ:
-        return compareTokenAdd(LexicalUnit.LEQ).getLabel();
-      case LT:
-        return compareTokenAdd(LexicalUnit.LT).getLabel();
-      case NEQ:
-        return compareTokenAdd(LexicalUnit.NEQ).getLabel();
-      default:
-        throw new Error("\nError at line " + lookahead.getLine() + ": " +
-        lookahead.getType() + " expected a comparison operator");
+  //A growable stack of symbols.
+  private static class IntStack {
+    private int[] items = new int[64];
+    private int size;
+
+    void push(int item) {
+      if (size == items.length) {
+        items = Arrays.copyOf(items, 2 * size);
       }
-  }
+      items[size++] = item;
+    }
 
-  //[47] <While> -> WHILE <Cond> DO <Code> ENDWHILE
-  private List<AbstractSyntaxTree> parse_while() throws IOException {
-    List<AbstractSyntaxTree> arr = new ArrayList<AbstractSyntaxTree>();
-    compareToken(LexicalUnit.WHILE);
-    arr.add(cond());
-    compareToken(LexicalUnit.DO);
-    skipEndline();
-    arr.add(code());
-    compareToken(LexicalUnit.ENDWHILE);
-    return arr;
-  }
-
-  //[48] <For> -> FOR [VarName] ASSIGN <ExprArith> TO <ExprArith> DO <Code> ENDFOR
-  private List<AbstractSyntaxTree> parse_for() throws IOException {
-    List<AbstractSyntaxTree> arr = new ArrayList<AbstractSyntaxTree>();
-    compareToken(LexicalUnit.FOR);
-    arr.add(compareTokenAdd(LexicalUnit.VARNAME));
-    compareToken(LexicalUnit.ASSIGN);
-    arr.add(exprArith());
-    compareToken(LexicalUnit.TO);
-    arr.add(exprArith());
-    compareToken(LexicalUnit.DO);
-    skipEndline();
-    arr.add(code());
-    compareToken(LexicalUnit.ENDFOR);
-    return arr;
-  }
-
-  //[49] <Print> -> PRINT LPAREN <ExprList> RPAREN
-  private List<AbstractSyntaxTree> parse_print() throws IOException {
-    List<AbstractSyntaxTree> arr = new ArrayList<AbstractSyntaxTree>();
-    compareTokenAdd(LexicalUnit.PRINT);
-    compareToken(LexicalUnit.LPAREN);
-    arr.addAll(exprList());
-    compareToken(LexicalUnit.RPAREN);
-    return arr;
-  }
-
-  //[50] <Read> -> READ LPAREN <VarList> RPAREN
-  private List<AbstractSyntaxTree> parse_read() throws IOException {
-    List<AbstractSyntaxTree> arr = new ArrayList<AbstractSyntaxTree>();
-    compareTokenAdd(LexicalUnit.READ);
-    compareToken(LexicalUnit.LPAREN);
-    arr.addAll(varlist());
-    compareToken(LexicalUnit.RPAREN);
-    return arr;
-  }
-
-  //[51] <ExpList> -> <ExprArith> <ExpListEnd>
-  private List<AbstractSyntaxTree> exprList() throws IOException {
-    List<AbstractSyntaxTree> arr = new ArrayList<AbstractSyntaxTree>();
-    arr.add(exprArith());
-    arr.addAll(expListEnd());
-    return arr;
-  }
-
-  //[52] <ExpListEnd> -> COMMA <ExpList>
-  //[53] <ExpListEnd> -> EPSILON
-  private List<AbstractSyntaxTree> expListEnd() throws IOException {
-    if (lookahead.getType().equals(LexicalUnit.COMMA)) {
-      List<AbstractSyntaxTree> arr = new ArrayList<AbstractSyntaxTree>();
-      compareToken(LexicalUnit.COMMA);
-      arr.addAll(exprList());
-      return arr;
-    } else {
-      return new ArrayList<AbstractSyntaxTree>();
+    int pop() {
+      return items[--size];
     }
   }
 
@@ -0,0 +1,634 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/** Evaluator of a program at compile time. The statements of the program are run
+* in order on the AST, with the 32 bit arithmetic and the semantics of the IR code,
+* until the program ends, reads its input or runs out of steps (a statement or a
+* test of a loop condition each). A program that ends is known entirely: its output
+* replaces it. Otherwise the statements that did run are folded: the residual
+* program prints their output, sets the variables and array elements they left,
+* then goes on with the statements left.
+* The evaluation stops at the first statement whose result is not certain: a READ,
+* a variable read before it is assigned, a division by 0 or of the smallest integer
+* by -1, an index out of bounds, code that the CodeGenerator would reject, or a
+* statement nested more than MAX_NESTING deep. That statement and the following
+* ones are left to the generated code, which gives the same errors as without the
+* evaluation.
+*/
+
+public class PartialEvaluator {
+  //Most bytes of output of a program replaced by its output.
+  private static final int MAX_OUTPUT = 1 << 20;
+  //Most values (printed, variables and array elements) of a residual program,
+  //more folded statements are left to the generated code.
+  private static final int MAX_RESIDUAL = 1024;
+  //Most statements nested in each other evaluated, the evaluation recursing on the
+  //nesting: a deeper statement is left to the generated code.
+  private static final int MAX_NESTING = 256;
+
+  private AbstractSyntaxTree ast;
+  private long steps;
+  private List<AbstractSyntaxTree> declarations = new ArrayList<AbstractSyntaxTree>();
+  //Scalars declared so far in the order of the code, like the symbolic table of
+  //the CodeGenerator.
+  private Map<String, Variable> variables = new LinkedHashMap<String, Variable>();
+  private Map<String, int[]> arrays = new LinkedHashMap<String, int[]>();
+  private int nonZero;
+  private List<Integer> printed = new ArrayList<Integer>();
+  private int outputSize;
+  private boolean inParallel;
+  //Elements written by the statement being run, undone when it can't be run to its
+  //end: the array, and the index and old value at 2 * n and 2 * n + 1.
+  private List<int[]> undoArrays = new ArrayList<int[]>();
+  private int[] undoElements = new int[64];
+  private AbstractSyntaxTree residual;
+
+  //A scalar and its value once it is assigned.
+  private static class Variable {
+    boolean assigned;
+    int value;
+  }
+
+  //Thrown when the result of a statement is not certain.
+  private static class Unknown extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    Unknown() {
+      super(null, null, false, false);
+    }
+  }
+
+  /** Initialize an evaluator.
+  * @param ast the AST of the program
+  */
+  public PartialEvaluator(AbstractSyntaxTree ast) {
+    this.ast = ast;
+  }
+
+  /** Run the program at compile time.
+  * @param budget the most statements and loop tests run
+  * @return true when the program ended, its output is then getOutput()
+  */
+  public boolean evaluate(long budget) {
+    steps = budget;
+    List<AbstractSyntaxTree> statements = new ArrayList<AbstractSyntaxTree>();
+    for (AbstractSyntaxTree child: ast.getChildren()) {
+      if (child.getLabel() == "Variables") {
+        if (!declare(child)) {
+          residual = ast;
+          return false;
+        }
+      } else if (child.getLabel() == "Code") {
+        statements.addAll(child.getChildren());
+      }
+    }
+    int done = 0;
+    while (done < statements.size()) {
+      AbstractSyntaxTree statement = statements.get(done);
+      Set<String> declaredBefore = new HashSet<String>(variables.keySet());
+      Map<String, Integer> valuesBefore = values();
+      int printedBefore = printed.size();
+      int outputBefore = outputSize;
+      undoArrays.clear();
+      try {
+        check(statement, 1);
+        run(statement);
+      } catch (Unknown e) {
+        for (int i = undoArrays.size() - 1; i >= 0; i--) {
+          write(undoArrays.get(i), undoElements[2 * i], undoElements[2 * i + 1]);
+        }
+        variables.keySet().retainAll(declaredBefore);
+        for (Map.Entry<String, Variable> variable: variables.entrySet()) {
+          Integer value = valuesBefore.get(variable.getKey());
+          variable.getValue().assigned = value != null;
+          variable.getValue().value = value != null ? value : 0;
+        }
+        printed.subList(printedBefore, printed.size()).clear();
+        outputSize = outputBefore;
+        break;
+      }
+      done++;
+    }
+    boolean complete = done == statements.size();
+    if (!complete && (done == 0 || printed.size() + values().size() + nonZero > MAX_RESIDUAL)) {
+      residual = ast;
+    } else if (!complete) {
+      residual = residual(statements.subList(done, statements.size()));
+    }
+    return complete;
+  }
+
+  //The values of the assigned scalars.
+  private Map<String, Integer> values() {
+    Map<String, Integer> values = new LinkedHashMap<String, Integer>();
+    for (Map.Entry<String, Variable> variable: variables.entrySet()) {
+      if (variable.getValue().assigned) {
+        values.put(variable.getKey(), variable.getValue().value);
+      }
+    }
+    return values;
+  }
+
+  private void declare(String name) {
+    if (!variables.containsKey(name)) {
+      variables.put(name, new Variable());
+    }
+  }
+
+  /** The output of a program that ended, a value per line.
+  */
+  public String getOutput() {
+    StringBuilder output = new StringBuilder(outputSize);
+    for (int value: printed) {
+      output.append(value).append('\n');
+    }
+    return output.toString();
+  }
+
+  /** The program left to generate when it did not end: the same AST when nothing
+  * could be folded.
+  */
+  public AbstractSyntaxTree getResidual() {
+    return residual;
+  }
+
+  //Declare the variables, false when the CodeGenerator would reject an array.
+  private boolean declare(AbstractSyntaxTree vars) {
+    for (AbstractSyntaxTree child: vars.getChildren()) {
+      declarations.add(child);
+      if (child.getLabel().equals("Array")) {
+        int size;
+        try {
+          size = Integer.parseInt(child.getChild(1).getLabel());
+        } catch (NumberFormatException e) {
+          return false;
+        }
+        if (size == 0) {
+          return false;
+        }
+        arrays.put(child.getChild(0).getLabel(), new int[size]);
+      } else {
+        declare(child.getLabel());
+      }
+    }
+    return true;
+  }
+
+  //The program that prints the output so far, sets the variables and the array
+  //elements to their values, then runs the statements left.
+  private AbstractSyntaxTree residual(List<AbstractSyntaxTree> left) {
+    AbstractSyntaxTree vars = new AbstractSyntaxTree("Variables");
+    for (AbstractSyntaxTree declaration: declarations) {
+      vars.addChild(declaration);
+    }
+    Set<String> original = new HashSet<String>();
+    for (AbstractSyntaxTree declaration: declarations) {
+      original.add(declaration.getLabel());
+    }
+    for (String name: variables.keySet()) {
+      if (!original.contains(name)) {
+        //A loop variable declared by a folded FOR.
+        vars.addChild(new AbstractSyntaxTree(name));
+      }
+    }
+    AbstractSyntaxTree code = new AbstractSyntaxTree("Code");
+    if (!printed.isEmpty()) {
+      AbstractSyntaxTree print = new AbstractSyntaxTree("Print");
+      for (int value: printed) {
+        print.addChild(number(value));
+      }
+      code.addChild(print);
+    }
+    for (Map.Entry<String, Integer> value: values().entrySet()) {
+      code.addChild(assign(new AbstractSyntaxTree(value.getKey()), value.getValue()));
+    }
+    for (Map.Entry<String, int[]> array: arrays.entrySet()) {
+      int[] elements = array.getValue();
+      for (int i = 0; i < elements.length; i++) {
+        if (elements[i] != 0) {
+          AbstractSyntaxTree index = new AbstractSyntaxTree("Index");
+          index.addChild(new AbstractSyntaxTree(array.getKey()));
+          index.addChild(number(i));
+          code.addChild(assign(index, elements[i]));
+        }
+      }
+    }
+    code.addChild(left);
+    AbstractSyntaxTree program = new AbstractSyntaxTree(ast.getLabel());
+    program.addChild(vars);
+    program.addChild(code);
+    return program;
+  }
+
+  private static AbstractSyntaxTree assign(AbstractSyntaxTree target, int value) {
+    AbstractSyntaxTree assign = new AbstractSyntaxTree("Assign");
+    assign.addChild(target);
+    assign.addChild(number(value));
+    return assign;
+  }
+
+  private static AbstractSyntaxTree number(int value) {
+    return new AbstractSyntaxTree(Integer.toString(value));
+  }
+
+  /** Check a statement like the CodeGenerator does when it generates it, and
+  * declare its loop variables in the same order. Run only checked statements, so
+  * their nesting is at most MAX_NESTING.
+  */
+  private void check(AbstractSyntaxTree code, int nesting) {
+    String label = code.getLabel();
+    if (nesting > MAX_NESTING) {
+      throw new Unknown();
+    } else if (label == "Assign") {
+      checkTarget(code.getChild(0));
+      checkExpression(code.getChild(1));
+    } else if (label == "If") {
+      checkCondition(code.getChild(0));
+      check(code.getChild(1), nesting + 1);
+      check(code.getChild(2), nesting + 1);
+    } else if (label == "While") {
+      checkCondition(code.getChild(0));
+      check(code.getChild(1), nesting + 1);
+    } else if (label == "For" || label == "ParFor") {
+      Set<String> privates = new HashSet<String>();
+      boolean parallel = label == "ParFor" && !inParallel
+      && CodeGenerator.serialReason(code, privates, new LinkedHashMap<String, String>()) == null;
+      checkExpression(code.getChild(1));
+      if (parallel) {
+        checkExpression(code.getChild(2));
+        for (String name: privates) {
+          declare(name);
+        }
+      }
+      declare(code.getChild(0).getLabel());
+      if (!parallel) {
+        checkExpression(code.getChild(2));
+      }
+      boolean wasParallel = inParallel;
+      inParallel = inParallel || parallel;
+      check(code.getChild(3), nesting + 1);
+      inParallel = wasParallel;
+    } else if (label == "Print") {
+      for (AbstractSyntaxTree child: code.getChildren()) {
+        checkExpression(child);
+      }
+    } else if (label == "Read") {
+      throw new Unknown();
+    } else if (label == "Code") {
+      for (AbstractSyntaxTree statement: code.getChildren()) {
+        check(statement, nesting);
+      }
+    }
+  }
+
+  private void checkTarget(AbstractSyntaxTree target) {
+    if (target.getLabel().equals("Index")) {
+      if (!arrays.containsKey(target.getChild(0).getLabel())) {
+        throw new Unknown();
+      }
+      checkExpression(target.getChild(1));
+    } else if (!variables.containsKey(target.getLabel())) {
+      throw new Unknown();
+    }
+  }
+
+  private void checkCondition(AbstractSyntaxTree cond) {
+    while (true) {
+      checkExpression(cond.getChild(0).getChild(0));
+      checkExpression(cond.getChild(0).getChild(1));
+      if (cond.getChildren().size() > 1 && (cond.getChild(1).getLabel().equals("AND")
+      || cond.getChild(1).getLabel().equals("OR"))) {
+        cond = cond.getChild(1);
+      } else {
+        return;
+      }
+    }
+  }
+
+  //Every operand must be a declared variable, a number or an indexed array, every
+  //operator known.
+  private void checkExpression(AbstractSyntaxTree expr) {
+    List<AbstractSyntaxTree> stack = new ArrayList<AbstractSyntaxTree>();
+    stack.add(expr);
+    while (!stack.isEmpty()) {
+      expr = stack.remove(stack.size() - 1);
+      String value = expr.getLabel();
+      int size = expr.getChildren().size();
+      if (value.equals("Index")) {
+        if (!arrays.containsKey(expr.getChild(0).getLabel())) {
+          throw new Unknown();
+        }
+        stack.add(expr.getChild(1));
+      } else if (size == 1 && expr.getChild(0).getChildren().size() > 0) {
+        stack.add(expr.getChild(0));
+      } else if (size <= 1) {
+        String operand = size == 0 ? value : expr.getChild(0).getLabel();
+        if (!variables.containsKey(operand)) {
+          literal(operand);
+        }
+      } else if (!value.equals("+") && !value.equals("-") && !value.equals("*") && !value.equals("/")) {
+        throw new Unknown();
+      } else {
+        for (AbstractSyntaxTree child: expr.getChildren()) {
+          stack.add(child);
+        }
+      }
+    }
+  }
+
+  //The value of a number, which the IR code truncates to 32 bits.
+  private static int literal(String number) {
+    try {
+      long value = Long.parseLong(number);
+      if (value < Integer.MIN_VALUE || value > 0xFFFFFFFFL) {
+        throw new Unknown();
+      }
+      return (int) value;
+    } catch (NumberFormatException e) {
+      throw new Unknown();
+    }
+  }
+
+  //One more step, or the end of the budget.
+  private void step() {
+    if (--steps < 0) {
+      throw new Unknown();
+    }
+  }
+
+  /** Run a statement, or the statements of a block.
+  */
+  private void run(AbstractSyntaxTree code) {
+    String label = code.getLabel();
+    if (label != "Code") {
+      step();
+    }
+    if (label == "Assign") {
+      int value = expression(code.getChild(1));
+      store(code.getChild(0), value);
+    } else if (label == "If") {
+      run(condition(code.getChild(0)) ? code.getChild(1) : code.getChild(2));
+    } else if (label == "While") {
+      while (condition(code.getChild(0))) {
+        run(code.getChild(1));
+        step();
+      }
+    } else if (label == "For") {
+      forLoop(code, null);
+    } else if (label == "ParFor") {
+      Set<String> privates = new HashSet<String>();
+      if (inParallel || CodeGenerator.serialReason(code, privates, new LinkedHashMap<String, String>()) != null) {
+        forLoop(code, null);
+        return;
+      }
+      int start = expression(code.getChild(1));
+      int bound = expression(code.getChild(2));
+      //The variables of the nested loops are private to the iterations, they keep
+      //their value after the loop and are not assigned at its start.
+      Map<String, Integer> saved = new HashMap<String, Integer>();
+      for (String name: privates) {
+        Variable variable = variables.get(name);
+        if (variable.assigned) {
+          saved.put(name, variable.value);
+        }
+        variable.assigned = false;
+      }
+      inParallel = true;
+      set(variables.get(code.getChild(0).getLabel()), start);
+      forLoop(code, bound);
+      inParallel = false;
+      for (String name: privates) {
+        Variable variable = variables.get(name);
+        variable.assigned = saved.containsKey(name);
+        variable.value = variable.assigned ? saved.get(name) : 0;
+      }
+    } else if (label == "Print") {
+      List<Integer> results = new ArrayList<Integer>();
+      for (AbstractSyntaxTree child: code.getChildren()) {
+        results.add(expression(child));
+      }
+      for (int value: results) {
+        outputSize += Integer.toString(value).length() + 1;
+        if (outputSize > MAX_OUTPUT) {
+          throw new Unknown();
+        }
+        printed.add(value);
+      }
+    } else if (label == "Read") {
+      throw new Unknown();
+    } else if (label == "Code") {
+      for (AbstractSyntaxTree statement: code.getChildren()) {
+        run(statement);
+      }
+    }
+  }
+
+  //A FOR: the bound is computed again before each iteration and the variable
+  //incremented after the body. A parallel PARFOR computes its start and bound once,
+  //before the loop.
+  private void forLoop(AbstractSyntaxTree forGen, Integer bound) {
+    Variable variable = variables.get(forGen.getChild(0).getLabel());
+    if (bound == null) {
+      set(variable, expression(forGen.getChild(1)));
+    }
+    while (variable.value < (bound != null ? bound : expression(forGen.getChild(2)))) {
+      run(forGen.getChild(3));
+      set(variable, value(variable) + 1);
+      step();
+    }
+  }
+
+  private static int value(Variable variable) {
+    if (!variable.assigned) {
+      throw new Unknown();
+    }
+    return variable.value;
+  }
+
+  private static void set(Variable variable, int value) {
+    variable.assigned = true;
+    variable.value = value;
+  }
+
+  private void store(AbstractSyntaxTree target, int value) {
+    if (target.getLabel().equals("Index")) {
+      int[] array = arrays.get(target.getChild(0).getLabel());
+      int index = index(array, target.getChild(1));
+      int n = undoArrays.size();
+      if (2 * n + 2 > undoElements.length) {
+        undoElements = Arrays.copyOf(undoElements, 2 * undoElements.length);
+      }
+      undoElements[2 * n] = index;
+      undoElements[2 * n + 1] = array[index];
+      undoArrays.add(array);
+      write(array, index, value);
+    } else {
+      set(variables.get(target.getLabel()), value);
+    }
+  }
+
+  private void write(int[] array, int index, int value) {
+    nonZero += (value != 0 ? 1 : 0) - (array[index] != 0 ? 1 : 0);
+    array[index] = value;
+  }
+
+  private int index(int[] array, AbstractSyntaxTree expr) {
+    return inBounds(array, expression(expr));
+  }
+
+  //An index of an array, when it is in its bounds.
+  private static int inBounds(int[] array, int index) {
+    if (index < 0 || index >= array.length) {
+      throw new Unknown();
+    }
+    return index;
+  }
+
+  /** A condition, a chain of AND and OR combined from its end like
+  * CodeGenerator.generateCond(): AND is true when both sides are equal and OR
+  * when they differ.
+  */
+  private boolean condition(AbstractSyntaxTree cond) {
+    if (cond.getChildren().size() == 1) {
+      AbstractSyntaxTree simpleCond = cond.getChild(0);
+      int left = expression(simpleCond.getChild(0));
+      return compare(simpleCond.getLabel(), left, expression(simpleCond.getChild(1)));
+    }
+    List<Boolean> results = new ArrayList<Boolean>();
+    List<String> operators = new ArrayList<String>();
+    while (true) {
+      AbstractSyntaxTree simpleCond = cond.getChild(0);
+      int left = expression(simpleCond.getChild(0));
+      int right = expression(simpleCond.getChild(1));
+      results.add(compare(simpleCond.getLabel(), left, right));
+      if (cond.getChildren().size() > 1 && (cond.getChild(1).getLabel().equals("AND")
+      || cond.getChild(1).getLabel().equals("OR"))) {
+        operators.add(cond.getChild(1).getLabel());
+        cond = cond.getChild(1);
+      } else {
+        break;
+      }
+    }
+    boolean result = results.get(results.size() - 1);
+    for (int i = operators.size() - 1; i >= 0; i--) {
+      result = operators.get(i).equals("AND") ? results.get(i) == result : results.get(i) != result;
+    }
+    return result;
+  }
+
+  private static boolean compare(String comparison, int left, int right) {
+    if (comparison.equals("=")) {
+      return left == right;
+    } else if (comparison.equals(">=")) {
+      return left >= right;
+    } else if (comparison.equals(">")) {
+      return left > right;
+    } else if (comparison.equals("<=")) {
+      return left <= right;
+    } else if (comparison.equals("<")) {
+      return left < right;
+    } else if (comparison.equals("<>")) {
+      return left != right;
+    }
+    throw new Unknown();
+  }
+
+  //An operation of expression() waiting for its operands.
+  private static class Operation {
+    AbstractSyntaxTree expr;
+    int step;
+    int left;
+  }
+
+  //Stack of the operations of expression(), reused from one expression to the next,
+  //and its height.
+  private List<Operation> operations = new ArrayList<Operation>();
+  private int depth;
+
+  private void push(AbstractSyntaxTree expr) {
+    if (depth == operations.size()) {
+      operations.add(new Operation());
+    }
+    Operation operation = operations.get(depth);
+    operation.expr = expr;
+    operation.step = 0;
+    depth++;
+  }
+
+  /** The value of an arithmetic expression, walking the tree like
+  * CodeGenerator.computeExprArith(). The indexes of the arrays it reads are
+  * expressions computed above it on the same stack.
+  */
+  private int expression(AbstractSyntaxTree exprArith) {
+    int bottom = depth;
+    push(exprArith);
+    int last = 0;
+    while (depth > bottom) {
+      Operation operation = operations.get(depth - 1);
+      AbstractSyntaxTree expr = operation.expr;
+      String value = expr.getLabel();
+      int size = expr.getChildren().size();
+      if (operation.step == 0) {
+        if (value.equals("Index")) {
+          operation.step = 1;
+          push(expr.getChild(1));
+        } else if (size == 1 && expr.getChild(0).getChildren().size() > 0) {
+          operation.expr = expr.getChild(0);
+        } else if (size <= 1) {
+          String operand = size == 0 ? value : expr.getChild(0).getLabel();
+          Variable variable = variables.get(operand);
+          last = variable != null ? value(variable) : literal(operand);
+          depth--;
+        } else {
+          operation.step = 1;
+          push(expr.getChild(0));
+        }
+      } else if (value.equals("Index")) {
+        //The index is computed, read the element.
+        int[] array = arrays.get(expr.getChild(0).getLabel());
+        last = array[inBounds(array, last)];
+        depth--;
+      } else if (operation.step == 1) {
+        operation.left = last;
+        operation.step = 2;
+        push(expr.getChild(1));
+      } else if (operation.step == 2) {
+        last = operation(value, operation.left, last, false);
+        if (size == 3) {
+          operation.left = last;
+          operation.step = 3;
+          push(expr.getChild(2));
+        } else {
+          depth--;
+        }
+      } else {
+        last = operation(expr.getChild(2).getLabel(), operation.left, last, true);
+        depth--;
+      }
+    }
+    return last;
+  }
+
+  //The result of CodeGenerator.binaryOperation() on values.
+  private static int operation(String operator, int left, int right, boolean third) {
+    if (operator.equals("-")) {
+      return left - right;
+    } else if (operator.equals("*")) {
+      return left * right;
+    } else if (operator.equals("/")) {
+      if (right == 0 || (left == Integer.MIN_VALUE && right == -1)) {
+        throw new Unknown();
+      }
+      return left / right;
+    } else if (operator.equals("+") || third) {
+      return left + right;
+    }
+    throw new Unknown();
+  }
+}
@@ -0,0 +1,23 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** Flight Recorder event of one phase of a compilation run by the compiler:
+* lex, parse, passes, codegen, print or write.
+*/
+
+@Name("superfortran.Phase")
+@Label("Compilation Phase")
+@Category("Super Fortran")
+@Description("Phase of a compilation run in the JVM")
+class PhaseEvent extends jdk.jfr.Event {
+  @Label("File")
+  String file;
+
+  @Label("Phase")
+  String phase;
+
+  @Label("Outcome")
+  String outcome;
+}
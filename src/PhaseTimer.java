@@ -0,0 +1,234 @@
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import jdk.jfr.FlightRecorder;
+
+/** Follow the phases of a compilation. Each phase is a Flight Recorder event
+* (PhaseEvent, or ToolchainEvent for the subprocesses llvm-as and lli), and the
+* whole compilation is a CompilationEvent. The events are only created once Flight
+* Recorder runs in the JVM: loading the event classes starts its infrastructure,
+* which would cost more than a small compilation. The time of each phase and of
+* the compilation is added to the CompilerStats of the JVM.
+* When the report is enabled, the wall time, CPU time and bytes allocated by the
+* compiling thread (from ThreadMXBean) are also measured for each phase, and
+* printed as a table for the console or as a JSON object. The phases run by a
+* subprocess only have a wall time.
+*/
+
+public class PhaseTimer {
+  private boolean enabled;
+  private boolean recording;
+  private String file;
+  private ThreadMXBean threads;
+  private boolean cpuTime;
+  private boolean allocation;
+
+  private List<String> names = new ArrayList<String>();
+  //Wall time, CPU time and bytes allocated of each phase, -1 when unknown.
+  private List<long[]> measures = new ArrayList<long[]>();
+  private Map<String, Long> counts = new LinkedHashMap<String, Long>();
+
+  private CompilationEvent compilation;
+  private long compilationStart;
+  private String current;
+  private PhaseEvent phase;
+  private ToolchainEvent toolchain;
+  private long startWall;
+  private long startCpu;
+  private long startAllocated;
+
+  /** Initialize a timer and start the compilation.
+  * @param enabled : true to measure the phases for report() and toJson()
+  * @param file : the compiled file
+  */
+  public PhaseTimer(boolean enabled, String file) {
+    this.enabled = enabled;
+    this.file = file;
+    if (enabled) {
+      threads = ManagementFactory.getThreadMXBean();
+      cpuTime = threads.isCurrentThreadCpuTimeSupported();
+      allocation = threads instanceof com.sun.management.ThreadMXBean
+      && ((com.sun.management.ThreadMXBean) threads).isThreadAllocatedMemorySupported();
+    }
+    recording = FlightRecorder.isInitialized();
+    if (recording) {
+      compilation = new CompilationEvent();
+      compilation.begin();
+    }
+    compilationStart = System.nanoTime();
+  }
+
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Start a phase run by the compiling thread, stop the current one.
+  * @param name : the name of the phase
+  */
+  public void start(String name) {
+    stop();
+    current = name;
+    if (recording) {
+      phase = new PhaseEvent();
+      phase.begin();
+    }
+    startMeasure(false);
+  }
+
+  /** Start a phase run by a subprocess, stop the current one. Only its wall time
+  * is measured.
+  * @param name : the name of the phase, also the command
+  */
+  public void startExternal(String name) {
+    stop();
+    current = name;
+    if (recording) {
+      toolchain = new ToolchainEvent();
+      toolchain.begin();
+    }
+    startMeasure(true);
+  }
+
+  private void startMeasure(boolean external) {
+    if (enabled) {
+      startCpu = cpuTime && !external ? threads.getCurrentThreadCpuTime() : -1;
+      startAllocated = allocation && !external ? allocatedBytes() : -1;
+    }
+    startWall = System.nanoTime();
+  }
+
+  /** Stop the current phase, if any.
+  */
+  public void stop() {
+    stopPhase("ok", -1);
+  }
+
+  /** Stop the current phase, run by a subprocess.
+  * @param exitCode : the exit code of the subprocess
+  */
+  public void stopExternal(int exitCode) {
+    stopPhase(exitCode == 0 ? "ok" : "failed", exitCode);
+  }
+
+  private void stopPhase(String outcome, int exitCode) {
+    if (current == null) {
+      return;
+    }
+    long wall = System.nanoTime() - startWall;
+    if (enabled) {
+      long cpu = startCpu < 0 ? -1 : threads.getCurrentThreadCpuTime() - startCpu;
+      long allocated = startAllocated < 0 ? -1 : allocatedBytes() - startAllocated;
+      names.add(current);
+      measures.add(new long[] {wall, cpu, allocated});
+    }
+    if (phase != null && phase.shouldCommit()) {
+      phase.file = file;
+      phase.phase = current;
+      phase.outcome = outcome;
+      phase.commit();
+    } else if (toolchain != null && toolchain.shouldCommit()) {
+      toolchain.file = file;
+      toolchain.command = current;
+      toolchain.exitCode = exitCode;
+      toolchain.commit();
+    }
+    CompilerStats.get().recordPhase(current, wall);
+    current = null;
+    phase = null;
+    toolchain = null;
+  }
+
+  /** Stop the current phase and end the compilation.
+  * @param success : false if the compilation failed, the current phase failed then
+  */
+  public void finish(boolean success) {
+    stopPhase(success ? "ok" : "failed", -1);
+    long nanos = System.nanoTime() - compilationStart;
+    long sourceBytes = count("sourceBytes");
+    long tokens = count("tokens");
+    long irBytes = count("irBytes");
+    if (recording && compilation.shouldCommit()) {
+      compilation.file = file;
+      compilation.sourceBytes = sourceBytes;
+      compilation.tokens = tokens;
+      compilation.astNodes = counts.containsKey("astNodes") ? counts.get("astNodes") : -1;
+      compilation.irBytes = irBytes;
+      compilation.outcome = success ? "ok" : "failed";
+      compilation.commit();
+    }
+    CompilerStats.get().recordCompilation(nanos, success, sourceBytes, tokens, irBytes);
+  }
+
+  /** Record a size of the compilation, like the number of tokens.
+  * @param name : the name of the size
+  * @param value : its value
+  */
+  public void count(String name, long value) {
+    counts.put(name, value);
+  }
+
+  private long count(String name) {
+    return counts.containsKey(name) ? counts.get(name) : 0;
+  }
+
+  /** True if the sizes that cost a pass over the AST should be counted: when the
+  * report is enabled or a recording asks for compilation events.
+  */
+  public boolean countsNodes() {
+    return enabled || (recording && compilation.isEnabled());
+  }
+
+  private long allocatedBytes() {
+    return ((com.sun.management.ThreadMXBean) threads).getThreadAllocatedBytes(Thread.currentThread().getId());
+  }
+
+  /** A table with one line per phase, then the total and the sizes.
+  */
+  public String report() {
+    StringBuilder report = new StringBuilder();
+    report.append(String.format("%-10s %10s %10s %14s\n", "phase", "wall ms", "cpu ms", "allocated"));
+    long[] total = new long[3];
+    for (int i = 0; i < names.size(); i++) {
+      long[] measure = measures.get(i);
+      report.append(String.format("%-10s %10s %10s %14s\n", names.get(i), millis(measure[0]), millis(measure[1]),
+      measure[2] < 0 ? "-" : Long.toString(measure[2])));
+      for (int j = 0; j < 3; j++) {
+        total[j] += Math.max(0, measure[j]);
+      }
+    }
+    report.append(String.format("%-10s %10s %10s %14d\n", "total", millis(total[0]), millis(total[1]), total[2]));
+    for (Map.Entry<String, Long> count: counts.entrySet()) {
+      report.append(count.getKey() + ": " + count.getValue() + "\n");
+    }
+    return report.toString();
+  }
+
+  /** The same report as a JSON object, unknown values are null.
+  */
+  public String toJson() {
+    StringBuilder json = new StringBuilder();
+    json.append("{\"file\": \"" + file.replace("\\", "\\\\").replace("\"", "\\\"") + "\", \"phases\": [");
+    for (int i = 0; i < names.size(); i++) {
+      long[] measure = measures.get(i);
+      json.append(i == 0 ? "\n" : ",\n");
+      json.append("  {\"name\": \"" + names.get(i) + "\", \"wallMs\": " + millis(measure[0])
+      + ", \"cpuMs\": " + (measure[1] < 0 ? "null" : millis(measure[1]))
+      + ", \"allocatedBytes\": " + (measure[2] < 0 ? "null" : Long.toString(measure[2])) + "}");
+    }
+    json.append("\n]");
+    for (Map.Entry<String, Long> count: counts.entrySet()) {
+      json.append(", \"" + count.getKey() + "\": " + count.getValue());
+    }
+    json.append("}\n");
+    return json.toString();
+  }
+
+  private static String millis(long nanos) {
+    return nanos < 0 ? "-" : String.format(java.util.Locale.ROOT, "%.3f", nanos / 1e6);
+  }
+}
@@ -0,0 +1,23 @@
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/** Flight Recorder event of a subprocess started by the compiler, llvm-as or lli.
+*/
+
+@Name("superfortran.Toolchain")
+@Label("Toolchain Process")
+@Category("Super Fortran")
+@Description("LLVM tool run on the generated code")
+class ToolchainEvent extends jdk.jfr.Event {
+  @Label("File")
+  String file;
+
+  @Label("Command")
+  String command;
+
+  @Label("Exit Code")
+  @Description("Exit code of the process, -1 when it could not be run")
+  int exitCode;
+}
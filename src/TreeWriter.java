@@ -0,0 +1,207 @@
+import java.io.BufferedWriter;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Dump of an AST in a text format, written node after node to an Appendable (a
+* Writer, a StringBuilder...) while the tree is walked. No string is built for a
+* node or a subtree, so the memory used is the path from the root to the node being
+* written, whatever the size of the tree. The formats are:
+*   TEXT: the brackets of printTree(), "\n[label" for a node and "]\n" after its
+*   children, which can be drawn at http://mshang.ca/syntree/,
+*   TEX: a LaTeX document drawing the tree with the forest package, like the -wt
+*   option of Part2,
+*   DOT: a Graphviz digraph, a box per node numbered in preorder and an edge from
+*   each node to its children.
+*/
+
+public abstract class TreeWriter {
+
+  /** The bracket format of printTree().
+  */
+  public static final TreeWriter TEXT = new TreeWriter() {
+    protected void open(AbstractSyntaxTree node, int number, int parent, Appendable out) throws IOException {
+      out.append("\n[").append(node.getLabel());
+    }
+
+    protected void close(AbstractSyntaxTree node, int number, Appendable out) throws IOException {
+      out.append("]\n");
+    }
+  };
+
+  /** A standalone LaTeX document with the tree in a forest environment.
+  */
+  public static final TreeWriter TEX = new TreeWriter() {
+    protected void begin(Appendable out) throws IOException {
+      out.append("\\documentclass[border=5pt]{standalone}\n\n\\usepackage{tikz}\n\\usepackage{forest}\n\n");
+      out.append("\\begin{document}\n\n\\begin{forest}\n");
+    }
+
+    protected void open(AbstractSyntaxTree node, int number, int parent, Appendable out) throws IOException {
+      out.append(parent < 0 ? "[{" : " [{");
+      String label = node.getLabel() == null ? "" : node.getLabel();
+      for (int i = 0; i < label.length(); i++) {
+        char c = label.charAt(i);
+        if (c == '\\') {
+          out.append("\\textbackslash{}");
+        } else if (c == '~') {
+          out.append("\\textasciitilde{}");
+        } else if (c == '^') {
+          out.append("\\textasciicircum{}");
+        } else if (c == '<') {
+          out.append("\\textless{}");
+        } else if (c == '>') {
+          out.append("\\textgreater{}");
+        } else if ("#$%&_{}".indexOf(c) >= 0) {
+          out.append('\\').append(c);
+        } else {
+          out.append(c);
+        }
+      }
+      out.append('}');
+    }
+
+    protected void close(AbstractSyntaxTree node, int number, Appendable out) throws IOException {
+      out.append(']');
+    }
+
+    protected void end(Appendable out) throws IOException {
+      out.append("\n\\end{forest}\n\n\\end{document}\n");
+    }
+  };
+
+  /** A Graphviz digraph, drawn by dot -Tpdf.
+  */
+  public static final TreeWriter DOT = new TreeWriter() {
+    protected void begin(Appendable out) throws IOException {
+      out.append("digraph AST {\nnode [shape=box];\n");
+    }
+
+    protected void open(AbstractSyntaxTree node, int number, int parent, Appendable out) throws IOException {
+      out.append('n');
+      appendNumber(number, out);
+      out.append(" [label=\"");
+      String label = node.getLabel() == null ? "" : node.getLabel();
+      for (int i = 0; i < label.length(); i++) {
+        char c = label.charAt(i);
+        if (c == '"' || c == '\\') {
+          out.append('\\');
+        }
+        out.append(c);
+      }
+      out.append("\"];\n");
+      if (parent >= 0) {
+        out.append('n');
+        appendNumber(parent, out);
+        out.append(" -> n");
+        appendNumber(number, out);
+        out.append(";\n");
+      }
+    }
+
+    protected void end(Appendable out) throws IOException {
+      out.append("}\n");
+    }
+  };
+
+  /** The writer of a file: TEX for a .tex file, DOT for a .dot or .gv file, TEXT for
+  * any other.
+  * @param path the file to write
+  */
+  public static TreeWriter forFile(String path) {
+    if (path.endsWith(".tex")) {
+      return TEX;
+    } else if (path.endsWith(".dot") || path.endsWith(".gv")) {
+      return DOT;
+    }
+    return TEXT;
+  }
+
+  /** Write an AST in a file, in the format given by its extension (see forFile).
+  * @param ast the tree to write
+  * @param path the file to write
+  */
+  public static void write(AbstractSyntaxTree ast, String path) throws IOException {
+    Writer out = new BufferedWriter(new FileWriter(path), 1 << 16);
+    try {
+      forFile(path).write(ast, out);
+    } finally {
+      out.close();
+    }
+  }
+
+  /** Write an AST, node after node. The Appendable is neither flushed nor closed.
+  * The walk keeps for each node of the current path the index of its next child,
+  * instead of a stack of all the children waiting, so deep and wide trees take the
+  * same little memory.
+  * @param ast the tree to write
+  * @param out where the tree is written
+  */
+  public void write(AbstractSyntaxTree ast, Appendable out) throws IOException {
+    List<AbstractSyntaxTree> path = new ArrayList<AbstractSyntaxTree>();
+    int[] numbers = new int[16];
+    int[] nextChild = new int[16];
+    int count = 0;
+    begin(out);
+    open(ast, count, -1, out);
+    path.add(ast);
+    numbers[0] = count++;
+    nextChild[0] = 0;
+    while (!path.isEmpty()) {
+      int top = path.size() - 1;
+      AbstractSyntaxTree node = path.get(top);
+      List<AbstractSyntaxTree> children = node.getChildren();
+      if (children == null || nextChild[top] == children.size()) {
+        close(node, numbers[top], out);
+        path.remove(top);
+        continue;
+      }
+      AbstractSyntaxTree child = children.get(nextChild[top]);
+      nextChild[top]++;
+      if (path.size() == numbers.length) {
+        numbers = Arrays.copyOf(numbers, 2 * numbers.length);
+        nextChild = Arrays.copyOf(nextChild, 2 * nextChild.length);
+      }
+      open(child, count, numbers[top], out);
+      path.add(child);
+      numbers[top + 1] = count++;
+      nextChild[top + 1] = 0;
+    }
+    end(out);
+  }
+
+  //Write the digits of a number from 0, without making a String.
+  private static void appendNumber(int number, Appendable out) throws IOException {
+    int divisor = 1;
+    while (number / divisor >= 10) {
+      divisor *= 10;
+    }
+    for (; divisor > 0; divisor /= 10) {
+      out.append((char) ('0' + number / divisor % 10));
+    }
+  }
+
+  //Written before the root.
+  protected void begin(Appendable out) throws IOException {
+  }
+
+  /** Write a node before its children.
+  * @param node the node
+  * @param number its number in preorder, from 0 for the root
+  * @param parent the number of its parent, -1 for the root
+  * @param out where the tree is written
+  */
+  protected abstract void open(AbstractSyntaxTree node, int number, int parent, Appendable out)
+  throws IOException;
+
+  //Written after the children of a node.
+  protected void close(AbstractSyntaxTree node, int number, Appendable out) throws IOException {
+  }
+
+  //Written after the root.
+  protected void end(Appendable out) throws IOException {
+  }
+}
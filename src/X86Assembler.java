@@ -0,0 +1,468 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/** Encoder of the few x86-64 instructions used by the NativeGenerator, into a
+* buffer of machine code. Registers are numbered like in their encoding (RAX 0 to
+* R15 15). A memory operand is an absolute address, plus an index register times a
+* scale when there is one: all the data of a native program is at fixed addresses
+* below 2 GB, so no base register is needed. The operations are on 32 bits unless
+* their name ends in Q. Jumps and calls go to labels, always with a 32 bit
+* displacement, patched by finish().
+*/
+
+public class X86Assembler {
+  public static final int RAX = 0;
+  public static final int RCX = 1;
+  public static final int RDX = 2;
+  public static final int RBX = 3;
+  public static final int RSP = 4;
+  public static final int RBP = 5;
+  public static final int RSI = 6;
+  public static final int RDI = 7;
+  public static final int R8 = 8;
+  public static final int R9 = 9;
+  public static final int R10 = 10;
+  public static final int R11 = 11;
+  public static final int R12 = 12;
+  public static final int R13 = 13;
+  public static final int R14 = 14;
+  public static final int R15 = 15;
+
+  //Condition codes of Jcc and SETcc.
+  public static final int BELOW = 0x2;
+  public static final int ABOVE_EQUAL = 0x3;
+  public static final int EQUAL = 0x4;
+  public static final int NOT_EQUAL = 0x5;
+  public static final int ABOVE = 0x7;
+  public static final int SIGN = 0x8;
+  public static final int NOT_SIGN = 0x9;
+  public static final int LESS = 0xC;
+  public static final int GREATER_EQUAL = 0xD;
+  public static final int LESS_EQUAL = 0xE;
+  public static final int GREATER = 0xF;
+
+  //Operations of the ALU group, the digit of their opcode.
+  public static final int ADD = 0;
+  public static final int OR = 1;
+  public static final int AND = 4;
+  public static final int SUB = 5;
+  public static final int XOR = 6;
+  public static final int CMP = 7;
+
+  //Operations of the shift group, the digit of their opcode.
+  public static final int SHL = 4;
+  public static final int SHR = 5;
+  public static final int SAR = 7;
+
+  private byte[] code = new byte[4096];
+  private int size;
+  private long origin;
+  //Address of each label, -1 until it is bound.
+  private long[] labels = new long[64];
+  private int labelCount;
+  //Position of each displacement to patch and its label.
+  private List<int[]> fixups = new ArrayList<int[]>();
+
+  /** A memory operand: address + index * scale.
+  */
+  public static class Memory {
+    final long address;
+    final int index;
+    final int scale;
+
+    /** An absolute address.
+    */
+    public Memory(long address) {
+      this(address, -1, 1);
+    }
+
+    /** An address indexed by a register.
+    * @param address : the address of the first element
+    * @param index : the register holding the index
+    * @param scale : 1, 2, 4 or 8
+    */
+    public Memory(long address, int index, int scale) {
+      if (address < Integer.MIN_VALUE || address > Integer.MAX_VALUE) {
+        throw new Error("Address " + address + " is out of the 32 bit range");
+      }
+      this.address = address;
+      this.index = index;
+      this.scale = scale;
+    }
+  }
+
+  /** Initialize an assembler.
+  * @param origin : the address where the first byte of code is loaded
+  */
+  public X86Assembler(long origin) {
+    this.origin = origin;
+  }
+
+  /** Address of the next instruction.
+  */
+  public long address() {
+    return origin + size;
+  }
+
+  public int newLabel() {
+    if (labelCount == labels.length) {
+      labels = Arrays.copyOf(labels, 2 * labelCount);
+    }
+    labels[labelCount] = -1;
+    return labelCount++;
+  }
+
+  /** Put a label at the next instruction.
+  */
+  public void bind(int label) {
+    labels[label] = address();
+  }
+
+  /** Patch the jumps and calls, and return the machine code.
+  */
+  public byte[] finish() {
+    for (int[] fixup: fixups) {
+      long target = labels[fixup[1]];
+      if (target < 0) {
+        throw new Error("Label " + fixup[1] + " is not bound");
+      }
+      int displacement = (int) (target - (origin + fixup[0] + 4));
+      for (int i = 0; i < 4; i++) {
+        code[fixup[0] + i] = (byte) (displacement >> (8 * i));
+      }
+    }
+    fixups.clear();
+    return Arrays.copyOf(code, size);
+  }
+
+  public void mov(int dst, int src) {
+    rex(false, src, -1, dst, false);
+    emit(0x89);
+    modrm(src, dst);
+  }
+
+  public void movq(int dst, int src) {
+    rex(true, src, -1, dst, false);
+    emit(0x89);
+    modrm(src, dst);
+  }
+
+  /** Move a constant to a 32 bit register, which clears the upper half.
+  */
+  public void movImm(int dst, int imm) {
+    rex(false, 0, -1, dst, false);
+    emit(0xB8 + (dst & 7));
+    emit32(imm);
+  }
+
+  public void mov(int dst, Memory src) {
+    rex(false, dst, src.index, -1, false);
+    emit(0x8B);
+    modrm(dst, src);
+  }
+
+  public void mov(Memory dst, int src) {
+    rex(false, src, dst.index, -1, false);
+    emit(0x89);
+    modrm(src, dst);
+  }
+
+  public void movq(int dst, Memory src) {
+    rex(true, dst, src.index, -1, false);
+    emit(0x8B);
+    modrm(dst, src);
+  }
+
+  public void movq(Memory dst, int src) {
+    rex(true, src, dst.index, -1, false);
+    emit(0x89);
+    modrm(src, dst);
+  }
+
+  public void movImm(Memory dst, int imm) {
+    rex(false, 0, dst.index, -1, false);
+    emit(0xC7);
+    modrm(0, dst);
+    emit32(imm);
+  }
+
+  /** Store the low byte of a register.
+  */
+  public void movByte(Memory dst, int src) {
+    rex(false, src, dst.index, -1, src >= 4);
+    emit(0x88);
+    modrm(src, dst);
+  }
+
+  /** Load a byte, zero extended.
+  */
+  public void movzxByte(int dst, Memory src) {
+    rex(false, dst, src.index, -1, false);
+    emit(0x0F);
+    emit(0xB6);
+    modrm(dst, src);
+  }
+
+  /** Sign extend a 32 bit register to 64 bits.
+  */
+  public void movsxd(int dst, int src) {
+    rex(true, dst, -1, src, false);
+    emit(0x63);
+    modrm(dst, src);
+  }
+
+  public void movsxd(int dst, Memory src) {
+    rex(true, dst, src.index, -1, false);
+    emit(0x63);
+    modrm(dst, src);
+  }
+
+  /** An operation of the ALU group (ADD, OR, AND, SUB, XOR or CMP) dst op= src.
+  */
+  public void alu(int operation, int dst, int src) {
+    rex(false, src, -1, dst, false);
+    emit(operation << 3 | 1);
+    modrm(src, dst);
+  }
+
+  public void aluq(int operation, int dst, int src) {
+    rex(true, src, -1, dst, false);
+    emit(operation << 3 | 1);
+    modrm(src, dst);
+  }
+
+  public void alu(int operation, int dst, Memory src) {
+    rex(false, dst, src.index, -1, false);
+    emit(operation << 3 | 3);
+    modrm(dst, src);
+  }
+
+  public void aluImm(int operation, int dst, int imm) {
+    aluImm(false, operation, dst, imm);
+  }
+
+  public void aluqImm(int operation, int dst, int imm) {
+    aluImm(true, operation, dst, imm);
+  }
+
+  public void aluImm(int operation, Memory dst, int imm) {
+    rex(false, 0, dst.index, -1, false);
+    if (imm == (byte) imm) {
+      emit(0x83);
+      modrm(operation, dst);
+      emit(imm);
+    } else {
+      emit(0x81);
+      modrm(operation, dst);
+      emit32(imm);
+    }
+  }
+
+  public void imul(int dst, int src) {
+    rex(false, dst, -1, src, false);
+    emit(0x0F);
+    emit(0xAF);
+    modrm(dst, src);
+  }
+
+  public void imul(int dst, Memory src) {
+    rex(false, dst, src.index, -1, false);
+    emit(0x0F);
+    emit(0xAF);
+    modrm(dst, src);
+  }
+
+  /** dst = src * imm.
+  */
+  public void imulImm(int dst, int src, int imm) {
+    imulImm(false, dst, src, imm);
+  }
+
+  public void imulqImm(int dst, int src, int imm) {
+    imulImm(true, dst, src, imm);
+  }
+
+  /** Sign extend EAX into EDX before a division.
+  */
+  public void cdq() {
+    emit(0x99);
+  }
+
+  /** Signed division of EDX:EAX, the quotient in EAX.
+  */
+  public void idiv(int src) {
+    rex(false, 0, -1, src, false);
+    emit(0xF7);
+    modrm(7, src);
+  }
+
+  public void idiv(Memory src) {
+    rex(false, 0, src.index, -1, false);
+    emit(0xF7);
+    modrm(7, src);
+  }
+
+  /** Unsigned division of RDX:RAX, the quotient in RAX and the remainder in RDX.
+  */
+  public void divq(int src) {
+    rex(true, 0, -1, src, false);
+    emit(0xF7);
+    modrm(6, src);
+  }
+
+  /** A shift (SHL, SHR or SAR) of a register by a constant.
+  */
+  public void shiftImm(int operation, int dst, int count) {
+    rex(false, 0, -1, dst, false);
+    emit(0xC1);
+    modrm(operation, dst);
+    emit(count);
+  }
+
+  public void negq(int dst) {
+    rex(true, 0, -1, dst, false);
+    emit(0xF7);
+    modrm(3, dst);
+  }
+
+  public void test(int dst, int src) {
+    rex(false, src, -1, dst, false);
+    emit(0x85);
+    modrm(src, dst);
+  }
+
+  public void testq(int dst, int src) {
+    rex(true, src, -1, dst, false);
+    emit(0x85);
+    modrm(src, dst);
+  }
+
+  /** Set a register to 1 when the condition holds, to 0 otherwise.
+  */
+  public void setcc(int condition, int dst) {
+    rex(false, 0, -1, dst, dst >= 4);
+    emit(0x0F);
+    emit(0x90 + condition);
+    modrm(0, dst);
+    rex(false, dst, -1, dst, dst >= 4);
+    emit(0x0F);
+    emit(0xB6);
+    modrm(dst, dst);
+  }
+
+  public void jmp(int label) {
+    emit(0xE9);
+    fixup(label);
+  }
+
+  public void jcc(int condition, int label) {
+    emit(0x0F);
+    emit(0x80 + condition);
+    fixup(label);
+  }
+
+  public void call(int label) {
+    emit(0xE8);
+    fixup(label);
+  }
+
+  public void ret() {
+    emit(0xC3);
+  }
+
+  public void push(int reg) {
+    rex(false, 0, -1, reg, false);
+    emit(0x50 + (reg & 7));
+  }
+
+  public void pop(int reg) {
+    rex(false, 0, -1, reg, false);
+    emit(0x58 + (reg & 7));
+  }
+
+  public void syscall() {
+    emit(0x0F);
+    emit(0x05);
+  }
+
+  private void aluImm(boolean wide, int operation, int dst, int imm) {
+    rex(wide, 0, -1, dst, false);
+    if (imm == (byte) imm) {
+      emit(0x83);
+      modrm(operation, dst);
+      emit(imm);
+    } else {
+      emit(0x81);
+      modrm(operation, dst);
+      emit32(imm);
+    }
+  }
+
+  private void imulImm(boolean wide, int dst, int src, int imm) {
+    rex(wide, dst, -1, src, false);
+    if (imm == (byte) imm) {
+      emit(0x6B);
+      modrm(dst, src);
+      emit(imm);
+    } else {
+      emit(0x69);
+      modrm(dst, src);
+      emit32(imm);
+    }
+  }
+
+  //The REX prefix, when one is needed: 64 bit operation, extended registers, or
+  //forced to reach the low byte of RSP to RDI.
+  private void rex(boolean wide, int reg, int index, int rm, boolean force) {
+    int rex = 0x40;
+    if (wide) {
+      rex |= 8;
+    }
+    if (reg >= 8) {
+      rex |= 4;
+    }
+    if (index >= 8) {
+      rex |= 2;
+    }
+    if (rm >= 8) {
+      rex |= 1;
+    }
+    if (rex != 0x40 || force) {
+      emit(rex);
+    }
+  }
+
+  //ModRM of two registers.
+  private void modrm(int reg, int rm) {
+    emit(0xC0 | (reg & 7) << 3 | (rm & 7));
+  }
+
+  //ModRM and SIB of a register and a memory operand, without base: mod 00, rm 100
+  //and base 101 give a 32 bit displacement.
+  private void modrm(int reg, Memory memory) {
+    emit((reg & 7) << 3 | 4);
+    int scale = memory.scale == 8 ? 3 : memory.scale == 4 ? 2 : memory.scale == 2 ? 1 : 0;
+    int index = memory.index < 0 ? 4 : memory.index & 7;
+    emit(scale << 6 | index << 3 | 5);
+    emit32((int) memory.address);
+  }
+
+  private void fixup(int label) {
+    fixups.add(new int[] {size, label});
+    emit32(0);
+  }
+
+  private void emit32(int value) {
+    for (int i = 0; i < 4; i++) {
+      emit(value >> (8 * i));
+    }
+  }
+
+  private void emit(int value) {
+    if (size == code.length) {
+      code = Arrays.copyOf(code, 2 * size);
+    }
+    code[size++] = (byte) value;
+  }
+}